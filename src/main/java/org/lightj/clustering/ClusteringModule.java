@@ -33,6 +33,7 @@ import com.sun.enterprise.ee.cms.impl.client.FailureSuspectedActionFactoryImpl;
 import com.sun.enterprise.ee.cms.impl.client.GroupLeadershipNotificationActionFactoryImpl;
 import com.sun.enterprise.ee.cms.impl.client.JoinNotificationActionFactoryImpl;
 import com.sun.enterprise.ee.cms.impl.client.JoinedAndReadyNotificationActionFactoryImpl;
+import com.sun.enterprise.ee.cms.impl.client.MessageActionFactoryImpl;
 import com.sun.enterprise.ee.cms.impl.client.PlannedShutdownActionFactoryImpl;
 import com.sun.enterprise.mgmt.ClusterManager;
 
@@ -210,6 +211,39 @@ public class ClusteringModule  {
 
 	}
 
+	/**
+	 * broadcast a message to a component on all members of the default cluster
+	 * 
+	 * @param component
+	 * @param message
+	 * @throws ClusteringException
+	 */
+	public static void sendMessage(String component, byte[] message) throws ClusteringException {
+		validateInit();
+		try {
+			GMSFactory.getGMSModule(ClusteringModule.getClusterName()).getGroupHandle().sendMessage(component, message);
+		} catch (GMSException e) {
+			throw new ClusteringException(e);
+		}
+	}
+
+	/**
+	 * handle messages sent to a component in the default cluster, 
+	 * handler receives {@link com.sun.enterprise.ee.cms.core.MessageSignal}
+	 * 
+	 * @param component
+	 * @param handler
+	 * @throws ClusteringException
+	 */
+	public static void addMessageHandler(String component, CallBack handler) throws ClusteringException {
+		validateInit();
+		try {
+			GMSFactory.getGMSModule(ClusteringModule.getClusterName()).addActionFactory(new MessageActionFactoryImpl(handler), component);
+		} catch (GMSException e) {
+			throw new ClusteringException(e);
+		}
+	}
+
 	/**
 	 * deligate event for internal handling
 	 * 
@@ -408,7 +408,7 @@ public abstract class AbstractDAO<T extends IData> extends AbstractDbBasic {
 		}
 		//System.out.println(" ***********SQL Query in Search of Abstarct DAO>>"+sql.toString());
 		logger.debug(this.getClass().getName() + ".search(...) is executing " + query.debugString());
-		return search(sql.toString(), query.getArgs(), query.getTop(),query.getFetchSize());
+		return search(limit(sql.toString(), query.getTop()), query.getArgs(), query.getTop(),query.getFetchSize());
 	}
 	
 
@@ -419,7 +419,17 @@ public abstract class AbstractDAO<T extends IData> extends AbstractDbBasic {
 	 */
 	public List<T> searchJoin(Query query) throws DataAccessException {
 		logger.debug(this.getClass().getName() + ".search(...) is executing " + query.toString());
-		return search(query.toString(), query.getArgs(), query.getTop(),query.getFetchSize());
+		return search(limit(query.toString(), query.getTop()), query.getArgs(), query.getTop(),query.getFetchSize());
+	}
+	
+	/**
+	 * top rows limited in the database when it is relational, so a page does not read all rows after it
+	 * @param sql
+	 * @param top
+	 * @return
+	 */
+	private String limit(String sql, int top) {
+		return (top > 0 && getDbEnum() instanceof RdbmsDatabaseType) ? ((RdbmsDatabaseType) getDbEnum()).limit(sql, top) : sql;
 	}
 	
 	/**
@@ -18,4 +18,12 @@ public class OracleDatabaseType extends RdbmsDatabaseType {
 		this.setShared(true);
 	}
 
+	/**
+	 * rownum is assigned before order by, so filter around the ordered query
+	 */
+	@Override
+	public String limit(String sql, int limit) {
+		return "SELECT * FROM (" + sql + ") WHERE ROWNUM <= " + limit;
+	}
+
 }
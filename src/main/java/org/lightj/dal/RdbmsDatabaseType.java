@@ -31,6 +31,17 @@ public class RdbmsDatabaseType extends BaseDatabaseType {
 		}
 	}
 
+	/**
+	 * limit rows of a query in the database, rather than read and dropped by the client, 
+	 * limit clause of mysql and hsqldb by default
+	 * @param sql
+	 * @param limit
+	 * @return
+	 */
+	public String limit(String sql, int limit) {
+		return sql + " LIMIT " + limit;
+	}
+
 	private DataSource createDataSource() {
 		DriverManagerDataSource ds = new DriverManagerDataSource(url, un, pwd);
 		ds.setDriverClassName(driverClass);
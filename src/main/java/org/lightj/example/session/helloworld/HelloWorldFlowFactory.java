@@ -6,9 +6,9 @@ import java.util.List;
 import org.lightj.session.FlowSession;
 import org.lightj.session.FlowSessionFactory;
 import org.lightj.session.exception.FlowExecutionException;
-import org.lightj.session.step.DelayedEnclosure;
+import org.lightj.session.step.DelayInterceptor;
 import org.lightj.session.step.IFlowStep;
-import org.lightj.session.step.RetryEnclosure;
+import org.lightj.session.step.RetryInterceptor;
 import org.lightj.session.step.SimpleStepExecution;
 import org.lightj.session.step.StepBuilder;
 import org.lightj.session.step.StepCallbackHandler;
@@ -114,8 +114,7 @@ public class HelloWorldFlowFactory {
 	 */
 	public @Bean @Scope("prototype") IFlowStep helloWorldDelayStep() 
 	{
-		IFlowStep step = new StepBuilder().getFlowStep();
-		return DelayedEnclosure.delay(3000, step);		
+		return new StepBuilder().intercept(new DelayInterceptor(3000)).getFlowStep();		
 	}
 
 	/**
@@ -133,11 +132,10 @@ public class HelloWorldFlowFactory {
 			}
 		};
 		
-		IFlowStep step = new StepBuilder().execute(execution).getFlowStep();
-		
 		// retry until match a transition or max retry limit is reached
 		StepTransition matchTran = StepTransition.runToStep("timeoutStep");
-		return RetryEnclosure.retryIf(DelayedEnclosure.delay(1000, step), 1, matchTran);		
+		return new StepBuilder().execute(execution)
+				.intercept(RetryInterceptor.retryIf(1, matchTran), new DelayInterceptor(1000)).getFlowStep();		
 	}
 	
 	/**
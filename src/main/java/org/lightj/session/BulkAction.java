@@ -0,0 +1,33 @@
+package org.lightj.session;
+
+/**
+ * state change applied to many flows at once by {@link FlowSessionFactory#bulkTransition(Object, BulkAction, String)}
+ * 
+ * @author binyu
+ *
+ */
+public enum BulkAction {
+	pause(FlowState.Paused, null),					// put in waiting state, result untouched
+	stop(FlowState.Canceled, FlowResult.Canceled),	// stop for good
+	kill(FlowState.Canceled, FlowResult.Failed),	// stop for good as a failure
+	;
+	
+	private final FlowState toState;
+	private final FlowResult toResult;
+	
+	BulkAction(FlowState toState, FlowResult toResult) {
+		this.toState = toState;
+		this.toResult = toResult;
+	}
+	
+	/** state flows end up in */
+	public FlowState getToState() {
+		return toState;
+	}
+	
+	/** result flows end up with, null if unchanged */
+	public FlowResult getToResult() {
+		return toResult;
+	}
+
+}
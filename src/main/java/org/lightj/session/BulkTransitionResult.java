@@ -0,0 +1,71 @@
+package org.lightj.session;
+
+/**
+ * outcome of a bulk transition
+ * 
+ * @author binyu
+ *
+ */
+public class BulkTransitionResult {
+	
+	/** flows running in this VM, changed in memory */
+	private int signaled;
+	/** flows not running in this VM, changed in one set based update */
+	private long updated;
+	/** flows running in this VM that refused the change */
+	private int failed;
+	/** flows driven by other VMs, sent to them over the cluster */
+	private int routed;
+	/** flows driven by other VMs, left alone as they can not be reached */
+	private int rejected;
+	
+	void incSignaled() {
+		signaled++;
+	}
+	
+	void incFailed() {
+		failed++;
+	}
+	
+	void addUpdated(long count) {
+		updated += count;
+	}
+	
+	void addRouted(int count) {
+		routed += count;
+	}
+	
+	void addRejected(int count) {
+		rejected += count;
+	}
+
+	public int getSignaled() {
+		return signaled;
+	}
+
+	public long getUpdated() {
+		return updated;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+	
+	public int getRouted() {
+		return routed;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+	
+	public long getTotal() {
+		return signaled + updated;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("signaled=%s,updated=%s,failed=%s,routed=%s,rejected=%s", signaled, updated, failed, routed, rejected);
+	}
+
+}
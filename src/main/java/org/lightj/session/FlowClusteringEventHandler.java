@@ -6,22 +6,24 @@ import org.lightj.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.enterprise.ee.cms.core.CallBack;
 import com.sun.enterprise.ee.cms.core.FailureNotificationSignal;
 import com.sun.enterprise.ee.cms.core.FailureSuspectedSignal;
 import com.sun.enterprise.ee.cms.core.GroupLeadershipNotificationSignal;
 import com.sun.enterprise.ee.cms.core.JoinNotificationSignal;
 import com.sun.enterprise.ee.cms.core.JoinedAndReadyNotificationSignal;
+import com.sun.enterprise.ee.cms.core.MessageSignal;
 import com.sun.enterprise.ee.cms.core.PlannedShutdownSignal;
 import com.sun.enterprise.ee.cms.core.Signal;
 import com.sun.enterprise.ee.cms.core.SignalAcquireException;
 import com.sun.enterprise.ee.cms.core.SignalReleaseException;
 
 /**
- * handle clustering events
+ * handle clustering events, and flow completion, bulk transition and child flow messages from other nodes
  * @author binyu
  *
  */
-public class FlowClusteringEventHandler implements ClusteringEventHandler {
+public class FlowClusteringEventHandler implements ClusteringEventHandler, CallBack {
 	
 	static Logger logger = LoggerFactory.getLogger(FlowClusteringEventHandler.class);
 
@@ -48,6 +50,24 @@ public class FlowClusteringEventHandler implements ClusteringEventHandler {
 		recoverFromDownNode(signal);
 	}
 
+	/**
+	 * flow completion, bulk transition or child flow message
+	 */
+	public void processNotification(Signal signal) {
+		if (signal instanceof MessageSignal) {
+			MessageSignal msg = (MessageSignal) signal;
+			if (FlowSessionFactory.BULK_COMPONENT.equals(msg.getTargetComponent())) {
+				FlowSessionFactory.getInstance().bulkTransition(msg.getMessage());
+			}
+			else if (FlowSessionFactory.CHILD_COMPONENT.equals(msg.getTargetComponent())) {
+				FlowSessionFactory.getInstance().addChildFlow(msg.getMessage());
+			}
+			else {
+				FlowSessionFactory.getInstance().completeFlow(msg.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * recover session from crashed/down server
 	 * @param nodeId
@@ -0,0 +1,116 @@
+package org.lightj.session;
+
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * handle to wait for a flow to stop, completes with the result of the flow,
+ * from {@link FlowSession#runFlowAsync()} or {@link FlowSessionFactory#awaitCompletion(String)}.
+ * a waiter also checks the store now and then, so a lost completion message or a dead flow owner
+ * does not keep it waiting, handles leave the registry after {@link #EXPIRE_MS} either way
+ *
+ * @author binyu
+ *
+ */
+public class FlowCompletion implements Future<FlowResult> {
+
+	/** how often a waiter checks the store */
+	static final long RECHECK_MS = 5000;
+	
+	/** handles not completed by then leave the registry, waiters still complete from the store */
+	static final long EXPIRE_MS = TimeUnit.HOURS.toMillis(1);
+
+	/** key of the flow */
+	private final String flowKey;
+
+	/** released when flow stops */
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	/** result of the flow */
+	private volatile FlowResult result;
+
+	/** takes the handle out of the registry when it expires */
+	TimerTask expiry;
+
+	/** constructor */
+	FlowCompletion(String flowKey) {
+		this.flowKey = flowKey;
+	}
+
+	/**
+	 * key of the flow waited on
+	 * @return
+	 */
+	public String getFlowKey() {
+		return flowKey;
+	}
+
+	/**
+	 * complete with flow result, only the first completion counts
+	 * @param result
+	 * @return
+	 */
+	synchronized boolean complete(FlowResult result) {
+		if (latch.getCount() == 0) {
+			return false;
+		}
+		this.result = result;
+		latch.countDown();
+		return true;
+	}
+
+	/**
+	 * waiting does not control the flow, use {@link FlowSession#stopFlow(FlowState, FlowResult, String)} to stop it
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	@Override
+	public FlowResult get() throws InterruptedException {
+		while (!latch.await(RECHECK_MS, TimeUnit.MILLISECONDS)) {
+			if (recheck()) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public FlowResult get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true) {
+			long remaining = deadline - System.nanoTime();
+			if (latch.await(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(RECHECK_MS)), TimeUnit.NANOSECONDS) || recheck()) {
+				return result;
+			}
+			if (deadline - System.nanoTime() <= 0) {
+				throw new TimeoutException("Flow " + flowKey + " not stopped in " + unit.toMillis(timeout) + " ms");
+			}
+		}
+	}
+	
+	/**
+	 * complete from the store if the flow has stopped there
+	 * @return
+	 */
+	private boolean recheck() {
+		FlowSessionFactory.getInstance().recheckCompletion(this);
+		return isDone();
+	}
+
+}
@@ -4,6 +4,7 @@ import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -23,8 +24,10 @@ import org.lightj.session.step.IFlowStep;
 import org.lightj.session.step.StepErrorLog;
 import org.lightj.session.step.StepLog;
 import org.lightj.session.step.StepLog.TaskLog;
+import org.lightj.session.step.StepProgress;
 import org.lightj.task.Task;
 import org.lightj.task.TaskResult;
+import org.lightj.task.TaskResultEnum;
 import org.lightj.util.JsonUtil;
 import org.lightj.util.StringUtil;
 import org.slf4j.Logger;
@@ -78,6 +81,14 @@ public class FlowContext {
 	@CtxProp(dbType= CtxDbType.BLOB, saveType=CtxSaveType.SaveOnChange)
 	private Map<String, Object> userData = new LinkedHashMap<String, Object>();
 	
+	/** task progress of the current step, persisted at most every progress interval */
+	@CtxProp(dbType= CtxDbType.BLOB, saveType=CtxSaveType.SaveOnChange)
+	private StepProgress stepProgress;
+	
+	/** per step task completion checkpoint, identity of the task list then one char per task ordinal */
+	@CtxProp(dbType= CtxDbType.BLOB, saveType=CtxSaveType.SaveOnChange)
+	private Map<String, String> taskCheckpoints = new LinkedHashMap<String, String>();
+	
 	/**
 	 * Constructor
 	 * @param sm
@@ -184,26 +195,45 @@ public class FlowContext {
 		lazyLoad();
 	}
 	
+	/**
+	 * session id, with metas of the session already loaded in batch
+	 * @param sessionId
+	 * @param metas
+	 */
+	synchronized void setSessionId(long sessionId, List<ISessionMetaData> metas) {
+		this.sessionId = sessionId;
+		if (!loaded && sessionId > 0) {
+			load(metas);
+		}
+	}
+	
 	/**
 	 * lazy load session context only when called upon
 	 */
 	private synchronized void lazyLoad() {
 		if (!loaded && sessionId > 0) {
 			try {
-				List<ISessionMetaData> metas = SessionDataFactory.getInstance().getMetaDataManager().findByFlowId(this.sessionId);
-				for (ISessionMetaData meta : metas) {
-					if (!StringUtil.isNullOrEmpty(meta.getStrValue()) || meta.getBlobValue() != null) {
-						context.put(meta.getName(), meta);
-						initField(meta);
-					}
-				}
-				loaded = true;
+				load(SessionDataFactory.getInstance().getMetaDataManager().findByFlowId(this.sessionId));
 			} catch (DataAccessException e) {
 				logger.error("Error loading context", e);
 			}
 		}
 	}
 	
+	/**
+	 * populate context from persisted metas
+	 * @param metas
+	 */
+	private void load(List<ISessionMetaData> metas) {
+		for (ISessionMetaData meta : metas) {
+			if (!StringUtil.isNullOrEmpty(meta.getStrValue()) || meta.getBlobValue() != null) {
+				context.put(meta.getName(), meta);
+				initField(meta);
+			}
+		}
+		loaded = true;
+	}
+	
 	/**
 	 * set pojo field into persisted DO
 	 * @param name
@@ -439,6 +469,88 @@ public class FlowContext {
 	public void setPctComplete(int pctComplete) {
 		this.pctComplete = pctComplete;
 	}
+	
+	/////////////// step progress ////////////////
+	
+	public StepProgress getStepProgress() {
+		return stepProgress;
+	}
+	public void setStepProgress(StepProgress stepProgress) {
+		this.stepProgress = stepProgress;
+	}
+
+	/////////////// task checkpoint ////////////////
+	
+	/** pending marker in a task checkpoint */
+	public static final char TASK_PENDING = '.';
+
+	public synchronized Map<String, String> getTaskCheckpoints() {
+		return new LinkedHashMap<String, String>(taskCheckpoints);
+	}
+	public synchronized void setTaskCheckpoints(Map<String, String> taskCheckpoints) {
+		this.taskCheckpoints = (taskCheckpoints != null) ? 
+				new LinkedHashMap<String, String>(taskCheckpoints) : new LinkedHashMap<String, String>();
+	}
+	
+	/**
+	 * checkpoint marks of a step, null if none, or taken for a different list of tasks
+	 * @param stepName
+	 * @param taskListId	identity of the list of tasks of the step
+	 * @param numOfTasks
+	 * @return
+	 */
+	public synchronized String getTaskCheckpoint(String stepName, String taskListId, int numOfTasks) {
+		String checkpoint = taskCheckpoints.get(stepName);
+		String prefix = taskListId + ':';
+		return (checkpoint != null && checkpoint.startsWith(prefix) && checkpoint.length() == prefix.length() + numOfTasks) 
+				? checkpoint.substring(prefix.length()) : null;
+	}
+	
+	/**
+	 * mark task of ordinal in a step with its result status
+	 * @param stepName
+	 * @param taskListId	identity of the list of tasks of the step
+	 * @param ordinal
+	 * @param numOfTasks
+	 * @param status
+	 */
+	public synchronized void updateTaskCheckpoint(String stepName, String taskListId, int ordinal, int numOfTasks, TaskResultEnum status) {
+		String checkpoint = getTaskCheckpoint(stepName, taskListId, numOfTasks);
+		char[] marks;
+		if (checkpoint == null) {
+			marks = new char[numOfTasks];
+			Arrays.fill(marks, TASK_PENDING);
+		}
+		else {
+			marks = checkpoint.toCharArray();
+		}
+		if (ordinal >= 0 && ordinal < numOfTasks) {
+			marks[ordinal] = status.name().charAt(0);
+			taskCheckpoints.put(stepName, taskListId + ':' + new String(marks));
+		}
+	}
+	
+	/**
+	 * remove checkpoint of a step
+	 * @param stepName
+	 */
+	public synchronized void clearTaskCheckpoint(String stepName) {
+		taskCheckpoints.remove(stepName);
+	}
+	
+	/**
+	 * task result status from a checkpoint mark, null if still pending
+	 * @param mark
+	 * @return
+	 */
+	public static TaskResultEnum fromCheckpointMark(char mark) {
+		for (TaskResultEnum status : TaskResultEnum.values()) {
+			if (status.isComplete() && status.name().charAt(0) == mark) {
+				return status;
+			}
+		}
+		return null;
+	}
 
 	////////////// user data ///////////
 	public Map<String, Object> getUserData() {
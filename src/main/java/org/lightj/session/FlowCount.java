@@ -0,0 +1,44 @@
+package org.lightj.session;
+
+/**
+ * materialized flow count of one (type, state, result) bucket
+ * @author binyu
+ *
+ */
+public class FlowCount {
+	
+	private final String flowType;
+	private final FlowState flowState;
+	private final FlowResult flowResult;
+	private final long count;
+	
+	/** constructor */
+	public FlowCount(String flowType, FlowState flowState, FlowResult flowResult, long count) {
+		this.flowType = flowType;
+		this.flowState = flowState;
+		this.flowResult = flowResult;
+		this.count = count;
+	}
+
+	public String getFlowType() {
+		return flowType;
+	}
+
+	public FlowState getFlowState() {
+		return flowState;
+	}
+
+	public FlowResult getFlowResult() {
+		return flowResult;
+	}
+
+	public long getCount() {
+		return count;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s,%s,%s=%s", flowType, flowState, flowResult, count);
+	}
+
+}
@@ -2,6 +2,9 @@ package org.lightj.session;
 
 import java.io.InvalidObjectException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lightj.Constants;
 import org.lightj.dal.DataAccessException;
@@ -42,6 +45,12 @@ public class FlowDriver implements Runnable {
 	 * current step
 	 */
 	private IFlowStep currentFlowStep;
+	
+	/**
+	 * per session counters of steps (entries, retries, etc.), 
+	 * steps are rebuilt on every run so their counters live here
+	 */
+	private final ConcurrentMap<String, AtomicInteger> stepCounters = new ConcurrentHashMap<String, AtomicInteger>();
 
 	/**
 	 * constructor
@@ -61,6 +70,22 @@ public class FlowDriver implements Runnable {
 		return session.getFlowEventListeners();
 	}
 	
+	/**
+	 * priority of the session it drives
+	 * @return
+	 */
+	public FlowPriority getPriority() {
+		return session.getPriority();
+	}
+	
+	/**
+	 * tenant of the session it drives
+	 * @return
+	 */
+	public String getTenantId() {
+		return session.getTenantId();
+	}
+	
 	/**
 	 * what's the current flow step
 	 * @return
@@ -68,6 +93,44 @@ public class FlowDriver implements Runnable {
 	public IFlowStep getCurrentFlowStep() {
 		return currentFlowStep;
 	}
+
+	/**
+	 * whether a step is the one the flow is at and the flow has not ended
+	 * @param step
+	 * @return
+	 */
+	public boolean isCurrentStep(IFlowStep step) {
+		return currentFlowStep == step && session.getEndDate() == null;
+	}
+	
+	/**
+	 * current value of a counter of a step in this session
+	 * @param stepName
+	 * @param counter
+	 * @return
+	 */
+	public int getStepCounter(String stepName, String counter) {
+		AtomicInteger value = stepCounters.get(stepName + '|' + counter);
+		return value != null ? value.get() : 0;
+	}
+	
+	/**
+	 * get and increment a counter of a step in this session
+	 * @param stepName
+	 * @param counter
+	 * @return
+	 */
+	public int getAndIncrementStepCounter(String stepName, String counter) {
+		String key = stepName + '|' + counter;
+		AtomicInteger value = stepCounters.get(key);
+		if (value == null) {
+			AtomicInteger prev = stepCounters.putIfAbsent(key, value = new AtomicInteger(0));
+			if (prev != null) {
+				value = prev;
+			}
+		}
+		return value.getAndIncrement();
+	}
 	
 	/**
 	 * build flowstep implementation for the current step
@@ -90,7 +153,8 @@ public class FlowDriver implements Runnable {
 	        	// if we have an answer, it has to be a IFlowStep
 	        	throw new FlowExecutionException("Empty or invalid step implementation to execute");
 	        }
-	        currentFlowStep = (IFlowStep) flowStep;
+	        // what the step method returns is a template possibly shared by sessions, run a copy of it
+	        currentFlowStep = ((IFlowStep) flowStep).newInstance();
 	        
 	        // set default from properties
 	        String nextStep = session.getStepByOffset(step, 1);
@@ -134,6 +198,21 @@ public class FlowDriver implements Runnable {
 	 * drive a session to as far as possible from beginning
 	 */
 	public void drive() {
+		// tenant write rate, come back when there is a write slot instead of waiting on a driver thread
+		long waitNanos = FlowModule.getTenantManager().acquireWrite(getTenantId(), false);
+		if (waitNanos > 0) {
+			FlowSessionFactory.getInstance().submitLater(getPriority(), new Runnable() {
+				
+				@Override
+				public void run() {
+					// stopped while put off
+					if (session.getEndDate() == null) {
+						drive();
+					}
+				}
+			}, waitNanos);
+			return;
+		}
 		String myHostName = NetUtil.getMyHostName();
 		String runBy = session.getRunBy();
 		boolean isStart = (runBy == null);
@@ -145,7 +224,7 @@ public class FlowDriver implements Runnable {
 		session.setState(FlowState.Running);
 		session.setResult(FlowResult.InProgress);
 		try {
-			FlowSessionFactory.getInstance().save(session);
+			FlowSessionFactory.getInstance().saveNow(session);
 		} catch (FlowSaveException e) {
 			logger.error("Error update session", e);
 			throw new FlowExecutionException("Error update session", e);
@@ -0,0 +1,197 @@
+package org.lightj.session;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * managed executor for flow drivers, sizes its core threads from what it observes:
+ * Little's law (arrival rate x time per drive) plus what it takes to drain the queue, 
+ * capped by cores x (1 + wait/cpu) as more threads than that only adds contention
+ * 
+ * @author binyu
+ *
+ */
+public class FlowDriverExecutor extends ThreadPoolExecutor {
+	
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(FlowDriverExecutor.class);
+	
+	/** how often core size is re-evaluated */
+	private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	
+	/** queued work should drain within this time */
+	private static final double DRAIN_SEC = 1.0;
+	
+	/** weight of latest interval in moving averages */
+	private static final double ALPHA = 0.3;
+	
+	/** bounds */
+	private final int minThreads;
+	private final int maxThreads;
+	
+	/** cpu time of a thread */
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final boolean cpuTimeSupported;
+	private final ThreadLocal<long[]> startTimes = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+	
+	/** measures of current interval */
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong intervalCount = new AtomicLong();
+	private final AtomicLong intervalWallNanos = new AtomicLong();
+	private final AtomicLong intervalCpuNanos = new AtomicLong();
+	private long intervalStart = System.nanoTime();
+	private long intervalSubmitted;
+	
+	/** moving averages */
+	private volatile double arrivalRate;
+	private volatile double avgWallNanos;
+	private volatile double avgCpuNanos;
+	
+	/**
+	 * constructor
+	 * @param minThreads
+	 * @param maxThreads
+	 */
+	public FlowDriverExecutor(int minThreads, int maxThreads) {
+		super(minThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			
+			private final AtomicInteger threadIdx = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "flow-driver-" + threadIdx.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		if (minThreads <= 0 || maxThreads < minThreads) {
+			throw new IllegalArgumentException("invalid driver thread bounds " + minThreads + "-" + maxThreads);
+		}
+		this.minThreads = minThreads;
+		this.maxThreads = maxThreads;
+		// thread cpu time measurement is a JVM wide setting, use it only if it is on already
+		boolean supported = false;
+		try {
+			supported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+		} catch (Throwable t) {
+			supported = false;
+		}
+		if (!supported) {
+			logger.info("Thread cpu time not available, use wall time and assume drivers never block");
+		}
+		this.cpuTimeSupported = supported;
+	}
+	
+	@Override
+	public void execute(Runnable command) {
+		submitted.incrementAndGet();
+		super.execute(command);
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		long[] start = startTimes.get();
+		start[0] = System.nanoTime();
+		start[1] = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+		super.beforeExecute(t, r);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		long[] start = startTimes.get();
+		long wall = System.nanoTime() - start[0];
+		long cpu = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() - start[1] : wall;
+		intervalCount.incrementAndGet();
+		intervalWallNanos.addAndGet(wall);
+		intervalCpuNanos.addAndGet(Math.min(cpu, wall));
+		if (System.nanoTime() - intervalStart >= ADJUST_INTERVAL_NANOS) {
+			adjust();
+		}
+	}
+	
+	/**
+	 * fold the interval into averages and resize the core
+	 */
+	private synchronized void adjust() {
+		long now = System.nanoTime();
+		long elapsed = now - intervalStart;
+		if (elapsed < ADJUST_INTERVAL_NANOS) {
+			// someone else just did it
+			return;
+		}
+		long count = intervalCount.getAndSet(0);
+		long wall = intervalWallNanos.getAndSet(0);
+		long cpu = intervalCpuNanos.getAndSet(0);
+		long sub = submitted.get();
+		double rate = (sub - intervalSubmitted) / (elapsed / 1e9);
+		intervalSubmitted = sub;
+		intervalStart = now;
+		
+		fold(rate, count, wall, cpu);
+		int target = getTargetSize();
+		if (target != getCorePoolSize()) {
+			logger.debug(String.format("flow driver core size %s -> %s, %s", getCorePoolSize(), target, getStats()));
+			setCorePoolSize(target);
+		}
+	}
+	
+	/**
+	 * fold measures of one interval into the averages
+	 * @param rate		drives submitted per sec
+	 * @param count		drives done
+	 * @param wall		wall nanos of drives done
+	 * @param cpu		cpu nanos of drives done
+	 */
+	void fold(double rate, long count, long wall, long cpu) {
+		arrivalRate = ewma(arrivalRate, rate);
+		if (count > 0) {
+			avgWallNanos = ewma(avgWallNanos, (double) wall / count);
+			avgCpuNanos = ewma(avgCpuNanos, (double) cpu / count);
+		}
+	}
+	
+	/**
+	 * core size wanted by current measures
+	 * @return
+	 */
+	int getTargetSize() {
+		double wallSec = avgWallNanos / 1e9;
+		// Little's law, plus draining what is queued already
+		double demand = arrivalRate * wallSec + getQueue().size() * wallSec / DRAIN_SEC;
+		// beyond cores x (1 + wait/cpu) threads just compete for cpu
+		double blocking = avgCpuNanos > 0 ? Math.max(0, avgWallNanos - avgCpuNanos) / avgCpuNanos : 0;
+		double cap = Runtime.getRuntime().availableProcessors() * (1 + blocking);
+		int target = (int) Math.ceil(Math.min(demand, cap));
+		return Math.max(minThreads, Math.min(maxThreads, target));
+	}
+	
+	/** exponential moving average */
+	private static double ewma(double avg, double sample) {
+		return avg == 0 ? sample : (ALPHA * sample + (1 - ALPHA) * avg);
+	}
+	
+	/**
+	 * pool metrics
+	 * @return
+	 */
+	public FlowExecutorStats getStats() {
+		return new FlowExecutorStats(getPoolSize(), getCorePoolSize(), minThreads, maxThreads, getActiveCount(), 
+				getQueue().size(), getCompletedTaskCount(), arrivalRate, avgWallNanos / 1e6, avgCpuNanos / 1e6);
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.lightj.session;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * one queue per {@link FlowPriority} in front of the flow executor service, 
+ * every submit hands the executor a pull token, a token runs the next work picked by
+ * smooth weighted round robin among non empty lanes, so when the executor is backed up
+ * high priority drivers go first without starving the low priority ones
+ * 
+ * @author binyu
+ *
+ */
+public class FlowDriverLanes {
+	
+	/** queued work per lane */
+	private final Map<FlowPriority, Queue<Runnable>> lanes = new EnumMap<FlowPriority, Queue<Runnable>>(FlowPriority.class);
+	private final Map<FlowPriority, AtomicInteger> queued = new EnumMap<FlowPriority, AtomicInteger>(FlowPriority.class);
+	
+	/** lane weights and running credits of weighted round robin */
+	private final int[] weights;
+	private final int[] credits;
+	
+	/** executor */
+	private final ExecutorService es;
+	
+	/** pull token */
+	private final Runnable pull = new Runnable() {
+		
+		@Override
+		public void run() {
+			Runnable work = next();
+			if (work != null) {
+				work.run();
+			}
+		}
+	};
+	
+	/**
+	 * constructor
+	 * @param es
+	 * @param weights	weight of each priority, in {@link FlowPriority} order
+	 */
+	FlowDriverLanes(ExecutorService es, int[] weights) {
+		this.es = es;
+		this.weights = weights.clone();
+		this.credits = new int[weights.length];
+		for (FlowPriority priority : FlowPriority.values()) {
+			lanes.put(priority, new ConcurrentLinkedQueue<Runnable>());
+			queued.put(priority, new AtomicInteger());
+		}
+	}
+	
+	/**
+	 * submit work in a lane
+	 * @param priority
+	 * @param work
+	 */
+	public void submit(FlowPriority priority, Runnable work) {
+		FlowPriority p = (priority != null) ? priority : FlowPriority.Normal;
+		// count after enqueue, a counted work is always there to poll
+		lanes.get(p).add(work);
+		queued.get(p).incrementAndGet();
+		es.submit(pull);
+	}
+	
+	/**
+	 * number of work waiting in a lane
+	 * @param priority
+	 * @return
+	 */
+	public int getQueued(FlowPriority priority) {
+		return queued.get(priority).get();
+	}
+	
+	/**
+	 * pick next work by weight
+	 * @return
+	 */
+	private synchronized Runnable next() {
+		FlowPriority[] priorities = FlowPriority.values();
+		int total = 0;
+		int picked = -1;
+		for (int i = 0; i < priorities.length; i++) {
+			if (queued.get(priorities[i]).get() > 0) {
+				credits[i] += weights[i];
+				total += weights[i];
+				if (picked < 0 || credits[i] > credits[picked]) {
+					picked = i;
+				}
+			}
+		}
+		if (picked < 0) {
+			return null;
+		}
+		credits[picked] -= total;
+		queued.get(priorities[picked]).decrementAndGet();
+		return lanes.get(priorities[picked]).poll();
+	}
+
+}
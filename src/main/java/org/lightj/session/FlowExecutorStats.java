@@ -0,0 +1,92 @@
+package org.lightj.session;
+
+/**
+ * snapshot of the managed flow driver executor
+ * 
+ * @author binyu
+ *
+ */
+public class FlowExecutorStats {
+	
+	private final int poolSize;
+	private final int coreSize;
+	private final int minSize;
+	private final int maxSize;
+	private final int active;
+	private final int queued;
+	private final long completed;
+	private final double arrivalRate;
+	private final double avgDriveMs;
+	private final double avgCpuMs;
+	
+	FlowExecutorStats(int poolSize, int coreSize, int minSize, int maxSize, int active, int queued, long completed, 
+			double arrivalRate, double avgDriveMs, double avgCpuMs) {
+		this.poolSize = poolSize;
+		this.coreSize = coreSize;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.active = active;
+		this.queued = queued;
+		this.completed = completed;
+		this.arrivalRate = arrivalRate;
+		this.avgDriveMs = avgDriveMs;
+		this.avgCpuMs = avgCpuMs;
+	}
+
+	/** threads alive */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/** current core size */
+	public int getCoreSize() {
+		return coreSize;
+	}
+
+	/** lower bound of core size */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/** upper bound of core size */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** threads driving right now */
+	public int getActive() {
+		return active;
+	}
+
+	/** drives waiting for a thread */
+	public int getQueued() {
+		return queued;
+	}
+
+	/** drives done */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/** drives submitted per second */
+	public double getArrivalRate() {
+		return arrivalRate;
+	}
+
+	/** average wall time of a drive */
+	public double getAvgDriveMs() {
+		return avgDriveMs;
+	}
+
+	/** average cpu time of a drive, the rest is waiting */
+	public double getAvgCpuMs() {
+		return avgCpuMs;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("pool=%s,core=%s[%s-%s],active=%s,queued=%s,completed=%s,arrivalRate=%.1f,avgDriveMs=%.2f,avgCpuMs=%.2f", 
+				poolSize, coreSize, minSize, maxSize, active, queued, completed, arrivalRate, avgDriveMs, avgCpuMs);
+	}
+
+}
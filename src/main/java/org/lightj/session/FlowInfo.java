@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 
 import org.lightj.session.step.StepLog;
+import org.lightj.session.step.StepProgress;
 
 /**
  * flow information persisted
@@ -24,6 +25,7 @@ public class FlowInfo {
 	private Date createDate;
 	private Date endDate;
 	private String progress;
+	private StepProgress stepProgress;
 	
 	private HashMap<String, String> flowContext;
 	
@@ -116,6 +118,14 @@ public class FlowInfo {
 	public void setProgress(String progress) {
 		this.progress = progress;
 	}
+
+	public StepProgress getStepProgress() {
+		return stepProgress;
+	}
+
+	public void setStepProgress(StepProgress stepProgress) {
+		this.stepProgress = stepProgress;
+	}
 	
 	public HashMap<String, String> getFlowContext() {
 		return flowContext;
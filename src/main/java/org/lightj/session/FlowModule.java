@@ -1,7 +1,12 @@
 package org.lightj.session;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import org.lightj.clustering.ClusteringException;
@@ -14,8 +19,11 @@ import org.lightj.initialization.BaseInitializable;
 import org.lightj.initialization.BaseModule;
 import org.lightj.initialization.InitializationException;
 import org.lightj.session.dal.SessionDataFactory;
+import org.lightj.session.eventlistener.ColumnarFlowExporter;
 import org.lightj.task.TaskModule;
 import org.lightj.util.SpringContextUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 import com.sun.enterprise.ee.cms.core.GroupManagementService.MemberType;
@@ -28,6 +36,9 @@ import com.sun.enterprise.ee.cms.core.GroupManagementService.MemberType;
  */
 public class FlowModule {
 
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(FlowModule.class);
+
 	/** singleton */
 	private static FlowModuleInner s_Module = null;
 	
@@ -60,11 +71,71 @@ public class FlowModule {
 		return this;
 	}
 	
+	/**
+	 * use a managed executor sized from observed drive time and blocking ratio, 
+	 * instead of one passed in with {@link #setExectuorService(ExecutorService)}
+	 * @param minThreads
+	 * @param maxThreads
+	 * @return
+	 */
+	public FlowModule setManagedExecutor(int minThreads, int maxThreads) {
+		s_Module.validateForChange();
+		s_Module.es = new FlowDriverExecutor(minThreads, maxThreads);
+		return this;
+	}
+	
 	public static ExecutorService getExecutorService() {
 		validateInit();
 		return s_Module.es;
 	}
 	
+	/** managed executor metrics, null if executor is not managed */
+	public static FlowExecutorStats getExecutorStats() {
+		validateInit();
+		return (s_Module.es instanceof FlowDriverExecutor) ? ((FlowDriverExecutor) s_Module.es).getStats() : null;
+	}
+	
+	/**
+	 * weights of priority lanes in front of the executor service, 
+	 * under backlog lanes are served in proportion to their weights
+	 * @param high
+	 * @param normal
+	 * @param low
+	 * @return
+	 */
+	public FlowModule setPriorityWeights(int high, int normal, int low) {
+		s_Module.validateForChange();
+		if (high <= 0 || normal <= 0 || low <= 0) {
+			throw new IllegalArgumentException("priority weight has to be positive");
+		}
+		s_Module.priorityWeights = new int[] {high, normal, low};
+		return this;
+	}
+	
+	/** priority lanes of flow drivers */
+	public static FlowDriverLanes getDriverLanes() {
+		validateInit();
+		return s_Module.driverLanes;
+	}
+	
+	/**
+	 * limit running flows, in flight tasks and flow save rate of a tenant
+	 * @param tenantId
+	 * @param quota
+	 * @return
+	 */
+	public FlowModule setTenantQuota(String tenantId, TenantQuota quota) {
+		s_Module.validateForChange();
+		s_Module.tenantQuotas.put(tenantId, quota);
+		return this;
+	}
+	
+	/** tenant quota enforcement and usage */
+	public static FlowTenantManager getTenantManager() {
+		validateInit();
+		return s_Module.tenantManager;
+	}
+	
 	/** set session database */
 	public FlowModule setDb(BaseDatabaseType dbEnum) {
 		s_Module.validateForChange();
@@ -105,6 +176,124 @@ public class FlowModule {
 		return s_Module.clusterEnabled;
 	}
 	
+	/**
+	 * background recovery of incomplete flows on startup 
+	 * @param parallelism	max flows recovered at the same time
+	 * @param ratePerSec	max flows recovered per second, 0 for unlimited
+	 * @param priorityTypes	flow type ids recovered first, in order
+	 * @return
+	 */
+	public FlowModule setRecoveryOption(int parallelism, int ratePerSec, String... priorityTypes) {
+		s_Module.validateForChange();
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("recovery parallelism has to be positive");
+		}
+		s_Module.recoveryParallelism = parallelism;
+		s_Module.recoveryRatePerSec = ratePerSec;
+		s_Module.recoveryPriorityTypes = priorityTypes;
+		return this;
+	}
+	
+	/** max flows recovered at the same time */
+	public static int getRecoveryParallelism() {
+		validateInit();
+		return s_Module.recoveryParallelism;
+	}
+	
+	/** max flows recovered per second */
+	public static int getRecoveryRatePerSec() {
+		validateInit();
+		return s_Module.recoveryRatePerSec;
+	}
+	
+	/** flow types recovered first */
+	public static String[] getRecoveryPriorityTypes() {
+		validateInit();
+		return s_Module.recoveryPriorityTypes;
+	}
+	
+	/**
+	 * persist task completion checkpoint of a running task step at most once per interval,
+	 * a recovered step only re-fires tasks not yet completed
+	 * @param intervalSec	0 to disable
+	 * @return
+	 */
+	public FlowModule setTaskCheckpointIntervalSec(int intervalSec) {
+		s_Module.validateForChange();
+		if (intervalSec < 0) {
+			throw new IllegalArgumentException("task checkpoint interval can not be negative");
+		}
+		s_Module.taskCheckpointIntervalSec = intervalSec;
+		return this;
+	}
+	
+	/** task checkpoint interval seconds, 0 means disabled */
+	public static int getTaskCheckpointIntervalSec() {
+		validateInit();
+		return s_Module.taskCheckpointIntervalSec;
+	}
+	
+	/**
+	 * persist task progress of a running task step at most once per interval, 
+	 * in between progress is only kept in memory
+	 * @param intervalSec
+	 * @return
+	 */
+	public FlowModule setTaskProgressIntervalSec(int intervalSec) {
+		s_Module.validateForChange();
+		if (intervalSec <= 0) {
+			throw new IllegalArgumentException("task progress interval has to be positive");
+		}
+		s_Module.taskProgressIntervalSec = intervalSec;
+		return this;
+	}
+	
+	/** task progress persist interval seconds */
+	public static int getTaskProgressIntervalSec() {
+		validateInit();
+		return s_Module.taskProgressIntervalSec;
+	}
+	
+	/**
+	 * export every flow stopped in this VM, the exporter is closed on shutdown so pending rows are written
+	 * @param exporter
+	 * @return
+	 */
+	public FlowModule setFlowExporter(ColumnarFlowExporter exporter) {
+		s_Module.validateForChange();
+		s_Module.flowExporter = exporter;
+		return this;
+	}
+	
+	/** flow exporter, null if flows are not exported */
+	public static ColumnarFlowExporter getFlowExporter() {
+		return s_Module != null ? s_Module.flowExporter : null;
+	}
+	
+	/**
+	 * launch flows on schedules, only the cluster master fires
+	 * @param schedules
+	 * @return
+	 */
+	public FlowModule addSchedules(FlowSchedule... schedules) {
+		s_Module.validateForChange();
+		for (FlowSchedule schedule : schedules) {
+			for (FlowSchedule existing : s_Module.schedules) {
+				if (existing.getName().equals(schedule.getName())) {
+					throw new IllegalArgumentException("duplicate schedule " + schedule.getName());
+				}
+			}
+			s_Module.schedules.add(schedule);
+		}
+		return this;
+	}
+	
+	/** all flow schedules */
+	public static List<FlowSchedule> getSchedules() {
+		validateInit();
+		return Collections.unmodifiableList(s_Module.schedules);
+	}
+	
 	/**
 	 * all registered flow types
 	 * @return
@@ -126,8 +315,27 @@ public class FlowModule {
 		private BaseDatabaseType dbEnum;
 		/** executor service */
 		private ExecutorService es;
+		/** priority lanes */
+		private int[] priorityWeights;
+		private FlowDriverLanes driverLanes;
+		/** tenant quotas */
+		private Map<String, TenantQuota> tenantQuotas = new HashMap<String, TenantQuota>();
+		private FlowTenantManager tenantManager;
 		/** spring context */
 		private ApplicationContext flowCtx;
+		/** background recovery settings */
+		private int recoveryParallelism = 4;
+		private int recoveryRatePerSec = 50;
+		private String[] recoveryPriorityTypes;
+		/** task checkpoint interval */
+		private int taskCheckpointIntervalSec = 10;
+		/** task progress interval */
+		private int taskProgressIntervalSec = 30;
+		/** flow schedules */
+		private List<FlowSchedule> schedules = new ArrayList<FlowSchedule>();
+		private FlowScheduler scheduler;
+		/** flow exporter */
+		private ColumnarFlowExporter flowExporter;
 
 		
 		/**
@@ -141,13 +349,39 @@ public class FlowModule {
 				
 				@Override
 				protected void shutdown() {
+					FlowSessionFactory.getInstance().stopRecovery();
+					if (scheduler != null) {
+						scheduler.shutdown();
+						scheduler = null;
+					}
+					if (flowExporter != null) {
+						try {
+							flowExporter.close();
+						} catch (IOException e) {
+							logger.error("Failed to close flow exporter " + e.getMessage());
+						}
+						flowExporter = null;
+					}
 					if (dbEnum instanceof HsqlDatabaseType) {
 						cleanupMemTables(dbEnum);
 					}
 					clusterEnabled = false;
 					dbEnum = null;
+					if (es instanceof FlowDriverExecutor) {
+						es.shutdown();
+					}
 					es = null;
+					priorityWeights = null;
+					driverLanes = null;
+					tenantQuotas.clear();
+					tenantManager = null;
 					flowCtx = null;
+					recoveryParallelism = 4;
+					recoveryRatePerSec = 50;
+					recoveryPriorityTypes = null;
+					taskCheckpointIntervalSec = 10;
+					taskProgressIntervalSec = 30;
+					schedules.clear();
 				}
 				
 				@Override
@@ -162,6 +396,17 @@ public class FlowModule {
 						throw new InitializationException("session flow requires a database");
 					}
 					
+					// priority lanes
+					if (priorityWeights == null) {
+						FlowPriority[] priorities = FlowPriority.values();
+						priorityWeights = new int[priorities.length];
+						for (int i = 0; i < priorities.length; i++) {
+							priorityWeights[i] = priorities[i].getWeight();
+						}
+					}
+					driverLanes = new FlowDriverLanes(es, priorityWeights);
+					tenantManager = new FlowTenantManager(tenantQuotas);
+					
 					// load spring context
 					if (flowCtx == null) {
 						throw new InitializationException("session flow application context not set");
@@ -188,17 +433,27 @@ public class FlowModule {
 					// enabled cluster
 					if (clusterEnabled) {
 						try {
+							FlowClusteringEventHandler handler = new FlowClusteringEventHandler();
 							ClusteringModule.startOrJoin(
 									ClusteringModule.getClusterName(), 
 									MemberType.CORE, 
-									new FlowClusteringEventHandler());
+									handler);
+							ClusteringModule.addMessageHandler(FlowSessionFactory.COMPLETION_COMPONENT, handler);
+							ClusteringModule.addMessageHandler(FlowSessionFactory.BULK_COMPONENT, handler);
+							ClusteringModule.addMessageHandler(FlowSessionFactory.CHILD_COMPONENT, handler);
 						} catch (ClusteringException e) {
 							throw new InitializationException(e);
 						}
 					}
 					
-					// recover crashed session if any from last shutdown
+					// recover crashed session if any from last shutdown, in background
 					FlowSessionFactory.getInstance().recoverMySession();
+					
+					// start firing scheduled flows
+					if (!schedules.isEmpty()) {
+						scheduler = new FlowScheduler(schedules);
+						scheduler.start();
+					}
 				}
 			});
 			
@@ -214,30 +469,41 @@ public class FlowModule {
 			+ "  FLOW_ID        INTEGER primary key," 
 			+ "  FLOW_KEY		VARCHAR(255),"
 			+ "  CREATION_DATE  DATETIME default sysdate,"
-			+ "  END_DATE       DATETIME," 
-			+ "  FLOW_STATUS    VARCHAR(255),"
 			+ "  TARGET         VARCHAR(1024)," 
 			+ "  FLOW_TYPE      VARCHAR(255),"
 			+ "  PARENT_ID      INTEGER," 
+			+ "  REQUESTER      VARCHAR(2000),"
+			+ "  TENANT_ID      VARCHAR(255))";
+
+	static final String createSDStateSql = "create table FLOW_SESSION_STATE ("
+			+ "  FLOW_ID        INTEGER primary key," 
+			+ "  END_DATE       DATETIME," 
+			+ "  FLOW_STATUS    VARCHAR(255),"
 			+ "  CURRENT_ACTION VARCHAR(64),"
 			+ "  NEXT_ACTION    VARCHAR(64)," 
 			+ "  FLOW_STATE     VARCHAR(64),"
 			+ "  FLOW_RESULT    VARCHAR(64)," 
 			+ "  LAST_MODIFIED  DATETIME," 
-			+ "  RUN_BY         VARCHAR(128),"
-			+ "  REQUESTER      VARCHAR(2000))";
+			+ "  RUN_BY         VARCHAR(128))";
+
+	static final String createSDViewSql = "create view FLOW_SESSION_V as select "
+			+ "  s.FLOW_ID, s.FLOW_KEY, s.CREATION_DATE, s.TARGET, s.FLOW_TYPE, s.PARENT_ID, s.REQUESTER, s.TENANT_ID,"
+			+ "  st.END_DATE, st.FLOW_STATUS, st.CURRENT_ACTION, st.NEXT_ACTION, st.FLOW_STATE, st.FLOW_RESULT,"
+			+ "  st.LAST_MODIFIED, st.RUN_BY"
+			+ "  from FLOW_SESSION s join FLOW_SESSION_STATE st on s.FLOW_ID = st.FLOW_ID";
 
 	static final String createSDSeqSql = "create sequence FLOW_ID_SEQ start with 100 increment by 1";
 
 	static final String[] createSDIdxSqls = new String[] {
 			"create index SESCOP_PRNT_IDX on FLOW_SESSION (PARENT_ID)",
-			"create index FS_ACTIONSTATUS on FLOW_SESSION (FLOW_STATE)",
+			"create index FS_ACTIONSTATUS on FLOW_SESSION_STATE (FLOW_STATE)",
 			"create index FS_CD_IDX on FLOW_SESSION (CREATION_DATE)",
-			"create index FS_EI on FLOW_SESSION (END_DATE, FLOW_ID)",
-			"create index FS_ENDDATE on FLOW_SESSION (END_DATE)",
+			"create index FS_EI on FLOW_SESSION_STATE (END_DATE, FLOW_ID)",
+			"create index FS_ENDDATE on FLOW_SESSION_STATE (END_DATE)",
 			"create index FS_KEY on FLOW_SESSION (TARGET)",
 			"create index FS_TYPE_IDX on FLOW_SESSION (FLOW_TYPE)",
-			"create index FS_FKEY_IDX on FLOW_SESSION (FLOW_KEY)"
+			"create index FS_FKEY_IDX on FLOW_SESSION (FLOW_KEY)",
+			"create index FS_TENANT_IDX on FLOW_SESSION (TENANT_ID)"
 	};
 
 	static final String createSMDSeqSql = "create sequence FLOW_META_ID_SEQ start with 100 increment by 1";
@@ -251,11 +517,25 @@ public class FlowModule {
 
 	static final String[] createSMDIdxSql = new String[] { "CREATE INDEX FSM_SSNID_IDX ON FLOW_SESSION_META (FLOW_ID)" };
 
+	static final String createSCSql = "CREATE TABLE FLOW_SESSION_COUNTER ("
+			+ "  FLOW_TYPE		VARCHAR(255),"
+			+ "  FLOW_STATE		VARCHAR(64),"
+			+ "  FLOW_RESULT	VARCHAR(64),"
+			+ "  FLOW_COUNT		BIGINT,"
+			+ "  PRIMARY KEY (FLOW_TYPE, FLOW_STATE, FLOW_RESULT))";
+
+	static final String createSSSql = "CREATE TABLE FLOW_SESSION_SCHEDULE ("
+			+ "  SCHEDULE_NAME	VARCHAR(255) PRIMARY KEY,"
+			+ "  FLOW_TYPE		VARCHAR(255),"
+			+ "  LAST_FIRE		DATETIME)";
+
 	public static void setupMemTables(BaseDatabaseType dbEnum) {
 		// setup tables
 		try {
 			ConnectionHelper.executeUpdate(dbEnum, createSDSeqSql);
 			ConnectionHelper.executeUpdate(dbEnum, createSDSql);
+			ConnectionHelper.executeUpdate(dbEnum, createSDStateSql);
+			ConnectionHelper.executeUpdate(dbEnum, createSDViewSql);
 			for (String sql : createSDIdxSqls) {
 				ConnectionHelper.executeUpdate(dbEnum, sql);
 			}
@@ -264,23 +544,33 @@ public class FlowModule {
 			for (String sql : createSMDIdxSql) {
 				ConnectionHelper.executeUpdate(dbEnum, sql);
 			}
+			ConnectionHelper.executeUpdate(dbEnum, createSCSql);
+			ConnectionHelper.executeUpdate(dbEnum, createSSSql);
 		} 
 		catch (SQLException e) {
 			throw new Error(e);
 		}
 	}
 	
+	static final String deleteSDViewSql = "drop view FLOW_SESSION_V";
+	static final String deleteSDStateSql = "drop table FLOW_SESSION_STATE";
 	static final String deleteSDSql = "drop table FLOW_SESSION";
 	static final String deleteSDSeqSql = "drop sequence FLOW_ID_SEQ";
 	static final String deleteSMDSeqSql = "drop sequence FLOW_META_ID_SEQ";
 	static final String deleteSMDSql = "drop TABLE FLOW_SESSION_META";
+	static final String deleteSCSql = "drop TABLE FLOW_SESSION_COUNTER";
+	static final String deleteSSSql = "drop TABLE FLOW_SESSION_SCHEDULE";
 
 	public static void cleanupMemTables(BaseDatabaseType dbEnum) {
 		try {
 			ConnectionHelper.executeUpdate(dbEnum, deleteSDSeqSql);
+			ConnectionHelper.executeUpdate(dbEnum, deleteSDViewSql);
+			ConnectionHelper.executeUpdate(dbEnum, deleteSDStateSql);
 			ConnectionHelper.executeUpdate(dbEnum, deleteSDSql);
 			ConnectionHelper.executeUpdate(dbEnum, deleteSMDSeqSql);
 			ConnectionHelper.executeUpdate(dbEnum, deleteSMDSql);
+			ConnectionHelper.executeUpdate(dbEnum, deleteSCSql);
+			ConnectionHelper.executeUpdate(dbEnum, deleteSSSql);
 		} 
 		catch (SQLException e) {
 			throw new Error(e);
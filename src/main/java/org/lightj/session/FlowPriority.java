@@ -0,0 +1,25 @@
+package org.lightj.session;
+
+/**
+ * flow priority, maps to a driver lane and a task dispatcher,
+ * lanes are served by weight so low priority work still makes progress
+ * 
+ * @author binyu
+ *
+ */
+public enum FlowPriority {
+	
+	High(6), Normal(3), Low(1)
+	;
+	
+	/** default lane weight */
+	private final int weight;
+	
+	FlowPriority(int weight) {
+		this.weight = weight;
+	}
+	public int getWeight() {
+		return weight;
+	}
+
+}
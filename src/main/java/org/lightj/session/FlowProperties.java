@@ -52,4 +52,11 @@ public @interface FlowProperties {
 	 */
 	int timeoutInSec()		default -1;
 	
+	/**
+	 * priority of the flow, decides the driver lane and task dispatcher, 
+	 * can be overridden per flow at creation time
+	 * @return
+	 */
+	FlowPriority priority()	default FlowPriority.Normal;
+	
 	}
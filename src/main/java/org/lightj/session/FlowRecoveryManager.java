@@ -0,0 +1,229 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.Collections;
+
+import org.lightj.dal.DataAccessException;
+import org.lightj.session.dal.ISessionData;
+import org.lightj.session.dal.SessionDataFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * recover incomplete flows in background with bounded parallelism and a rate limit,
+ * flows of higher priority types first, older flows first within a type
+ * 
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+class FlowRecoveryManager {
+	
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(FlowRecoveryManager.class);
+	
+	/** recovery workers */
+	private final ThreadPoolExecutor executor;
+	
+	/** min interval between two recoveries in nano */
+	private final long intervalNanos;
+	
+	/** next time slot a recovery can start */
+	private long nextSlot = 0;
+	
+	/** flow type ids in priority order */
+	private final List<String> priorityTypes;
+	
+	/** keys queued or being recovered, to avoid recovering the same flow twice */
+	private final Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/** stats */
+	private volatile Date startDate;
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong inProgress = new AtomicLong();
+	private final AtomicLong recovered = new AtomicLong();
+	private final AtomicLong notRecoverable = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	
+	/**
+	 * constructor
+	 * @param parallelism	max flows recovered at the same time
+	 * @param ratePerSec	max flows recovered per second, 0 for unlimited
+	 * @param priorityTypes	flow type ids in priority order, types not listed go last
+	 */
+	FlowRecoveryManager(int parallelism, int ratePerSec, String[] priorityTypes) {
+		this.intervalNanos = ratePerSec > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSec : 0;
+		this.priorityTypes = new ArrayList<String>();
+		if (priorityTypes != null) {
+			Collections.addAll(this.priorityTypes, priorityTypes);
+		}
+		final AtomicInteger threadIdx = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, 
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "flow-recovery-" + threadIdx.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * queue all flows found by the query for recovery, returns immediately
+	 * @param q
+	 */
+	void recover(Object q) {
+		List<ISessionData> sessionDos = null;
+		try {
+			sessionDos = SessionDataFactory.getInstance().getDataManager().search(q);
+		} catch (DataAccessException e) {
+			logger.error("Failed to find flows to recover", e);
+			return;
+		}
+		if (startDate == null) {
+			startDate = new Date();
+		}
+		List<RecoverTask> tasks = new ArrayList<RecoverTask>();
+		for (ISessionData sessionDo : sessionDos) {
+			if (pendingKeys.add(sessionDo.getFlowKey())) {
+				tasks.add(new RecoverTask(sessionDo));
+			}
+		}
+		// workers started on demand would run the first tasks submitted without going through the priority queue,
+		// start them upfront and submit in priority order so idle workers also pick the most important first
+		executor.prestartAllCoreThreads();
+		Collections.sort(tasks);
+		for (RecoverTask task : tasks) {
+			queued.incrementAndGet();
+			executor.execute(task);
+		}
+		logger.info(String.format("%s flows queued for recovery", tasks.size()));
+	}
+	
+	/**
+	 * progress
+	 * @return
+	 */
+	FlowRecoveryStats getStats() {
+		return new FlowRecoveryStats(startDate, queued.get(), inProgress.get(), 
+				recovered.get(), notRecoverable.get(), failed.get());
+	}
+	
+	/**
+	 * stop recovery, flows not recovered yet stay as they are in the store
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * wait for a time slot under the rate limit
+	 * @throws InterruptedException
+	 */
+	private void acquireSlot() throws InterruptedException {
+		if (intervalNanos <= 0) {
+			return;
+		}
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long slot = Math.max(now, nextSlot);
+			nextSlot = slot + intervalNanos;
+			waitNanos = slot - now;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+	
+	/**
+	 * priority rank of a flow type, lower first
+	 * @param typeId
+	 * @return
+	 */
+	private int rankOf(String typeId) {
+		int idx = priorityTypes.indexOf(typeId);
+		return idx >= 0 ? idx : priorityTypes.size();
+	}
+	
+	/**
+	 * recover one flow
+	 */
+	private class RecoverTask implements Runnable, Comparable<RecoverTask> {
+		
+		private final ISessionData sessionDo;
+		private final int rank;
+		
+		RecoverTask(ISessionData sessionDo) {
+			this.sessionDo = sessionDo;
+			this.rank = rankOf(sessionDo.getType());
+		}
+
+		@Override
+		public int compareTo(RecoverTask o) {
+			if (rank != o.rank) {
+				return rank < o.rank ? -1 : 1;
+			}
+			Date d1 = sessionDo.getCreationDate();
+			Date d2 = o.sessionDo.getCreationDate();
+			if (d1 != null && d2 != null && !d1.equals(d2)) {
+				return d1.before(d2) ? -1 : 1;
+			}
+			long id1 = sessionDo.getFlowId(), id2 = o.sessionDo.getFlowId();
+			return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+		}
+
+		@Override
+		public void run() {
+			// still queued while waiting for a slot under the rate limit
+			try {
+				acquireSlot();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				queued.decrementAndGet();
+				pendingKeys.remove(sessionDo.getFlowKey());
+				return;
+			}
+			queued.decrementAndGet();
+			inProgress.incrementAndGet();
+			try {
+				FlowSessionFactory factory = FlowSessionFactory.getInstance();
+				FlowSession session = factory.getSessionByKeyFromCache(sessionDo.getFlowKey());
+				if (session == null) {
+					session = factory.createSession(sessionDo);
+					session.loadExtra();
+				}
+				if (session.getFlowProperties().clustered()) {
+					// the flow may have been loaded and cached by someone else meanwhile, recover that one
+					session = factory.addToCache(session);
+					session.recoverFromCrash();
+					recovered.incrementAndGet();
+				}
+				else {
+					notRecoverable.incrementAndGet();
+				}
+			} catch (Throwable t) {
+				logger.error("Failed to recover flow " + sessionDo.getFlowKey(), t);
+				failed.incrementAndGet();
+			} finally {
+				inProgress.decrementAndGet();
+				pendingKeys.remove(sessionDo.getFlowKey());
+			}
+		}
+		
+	}
+
+}
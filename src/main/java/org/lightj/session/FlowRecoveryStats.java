@@ -0,0 +1,75 @@
+package org.lightj.session;
+
+import java.util.Date;
+
+/**
+ * snapshot of background flow recovery progress
+ * 
+ * @author binyu
+ *
+ */
+public class FlowRecoveryStats {
+	
+	private final Date startDate;
+	private final long queued;
+	private final long inProgress;
+	private final long recovered;
+	private final long notRecoverable;
+	private final long failed;
+	
+	FlowRecoveryStats(Date startDate, long queued, long inProgress, long recovered, long notRecoverable, long failed) {
+		this.startDate = startDate;
+		this.queued = queued;
+		this.inProgress = inProgress;
+		this.recovered = recovered;
+		this.notRecoverable = notRecoverable;
+		this.failed = failed;
+	}
+
+	/** when recovery started, null if never */
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	/** flows waiting to be recovered */
+	public long getQueued() {
+		return queued;
+	}
+
+	/** flows being recovered right now */
+	public long getInProgress() {
+		return inProgress;
+	}
+
+	/** flows resumed */
+	public long getRecovered() {
+		return recovered;
+	}
+
+	/** flows not crash safe, left as they are */
+	public long getNotRecoverable() {
+		return notRecoverable;
+	}
+
+	/** flows failed to load or resume */
+	public long getFailed() {
+		return failed;
+	}
+	
+	/** total flows handled so far */
+	public long getDone() {
+		return recovered + notRecoverable + failed;
+	}
+	
+	/** whether nothing is left to recover */
+	public boolean isComplete() {
+		return queued == 0 && inProgress == 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("queued=%s,inProgress=%s,recovered=%s,notRecoverable=%s,failed=%s", 
+				queued, inProgress, recovered, notRecoverable, failed);
+	}
+
+}
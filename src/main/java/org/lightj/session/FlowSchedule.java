@@ -0,0 +1,131 @@
+package org.lightj.session;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+/**
+ * a recurring flow launched by {@link FlowModule}, either on a cron expression or at a fixed rate
+ * 
+ * @author binyu
+ *
+ */
+public class FlowSchedule {
+	
+	/** unique schedule name, fire times are persisted by name */
+	private final String name;
+	
+	/** flow type id to launch */
+	private final String flowTypeId;
+	
+	/** cron expression, second minute hour day month weekday */
+	private final String cronExpression;
+	private final CronSequenceGenerator cron;
+	
+	/** fixed rate in milliseconds */
+	private final long periodMs;
+	
+	/** random delay added to every fire to spread load */
+	private long jitterMs;
+	
+	/** skip a fire if a flow of the same type and target is still running */
+	private boolean skipIfRunning = true;
+	
+	/** fire once when the master finds a fire was missed */
+	private boolean fireMissed = true;
+	
+	/** initialize the flow before run */
+	private IFlowInitializer initializer;
+	
+	/** constructor */
+	private FlowSchedule(String name, String flowTypeId, String cronExpression, long periodMs) {
+		this.name = name;
+		this.flowTypeId = flowTypeId;
+		this.cronExpression = cronExpression;
+		this.cron = cronExpression != null ? new CronSequenceGenerator(cronExpression, TimeZone.getDefault()) : null;
+		this.periodMs = periodMs;
+	}
+	
+	/**
+	 * schedule on a cron expression
+	 * @param name
+	 * @param flowTypeId
+	 * @param cronExpression
+	 * @return
+	 */
+	public static FlowSchedule cron(String name, String flowTypeId, String cronExpression) {
+		if (cronExpression == null) {
+			throw new IllegalArgumentException("cron expression is required");
+		}
+		return new FlowSchedule(name, flowTypeId, cronExpression, 0);
+	}
+	
+	/**
+	 * schedule at a fixed rate
+	 * @param name
+	 * @param flowTypeId
+	 * @param periodMs
+	 * @return
+	 */
+	public static FlowSchedule fixedRate(String name, String flowTypeId, long periodMs) {
+		if (periodMs <= 0) {
+			throw new IllegalArgumentException("schedule period has to be positive");
+		}
+		return new FlowSchedule(name, flowTypeId, null, periodMs);
+	}
+	
+	/**
+	 * next fire time after a time
+	 * @param after
+	 * @return
+	 */
+	public Date nextFireTime(Date after) {
+		if (cron != null) {
+			return cron.next(after);
+		}
+		return new Date(after.getTime() + periodMs);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	public String getFlowTypeId() {
+		return flowTypeId;
+	}
+	public String getCronExpression() {
+		return cronExpression;
+	}
+	public long getPeriodMs() {
+		return periodMs;
+	}
+	public long getJitterMs() {
+		return jitterMs;
+	}
+	public FlowSchedule setJitterMs(long jitterMs) {
+		this.jitterMs = jitterMs;
+		return this;
+	}
+	public boolean isSkipIfRunning() {
+		return skipIfRunning;
+	}
+	public FlowSchedule setSkipIfRunning(boolean skipIfRunning) {
+		this.skipIfRunning = skipIfRunning;
+		return this;
+	}
+	public boolean isFireMissed() {
+		return fireMissed;
+	}
+	public FlowSchedule setFireMissed(boolean fireMissed) {
+		this.fireMissed = fireMissed;
+		return this;
+	}
+	public IFlowInitializer getInitializer() {
+		return initializer;
+	}
+	public FlowSchedule setInitializer(IFlowInitializer initializer) {
+		this.initializer = initializer;
+		return this;
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.lightj.clustering.ClusteringModule;
+import org.lightj.dal.DataAccessException;
+import org.lightj.session.dal.ISessionScheduleManager;
+import org.lightj.session.dal.SessionDataFactory;
+import org.lightj.session.exception.FlowExistException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * launch scheduled flows, 
+ * only the cluster master fires, and every fire is claimed in the store so a fire happens once
+ * 
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+class FlowScheduler {
+	
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(FlowScheduler.class);
+	
+	/** schedules */
+	private final List<FlowSchedule> schedules;
+	
+	/** timer */
+	private final ScheduledThreadPoolExecutor timer;
+	
+	/** jitter */
+	private final Random random = new Random();
+	
+	/**
+	 * constructor
+	 * @param schedules
+	 */
+	FlowScheduler(List<FlowSchedule> schedules) {
+		this.schedules = new ArrayList<FlowSchedule>(schedules);
+		this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "flow-scheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * start all schedules, missed fires are caught up by the master on its next check
+	 */
+	void start() {
+		Date now = new Date();
+		for (FlowSchedule schedule : schedules) {
+			schedule(schedule, now, 0, false);
+			scheduleNext(schedule, now);
+		}
+	}
+	
+	/**
+	 * stop firing, flows already launched keep running
+	 */
+	void shutdown() {
+		timer.shutdownNow();
+	}
+	
+	/**
+	 * schedule next fire after a time
+	 * @param schedule
+	 * @param after
+	 */
+	private void scheduleNext(final FlowSchedule schedule, Date after) {
+		Date next = schedule.nextFireTime(after);
+		long delayMs = Math.max(0, next.getTime() - System.currentTimeMillis());
+		if (schedule.getJitterMs() > 0) {
+			delayMs += (long) (random.nextDouble() * schedule.getJitterMs());
+		}
+		schedule(schedule, next, delayMs, true);
+	}
+	
+	/**
+	 * fire a schedule after a delay
+	 * @param schedule
+	 * @param fireTime
+	 * @param delayMs
+	 * @param repeat	a regular fire that schedules the next one, otherwise only catch up misses before fire time
+	 */
+	private void schedule(final FlowSchedule schedule, final Date fireTime, long delayMs, final boolean repeat) {
+		if (timer.isShutdown()) {
+			return;
+		}
+		timer.schedule(new Runnable() {
+			
+			@Override
+			public void run() {
+				if (!isFiringNode()) {
+					// master catches up whatever is missed here
+					if (repeat) {
+						scheduleNext(schedule, fireTime);
+					}
+					return;
+				}
+				try {
+					catchUp(schedule, fireTime);
+					if (repeat) {
+						fire(schedule, fireTime);
+					}
+				} catch (Throwable t) {
+					logger.error("Failed to fire schedule " + schedule.getName(), t);
+				}
+				if (repeat) {
+					scheduleNext(schedule, fireTime);
+				}
+			}
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * fire the latest fire missed before a time once, if the schedule says so,
+	 * misses happen when no master was up at a fire time, or master changed in between
+	 * @param schedule
+	 * @param before
+	 * @throws DataAccessException
+	 */
+	private void catchUp(FlowSchedule schedule, Date before) throws DataAccessException {
+		Date lastFire = getManager().getLastFireTime(schedule.getName());
+		if (lastFire == null) {
+			return;
+		}
+		Date missed = null;
+		for (Date next = schedule.nextFireTime(lastFire); next.before(before); next = schedule.nextFireTime(next)) {
+			missed = next;
+		}
+		if (missed != null) {
+			logger.warn(String.format("Schedule %s missed fire at %s", schedule.getName(), missed));
+			if (schedule.isFireMissed()) {
+				fire(schedule, missed);
+			}
+		}
+	}
+	
+	/**
+	 * fire one schedule
+	 * @param schedule
+	 * @param fireTime
+	 * @throws DataAccessException
+	 */
+	private void fire(FlowSchedule schedule, Date fireTime) throws DataAccessException {
+		if (!getManager().claimFire(schedule.getName(), schedule.getFlowTypeId(), fireTime)) {
+			logger.info(String.format("Schedule %s at %s already fired", schedule.getName(), fireTime));
+			return;
+		}
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		FlowSession session = factory.createSession(schedule.getFlowTypeId());
+		if (schedule.getInitializer() != null) {
+			schedule.getInitializer().initialize(session, fireTime);
+		}
+		if (schedule.isSkipIfRunning() && factory.hasActiveSessionLike(session)) {
+			logger.info(String.format("Schedule %s skipped, flow still running on %s", schedule.getName(), session.getTarget()));
+			return;
+		}
+		try {
+			session.save();
+		} catch (FlowExistException e) {
+			// lockTarget flow already running
+			logger.info(String.format("Schedule %s skipped, %s", schedule.getName(), e.getMessage()));
+			return;
+		} catch (Throwable t) {
+			logger.error("Failed to save flow of schedule " + schedule.getName(), t);
+			return;
+		}
+		session.runFlow();
+	}
+	
+	/** only the master fires in a cluster */
+	private boolean isFiringNode() {
+		return !FlowModule.isClusterEnabled() || ClusteringModule.isMaster();
+	}
+	
+	/** schedule store */
+	private ISessionScheduleManager getManager() {
+		return SessionDataFactory.getInstance().getScheduleManager();
+	}
+
+}
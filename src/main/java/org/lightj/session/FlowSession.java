@@ -12,6 +12,7 @@ import java.util.Map.Entry;
 import java.util.UUID;
 
 import org.lightj.session.dal.ISessionData;
+import org.lightj.session.dal.ISessionMetaData;
 import org.lightj.session.dal.SessionDataFactory;
 import org.lightj.session.eventlistener.FlowRecoverEventListener;
 import org.lightj.session.eventlistener.FlowSaver;
@@ -22,6 +23,7 @@ import org.lightj.session.exception.FlowSaveException;
 import org.lightj.session.exception.FlowValidationException;
 import org.lightj.session.exception.StateChangeException;
 import org.lightj.session.step.StepLog;
+import org.lightj.session.step.StepProgress;
 import org.lightj.util.AnnotationDefaults;
 import org.lightj.util.DateUtil;
 import org.lightj.util.NetUtil;
@@ -58,6 +60,13 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 	/** flow driver */
 	protected FlowDriver driver;
 	
+	/** state and result last persisted, null if never persisted, used to maintain flow counters */
+	private FlowState persistedState;
+	private FlowResult persistedResult;
+	
+	/** priority override, flow property priority if not set */
+	private FlowPriority priority;
+	
 	/** run time flow event listener */
 	protected List<IFlowEventListener> flowEventListeners = new ArrayList<IFlowEventListener>();
 	
@@ -136,6 +145,9 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 		flowEventListeners.add(new FlowSaver());
 		flowEventListeners.add(new FlowTimer());
 		flowEventListeners.add(new FlowStatsTracker());
+		if (FlowModule.getFlowExporter() != null) {
+			flowEventListeners.add(FlowModule.getFlowExporter());
+		}
 //		flowEventListeners.add(new FlowRecoverEventListener());
 
 		postConstruct();
@@ -164,10 +176,23 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 	}
 	protected void setSessionData(ISessionData sessionDo) {
 		this.sessionDo = sessionDo;
+		markPersisted();
 		sessionContext.setSessionId(sessionDo.getFlowId());
 		sessionContext.setFlowKey(getKey());
 	}
 	
+	/**
+	 * set session data with its metas loaded in batch
+	 * @param sessionDo
+	 * @param metas
+	 */
+	void setSessionData(ISessionData sessionDo, List<ISessionMetaData> metas) {
+		this.sessionDo = sessionDo;
+		markPersisted();
+		sessionContext.setSessionId(sessionDo.getFlowId(), metas);
+		sessionContext.setFlowKey(getKey());
+	}
+	
 	/**
 	 * display result status if session is completed, otherwise action status label
 	 * 
@@ -185,6 +210,20 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 		return getId() > 0;
 	}
 
+	/** state last persisted */
+	FlowState getPersistedState() {
+		return persistedState;
+	}
+	/** result last persisted */
+	FlowResult getPersistedResult() {
+		return persistedResult;
+	}
+	/** remember what is in the store now, null out if deleted */
+	void markPersisted() {
+		persistedState = isSaved() ? sessionDo.getFlowState() : null;
+		persistedResult = isSaved() ? sessionDo.getFlowResult() : null;
+	}
+
 	public void setRequester(String requester) {
 		sessionDo.setRequesterKey(requester);
 	}
@@ -264,6 +303,13 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 		sessionDo.setStatus(status);
 	}
 	
+	public String getTenantId() {
+		return this.sessionDo.getTenantId();
+	}
+	public void setTenantId(String tenantId) {
+		this.sessionDo.setTenantId(tenantId);
+	}
+	
 	public long getParentId() {
 		return this.sessionDo.getParentId();
 	}
@@ -393,17 +439,42 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 				", or cannot change state safely by another node in the cluster");
 			}
 		}
+		// tenant running flow quota
+		if (!FlowModule.getTenantManager().startFlow(getTenantId(), getKey())) {
+			throw new StateChangeException("Tenant " + getTenantId() + " has reached its running flow limit");
+		}
 		// create driver if not created already
 		if (driver == null) {
 			createFlowDriver();
 		}
 		// we persist the session ALWAYS when we run it
 		try {
-			FlowSessionFactory.getInstance().save(this);
+			FlowSessionFactory.getInstance().save(this, true);
 		} catch (FlowSaveException e) {
+			FlowModule.getTenantManager().stopFlow(getTenantId(), getKey());
 			throw new StateChangeException(e);
 		}
-		FlowModule.getExecutorService().submit(driver);
+		FlowModule.getDriverLanes().submit(getPriority(), driver);
+	}
+	
+	/**
+	 * run flow, with a handle that completes when the flow stops
+	 * @return
+	 * @throws StateChangeException
+	 */
+	public final FlowCompletion runFlowAsync() throws StateChangeException {
+		// register before run so a quick flow is not missed
+		FlowCompletion completion = FlowSessionFactory.getInstance().newCompletion(getKey());
+		try {
+			runFlow();
+		} catch (StateChangeException e) {
+			FlowSessionFactory.getInstance().removeCompletion(completion);
+			throw e;
+		} catch (RuntimeException e) {
+			FlowSessionFactory.getInstance().removeCompletion(completion);
+			throw e;
+		}
+		return completion;
 	}
 	
 	/**
@@ -481,11 +552,14 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 			}
 			// we persist the session ALWAYS when we "stop" it
 			try {
-				FlowSessionFactory.getInstance().save(this);
+				FlowSessionFactory.getInstance().save(this, true);
 			} catch (FlowSaveException e) {
 				throw new StateChangeException(e);
 			}
 		} finally {
+			if (!actionStatus.isRunning()) {
+				FlowModule.getTenantManager().stopFlow(getTenantId(), getKey());
+			}
 			if (actionStatus.isComplete()) {
 				cleanup();
 			}
@@ -539,6 +613,7 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 			FlowSessionFactory.getInstance().update(this);
 		}
 		finally {
+			FlowModule.getTenantManager().stopFlow(getTenantId(), getKey());
 			cleanup();
 			if (driver != null) {
 				driver.handleFlowEvent(FlowEvent.stop, message);
@@ -562,18 +637,29 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 	protected void cleanup() {
 		// wipe out next step
 		setNextAction(null);
-		// stop all non-completed child sessions if any
-		Object q = SessionDataFactory.getInstance().getDataManager().queryIncompleteChildFlows(this.getId());
-		for (FlowSession child : FlowSessionFactory.getInstance().getSessionsByQuery(q)) {
+		// stop all non-completed child sessions if any, found from the flow tree cache or the store
+		for (FlowSession child : FlowSessionFactory.getInstance().getLiveChildren(this)) {
 			child.killFlow(this.getState(), this.getResult(), "Parent was stopped");
 		}
+		FlowSessionFactory.getInstance().removeFromFlowTree(this);
+		FlowSessionFactory.getInstance().releaseTarget(this);
 		// remove it from factory cache
 		FlowSessionFactory.getInstance().removeSessionFromCache(this.getKey());
+		// release whoever waits for the flow
+		FlowSessionFactory.getInstance().completeFlow(this);
 	}
 
 	/////////////////// IRuntimeFlowProperties interface ////////////////////
 	
 	
+	/** flow priority */
+	public FlowPriority getPriority() {
+		return priority != null ? priority : getFlowProperties().priority();
+	}
+	public void setPriority(FlowPriority priority) {
+		this.priority = priority;
+	}
+	
 	/**
 	 * get flow property annotation for this session
 	 * 
@@ -611,11 +697,11 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 	public void recoverFromCrash() {
 		String msg = null;
 		try {
-			// first cancel all non complete child flows
-			Object q = SessionDataFactory.getInstance().getDataManager().queryActiveChildFlows(this.getId());
-			List<FlowSession> children = FlowSessionFactory.getInstance().getSessionsByQuery(q);
-			for (FlowSession child : children) {
-				child.killFlow(FlowState.Canceled, FlowResult.Failed, "Parent recover from an unexpected stop");
+			// first cancel all running child flows
+			for (FlowSession child : FlowSessionFactory.getInstance().getLiveChildren(this)) {
+				if (child.getState().isRunning()) {
+					child.killFlow(FlowState.Canceled, FlowResult.Failed, "Parent recover from an unexpected stop");
+				}
 			}
 		} catch (Throwable t) {
 			logger.error("cancel child sessions failed", t);
@@ -653,6 +739,12 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 		return getSessionContext().getPctComplete();
 	}
 	
+	/** task progress of the current step, null if the step runs no tasks */
+	public StepProgress getStepProgress() {
+		StepProgress progress = getSessionContext().getStepProgress();
+		return (progress != null && StringUtil.equalIgnoreCase(progress.getStepName(), getCurrentAction())) ? progress : null;
+	}
+	
 	/** execution logs */
 	public LinkedHashMap<String, StepLog> getExecutionLogs() {
 		return sessionContext.getExecutionLogs();
@@ -682,6 +774,9 @@ public abstract class FlowSession<T extends FlowContext> implements IFlowControl
 		flowInfo.setFlowStatus(getStatus());
 		flowInfo.setFlowType(getFlowType().value());
 		flowInfo.setProgress(String.format("%s", getPercentComplete()));
+		if (getEndDate() == null) {
+			flowInfo.setStepProgress(getStepProgress());
+		}
 		flowInfo.setRequester(getRequester());
 		flowInfo.setTarget(getTarget());
 		flowInfo.setFlowContext(sessionContext.getSearchableContext());
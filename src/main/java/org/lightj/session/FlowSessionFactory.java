@@ -2,24 +2,38 @@ package org.lightj.session;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.lightj.clustering.ClusteringModule;
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.ConnectionHelper;
 import org.lightj.dal.DataAccessException;
+import org.lightj.dal.RdbmsDatabaseType;
+import org.lightj.session.dal.ISessionCounterManager;
 import org.lightj.session.dal.ISessionData;
+import org.lightj.session.dal.ISessionDataManager;
 import org.lightj.session.dal.ISessionMetaData;
 import org.lightj.session.dal.SessionDataFactory;
 import org.lightj.session.exception.FlowExistException;
 import org.lightj.session.exception.FlowSaveException;
 import org.lightj.session.exception.FlowValidationException;
 import org.lightj.session.exception.NoSuchFlowException;
+import org.lightj.session.exception.StateChangeException;
 import org.lightj.util.ClassUtils;
 import org.lightj.util.NetUtil;
 import org.lightj.util.SpringContextUtil;
@@ -46,10 +60,56 @@ public class FlowSessionFactory {
 	 */
 	private static ConcurrentMap<String, FlowSession> smCache = new ConcurrentHashMap<String, FlowSession>();
 	
+	/**
+	 * parent to live children index of flows known to this VM
+	 */
+	private static final FlowTreeIndex flowTree = new FlowTreeIndex();
+	
+	/**
+	 * flow type and target to key of the active lock target flow created by this VM
+	 */
+	private static final ConcurrentMap<String, String> lockedTargets = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * completion handles of flows waited on in this VM
+	 */
+	private static final ConcurrentMap<String, FlowCompletion> completions = new ConcurrentHashMap<String, FlowCompletion>();
+	
+	/**
+	 * cluster message component for flow completion
+	 */
+	static final String COMPLETION_COMPONENT = "FlowCompletion";
+	
+	/**
+	 * cluster message component for bulk transitions routed to the VM driving the flows
+	 */
+	static final String BULK_COMPONENT = "FlowBulk";
+	
+	/**
+	 * cluster message component for child flows created, so every node knows the children of a flow
+	 */
+	static final String CHILD_COMPONENT = "FlowChild";
+	
+	/**
+	 * max number of keys looked up from the store in one query
+	 */
+	private static final int KEY_BATCH_SIZE = 500;
+	
 	/** 
 	 * a lock to synchronize new session creation 
 	 */
 	private final ReentrantLock creationLock = new ReentrantLock(); 
+	
+	/**
+	 * flows with a save put off by tenant write rate, later saves of a flow fold into the one put off
+	 */
+	private static final ConcurrentMap<String, Boolean> deferredSaves = new ConcurrentHashMap<String, Boolean>();
+	
+	/**
+	 * hands work put off by tenant write rate back to the driver lanes when its write slot comes,
+	 * and expires completion handles
+	 */
+	private static final Timer timer = new Timer("FlowSessionFactory", true);
 
 	/**
 	 * a cache of all type value to {@link FlowType}
@@ -57,6 +117,11 @@ public class FlowSessionFactory {
 	private static ConcurrentMap<String, FlowType> flowTypes = new ConcurrentHashMap<String, FlowType>();
 	private static ConcurrentMap<Class, FlowType> flowClassTypes = new ConcurrentHashMap<Class, FlowType>();
 	
+	/**
+	 * background flow recovery
+	 */
+	private FlowRecoveryManager recoveryManager;
+	
 	/**
 	 * singleton
 	 */
@@ -88,11 +153,248 @@ public class FlowSessionFactory {
 	{
 		ISessionData managerDO = session.getSessionData();
 		managerDO.setLastModified(new Date());
+		boolean isUpdate = session.isSaved();
+		// session data and flow counters go in one transaction where the store supports it
+		boolean inTr = startTr();
 		try {
 			SessionDataFactory.getInstance().getDataManager().save(managerDO);
+			updateCounters(session, managerDO.getFlowState(), managerDO.getFlowResult());
+			commitTr(inTr);
+		} catch (Exception e) {
+			rollbackTr(inTr);
+			if (inTr && !isUpdate) {
+				managerDO.setFlowId(0);
+			}
+			throw new FlowSaveException(e);
+		}
+		session.markPersisted();
+	}
+	
+	/**
+	 * start a transaction if session store is rdbms
+	 * @return whether a transaction is started
+	 */
+	private boolean startTr() {
+		BaseDatabaseType dbEnum = SessionDataFactory.getInstance().getDbEnum();
+		if (dbEnum instanceof RdbmsDatabaseType) {
+			return ConnectionHelper.startTr(dbEnum) != null;
+		}
+		return false;
+	}
+	
+	/**
+	 * commit transaction started by {@link #startTr()}
+	 * @param inTr
+	 * @throws SQLException
+	 */
+	private void commitTr(boolean inTr) throws SQLException {
+		if (inTr) {
+			ConnectionHelper.commitTr(SessionDataFactory.getInstance().getDbEnum());
+		}
+	}
+	
+	/**
+	 * rollback transaction started by {@link #startTr()}
+	 * @param inTr
+	 */
+	private void rollbackTr(boolean inTr) {
+		if (inTr) {
+			ConnectionHelper.rollbackTr(SessionDataFactory.getInstance().getDbEnum());
+		}
+	}
+	
+	/**
+	 * move the session from its last persisted counter bucket to the new one, 
+	 * null state means the session is deleted
+	 * @param session
+	 * @param toState
+	 * @param toResult
+	 * @throws DataAccessException
+	 */
+	private void updateCounters(FlowSession session, FlowState toState, FlowResult toResult) throws DataAccessException {
+		FlowState fromState = session.getPersistedState();
+		FlowResult fromResult = session.getPersistedResult();
+		if (fromState == toState && fromResult == toResult) {
+			return;
+		}
+		ISessionCounterManager counterManager = SessionDataFactory.getInstance().getCounterManager();
+		if (counterManager != null) {
+			counterManager.transition(session.getSessionData().getType(), fromState, fromResult, toState, toResult);
+		}
+	}
+	
+	/**
+	 * delete session data, and take it out of flow counters
+	 * @param session
+	 * @throws DataAccessException
+	 */
+	private void deleteSessionData(FlowSession session) throws DataAccessException {
+		flowTree.removeChild(session.getParentId(), session.getKey());
+		SessionDataFactory.getInstance().getDataManager().delete(session.getSessionData());
+		try {
+			updateCounters(session, null, null);
+		} finally {
+			session.markPersisted();
+		}
+	}
+	
+	/**
+	 * materialized flow counts by type, state and result, all types if flow type is null
+	 * @param flowType
+	 * @return
+	 */
+	public List<FlowCount> getFlowCounts(FlowType flowType) {
+		try {
+			return SessionDataFactory.getInstance().getCounterManager().getCounts(flowType != null ? flowType.value() : null);
+		} catch (DataAccessException e) {
+			logger.error(null, e);
+			return Collections.emptyList();
+		}
+	}
+	
+	/**
+	 * rebuild materialized flow counts from flow session data, 
+	 * used to initialize counters on existing data or to reconcile drift
+	 * @throws DataAccessException
+	 */
+	public void rebuildFlowCounts() throws DataAccessException {
+		SessionDataFactory.getInstance().getCounterManager().rebuild();
+	}
+	
+	/**
+	 * pause, stop or kill all incomplete flows matched by a query. 
+	 * flows cached in this VM are changed in memory the same way as {@link FlowSession#stopFlow(FlowState, FlowResult, String)},
+	 * flows driven by another VM are routed to it over the cluster, or rejected if clustering is not enabled, 
+	 * as the owner would overwrite a change made only in the store,
+	 * all others are changed with one set based update without loading them.
+	 * 
+	 * @param query	query from the session data manager, null for all flows
+	 * @param action
+	 * @param message
+	 * @return
+	 * @throws FlowSaveException
+	 */
+	public BulkTransitionResult bulkTransition(Object query, BulkAction action, String message) throws FlowSaveException {
+		BulkTransitionResult result = new BulkTransitionResult();
+		ISessionDataManager dataManager = SessionDataFactory.getInstance().getDataManager();
+		FlowState toState = action.getToState();
+		FlowResult toResult = action.getToResult();
+		String myHost = NetUtil.getMyHostName();
+		
+		try {
+			// flows in this VM, signal them in memory
+			List<String> localKeys = new ArrayList<String>(smCache.keySet());
+			for (int i = 0; i < localKeys.size(); i += KEY_BATCH_SIZE) {
+				List<String> chunk = localKeys.subList(i, Math.min(i + KEY_BATCH_SIZE, localKeys.size()));
+				List<ISessionData> matched = dataManager.search(dataManager.queryByKeys(query, chunk));
+				for (ISessionData sessionDo : matched) {
+					signal(getSessionByKeyFromCache(sessionDo.getFlowKey()), action, message, result);
+				}
+			}
+			
+			// flows driven by other VMs, only their owner can change them
+			List<String> remoteKeys = new ArrayList<String>();
+			for (Object sessionDo : dataManager.search(dataManager.queryRunByOthers(query, myHost))) {
+				String key = ((ISessionData) sessionDo).getFlowKey();
+				if (!smCache.containsKey(key)) {
+					remoteKeys.add(key);
+				}
+			}
+			if (!remoteKeys.isEmpty()) {
+				if (FlowModule.isClusterEnabled()) {
+					try {
+						for (int i = 0; i < remoteKeys.size(); i += KEY_BATCH_SIZE) {
+							List<String> chunk = remoteKeys.subList(i, Math.min(i + KEY_BATCH_SIZE, remoteKeys.size()));
+							ClusteringModule.sendMessage(BULK_COMPONENT, 
+									(action.name() + '\n' + StringUtil.join(chunk.toArray(), ",") + '\n' + (message != null ? message : ""))
+									.getBytes("UTF-8"));
+							result.addRouted(chunk.size());
+						}
+					} catch (Exception e) {
+						logger.warn(String.format("failed to route bulk %s to owners, %s", action, e.getMessage()));
+						result.addRejected(remoteKeys.size() - result.getRouted());
+					}
+				}
+				else {
+					logger.warn(String.format("bulk %s rejected for %s flows driven by other VMs", action, remoteKeys.size()));
+					result.addRejected(remoteKeys.size());
+				}
+			}
+			
+			// everything else in one update, together with the counters of the flows actually changed
+			boolean inTr = startTr();
+			try {
+				List<FlowCount> buckets = dataManager.bulkUpdateState(query, localKeys, myHost, toState, toResult, message);
+				ISessionCounterManager counterManager = SessionDataFactory.getInstance().getCounterManager();
+				for (FlowCount bucket : buckets) {
+					if (counterManager != null) {
+						counterManager.transition(bucket.getFlowType(), bucket.getFlowState(), bucket.getFlowResult(), 
+								toState, toResult != null ? toResult : bucket.getFlowResult(), bucket.getCount());
+					}
+					result.addUpdated(bucket.getCount());
+				}
+				commitTr(inTr);
+			} catch (Exception e) {
+				rollbackTr(inTr);
+				throw new FlowSaveException(e);
+			}
 		} catch (DataAccessException e) {
 			throw new FlowSaveException(e);
 		}
+		logger.info(String.format("bulk %s done: %s", action, result));
+		return result;
+	}
+	
+	/**
+	 * apply a bulk transition routed from another VM to the flows this VM drives
+	 * @param message
+	 */
+	void bulkTransition(byte[] message) {
+		try {
+			String[] parts = new String(message, "UTF-8").split("\n", 3);
+			BulkAction action = BulkAction.valueOf(parts[0]);
+			String msg = parts[2].length() > 0 ? parts[2] : null;
+			BulkTransitionResult result = new BulkTransitionResult();
+			for (String key : parts[1].split(",")) {
+				signal(getSessionByKeyFromCache(key), action, msg, result);
+			}
+			if (result.getTotal() + result.getFailed() > 0) {
+				logger.info(String.format("routed bulk %s done: %s", action, result));
+			}
+		} catch (Exception e) {
+			logger.warn("invalid bulk transition message, " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * change a flow of this VM in memory for a bulk transition
+	 * @param session	null if not in this VM
+	 * @param action
+	 * @param message
+	 * @param result
+	 */
+	private void signal(FlowSession session, BulkAction action, String message, BulkTransitionResult result) {
+		FlowState toState = action.getToState();
+		if (session == null || session.getState().isComplete() || session.getState() == toState) {
+			return;
+		}
+		try {
+			switch (action) {
+			case pause:
+				session.pauseFlow(action.getToResult(), message);
+				break;
+			case stop:
+				session.stopFlow(toState, action.getToResult(), message);
+				break;
+			case kill:
+				session.killFlow(toState, action.getToResult(), message);
+				break;
+			}
+			result.incSignaled();
+		} catch (StateChangeException e) {
+			logger.warn(String.format("bulk %s of %s refused: %s", action, session.getKey(), e.getMessage()));
+			result.incFailed();
+		}
 	}
 	
 	/**
@@ -101,7 +403,15 @@ public class FlowSessionFactory {
 	 */
 	public void saveMeta(FlowSession manager) 
 	{
-		FlowContext ctx = manager.getSessionContext();
+		saveMeta(manager.getSessionContext());
+	}
+	
+	/**
+	 * save dirty metas of a session context, used when checkpoint from a running step
+	 * @param ctx
+	 */
+	public void saveMeta(FlowContext ctx) 
+	{
 		for (ISessionMetaData managerMeta : ctx.getDirtyMetas()) {
 			if (managerMeta.getFlowId() <= 0) managerMeta.setFlowId(ctx.getSessionId());
 			try {
@@ -129,6 +439,15 @@ public class FlowSessionFactory {
 
 	}
 	
+	/**
+	 * whether there is an active session of same type and target as a session
+	 * @param session
+	 * @return
+	 */
+	boolean hasActiveSessionLike(FlowSession session) {
+		return !getActiveSessionsLike(session.getSessionData()).isEmpty();
+	}
+	
 	/**
 	 * save everything, session manager, meta
 	 * used when persist the session from {@link IFlowControl} interface
@@ -136,6 +455,32 @@ public class FlowSessionFactory {
 	 * @throws Exception
 	 */
 	public void save(FlowSession session) throws FlowSaveException {
+		save(session, !session.isSaved());
+	}
+	
+	/**
+	 * save under the tenant write rate, an update over the rate is put off and saves the latest state 
+	 * of the flow when its slot comes, a forced save goes right away, for a new flow and changes of run state
+	 * the flow relies on being persisted before it moves on, run, pause or stop
+	 * @param session
+	 * @param force
+	 * @throws FlowSaveException
+	 */
+	void save(FlowSession session, boolean force) throws FlowSaveException {
+		long waitNanos = FlowModule.getTenantManager().acquireWrite(session.getTenantId(), force || !session.isSaved());
+		if (waitNanos > 0) {
+			deferSave(session, waitNanos);
+			return;
+		}
+		saveNow(session);
+	}
+	
+	/**
+	 * save without checking tenant write rate, caller already has a write slot
+	 * @param session
+	 * @throws FlowSaveException
+	 */
+	void saveNow(FlowSession session) throws FlowSaveException {
 		synchronized (session) 
 		{
 			boolean isUpdate = (session.isSaved());
@@ -157,7 +502,7 @@ public class FlowSessionFactory {
 					if (activeSessionSize > 0){
 						//remove the current session as some session has won already.
 						try {
-							SessionDataFactory.getInstance().getDataManager().delete(session.getSessionData());
+							deleteSessionData(session);
 						} catch (DataAccessException e) {
 							logger.error(null, e);
 						}
@@ -180,22 +525,312 @@ public class FlowSessionFactory {
 				session.afterSave(isUpdate);
 			} catch (FlowSaveException e) {
 				try {
-					SessionDataFactory.getInstance().getDataManager().delete(session.getSessionData());
+					deleteSessionData(session);
 				} catch (DataAccessException e1) {
 					logger.error(null, e1);
 				}
 				throw e;
 			}
+			// keep track of live children, in the whole cluster for a new one
+			if (session.getParentId() > 0 && session.getEndDate() == null) {
+				flowTree.addChild(session.getParentId(), session.getKey());
+				if (!isUpdate && FlowModule.isClusterEnabled()) {
+					try {
+						ClusteringModule.sendMessage(CHILD_COMPONENT, 
+								(Long.toString(session.getParentId()) + '|' + session.getKey()).getBytes("UTF-8"));
+					} catch (Exception e) {
+						logger.warn("failed to broadcast child flow " + session.getKey() + ", " + e.getMessage());
+					}
+				}
+			}
 			// lazy save meta
 			saveMeta(session);
 			// Bin on 7/26/10 : add it to cache if this VM saves the session itself, chances are if it saved the session, it will run/use the session soon 
 			if (!isUpdate) {
 				// everything is fine, now add it to sm cache
 				smCache.putIfAbsent(session.getKey(), session);
+				if (session.getFlowProperties().lockTarget() && session.getEndDate() == null) {
+					lockedTargets.put(lockTargetKey(session.getSessionData()), session.getKey());
+				}
 			}
 		}
 	}
 	
+	/**
+	 * save a flow when its tenant has a write slot again, at most one save put off per flow
+	 * @param session
+	 * @param waitNanos
+	 */
+	private void deferSave(final FlowSession session, long waitNanos) {
+		if (deferredSaves.putIfAbsent(session.getKey(), Boolean.TRUE) != null) {
+			return;
+		}
+		submitLater(session.getPriority(), new Runnable() {
+			
+			@Override
+			public void run() {
+				deferredSaves.remove(session.getKey());
+				// deleted since, e.g. by the flow logger, saving would insert it again
+				if (!session.isSaved()) {
+					return;
+				}
+				try {
+					save(session);
+				} catch (FlowSaveException e) {
+					logger.error("Failed to save flow " + session.getKey(), e);
+				}
+			}
+		}, waitNanos);
+	}
+	
+	/**
+	 * submit work to the driver lanes after a delay, nothing waits on a driver thread
+	 * @param priority
+	 * @param work
+	 * @param delayNanos
+	 */
+	void submitLater(final FlowPriority priority, final Runnable work, long delayNanos) {
+		timer.schedule(new TimerTask() {
+			
+			@Override
+			public void run() {
+				// the timer is shared, an error here must not cancel it, e.g. lanes gone with the module shut down
+				try {
+					FlowModule.getDriverLanes().submit(priority, work);
+				} catch (Throwable t) {
+					logger.warn("Dropped work put off to the driver lanes", t);
+				}
+			}
+		}, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+	}
+	
+	/**
+	 * single flight creation of a lock target flow, attach to the active flow of the same type and target 
+	 * if there is one, otherwise save the new session, caller runs the returned flow only if it is the one passed in.
+	 * the in process registry is checked without any lock, then under the creation lock the registry and the store,
+	 * so duplicate requests cost a lookup instead of a write and a delete
+	 * @param session new session, with target and context populated
+	 * @return the active flow of same type and target, or the session passed in once saved
+	 * @throws FlowSaveException
+	 */
+	public <T extends FlowSession> T createOrAttach(T session) throws FlowSaveException {
+		if (session.isSaved()) {
+			return session;
+		}
+		if (!session.getFlowProperties().lockTarget()) {
+			save(session);
+			return session;
+		}
+		// attach to a live flow of this VM without taking the creation lock
+		T existing = findLiveSessionLike(session);
+		if (existing != null) {
+			return existing;
+		}
+		synchronized (session) 
+		{
+			creationLock.lock();
+			try {
+				existing = findActiveSessionLike(session);
+				if (existing != null) {
+					return existing;
+				}
+				try {
+					save(session);
+					return session;
+				} catch (FlowExistException e) {
+					// lost to another VM
+					existing = findActiveSessionLike(session);
+					if (existing != null) {
+						return existing;
+					}
+					throw e;
+				}
+			}
+			finally {
+				creationLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * active flow of same type and target as a new session, from in process registry first, then store
+	 * @param session
+	 * @return
+	 */
+	private <T extends FlowSession> T findActiveSessionLike(T session) {
+		T existing = findLiveSessionLike(session);
+		if (existing != null) {
+			return existing;
+		}
+		String targetKey = lockTargetKey(session.getSessionData());
+		String key = lockedTargets.get(targetKey);
+		for (ISessionData sessionDo : getActiveSessionsLike(session.getSessionData())) {
+			try {
+				return (T) findByKey(sessionDo.getFlowKey());
+			} catch (NoSuchFlowException e) {
+				logger.warn("active flow " + sessionDo.getFlowKey() + " is gone");
+			}
+		}
+		if (key != null) {
+			lockedTargets.remove(targetKey, key);
+		}
+		return null;
+	}
+	
+	/**
+	 * live flow of same type and target as a new session from in process registry only
+	 * @param session
+	 * @return
+	 */
+	private <T extends FlowSession> T findLiveSessionLike(T session) {
+		String key = lockedTargets.get(lockTargetKey(session.getSessionData()));
+		if (key != null) {
+			FlowSession existing = smCache.get(key);
+			if (existing != null && existing.getEndDate() == null) {
+				return (T) existing;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * registry key of a lock target flow
+	 * @param sessionDo
+	 * @return
+	 */
+	private static String lockTargetKey(ISessionData sessionDo) {
+		return sessionDo.getType() + '|' + sessionDo.getTargetKey();
+	}
+	
+	/**
+	 * take a completed flow out of the lock target registry
+	 * @param session
+	 */
+	void releaseTarget(FlowSession session) {
+		lockedTargets.remove(lockTargetKey(session.getSessionData()), session.getKey());
+	}
+	
+	/**
+	 * a handle completes when flow of the key stops, wherever in the cluster it runs
+	 * @param key
+	 * @return
+	 * @throws NoSuchFlowException
+	 */
+	public FlowCompletion awaitCompletion(String key) {
+		FlowCompletion completion = newCompletion(key);
+		// flow might have stopped before the handle is registered
+		try {
+			FlowSession session = findByKey(key);
+			if (session.getEndDate() != null) {
+				completeFlow(key, session.getResult());
+			}
+		} catch (NoSuchFlowException e) {
+			removeCompletion(completion);
+			throw e;
+		}
+		return completion;
+	}
+	
+	/**
+	 * drop a handle no flow run will complete, e.g. run failed to start, 
+	 * other waiters sharing it still complete from the store
+	 * @param completion
+	 */
+	void removeCompletion(FlowCompletion completion) {
+		if (completions.remove(completion.getFlowKey(), completion) && completion.expiry != null) {
+			completion.expiry.cancel();
+		}
+	}
+	
+	/**
+	 * register a completion handle for a flow
+	 * @param key
+	 * @return
+	 */
+	FlowCompletion newCompletion(final String key) {
+		FlowCompletion completion = completions.get(key);
+		if (completion == null) {
+			FlowCompletion prev = completions.putIfAbsent(key, completion = new FlowCompletion(key));
+			if (prev != null) {
+				completion = prev;
+			}
+			else {
+				// never completed here, e.g. completion message lost, drop it from the registry
+				final FlowCompletion expiring = completion;
+				completion.expiry = new TimerTask() {
+					
+					@Override
+					public void run() {
+						completions.remove(key, expiring);
+					}
+				};
+				timer.schedule(completion.expiry, FlowCompletion.EXPIRE_MS);
+			}
+		}
+		return completion;
+	}
+	
+	/**
+	 * complete a handle if its flow has stopped in the store
+	 * @param completion
+	 */
+	void recheckCompletion(FlowCompletion completion) {
+		try {
+			ISessionData sessionDo = SessionDataFactory.getInstance().getDataManager().findByKey(completion.getFlowKey());
+			if (sessionDo != null && sessionDo.getEndDate() != null) {
+				completeFlow(completion.getFlowKey(), sessionDo.getFlowResult());
+				completion.complete(sessionDo.getFlowResult());
+			}
+		} catch (DataAccessException e) {
+			logger.warn("failed to check completion of flow " + completion.getFlowKey() + ", " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * a flow stopped in this VM, complete its handle, and tell the cluster in case it is waited on elsewhere
+	 * @param session
+	 */
+	void completeFlow(FlowSession session) {
+		completeFlow(session.getKey(), session.getResult());
+		if (FlowModule.isClusterEnabled()) {
+			try {
+				FlowResult result = session.getResult();
+				ClusteringModule.sendMessage(COMPLETION_COMPONENT, 
+						(session.getKey() + '|' + (result != null ? result.name() : "")).getBytes("UTF-8"));
+			} catch (Exception e) {
+				logger.warn("failed to broadcast completion of flow " + session.getKey() + ", " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * complete handle of a flow with a completion message from the cluster
+	 * @param message
+	 */
+	void completeFlow(byte[] message) {
+		try {
+			String msg = new String(message, "UTF-8");
+			int idx = msg.lastIndexOf('|');
+			String result = msg.substring(idx + 1);
+			completeFlow(msg.substring(0, idx), result.length() > 0 ? FlowResult.valueOf(result) : null);
+		} catch (Exception e) {
+			logger.warn("invalid flow completion message, " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * complete handle of a flow if it is waited on in this VM
+	 * @param key
+	 * @param result
+	 */
+	private void completeFlow(String key, FlowResult result) {
+		FlowCompletion completion = completions.remove(key);
+		if (completion != null) {
+			completion.expiry.cancel();
+			completion.complete(result);
+		}
+	}
+	
 	/**
 	 * update a session, = saveSupressException
 	 * @param session
@@ -221,9 +856,11 @@ public class FlowSessionFactory {
 	/**
 	 * add a session to cache
 	 * @param session
+	 * @return the cached session, the one already in cache if another thread got there first
 	 */
-	synchronized void addToCache(FlowSession session) {
-		smCache.putIfAbsent(session.getKey(), session);
+	synchronized FlowSession addToCache(FlowSession session) {
+		FlowSession prev = smCache.putIfAbsent(session.getKey(), session);
+		return prev != null ? prev : session;
 	}
 	
 	/**
@@ -235,6 +872,18 @@ public class FlowSessionFactory {
 		return SpringContextUtil.getBeanFromAllContext(flowKlazz);
 	}
 	
+	/**
+	 * create a new session with a flow class, overriding its priority
+	 * @param flowKlazz
+	 * @param priority
+	 * @return
+	 */
+	public <T extends FlowSession> T createSession(Class<T> flowKlazz, FlowPriority priority) {
+		T session = createSession(flowKlazz);
+		session.setPriority(priority);
+		return session;
+	}
+	
 	/**
 	 * create a new flow of flow type id
 	 * @param flowTypeId
@@ -265,6 +914,22 @@ public class FlowSessionFactory {
 		throw new NoSuchFlowException("Unknown flowtype " + sessionDo.getType());
 	}
 	
+	/**
+	 * create a session from db, with its metas loaded in batch
+	 * @param sessionDo
+	 * @param metas
+	 * @return
+	 */
+	private FlowSession createSession(ISessionData sessionDo, List<ISessionMetaData> metas) {
+		FlowType type = fromFlowTypeId(sessionDo.getType());
+		if (type != null) {
+			FlowSession session = (FlowSession) SpringContextUtil.getBeanFromAllContext(type.getFlowKlass());
+			session.setSessionData(sessionDo, metas);
+			return session;
+		}
+		throw new NoSuchFlowException("Unknown flowtype " + sessionDo.getType());
+	}
+	
 	/**
 	 */
 	public FlowSession findByKey(String key) {
@@ -289,6 +954,64 @@ public class FlowSessionFactory {
 		}
 	}
 	
+	/**
+	 * find sessions of a batch of keys, cache hits are answered locally, the rest are loaded from 
+	 * the store with one query for sessions and one for their metas (per {@link #KEY_BATCH_SIZE} keys)
+	 * @param keys
+	 * @return sessions in order of the keys, keys not found are skipped
+	 */
+	public List<FlowSession> findByKeys(Collection<String> keys) {
+		Map<String, FlowSession> found = new HashMap<String, FlowSession>();
+		List<String> missing = new ArrayList<String>();
+		for (String key : new LinkedHashSet<String>(keys)) {
+			FlowSession session = getSessionByKeyFromCache(key);
+			if (session != null) {
+				if (!StringUtil.equalIgnoreCase(NetUtil.getMyHostName(), session.getRunBy())) {
+					removeSessionFromCache(key);
+				}
+				found.put(key, session);
+			}
+			else {
+				missing.add(key);
+			}
+		}
+		try {
+			ISessionDataManager dataManager = SessionDataFactory.getInstance().getDataManager();
+			for (int i = 0; i < missing.size(); i += KEY_BATCH_SIZE) {
+				List<String> chunk = missing.subList(i, Math.min(i + KEY_BATCH_SIZE, missing.size()));
+				List<ISessionData> sessionDos = dataManager.search(dataManager.queryByKeys(null, chunk));
+				if (sessionDos.isEmpty()) {
+					continue;
+				}
+				// metas of all sessions in one go
+				Map<Long, List<ISessionMetaData>> metas = new HashMap<Long, List<ISessionMetaData>>();
+				for (ISessionData sessionDo : sessionDos) {
+					metas.put(sessionDo.getFlowId(), new ArrayList<ISessionMetaData>());
+				}
+				List<ISessionMetaData> metaDos = SessionDataFactory.getInstance().getMetaDataManager().findByFlowIds(metas.keySet());
+				for (ISessionMetaData meta : metaDos) {
+					if (metas.containsKey(meta.getFlowId())) {
+						metas.get(meta.getFlowId()).add(meta);
+					}
+				}
+				for (ISessionData sessionDo : sessionDos) {
+					FlowSession session = createSession(sessionDo, metas.get(sessionDo.getFlowId()));
+					session.loadExtra();
+					found.put(sessionDo.getFlowKey(), session);
+				}
+			}
+		} catch (DataAccessException e) {
+			throw new NoSuchFlowException(e.getMessage());
+		}
+		List<FlowSession> sessions = new ArrayList<FlowSession>();
+		for (String key : new LinkedHashSet<String>(keys)) {
+			if (found.containsKey(key)) {
+				sessions.add(found.get(key));
+			}
+		}
+		return sessions;
+	}
+	
 	/**
 	 * search for sessions
 	 * @param wfType
@@ -337,6 +1060,73 @@ public class FlowSessionFactory {
  		return sessions;
  	}
 	
+	/**
+	 * live children of a flow, from the in memory flow tree, rebuilt from the store on recovery, 
+	 * kept up as children are created here and in the rest of the cluster
+	 * @param parent
+	 * @return
+	 */
+	List<FlowSession> getLiveChildren(FlowSession parent) {
+		List<FlowSession> children = new ArrayList<FlowSession>();
+		if (!parent.isSaved()) {
+			return children;
+		}
+		List<String> keys = flowTree.getChildren(parent.getId());
+		for (String key : keys) {
+			try {
+				FlowSession child = findByKey(key);
+				if (child.getEndDate() == null) {
+					children.add(child);
+					continue;
+				}
+			} catch (NoSuchFlowException e) {
+				logger.warn("child flow " + key + " is gone");
+			}
+			flowTree.removeChild(parent.getId(), key);
+		}
+		return children;
+	}
+	
+	/**
+	 * add a child flow created by another node to the flow tree, with a message from the cluster
+	 * @param message
+	 */
+	void addChildFlow(byte[] message) {
+		try {
+			String msg = new String(message, "UTF-8");
+			int idx = msg.indexOf('|');
+			flowTree.addChild(Long.parseLong(msg.substring(0, idx)), msg.substring(idx + 1));
+		} catch (Exception e) {
+			logger.warn("invalid child flow message, " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * take a completed flow out of the flow tree
+	 * @param session
+	 */
+	void removeFromFlowTree(FlowSession session) {
+		if (session.getParentId() > 0) {
+			flowTree.removeChild(session.getParentId(), session.getKey());
+		}
+	}
+	
+	/**
+	 * rebuild the flow tree from parent id of all incomplete flows in the store
+	 */
+	private void rebuildFlowTree() {
+		flowTree.clear();
+		Object q = SessionDataFactory.getInstance().getDataManager().queryAllIncompleteChildFlows();
+		try {
+			List<ISessionData> sessionDos = SessionDataFactory.getInstance().getDataManager().search(q);
+			for (ISessionData sessionDo : sessionDos) {
+				flowTree.addChild(sessionDo.getParentId(), sessionDo.getFlowKey());
+			}
+		} catch (DataAccessException e) {
+			logger.error(null, e);
+		}
+	}
+	
 	/**
 	 * remove a session from cache, when the session is completed
 	 * @param key
@@ -355,36 +1145,107 @@ public class FlowSessionFactory {
 			for (ISessionMetaData meta : metas) {
 				SessionDataFactory.getInstance().getMetaDataManager().delete(meta);
 			}
-			SessionDataFactory.getInstance().getDataManager().delete(session.getSessionData());
+			deleteSessionData(session);
+			releaseTarget(session);
 		} catch (DataAccessException e) {
 			logger.error(null, e);
 		}
 	}
+
+	/**
+	 * delete a batch of sessions, metadata and session data are each removed in one go,
+	 * flow counters are moved once per (type, state, result) bucket
+	 * @param sessions
+	 */
+	public void deleteSessions(Collection<FlowSession> sessions) {
+		if (sessions.isEmpty()) {
+			return;
+		}
+		List<Long> ids = new ArrayList<Long>(sessions.size());
+		for (FlowSession session : sessions) {
+			ids.add(session.getId());
+		}
+		try {
+			SessionDataFactory.getInstance().getMetaDataManager().deleteByFlowIds(ids);
+			SessionDataFactory.getInstance().getDataManager().deleteByIds(ids);
+		} catch (DataAccessException e) {
+			logger.error(null, e);
+			return;
+		}
+		// counters move from the buckets last persisted
+		Map<String, Long> counts = new HashMap<String, Long>();
+		Map<String, FlowCount> buckets = new HashMap<String, FlowCount>();
+		for (FlowSession session : sessions) {
+			if (session.getPersistedState() != null || session.getPersistedResult() != null) {
+				String bucket = session.getSessionData().getType() + '|' + session.getPersistedState() + '|' + session.getPersistedResult();
+				counts.put(bucket, counts.containsKey(bucket) ? counts.get(bucket) + 1 : 1L);
+				buckets.put(bucket, new FlowCount(session.getSessionData().getType(), session.getPersistedState(), 
+						session.getPersistedResult(), 0));
+			}
+			flowTree.removeChild(session.getParentId(), session.getKey());
+			releaseTarget(session);
+			session.getSessionData().setFlowId(0);
+			session.markPersisted();
+		}
+		ISessionCounterManager counterManager = SessionDataFactory.getInstance().getCounterManager();
+		if (counterManager != null) {
+			for (Map.Entry<String, Long> count : counts.entrySet()) {
+				FlowCount bucket = buckets.get(count.getKey());
+				try {
+					counterManager.transition(bucket.getFlowType(), bucket.getFlowState(), bucket.getFlowResult(), 
+							null, null, count.getValue());
+				} catch (DataAccessException e) {
+					logger.error(null, e);
+				}
+			}
+		}
+	}
 	
 	/**
-	 * recover sessions from runBy
-	 * @param lockManager
+	 * recover sessions from runBy, in background
 	 * @param runBy
 	 */
 	private void recoverSession(final String runBy) {
-
 		Object q = SessionDataFactory.getInstance().getDataManager().queryActiveFlows(runBy);
-		// first time run since the VM starts, reclaim any of my session from
-		// last crash/reboot
-		List<FlowSession> sessionsToRecover = FlowSessionFactory.this
-				.getSessionsByQuery(q);
-		for (FlowSession session : sessionsToRecover) {
-			if (session.getFlowProperties().clustered()) {
-				session.recoverFromCrash();
-			}
+		getRecoveryManager().recover(q);
+	}
+	
+	/**
+	 * recovery manager, created on first use from module settings
+	 * @return
+	 */
+	private synchronized FlowRecoveryManager getRecoveryManager() {
+		if (recoveryManager == null) {
+			recoveryManager = new FlowRecoveryManager(FlowModule.getRecoveryParallelism(), 
+					FlowModule.getRecoveryRatePerSec(), FlowModule.getRecoveryPriorityTypes());
+		}
+		return recoveryManager;
+	}
+	
+	/**
+	 * progress of background flow recovery
+	 * @return
+	 */
+	public synchronized FlowRecoveryStats getRecoveryStats() {
+		return recoveryManager != null ? recoveryManager.getStats() : new FlowRecoveryStats(null, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * stop background recovery
+	 */
+	synchronized void stopRecovery() {
+		if (recoveryManager != null) {
+			recoveryManager.shutdown();
+			recoveryManager = null;
 		}
-
 	}
 	
 	/**
-	 * recover my session from last shutdown
+	 * recover my session from last shutdown, flows are recovered in background 
+	 * so the node can take new flows right away
 	 */
 	synchronized void recoverMySession() {
+		rebuildFlowTree();
 		recoverSession(NetUtil.getMyHostName());
 	}
 	
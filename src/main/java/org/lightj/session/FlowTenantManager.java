@@ -0,0 +1,195 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lightj.task.ITaskPermit;
+
+/**
+ * enforce per tenant quota on running flows, in flight tasks and flow save rate on this node,
+ * flows without a tenant are not limited
+ * 
+ * @author binyu
+ *
+ */
+public class FlowTenantManager {
+	
+	/** tenant quotas */
+	private final Map<String, TenantQuota> quotas;
+	
+	/** tenant usages */
+	private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+	
+	/**
+	 * constructor
+	 * @param quotas
+	 */
+	FlowTenantManager(Map<String, TenantQuota> quotas) {
+		this.quotas = new HashMap<String, TenantQuota>(quotas);
+	}
+	
+	/**
+	 * count a flow as running, false if the tenant is at its running flow limit
+	 * @param tenantId
+	 * @param flowKey
+	 * @return
+	 */
+	boolean startFlow(String tenantId, String flowKey) {
+		if (tenantId == null) {
+			return true;
+		}
+		Tenant tenant = getTenant(tenantId);
+		synchronized (tenant) {
+			if (tenant.runningFlows.contains(flowKey)) {
+				return true;
+			}
+			int max = tenant.quota.getMaxRunningFlows();
+			if (max > 0 && tenant.runningFlows.size() >= max) {
+				tenant.rejectedFlows.incrementAndGet();
+				return false;
+			}
+			tenant.runningFlows.add(flowKey);
+			return true;
+		}
+	}
+	
+	/**
+	 * flow no longer running
+	 * @param tenantId
+	 * @param flowKey
+	 */
+	void stopFlow(String tenantId, String flowKey) {
+		if (tenantId != null) {
+			getTenant(tenantId).runningFlows.remove(flowKey);
+		}
+	}
+	
+	/**
+	 * take a write slot under the tenant write rate, never waits for one
+	 * @param tenantId
+	 * @param force		a write that cannot be put off, e.g. flow creation, takes the next slot and goes now
+	 * @return 0 if the write goes now, otherwise nanos until the next free slot, the write is not counted
+	 */
+	long acquireWrite(String tenantId, boolean force) {
+		if (tenantId == null) {
+			return 0;
+		}
+		Tenant tenant = getTenant(tenantId);
+		long waitNanos = 0;
+		if (tenant.writeIntervalNanos > 0) {
+			synchronized (tenant) {
+				long now = System.nanoTime();
+				if (force || tenant.nextWriteSlot - now <= 0) {
+					tenant.nextWriteSlot = (tenant.nextWriteSlot - now > 0 ? tenant.nextWriteSlot : now) + tenant.writeIntervalNanos;
+				}
+				else {
+					waitNanos = tenant.nextWriteSlot - now;
+				}
+			}
+		}
+		if (waitNanos > 0) {
+			tenant.throttledWrites.incrementAndGet();
+		}
+		else {
+			tenant.writes.incrementAndGet();
+		}
+		return waitNanos;
+	}
+	
+	/**
+	 * in flight task permit of a tenant, null if no tenant
+	 * @param tenantId
+	 * @return
+	 */
+	public ITaskPermit getTaskPermit(String tenantId) {
+		if (tenantId == null) {
+			return null;
+		}
+		final Tenant tenant = getTenant(tenantId);
+		return new ITaskPermit() {
+			
+			@Override
+			public boolean tryAcquire() {
+				int max = tenant.quota.getMaxInflightTasks();
+				while (true) {
+					int cur = tenant.inflightTasks.get();
+					if (max > 0 && cur >= max) {
+						tenant.throttledTasks.incrementAndGet();
+						return false;
+					}
+					if (tenant.inflightTasks.compareAndSet(cur, cur + 1)) {
+						return true;
+					}
+				}
+			}
+			
+			@Override
+			public void release() {
+				tenant.inflightTasks.decrementAndGet();
+			}
+		};
+	}
+	
+	/**
+	 * usage of all tenants seen on this node
+	 * @return
+	 */
+	public List<TenantUsage> getUsage() {
+		List<TenantUsage> usages = new ArrayList<TenantUsage>();
+		for (Entry<String, Tenant> entry : tenants.entrySet()) {
+			Tenant t = entry.getValue();
+			usages.add(new TenantUsage(entry.getKey(), t.runningFlows.size(), t.inflightTasks.get(), t.writes.get(), 
+					t.rejectedFlows.get(), t.throttledTasks.get(), t.throttledWrites.get()));
+		}
+		return usages;
+	}
+	
+	/**
+	 * tenant by id, created on first use
+	 * @param tenantId
+	 * @return
+	 */
+	private Tenant getTenant(String tenantId) {
+		Tenant tenant = tenants.get(tenantId);
+		if (tenant == null) {
+			TenantQuota quota = quotas.containsKey(tenantId) ? quotas.get(tenantId) : new TenantQuota();
+			Tenant existing = tenants.putIfAbsent(tenantId, tenant = new Tenant(quota));
+			if (existing != null) {
+				tenant = existing;
+			}
+		}
+		return tenant;
+	}
+	
+	/**
+	 * usage of one tenant
+	 */
+	private static class Tenant {
+		final TenantQuota quota;
+		final long writeIntervalNanos;
+		final Set<String> runningFlows = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final AtomicInteger inflightTasks = new AtomicInteger();
+		final AtomicLong writes = new AtomicLong();
+		final AtomicLong rejectedFlows = new AtomicLong();
+		final AtomicLong throttledTasks = new AtomicLong();
+		final AtomicLong throttledWrites = new AtomicLong();
+		long nextWriteSlot;
+		
+		Tenant(TenantQuota quota) {
+			this.quota = quota;
+			this.writeIntervalNanos = quota.getMaxWritesPerSec() > 0 ? TimeUnit.SECONDS.toNanos(1) / quota.getMaxWritesPerSec() : 0;
+			this.nextWriteSlot = System.nanoTime();
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * in memory parent to live children index of flows, rebuilt from the store on recovery, 
+ * children created by other nodes are added as the cluster tells
+ * 
+ * @author binyu
+ *
+ */
+class FlowTreeIndex {
+	
+	/** parent flow id to keys of its incomplete children */
+	private final HashMap<Long, Set<String>> children = new HashMap<Long, Set<String>>();
+	
+	/**
+	 * add a live child
+	 * @param parentId
+	 * @param childKey
+	 */
+	synchronized void addChild(long parentId, String childKey) {
+		Set<String> keys = children.get(parentId);
+		if (keys == null) {
+			keys = new LinkedHashSet<String>();
+			children.put(parentId, keys);
+		}
+		keys.add(childKey);
+	}
+	
+	/**
+	 * remove a child when it completes or is gone
+	 * @param parentId
+	 * @param childKey
+	 */
+	synchronized void removeChild(long parentId, String childKey) {
+		Set<String> keys = children.get(parentId);
+		if (keys != null) {
+			keys.remove(childKey);
+			if (keys.isEmpty()) {
+				children.remove(parentId);
+			}
+		}
+	}
+	
+	/**
+	 * keys of all live children of a parent
+	 * @param parentId
+	 * @return
+	 */
+	synchronized List<String> getChildren(long parentId) {
+		Set<String> keys = children.get(parentId);
+		return keys != null ? new ArrayList<String>(keys) : new ArrayList<String>(0);
+	}
+	
+	/**
+	 * whether a parent has live children
+	 * @param parentId
+	 * @return
+	 */
+	synchronized boolean hasChildren(long parentId) {
+		return children.containsKey(parentId);
+	}
+	
+	/** forget everything */
+	synchronized void clear() {
+		children.clear();
+	}
+
+}
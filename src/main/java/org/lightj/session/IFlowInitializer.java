@@ -0,0 +1,22 @@
+package org.lightj.session;
+
+import java.util.Date;
+
+/**
+ * initialize a flow created by a schedule before it is saved and run,
+ * e.g. set target, requester and context
+ * 
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+public interface IFlowInitializer {
+	
+	/**
+	 * initialize the flow
+	 * @param session	newly created flow
+	 * @param fireTime	scheduled fire time
+	 */
+	public void initialize(FlowSession session, Date fireTime);
+
+}
@@ -0,0 +1,53 @@
+package org.lightj.session;
+
+/**
+ * limits of one tenant, 0 means unlimited
+ * 
+ * @author binyu
+ *
+ */
+public class TenantQuota {
+	
+	/** max flows running at the same time */
+	private int maxRunningFlows;
+	
+	/** max tasks in flight across all flows */
+	private int maxInflightTasks;
+	
+	/** max flow saves per second, saves over the rate are put off and folded into one per flow */
+	private int maxWritesPerSec;
+	
+	/** default constructor */
+	public TenantQuota() {
+	}
+	
+	/** full constructor */
+	public TenantQuota(int maxRunningFlows, int maxInflightTasks, int maxWritesPerSec) {
+		this.maxRunningFlows = maxRunningFlows;
+		this.maxInflightTasks = maxInflightTasks;
+		this.maxWritesPerSec = maxWritesPerSec;
+	}
+
+	public int getMaxRunningFlows() {
+		return maxRunningFlows;
+	}
+	public TenantQuota setMaxRunningFlows(int maxRunningFlows) {
+		this.maxRunningFlows = maxRunningFlows;
+		return this;
+	}
+	public int getMaxInflightTasks() {
+		return maxInflightTasks;
+	}
+	public TenantQuota setMaxInflightTasks(int maxInflightTasks) {
+		this.maxInflightTasks = maxInflightTasks;
+		return this;
+	}
+	public int getMaxWritesPerSec() {
+		return maxWritesPerSec;
+	}
+	public TenantQuota setMaxWritesPerSec(int maxWritesPerSec) {
+		this.maxWritesPerSec = maxWritesPerSec;
+		return this;
+	}
+
+}
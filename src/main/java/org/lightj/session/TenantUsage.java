@@ -0,0 +1,71 @@
+package org.lightj.session;
+
+/**
+ * snapshot of resource usage of one tenant on this node
+ * 
+ * @author binyu
+ *
+ */
+public class TenantUsage {
+	
+	private final String tenantId;
+	private final int runningFlows;
+	private final int inflightTasks;
+	private final long writes;
+	private final long rejectedFlows;
+	private final long throttledTasks;
+	private final long throttledWrites;
+	
+	TenantUsage(String tenantId, int runningFlows, int inflightTasks, long writes, 
+			long rejectedFlows, long throttledTasks, long throttledWrites) {
+		this.tenantId = tenantId;
+		this.runningFlows = runningFlows;
+		this.inflightTasks = inflightTasks;
+		this.writes = writes;
+		this.rejectedFlows = rejectedFlows;
+		this.throttledTasks = throttledTasks;
+		this.throttledWrites = throttledWrites;
+	}
+
+	/** tenant */
+	public String getTenantId() {
+		return tenantId;
+	}
+
+	/** flows running right now */
+	public int getRunningFlows() {
+		return runningFlows;
+	}
+
+	/** tasks in flight right now */
+	public int getInflightTasks() {
+		return inflightTasks;
+	}
+
+	/** flow saves so far */
+	public long getWrites() {
+		return writes;
+	}
+
+	/** flow runs rejected over running flow limit */
+	public long getRejectedFlows() {
+		return rejectedFlows;
+	}
+
+	/** task dispatches deferred over in flight limit */
+	public long getThrottledTasks() {
+		return throttledTasks;
+	}
+
+	/** flow saves delayed over write rate */
+	public long getThrottledWrites() {
+		return throttledWrites;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("tenant=%s,runningFlows=%s,inflightTasks=%s,writes=%s,rejectedFlows=%s,throttledTasks=%s,throttledWrites=%s", 
+				tenantId, runningFlows, inflightTasks, writes, rejectedFlows, throttledTasks, throttledWrites);
+	}
+
+}
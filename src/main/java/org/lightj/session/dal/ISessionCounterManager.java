@@ -0,0 +1,66 @@
+package org.lightj.session.dal;
+
+import java.util.List;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.DataAccessException;
+import org.lightj.session.FlowCount;
+import org.lightj.session.FlowResult;
+import org.lightj.session.FlowState;
+
+/**
+ * materialized flow counters by (type, state, result), 
+ * maintained on every flow transition so counts do not depend on history size
+ * 
+ * @author binyu
+ *
+ */
+public interface ISessionCounterManager {
+	
+	/**
+	 * move one flow from one bucket to another, 
+	 * null from state means a new flow, null to state means a deleted flow
+	 * @param flowType
+	 * @param fromState
+	 * @param fromResult
+	 * @param toState
+	 * @param toResult
+	 * @throws DataAccessException
+	 */
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult) throws DataAccessException;
+	
+	/**
+	 * move a number of flows from one bucket to another, used by set based transitions
+	 * @param flowType
+	 * @param fromState
+	 * @param fromResult
+	 * @param toState
+	 * @param toResult
+	 * @param count
+	 * @throws DataAccessException
+	 */
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult, long count) throws DataAccessException;
+	
+	/**
+	 * get all non empty counters of a flow type, all types if flow type is null
+	 * @param flowType
+	 * @return
+	 * @throws DataAccessException
+	 */
+	public List<FlowCount> getCounts(String flowType) throws DataAccessException;
+	
+	/**
+	 * rebuild all counters from flow session data
+	 * @throws DataAccessException
+	 */
+	public void rebuild() throws DataAccessException;
+
+	/**
+	 * associate with a datastore 
+	 * @param dbEnum
+	 */
+	public void setDbEnum(BaseDatabaseType dbEnum);
+
+}
@@ -193,4 +193,16 @@ public interface ISessionData extends IData {
 	 */
 	public String getFlowKey();
 
+	/**
+	 * tenant owning the flow
+	 * @return
+	 */
+	public String getTenantId();
+	
+	/**
+	 * tenant owning the flow
+	 * @param tenantId
+	 */
+	public void setTenantId(String tenantId);
+
 }
@@ -1,10 +1,12 @@
 package org.lightj.session.dal;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.lightj.dal.BaseDatabaseType;
 import org.lightj.dal.DataAccessException;
 import org.lightj.dal.DataAccessRuntimeException;
+import org.lightj.session.FlowCount;
 import org.lightj.session.FlowResult;
 import org.lightj.session.FlowState;
 import org.lightj.session.FlowType;
@@ -44,6 +46,13 @@ public interface ISessionDataManager<T extends ISessionData, Q> {
 	 */
 	public void delete(T data) throws DataAccessException;
 	
+	/**
+	 * delete {@link ISessionData}s of the ids in as few round trips as the store allows
+	 * @param ids
+	 * @throws DataAccessException
+	 */
+	public void deleteByIds(Collection<Long> ids) throws DataAccessException;
+	
 	/**
 	 * find {@link ISessionData} by its id
 	 * @param id
@@ -70,15 +79,66 @@ public interface ISessionDataManager<T extends ISessionData, Q> {
 	 */
 	public List<T> search(Q query) throws DataAccessException;
 	
+	/**
+	 * a page of flows in flow id order after the given id, 
+	 * walking all flows page by page keeps memory constant regardless of how many flows are stored
+	 * @param afterId
+	 * @param limit
+	 * @return
+	 * @throws DataAccessException
+	 */
+	public List<T> findAfterId(long afterId, int limit) throws DataAccessException;
+	
+	/**
+	 * save a batch of {@link ISessionData} in one round trip where the store allows
+	 * @param datas
+	 * @throws DataAccessException
+	 */
+	public void saveBatch(Collection<T> datas) throws DataAccessException;
+	
 	/**
 	 * associate with a datastore 
 	 * @param dbEnum
 	 */
 	public void setDbEnum(BaseDatabaseType dbEnum);
 	
+	/**
+	 * narrow down a query to flows of the given keys, all flows of the keys if query is null
+	 * @param query
+	 * @param keys
+	 * @return
+	 */
+	public Q queryByKeys(Q query, Collection<String> keys);
+	
+	/**
+	 * narrow down a query to incomplete flows driven by a node other than the given one
+	 * @param query
+	 * @param runBy
+	 * @return
+	 */
+	public Q queryRunByOthers(Q query, String runBy);
+	
+	/**
+	 * set based state transition of all incomplete flows matched by the query and not in excluded keys,
+	 * flows driven by a node other than runBy are left alone as their owner would overwrite the change,
+	 * result and status are left untouched if null, end date is set if the new state is complete
+	 * 
+	 * @param query
+	 * @param excludeKeys
+	 * @param runBy
+	 * @param toState
+	 * @param toResult
+	 * @param status
+	 * @return the (type, state, result) buckets the changed flows were in before the transition, 
+	 * 			counted from the rows actually changed
+	 * @throws DataAccessException
+	 */
+	public List<FlowCount> bulkUpdateState(Q query, Collection<String> excludeKeys, String runBy, 
+			FlowState toState, FlowResult toResult, String status) throws DataAccessException;
 	
 	public Q queryActiveChildFlows(long parentId);
 	public Q queryIncompleteChildFlows(long parentId);
+	public Q queryAllIncompleteChildFlows();
 	public Q queryIncompleteSessionsLike(ISessionData me);
 	public Q queryFlows(FlowType wfType, FlowState wfState, FlowResult wfStatus, String targetKey);
 	public Q queryActiveFlows(String runBy);
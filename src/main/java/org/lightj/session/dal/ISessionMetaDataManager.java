@@ -1,5 +1,6 @@
 package org.lightj.session.dal;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.lightj.dal.BaseDatabaseType;
@@ -35,6 +36,13 @@ public interface ISessionMetaDataManager<T extends ISessionMetaData, Q> {
 	 */
 	public void delete(T data) throws DataAccessException;
 	
+	/**
+	 * delete all metadata of a batch of sessions in one go
+	 * @param sessIds
+	 * @throws DataAccessException
+	 */
+	public void deleteByFlowIds(Collection<Long> sessIds) throws DataAccessException;
+	
 	/**
 	 * find all metadata by flow id
 	 * @param sessId
@@ -43,6 +51,21 @@ public interface ISessionMetaDataManager<T extends ISessionMetaData, Q> {
 	 */
 	public List<T> findByFlowId(long sessId) throws DataAccessException;
 	
+	/**
+	 * find all metas of a batch of sessions in one go
+	 * @param sessIds
+	 * @return
+	 * @throws DataAccessException
+	 */
+	public List<T> findByFlowIds(Collection<Long> sessIds) throws DataAccessException;
+	
+	/**
+	 * save a batch of metadata in one round trip where the store allows
+	 * @param datas
+	 * @throws DataAccessException
+	 */
+	public void saveBatch(Collection<T> datas) throws DataAccessException;
+	
 	/**
 	 * associate data store
 	 * @param dbEnum
@@ -0,0 +1,41 @@
+package org.lightj.session.dal;
+
+import java.util.Date;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.DataAccessException;
+
+/**
+ * persisted last fire time of scheduled flows, 
+ * used to detect missed fires after restart and to fire a schedule only once across the cluster
+ * 
+ * @author binyu
+ *
+ */
+public interface ISessionScheduleManager {
+	
+	/**
+	 * last fire time of a schedule, null if never fired
+	 * @param scheduleName
+	 * @return
+	 * @throws DataAccessException
+	 */
+	public Date getLastFireTime(String scheduleName) throws DataAccessException;
+	
+	/**
+	 * claim a fire of a schedule, succeed only if the schedule has not fired at or after fire time
+	 * @param scheduleName
+	 * @param flowType
+	 * @param fireTime
+	 * @return true if claimed
+	 * @throws DataAccessException
+	 */
+	public boolean claimFire(String scheduleName, String flowType, Date fireTime) throws DataAccessException;
+
+	/**
+	 * associate with a datastore 
+	 * @param dbEnum
+	 */
+	public void setDbEnum(BaseDatabaseType dbEnum);
+
+}
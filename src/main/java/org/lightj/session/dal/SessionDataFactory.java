@@ -24,6 +24,14 @@ public class SessionDataFactory {
 	/** session meta data manager */
 	@Autowired
 	private ISessionMetaDataManager metaDataManager;
+	/** flow counter manager */
+	@Autowired(required=false)
+	private ISessionCounterManager counterManager;
+	/** flow schedule manager */
+	@Autowired(required=false)
+	private ISessionScheduleManager scheduleManager;
+	/** database */
+	private BaseDatabaseType dbEnum;
 
 	private SessionDataFactory() {}
 	
@@ -35,6 +43,18 @@ public class SessionDataFactory {
 	public final ISessionMetaDataManager getMetaDataManager() {
 		return metaDataManager;
 	}
+	/** get flow counter manager */
+	public final ISessionCounterManager getCounterManager() {
+		return counterManager;
+	}
+	/** get flow schedule manager */
+	public final ISessionScheduleManager getScheduleManager() {
+		return scheduleManager;
+	}
+	/** get session database */
+	public final BaseDatabaseType getDbEnum() {
+		return dbEnum;
+	}
 	public void setDataManager(ISessionDataManager dataManager) {
 		this.dataManager = dataManager;
 	}
@@ -43,6 +63,14 @@ public class SessionDataFactory {
 		this.metaDataManager = metaDataManager;
 	}
 
+	public void setCounterManager(ISessionCounterManager counterManager) {
+		this.counterManager = counterManager;
+	}
+
+	public void setScheduleManager(ISessionScheduleManager scheduleManager) {
+		this.scheduleManager = scheduleManager;
+	}
+
 	public void setDbEnum(BaseDatabaseType dbEnum) {
 		if (dbEnum instanceof MongoDatabaseType) {
 			if (dataManager == null) {
@@ -52,6 +80,12 @@ public class SessionDataFactory {
 				this.metaDataManager = new org.lightj.session.dal.mongo.MongoSessionMetaDataManagerImpl();
 				((MongoSessionMetaDataManagerImpl) this.metaDataManager).setSessionDataManager((MongoSessionDataManagerImpl) this.dataManager);
 			}
+			if (counterManager == null) {
+				this.counterManager = new org.lightj.session.dal.mongo.MongoSessionCounterManagerImpl();
+			}
+			if (scheduleManager == null) {
+				this.scheduleManager = new org.lightj.session.dal.mongo.MongoSessionScheduleManagerImpl();
+			}
 		}
 		else {
 			if (dataManager == null) {
@@ -60,9 +94,18 @@ public class SessionDataFactory {
 			if (metaDataManager == null) {
 				this.metaDataManager = org.lightj.session.dal.rdbms.SessionMetaDataManagerImpl.getInstance();
 			}
+			if (counterManager == null) {
+				this.counterManager = org.lightj.session.dal.rdbms.SessionCounterManagerImpl.getInstance();
+			}
+			if (scheduleManager == null) {
+				this.scheduleManager = org.lightj.session.dal.rdbms.SessionScheduleManagerImpl.getInstance();
+			}
 		}
 		this.dataManager.setDbEnum(dbEnum);
 		this.metaDataManager.setDbEnum(dbEnum);
+		this.counterManager.setDbEnum(dbEnum);
+		this.scheduleManager.setDbEnum(dbEnum);
+		this.dbEnum = dbEnum;
 	}
 
 	/**
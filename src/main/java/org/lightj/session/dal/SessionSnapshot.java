@@ -0,0 +1,440 @@
+package org.lightj.session.dal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.lightj.dal.DataAccessException;
+import org.lightj.dal.FinderException;
+import org.lightj.session.FlowResult;
+import org.lightj.session.FlowState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * streaming export and import of flows with their metadata, to move flows between environments or stores.
+ *
+ * a snapshot is a header followed by one length prefixed record per flow, flows are walked page by page in id order
+ * and written as they are read, so memory stays constant regardless of how many flows are exported or imported.
+ * ids are reassigned by the importing store, parent links travel as parent flow keys and are remapped on import.
+ *
+ * @author binyu
+ *
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SessionSnapshot {
+
+	static Logger logger = LoggerFactory.getLogger(SessionSnapshot.class);
+
+	/** snapshot header */
+	static final int MAGIC = 0x4c4a534e;
+	static final int VERSION = 1;
+
+	/** default number of flows read or written per round trip */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/** max number of flow id to key mappings remembered to resolve parent links, lookup from store beyond */
+	static final int PARENT_CACHE_SIZE = 10000;
+
+	/** stores */
+	private final ISessionDataManager dataManager;
+	private final ISessionMetaDataManager metaDataManager;
+	private final ISessionCounterManager counterManager;
+
+	/** flows per page or batch */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/** snapshot of the configured flow store */
+	public SessionSnapshot() {
+		this(SessionDataFactory.getInstance().getDataManager(), SessionDataFactory.getInstance().getMetaDataManager(),
+				SessionDataFactory.getInstance().getCounterManager());
+	}
+
+	/**
+	 * snapshot of the given flow store, counters rebuilt after import if counter manager is not null
+	 * @param dataManager
+	 * @param metaDataManager
+	 * @param counterManager
+	 */
+	public SessionSnapshot(ISessionDataManager dataManager, ISessionMetaDataManager metaDataManager,
+			ISessionCounterManager counterManager) {
+		this.dataManager = dataManager;
+		this.metaDataManager = metaDataManager;
+		this.counterManager = counterManager;
+	}
+
+	public SessionSnapshot setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * export all flows to the stream
+	 * @param os
+	 * @return number of flows exported
+	 * @throws DataAccessException
+	 * @throws IOException
+	 */
+	public long exportTo(OutputStream os) throws DataAccessException, IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		Map<Long, String> parentKeys = newLruMap();
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		long count = 0;
+		long afterId = 0;
+		List<ISessionData> page;
+		do {
+			page = dataManager.findAfterId(afterId, batchSize);
+			if (page.isEmpty()) {
+				break;
+			}
+			List<Long> ids = new ArrayList<Long>(page.size());
+			for (ISessionData data : page) {
+				ids.add(data.getFlowId());
+			}
+			Map<Long, List<ISessionMetaData>> metasById = new HashMap<Long, List<ISessionMetaData>>();
+			for (ISessionMetaData meta : (List<ISessionMetaData>) metaDataManager.findByFlowIds(ids)) {
+				if (!metasById.containsKey(meta.getFlowId())) {
+					metasById.put(meta.getFlowId(), new ArrayList<ISessionMetaData>());
+				}
+				metasById.get(meta.getFlowId()).add(meta);
+			}
+			for (ISessionData data : page) {
+				buf.reset();
+				writeRecord(new DataOutputStream(buf), data, parentKey(data, parentKeys), metasById.get(data.getFlowId()));
+				out.writeInt(buf.size());
+				buf.writeTo(out);
+				parentKeys.put(data.getFlowId(), data.getFlowKey());
+				afterId = data.getFlowId();
+				count++;
+			}
+		} while (page.size() >= batchSize);
+
+		out.flush();
+		logger.info("exported " + count + " flows");
+		return count;
+	}
+
+	/**
+	 * import all flows from the stream, flows and their metadata get new ids in the store
+	 * @param is
+	 * @return number of flows imported
+	 * @throws DataAccessException
+	 * @throws IOException
+	 */
+	public long importFrom(InputStream is) throws DataAccessException, IOException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a flow snapshot");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported flow snapshot version " + version);
+		}
+
+		Map<String, Long> newIds = newLruMap();
+		Map<ISessionData, String> pending = new LinkedHashMap<ISessionData, String>();
+		Map<ISessionData, List<ISessionMetaData>> pendingMetas = new HashMap<ISessionData, List<ISessionMetaData>>();
+		Set<String> pendingKeys = new HashSet<String>();
+		long count = 0;
+		byte[] record;
+		while ((record = readRecord(in)) != null) {
+			DataInputStream rin = new DataInputStream(new ByteArrayInputStream(record));
+			ISessionData data = dataManager.newInstance();
+			String parentKey = readSession(rin, data);
+			if (parentKey != null && pendingKeys.contains(parentKey)) {
+				// parent not saved yet, needs its id
+				flush(pending, pendingMetas, pendingKeys, newIds);
+			}
+			pending.put(data, parentKey);
+			pendingMetas.put(data, readMetas(rin));
+			if (data.getFlowKey() != null) {
+				pendingKeys.add(data.getFlowKey());
+			}
+			count++;
+			if (pending.size() >= batchSize) {
+				flush(pending, pendingMetas, pendingKeys, newIds);
+			}
+		}
+		flush(pending, pendingMetas, pendingKeys, newIds);
+
+		if (counterManager != null) {
+			counterManager.rebuild();
+		}
+		logger.info("imported " + count + " flows");
+		return count;
+	}
+
+	/**
+	 * save pending flows and their metadata in batches
+	 * @param pending
+	 * @param pendingMetas
+	 * @param pendingKeys
+	 * @param newIds
+	 * @throws DataAccessException
+	 */
+	private void flush(Map<ISessionData, String> pending, Map<ISessionData, List<ISessionMetaData>> pendingMetas,
+			Set<String> pendingKeys, Map<String, Long> newIds) throws DataAccessException
+	{
+		if (pending.isEmpty()) {
+			return;
+		}
+		for (Entry<ISessionData, String> entry : pending.entrySet()) {
+			if (entry.getValue() != null) {
+				entry.getKey().setParentId(newId(entry.getValue(), newIds));
+			}
+		}
+		dataManager.saveBatch(pending.keySet());
+		List<ISessionMetaData> metas = new ArrayList<ISessionMetaData>();
+		for (ISessionData data : pending.keySet()) {
+			if (data.getFlowKey() != null) {
+				newIds.put(data.getFlowKey(), data.getFlowId());
+			}
+			for (ISessionMetaData meta : pendingMetas.get(data)) {
+				meta.setFlowId(data.getFlowId());
+				metas.add(meta);
+			}
+		}
+		if (!metas.isEmpty()) {
+			metaDataManager.saveBatch(metas);
+		}
+		pending.clear();
+		pendingMetas.clear();
+		pendingKeys.clear();
+	}
+
+	/**
+	 * key of the parent of a flow, from the flows recently exported or the store
+	 * @param data
+	 * @param parentKeys
+	 * @return
+	 * @throws DataAccessException
+	 */
+	private String parentKey(ISessionData data, Map<Long, String> parentKeys) throws DataAccessException {
+		if (data.getParentId() <= 0) {
+			return null;
+		}
+		if (parentKeys.containsKey(data.getParentId())) {
+			return parentKeys.get(data.getParentId());
+		}
+		try {
+			ISessionData parent = dataManager.findById(data.getParentId());
+			return parent != null ? parent.getFlowKey() : null;
+		} catch (FinderException e) {
+			// parent gone
+			return null;
+		}
+	}
+
+	/**
+	 * new id of an imported flow, from the flows recently imported or the store
+	 * @param flowKey
+	 * @param newIds
+	 * @return
+	 * @throws DataAccessException
+	 */
+	private long newId(String flowKey, Map<String, Long> newIds) throws DataAccessException {
+		if (newIds.containsKey(flowKey)) {
+			return newIds.get(flowKey);
+		}
+		ISessionData parent = dataManager.findByKey(flowKey);
+		return parent != null ? parent.getFlowId() : 0;
+	}
+
+	/**
+	 * write one flow
+	 * @param out
+	 * @param data
+	 * @param parentKey
+	 * @param metas
+	 * @throws IOException
+	 */
+	static void writeRecord(DataOutputStream out, ISessionData data, String parentKey, List<ISessionMetaData> metas) throws IOException {
+		writeString(out, data.getFlowKey());
+		writeString(out, parentKey);
+		writeString(out, data.getType());
+		writeString(out, data.getTargetKey());
+		writeString(out, data.getRequesterKey());
+		writeString(out, data.getTenantId());
+		writeDate(out, data.getCreationDate());
+		writeDate(out, data.getEndDate());
+		writeDate(out, data.getLastModified());
+		writeString(out, data.getFlowState() != null ? data.getFlowState().name() : null);
+		writeString(out, data.getFlowResult() != null ? data.getFlowResult().name() : null);
+		writeString(out, data.getStatus());
+		writeString(out, data.getCurrentAction());
+		writeString(out, data.getNextAction());
+		writeString(out, data.getRunBy());
+		out.writeInt(metas != null ? metas.size() : 0);
+		if (metas != null) {
+			for (ISessionMetaData meta : metas) {
+				writeString(out, meta.getName());
+				writeString(out, meta.getStrValue());
+				writeBytes(out, serialize(meta.getBlobValue()));
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * read one flow, return parent key
+	 * @param in
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	static String readSession(DataInputStream in, ISessionData data) throws IOException {
+		data.setFlowKey(readString(in));
+		String parentKey = readString(in);
+		data.setType(readString(in));
+		data.setTargetKey(readString(in));
+		data.setRequesterKey(readString(in));
+		data.setTenantId(readString(in));
+		data.setCreationDate(readDate(in));
+		data.setEndDate(readDate(in));
+		data.setLastModified(readDate(in));
+		String state = readString(in);
+		data.setFlowState(state != null ? FlowState.valueOf(state) : null);
+		String result = readString(in);
+		data.setFlowResult(result != null ? FlowResult.valueOf(result) : null);
+		data.setStatus(readString(in));
+		data.setCurrentAction(readString(in));
+		data.setNextAction(readString(in));
+		data.setRunBy(readString(in));
+		return parentKey;
+	}
+
+	/**
+	 * read metadata of the flow just read
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	List<ISessionMetaData> readMetas(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<ISessionMetaData> metas = new ArrayList<ISessionMetaData>(size);
+		for (int i = 0; i < size; i++) {
+			ISessionMetaData meta = metaDataManager.newInstance();
+			meta.setName(readString(in));
+			meta.setStrValue(readString(in));
+			meta.setBlobValue(deserialize(readBytes(in)));
+			metas.add(meta);
+		}
+		return metas;
+	}
+
+	/**
+	 * next length prefixed record, null at the end of the stream
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] readRecord(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		byte[] record = new byte[length];
+		in.readFully(record);
+		return record;
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		writeBytes(out, value != null ? value.getBytes("UTF-8") : null);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = readBytes(in);
+		return bytes != null ? new String(bytes, "UTF-8") : null;
+	}
+
+	static void writeDate(DataOutputStream out, Date value) throws IOException {
+		out.writeLong(value != null ? value.getTime() : -1);
+	}
+
+	static Date readDate(DataInputStream in) throws IOException {
+		long time = in.readLong();
+		return time >= 0 ? new Date(time) : null;
+	}
+
+	static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		}
+		else {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+	}
+
+	static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	static byte[] serialize(Serializable value) throws IOException {
+		if (value == null) {
+			return null;
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(value);
+		oos.close();
+		return bos.toByteArray();
+	}
+
+	static Serializable deserialize(byte[] bytes) throws IOException {
+		if (bytes == null) {
+			return null;
+		}
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (Serializable) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} finally {
+			ois.close();
+		}
+	}
+
+	/**
+	 * bounded map evicting the least recently used entry
+	 * @return
+	 */
+	static <K, V> Map<K, V> newLruMap() {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Entry<K, V> eldest) {
+				return size() > PARENT_CACHE_SIZE;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.lightj.session.dal.mongo;
+
+import org.lightj.dal.mongo.BaseEntity;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * one materialized flow counter bucket, id is "type|state|result"
+ * @author binyu
+ *
+ */
+@Document(collection = "FlowSessionCounter")
+public class MongoSessionCounterImpl extends BaseEntity {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3960236785532917651L;
+	
+	private String flowType;
+	private String flowState;
+	private String flowResult;
+	private long count;
+
+	public String getFlowType() {
+		return flowType;
+	}
+
+	public void setFlowType(String flowType) {
+		this.flowType = flowType;
+	}
+
+	public String getFlowState() {
+		return flowState;
+	}
+
+	public void setFlowState(String flowState) {
+		this.flowState = flowState;
+	}
+
+	public String getFlowResult() {
+		return flowResult;
+	}
+
+	public void setFlowResult(String flowResult) {
+		this.flowResult = flowResult;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+}
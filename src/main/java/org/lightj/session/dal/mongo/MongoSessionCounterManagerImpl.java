@@ -0,0 +1,108 @@
+package org.lightj.session.dal.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.DataAccessException;
+import org.lightj.dal.mongo.BaseMongoDao;
+import org.lightj.dal.mongo.MongoDatabaseType;
+import org.lightj.session.FlowCount;
+import org.lightj.session.FlowResult;
+import org.lightj.session.FlowState;
+import org.lightj.session.dal.ISessionCounterManager;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+/**
+ * mongo based flow counters, one document per bucket updated with $inc
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class MongoSessionCounterManagerImpl extends BaseMongoDao<MongoSessionCounterImpl> implements ISessionCounterManager {
+
+	public MongoSessionCounterManagerImpl() {
+		super(MongoSessionCounterImpl.class);
+	}
+
+	@Override
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult) throws DataAccessException 
+	{
+		transition(flowType, fromState, fromResult, toState, toResult, 1);
+	}
+
+	@Override
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult, long count) throws DataAccessException 
+	{
+		if (fromState != null) {
+			increment(flowType, fromState, fromResult, -count);
+		}
+		if (toState != null) {
+			increment(flowType, toState, toResult, count);
+		}
+	}
+	
+	/**
+	 * $inc a bucket, upsert if not there yet
+	 * @param flowType
+	 * @param state
+	 * @param result
+	 * @param delta
+	 * @throws DataAccessException
+	 */
+	private void increment(String flowType, FlowState state, FlowResult result, long delta) throws DataAccessException {
+		String rs = (result != null ? result : FlowResult.Unknown).name();
+		String id = String.format("%s|%s|%s", flowType, state.name(), rs);
+		upsert(new Query(Criteria.where("id").is(id)), 
+				new Update().set("flowType", flowType).set("flowState", state.name())
+							.set("flowResult", rs).inc("count", delta));
+	}
+
+	@Override
+	public List<FlowCount> getCounts(String flowType) throws DataAccessException {
+		Criteria criteria = Criteria.where("count").ne(0);
+		if (flowType != null) {
+			criteria.and("flowType").is(flowType);
+		}
+		List<FlowCount> counts = new ArrayList<FlowCount>();
+		for (MongoSessionCounterImpl counter : search(new Query(criteria))) {
+			counts.add(new FlowCount(counter.getFlowType(), FlowState.valueOf(counter.getFlowState()), 
+					FlowResult.valueOf(counter.getFlowResult()), counter.getCount()));
+		}
+		return counts;
+	}
+
+	@Override
+	public void rebuild() throws DataAccessException {
+		DBCollection sessions = getTemplate().getCollection(getTemplate().getCollectionName(MongoSessionDataImpl.class));
+		DBObject key = new BasicDBObject("type", 1).append("actionStatus", 1).append("resultStatus", 1);
+		DBObject groups = sessions.group(key, new BasicDBObject(), new BasicDBObject("count", 0), 
+				"function(doc, out) { out.count++; }");
+		getTemplate().remove(new Query(), MongoSessionCounterImpl.class);
+		for (Object group : (List) groups) {
+			DBObject g = (DBObject) group;
+			String rs = (String) g.get("resultStatus");
+			MongoSessionCounterImpl counter = new MongoSessionCounterImpl();
+			counter.setFlowType((String) g.get("type"));
+			counter.setFlowState((String) g.get("actionStatus"));
+			counter.setFlowResult(rs != null ? rs : FlowResult.Unknown.name());
+			counter.setCount(((Number) g.get("count")).longValue());
+			counter.setId(String.format("%s|%s|%s", counter.getFlowType(), counter.getFlowState(), counter.getFlowResult()));
+			save(counter);
+		}
+	}
+
+	@Override
+	public void setDbEnum(BaseDatabaseType dbEnum) {
+		setDatabase((MongoDatabaseType) dbEnum);
+	}
+
+}
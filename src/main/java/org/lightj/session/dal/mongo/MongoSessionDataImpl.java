@@ -37,6 +37,8 @@ public class MongoSessionDataImpl extends BaseEntity implements ISessionData {
 	private Date lastModified;
 	private String runBy;
 	private String requesterKey;
+	@Indexed
+	private String tenantId;
 	
 	/** flow context */
 	private LinkedHashMap<String, MongoSessionMetaDataImpl> metas = new LinkedHashMap<String, MongoSessionMetaDataImpl>();
@@ -161,6 +163,14 @@ public class MongoSessionDataImpl extends BaseEntity implements ISessionData {
 		this.requesterKey = requesterKey;
 	}
 
+	public String getTenantId() {
+		return tenantId;
+	}
+
+	public void setTenantId(String tenantId) {
+		this.tenantId = tenantId;
+	}
+
 	@Override
 	public long getPrimaryKey() {
 		return flowId;
@@ -1,25 +1,48 @@
 package org.lightj.session.dal.mongo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
 import org.lightj.dal.BaseDatabaseType;
 import org.lightj.dal.BaseSequenceEnum;
 import org.lightj.dal.DataAccessException;
 import org.lightj.dal.DataAccessRuntimeException;
 import org.lightj.dal.mongo.BaseMongoDao;
 import org.lightj.dal.mongo.MongoDatabaseType;
+import org.lightj.session.FlowCount;
 import org.lightj.session.FlowResult;
 import org.lightj.session.FlowState;
 import org.lightj.session.FlowType;
 import org.lightj.session.dal.ISessionData;
 import org.lightj.session.dal.ISessionDataManager;
 import org.lightj.util.StringUtil;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 
 /**
  * mongo based flow_session dao
  * @author biyu
  *
  */
+@SuppressWarnings("rawtypes")
 public class MongoSessionDataManagerImpl extends BaseMongoDao<MongoSessionDataImpl> implements
 		ISessionDataManager<MongoSessionDataImpl, Query> 
 {
@@ -54,6 +77,33 @@ public class MongoSessionDataManagerImpl extends BaseMongoDao<MongoSessionDataIm
 		return super.findByKey("flowKey", key);
 	}
 
+	@Override
+	public void deleteByIds(Collection<Long> ids) throws DataAccessException {
+		getTemplate().remove(new Query(Criteria.where("flowId").in(ids)), MongoSessionDataImpl.class);
+	}
+
+	@Override
+	public List<MongoSessionDataImpl> findAfterId(long afterId, int limit) throws DataAccessException {
+		return search(new Query(Criteria.where("flowId").gt(afterId)).with(new Sort(Direction.ASC, "flowId")).limit(limit));
+	}
+
+	@Override
+	public void saveBatch(Collection<MongoSessionDataImpl> datas) throws DataAccessException {
+		List<MongoSessionDataImpl> inserts = new ArrayList<MongoSessionDataImpl>();
+		for (MongoSessionDataImpl data : datas) {
+			if (data.getFlowId() > 0) {
+				save(data);
+			}
+			else {
+				beforeSave(data);
+				inserts.add(data);
+			}
+		}
+		if (!inserts.isEmpty()) {
+			getTemplate().insert(inserts, MongoSessionDataImpl.class);
+		}
+	}
+
 	@Override
 	public void setDbEnum(BaseDatabaseType dbEnum) {
 		setDatabase((MongoDatabaseType) dbEnum);
@@ -74,6 +124,13 @@ public class MongoSessionDataManagerImpl extends BaseMongoDao<MongoSessionDataIm
 		return q;
 	}
 
+	@Override
+	public Query queryAllIncompleteChildFlows() {
+		Query q = newQuery();
+		q.addCriteria(Criteria.where("parentId").gt(0).and("endDate").is(null));
+		return q;
+	}
+
 	@Override
 	public Query queryIncompleteSessionsLike(ISessionData me) {
 		Query query = newQuery();
@@ -111,7 +168,89 @@ public class MongoSessionDataManagerImpl extends BaseMongoDao<MongoSessionDataIm
 			criteria.and("targetKey").is(targetKey);
 		}
 		query.addCriteria(criteria);
-		return null;
+		return query;
+	}
+
+	@Override
+	public Query queryByKeys(Query query, Collection<String> keys) {
+		return narrow(query, Criteria.where("flowKey").in(keys));
+	}
+
+	@Override
+	public Query queryRunByOthers(Query query, String runBy) {
+		return narrow(query, Criteria.where("endDate").is(null).and("runBy").nin(null, runBy));
+	}
+
+	@Override
+	public List<FlowCount> bulkUpdateState(Query query, Collection<String> excludeKeys, String runBy, 
+			FlowState toState, FlowResult toResult, String status) throws DataAccessException 
+	{
+		Query q = narrow(query, Criteria.where("endDate").is(null).and("actionStatus").ne(toState.name())
+				.and("runBy").in(null, runBy));
+		// excluded keys are dropped as the candidates are read, rather than a nin list as long as the keys
+		Set<String> excluded = new HashSet<String>(excludeKeys);
+		DBCollection sessions = getTemplate().getCollection(getTemplate().getCollectionName(MongoSessionDataImpl.class));
+		
+		// candidate ids by the (type, state, result) bucket they are in before the change
+		Map<List<String>, List<Long>> buckets = new LinkedHashMap<List<String>, List<Long>>();
+		DBCursor cursor = sessions.find(q.getQueryObject(), new BasicDBObject("flowId", 1).append("flowKey", 1)
+				.append("type", 1).append("actionStatus", 1).append("resultStatus", 1));
+		try {
+			while (cursor.hasNext()) {
+				DBObject doc = cursor.next();
+				if (excluded.contains(doc.get("flowKey"))) {
+					continue;
+				}
+				List<String> bucket = Arrays.asList((String) doc.get("type"), (String) doc.get("actionStatus"), (String) doc.get("resultStatus"));
+				if (!buckets.containsKey(bucket)) {
+					buckets.put(bucket, new ArrayList<Long>());
+				}
+				buckets.get(bucket).add(((Number) doc.get("flowId")).longValue());
+			}
+		} finally {
+			cursor.close();
+		}
+		
+		// the change itself, a document only changes if it is still in the bucket it was read in,
+		// so the counters move by exactly the documents changed even if some flows transitioned in between
+		Update update = new Update().set("actionStatus", toState.name()).set("lastModified", new Date());
+		if (toResult != null) {
+			update.set("resultStatus", toResult.name());
+		}
+		if (status != null) {
+			update.set("status", status);
+		}
+		if (toState.isComplete()) {
+			update.set("endDate", new Date()).set("nextAction", null);
+		}
+		List<FlowCount> changed = new ArrayList<FlowCount>();
+		for (Entry<List<String>, List<Long>> entry : buckets.entrySet()) {
+			String type = entry.getKey().get(0), state = entry.getKey().get(1), rs = entry.getKey().get(2);
+			Query inBucket = new Query(Criteria.where("flowId").in(entry.getValue()).and("endDate").is(null)
+					.and("actionStatus").is(state).and("resultStatus").is(rs).and("runBy").in(null, runBy));
+			int updated = getTemplate().updateMulti(inBucket, update, MongoSessionDataImpl.class).getN();
+			if (updated > 0) {
+				changed.add(new FlowCount(type, FlowState.valueOf(state), 
+						rs != null ? FlowResult.valueOf(rs) : FlowResult.Unknown, updated));
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * a new query of both the given query and more criteria
+	 * @param query
+	 * @param criteria
+	 * @return
+	 */
+	private Query narrow(Query query, Criteria criteria) {
+		if (query == null) {
+			return new Query(criteria);
+		}
+		BasicDBList and = new BasicDBList();
+		and.add(query.getQueryObject());
+		and.add(criteria.getCriteriaObject());
+		return new BasicQuery(new BasicDBObject("$and", and));
 	}
 
 	@Override
@@ -1,6 +1,10 @@
 package org.lightj.session.dal.mongo;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.lightj.dal.BaseDatabaseType;
 import org.lightj.dal.BaseSequenceEnum;
@@ -10,7 +14,9 @@ import org.lightj.dal.mongo.BaseMongoDao;
 import org.lightj.dal.mongo.MongoDatabaseType;
 import org.lightj.session.dal.ISessionMetaDataManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 public class MongoSessionMetaDataManagerImpl extends BaseMongoDao<MongoSessionMetaDataImpl> implements
 		ISessionMetaDataManager<MongoSessionMetaDataImpl, Query> {
@@ -52,6 +58,47 @@ public class MongoSessionMetaDataManagerImpl extends BaseMongoDao<MongoSessionMe
 		return sessionData.getMetasAsList();
 	}
 
+	@Override
+	public List<MongoSessionMetaDataImpl> findByFlowIds(Collection<Long> sessIds)
+			throws DataAccessException {
+		List<MongoSessionMetaDataImpl> metas = new ArrayList<MongoSessionMetaDataImpl>();
+		for (MongoSessionDataImpl sessionData : sessionDataManager.search(new Query(Criteria.where("flowId").in(sessIds)))) {
+			metas.addAll(sessionData.getMetasAsList());
+		}
+		return metas;
+	}
+
+	@Override
+	public void deleteByFlowIds(Collection<Long> sessIds) throws DataAccessException {
+		// metas are embedded, empty them in one update
+		getTemplate().updateMulti(new Query(Criteria.where("flowId").in(sessIds)), 
+				new Update().set("metas", new LinkedHashMap<String, MongoSessionMetaDataImpl>()), MongoSessionDataImpl.class);
+	}
+
+	@Override
+	public void saveBatch(Collection<MongoSessionMetaDataImpl> datas) throws DataAccessException {
+		// metas are embedded, one write per owning session document
+		Map<Long, List<MongoSessionMetaDataImpl>> metasById = new LinkedHashMap<Long, List<MongoSessionMetaDataImpl>>();
+		for (MongoSessionMetaDataImpl data : datas) {
+			if (data.getFlowMetaId() <= 0) {
+				data.setFlowMetaId(database.getNextValue(BaseSequenceEnum.SEQ_FLOW_META_ID));
+			}
+			if (!metasById.containsKey(data.getFlowId())) {
+				metasById.put(data.getFlowId(), new ArrayList<MongoSessionMetaDataImpl>());
+			}
+			metasById.get(data.getFlowId()).add(data);
+		}
+		if (metasById.isEmpty()) {
+			return;
+		}
+		for (MongoSessionDataImpl sessionData : sessionDataManager.search(new Query(Criteria.where("flowId").in(metasById.keySet())))) {
+			for (MongoSessionMetaDataImpl data : metasById.get(sessionData.getFlowId())) {
+				sessionData.addMeta(data);
+			}
+			sessionDataManager.save(sessionData);
+		}
+	}
+
 	@Override
 	public void setDbEnum(BaseDatabaseType dbEnum) {
 		setDatabase((MongoDatabaseType) dbEnum);
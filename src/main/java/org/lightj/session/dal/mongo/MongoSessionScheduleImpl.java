@@ -0,0 +1,40 @@
+package org.lightj.session.dal.mongo;
+
+import java.util.Date;
+
+import org.lightj.dal.mongo.BaseEntity;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * last fire of a flow schedule, id is the schedule name
+ * @author binyu
+ *
+ */
+@Document(collection = "FlowSessionSchedule")
+public class MongoSessionScheduleImpl extends BaseEntity {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2212817634350118372L;
+	
+	private String flowType;
+	private Date lastFire;
+
+	public String getFlowType() {
+		return flowType;
+	}
+
+	public void setFlowType(String flowType) {
+		this.flowType = flowType;
+	}
+
+	public Date getLastFire() {
+		return lastFire;
+	}
+
+	public void setLastFire(Date lastFire) {
+		this.lastFire = lastFire;
+	}
+
+}
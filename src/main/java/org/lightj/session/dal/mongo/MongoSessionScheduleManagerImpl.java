@@ -0,0 +1,57 @@
+package org.lightj.session.dal.mongo;
+
+import java.util.Date;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.DataAccessException;
+import org.lightj.dal.mongo.BaseMongoDao;
+import org.lightj.dal.mongo.MongoDatabaseType;
+import org.lightj.session.dal.ISessionScheduleManager;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * mongo based schedule fire times, a fire is claimed with a conditional update
+ * @author binyu
+ *
+ */
+public class MongoSessionScheduleManagerImpl extends BaseMongoDao<MongoSessionScheduleImpl> implements ISessionScheduleManager {
+
+	public MongoSessionScheduleManagerImpl() {
+		super(MongoSessionScheduleImpl.class);
+	}
+
+	@Override
+	public Date getLastFireTime(String scheduleName) throws DataAccessException {
+		MongoSessionScheduleImpl schedule = findByKey("id", scheduleName);
+		return schedule != null ? schedule.getLastFire() : null;
+	}
+
+	@Override
+	public boolean claimFire(String scheduleName, String flowType, Date fireTime) throws DataAccessException {
+		Query query = new Query(Criteria.where("id").is(scheduleName).and("lastFire").lt(fireTime));
+		if (getTemplate().updateFirst(query, new Update().set("flowType", flowType).set("lastFire", fireTime), 
+				MongoSessionScheduleImpl.class).getN() > 0) {
+			return true;
+		}
+		MongoSessionScheduleImpl schedule = new MongoSessionScheduleImpl();
+		schedule.setId(scheduleName);
+		schedule.setFlowType(flowType);
+		schedule.setLastFire(fireTime);
+		try {
+			getTemplate().insert(schedule);
+			return true;
+		} catch (DuplicateKeyException e) {
+			// fired by someone else at or after fire time
+			return false;
+		}
+	}
+
+	@Override
+	public void setDbEnum(BaseDatabaseType dbEnum) {
+		setDatabase((MongoDatabaseType) dbEnum);
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.lightj.session.dal.rdbms;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.ConnectionHelper;
+import org.lightj.dal.DataAccessException;
+import org.lightj.dal.IDataAccess.IResultSetHandler;
+import org.lightj.session.FlowCount;
+import org.lightj.session.FlowResult;
+import org.lightj.session.FlowState;
+import org.lightj.session.dal.ISessionCounterManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * flow counter manager backed by FLOW_SESSION_COUNTER table,
+ * joins the caller's transaction if there is one on the thread
+ * 
+ * @author binyu
+ *
+ */
+public class SessionCounterManagerImpl implements ISessionCounterManager {
+	
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(SessionCounterManagerImpl.class);
+	
+	public static final String TABLENAME = "FLOW_SESSION_COUNTER";
+	
+	static final String updateSql = "update " + TABLENAME + " set flow_count = flow_count + ? where flow_type = ? and flow_state = ? and flow_result = ?";
+	static final String insertSql = "insert into " + TABLENAME + " (flow_type, flow_state, flow_result, flow_count) values (?,?,?,?)";
+	static final String selectSql = "select flow_type, flow_state, flow_result, flow_count from " + TABLENAME + " where flow_count <> 0";
+	static final String deleteAllSql = "delete from " + TABLENAME;
+	static final String rebuildSql = "insert into " + TABLENAME + " (flow_type, flow_state, flow_result, flow_count) " +
+			"select flow_type, flow_state, coalesce(flow_result, '" + FlowResult.Unknown.name() + "'), count(*) from " + 
+			SessionDataImpl.VIEWNAME + " group by flow_type, flow_state, coalesce(flow_result, '" + FlowResult.Unknown.name() + "')";
+
+	private static final SessionCounterManagerImpl me = new SessionCounterManagerImpl();
+
+	public static final SessionCounterManagerImpl getInstance() {
+		return me;
+	}
+	
+	/** database */
+	private BaseDatabaseType dbEnum;
+	
+	private SessionCounterManagerImpl() {}
+
+	@Override
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult) throws DataAccessException 
+	{
+		transition(flowType, fromState, fromResult, toState, toResult, 1);
+	}
+
+	@Override
+	public void transition(String flowType, FlowState fromState, FlowResult fromResult, 
+			FlowState toState, FlowResult toResult, long count) throws DataAccessException 
+	{
+		try {
+			if (fromState != null) {
+				increment(flowType, fromState, fromResult, -count);
+			}
+			if (toState != null) {
+				increment(flowType, toState, toResult, count);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+	
+	/**
+	 * add delta to a bucket, create the bucket if not there yet
+	 * @param flowType
+	 * @param state
+	 * @param result
+	 * @param delta
+	 * @throws SQLException
+	 */
+	private void increment(String flowType, FlowState state, FlowResult result, long delta) throws SQLException {
+		String rs = (result != null ? result : FlowResult.Unknown).name();
+		Object[] updArgs = new Object[] {delta, flowType, state.name(), rs};
+		if (ConnectionHelper.executeUpdate(dbEnum, updateSql, updArgs) == 0) {
+			try {
+				ConnectionHelper.executeUpdate(dbEnum, insertSql, new Object[] {flowType, state.name(), rs, delta});
+			} catch (SQLException e) {
+				// lost the race creating the bucket, the row is there now
+				logger.debug("counter bucket created concurrently " + e.getMessage());
+				ConnectionHelper.executeUpdate(dbEnum, updateSql, updArgs);
+			}
+		}
+	}
+
+	@Override
+	public List<FlowCount> getCounts(String flowType) throws DataAccessException {
+		final List<FlowCount> counts = new ArrayList<FlowCount>();
+		String sql = selectSql;
+		Object[] args = new Object[] {};
+		if (flowType != null) {
+			sql = sql + " and flow_type = ?";
+			args = new Object[] {flowType};
+		}
+		try {
+			ConnectionHelper.executeQuery(dbEnum, sql, args, new IResultSetHandler() {
+				
+				@Override
+				public void next(Connection conn, ResultSet rs) throws SQLException, DataAccessException {
+					counts.add(new FlowCount(rs.getString(1), FlowState.valueOf(rs.getString(2)), 
+							FlowResult.valueOf(rs.getString(3)), rs.getLong(4)));
+				}
+				
+				@Override
+				public void handleEmptyResult() throws DataAccessException {
+				}
+				
+				@Override
+				public void postProcess(Connection conn) throws SQLException, DataAccessException {
+				}
+			});
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+		return counts;
+	}
+
+	@Override
+	public void rebuild() throws DataAccessException {
+		ConnectionHelper.startTr(dbEnum);
+		try {
+			ConnectionHelper.executeUpdate(dbEnum, deleteAllSql);
+			ConnectionHelper.executeUpdate(dbEnum, rebuildSql);
+			ConnectionHelper.commitTr(dbEnum);
+		} catch (SQLException e) {
+			ConnectionHelper.rollbackTr(dbEnum);
+			throw new DataAccessException(e);
+		}
+	}
+
+	@Override
+	public void setDbEnum(BaseDatabaseType dbEnum) {
+		this.dbEnum = dbEnum;
+	}
+
+}
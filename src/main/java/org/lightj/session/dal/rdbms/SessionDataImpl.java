@@ -15,7 +15,12 @@ import org.lightj.util.StringUtil;
  */
 public class SessionDataImpl implements ISessionData {
 	
+	/** immutable descriptor of flows, written once on creation */
 	static String TABLENAME	=	"FLOW_SESSION";
+	/** state of flows, written on every transition */
+	static String STATE_TABLENAME	=	"FLOW_SESSION_STATE";
+	/** join of descriptor and state, all reads go here */
+	static String VIEWNAME	=	"FLOW_SESSION_V";
 	
 	private long sessionId;
 	private String flowKey;
@@ -34,7 +39,14 @@ public class SessionDataImpl implements ISessionData {
 	private String runBy;
 
 	private String requesterKey;
+	private String tenantId;
 
+	public String getTenantId() {
+		return tenantId;
+	}
+	public void setTenantId(String tenantId) {
+		this.tenantId = tenantId;
+	}
 	public String getRequesterKey(){
 		return requesterKey;
 	}
@@ -1,10 +1,31 @@
 package org.lightj.session.dal.rdbms;
 
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
 import org.lightj.dal.AbstractDAO;
 import org.lightj.dal.BaseSequenceEnum;
+import org.lightj.dal.ConnectionHelper;
 import org.lightj.dal.DataAccessException;
 import org.lightj.dal.DataAccessRuntimeException;
+import org.lightj.dal.IDataAccess.IResultSetHandler;
 import org.lightj.dal.Query;
+import org.lightj.session.FlowCount;
 import org.lightj.session.FlowResult;
 import org.lightj.session.FlowState;
 import org.lightj.session.FlowType;
@@ -14,13 +35,35 @@ import org.lightj.util.DBUtil;
 import org.lightj.util.StringUtil;
 
 /**
- * session data manager implementation
+ * session data manager implementation, 
+ * a flow is stored as an immutable descriptor row in {@link SessionDataImpl#TABLENAME} written once on creation,
+ * and a narrow state row in {@link SessionDataImpl#STATE_TABLENAME} rewritten on every transition,
+ * reads go through the {@link SessionDataImpl#VIEWNAME} view joining the two
+ * 
  * @author biyu
  *
  */
 public class SessionDataManagerImpl extends AbstractDAO<SessionDataImpl> implements ISessionDataManager<SessionDataImpl, Query> {
 
+	/** descriptor columns, never change after creation */
+	private static final String[] DESC_COLS = new String[] {"flow_id", "flow_key", "creation_date", "target", "flow_type", 
+		"parent_id", "requester", "tenant_id"};
+	
+	/** state columns, change with transitions */
+	private static final String[] STATE_COLS = new String[] {"flow_id", "end_date", "flow_status", "current_action", 
+		"next_action", "flow_state", "flow_result", "last_modified", "run_by"};
+	
 	private static final SessionDataManagerImpl me = new SessionDataManagerImpl();
+	
+	/** max number of values in one sql in list */
+	private static final int IN_LIST_SIZE = 500;
+
+	/** column types and getters of descriptor and state columns */
+	private Class[] descTypes, stateTypes;
+	private Method[] descGetters, stateGetters;
+	
+	/** sqls writing descriptor and state */
+	private final String insertDescSql, insertStateSql, updateStateSql, deleteStateSql;
 
 	public static final SessionDataManagerImpl getInstance() {
 		return me;
@@ -28,12 +71,191 @@ public class SessionDataManagerImpl extends AbstractDAO<SessionDataImpl> impleme
 
 	private SessionDataManagerImpl() {
 		super();
-		register(SessionDataImpl.class, SessionDataImpl.TABLENAME, null, BaseSequenceEnum.SEQ_FLOW_ID,
+		register(SessionDataImpl.class, SessionDataImpl.VIEWNAME, null, BaseSequenceEnum.SEQ_FLOW_ID,
 		new String[] {"flow_id", "flow_key", "creation_date","end_date", "flow_status","target","flow_type", "parent_id",
-			"current_action", "next_action", "flow_state", "flow_result", "last_modified", "run_by","requester"},
+			"current_action", "next_action", "flow_state", "flow_result", "last_modified", "run_by","requester", "tenant_id"},
 		new String[] {"flowId", "flowKey", "creationDate", "endDate", "status", "targetKey", "type", "parentId",
-			"currentAction", "nextAction", "actionStatus", "resultStatus", "lastModified", "runBy","requesterKey"} 
+			"currentAction", "nextAction", "actionStatus", "resultStatus", "lastModified", "runBy","requesterKey", "tenantId"} 
 		);
+		List<String> allCols = Arrays.asList(colNames);
+		descTypes = new Class[DESC_COLS.length];
+		descGetters = new Method[DESC_COLS.length];
+		for (int i = 0; i < DESC_COLS.length; i++) {
+			descTypes[i] = colTypes[allCols.indexOf(DESC_COLS[i])];
+			descGetters[i] = getters[allCols.indexOf(DESC_COLS[i])];
+		}
+		stateTypes = new Class[STATE_COLS.length];
+		stateGetters = new Method[STATE_COLS.length];
+		for (int i = 0; i < STATE_COLS.length; i++) {
+			stateTypes[i] = colTypes[allCols.indexOf(STATE_COLS[i])];
+			stateGetters[i] = getters[allCols.indexOf(STATE_COLS[i])];
+		}
+		// primary key binds last, as in other statements of the dao
+		List<String> descCols = Arrays.asList(DESC_COLS).subList(1, DESC_COLS.length);
+		List<String> stateCols = Arrays.asList(STATE_COLS).subList(1, STATE_COLS.length);
+		insertDescSql = "INSERT INTO " + SessionDataImpl.TABLENAME + " (" + StringUtil.join(descCols.toArray(), ",") + ",flow_id) VALUES (" 
+				+ StringUtil.join(Collections.nCopies(DESC_COLS.length, "?").toArray(), ",") + ")";
+		insertStateSql = "INSERT INTO " + SessionDataImpl.STATE_TABLENAME + " (" + StringUtil.join(stateCols.toArray(), ",") + ",flow_id) VALUES ("
+				+ StringUtil.join(Collections.nCopies(STATE_COLS.length, "?").toArray(), ",") + ")";
+		updateStateSql = "UPDATE " + SessionDataImpl.STATE_TABLENAME + " SET " + StringUtil.join(stateCols.toArray(), "=?,") 
+				+ "=? WHERE flow_id=?";
+		deleteStateSql = "DELETE FROM " + SessionDataImpl.STATE_TABLENAME + " WHERE flow_id=?";
+		delSql = "DELETE FROM " + SessionDataImpl.TABLENAME + " WHERE flow_id=?";
+	}
+	
+	/**
+	 * insert descriptor and initial state
+	 */
+	@Override
+	protected void insert(SessionDataImpl data) throws DataAccessException {
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		try {
+			beforeInsert(data);
+			conn = ConnectionHelper.getConnection(getDbEnum());
+			long nextVal = getDbEnum().getNextValue(conn, sequence);
+			pstmt = conn.prepareStatement(insertDescSql);
+			pstmt.setLong(DESC_COLS.length, nextVal);
+			object2Stmt(data, pstmt, DESC_COLS, descTypes, descGetters);
+			pstmt.executeUpdate();
+			pstmt.close();
+			if (isNull(Long.class, nextVal)) {
+				// db with auto_increment column
+				nextVal = getDbEnum().getCurrentValue(conn, sequence);
+			}
+			data.setFlowId(nextVal);
+			
+			pstmt = conn.prepareStatement(insertStateSql);
+			pstmt.setLong(STATE_COLS.length, nextVal);
+			object2Stmt(data, pstmt, STATE_COLS, stateTypes, stateGetters);
+			pstmt.executeUpdate();
+			afterInsert(data);
+		} catch (Exception e) {
+			logger.error("Exception inserting " + doKlass.getName() + " because " + e.getMessage());
+			throw new DataAccessException(e);
+		} finally {
+			ConnectionHelper.cleanupDBResources(null, pstmt, conn);
+		}
+	}
+
+	/**
+	 * only state changes after creation
+	 */
+	@Override
+	protected void update(SessionDataImpl data) throws DataAccessException {
+		beforeUpdate(data);
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		try {
+			conn = ConnectionHelper.getConnection(getDbEnum());
+			pstmt = conn.prepareStatement(updateStateSql);
+			object2Stmt(data, pstmt, STATE_COLS, stateTypes, stateGetters);
+			pstmt.setLong(STATE_COLS.length, data.getPrimaryKey());
+			pstmt.executeUpdate();
+		} catch (Exception e) {
+			logger.error("Exception updating " + doKlass.getName() + " because " + e.getMessage());
+			throw new DataAccessException(e);
+		} finally {
+			ConnectionHelper.cleanupDBResources(null, pstmt, conn);
+		}
+		afterUpdate(data);
+	}
+	
+	/**
+	 * delete state then descriptor
+	 */
+	@Override
+	public void delete(SessionDataImpl data) throws DataAccessException {
+		if (isPersistent(data)) {
+			try {
+				ConnectionHelper.executeUpdate(getDbEnum(), deleteStateSql, new Object[] {data.getPrimaryKey()});
+			} catch (SQLException e) {
+				throw new DataAccessException(e);
+			}
+		}
+		super.delete(data);
+	}
+
+	/**
+	 * delete states then descriptors of the ids, a chunk at a time
+	 */
+	@Override
+	public void deleteByIds(Collection<Long> ids) throws DataAccessException {
+		List<Long> idList = new ArrayList<Long>(ids);
+		try {
+			for (int i = 0; i < idList.size(); i += IN_LIST_SIZE) {
+				Object[] chunk = idList.subList(i, Math.min(i + IN_LIST_SIZE, idList.size())).toArray();
+				String in = " WHERE flow_id IN (" + StringUtil.join(Collections.nCopies(chunk.length, "?").toArray(), ",") + ")";
+				ConnectionHelper.executeUpdate(getDbEnum(), "DELETE FROM " + SessionDataImpl.STATE_TABLENAME + in, chunk);
+				ConnectionHelper.executeUpdate(getDbEnum(), "DELETE FROM " + SessionDataImpl.TABLENAME + in, chunk);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+
+	/**
+	 * batch insert descriptors and states, batch update states, 
+	 * falls back to one by one insert when the db assigns ids on insert
+	 */
+	@Override
+	public void saveBatch(Collection<SessionDataImpl> datas) throws DataAccessException {
+		Connection conn = null;
+		PreparedStatement psDesc = null, psState = null, psUpdate = null;
+		List<SessionDataImpl> autoIncrements = new ArrayList<SessionDataImpl>();
+		try {
+			conn = ConnectionHelper.getConnection(getDbEnum());
+			psDesc = conn.prepareStatement(insertDescSql);
+			psState = conn.prepareStatement(insertStateSql);
+			psUpdate = conn.prepareStatement(updateStateSql);
+			boolean hasInsert = false, hasUpdate = false;
+			for (SessionDataImpl data : datas) {
+				if (isPersistent(data)) {
+					object2Stmt(data, psUpdate, STATE_COLS, stateTypes, stateGetters);
+					psUpdate.setLong(STATE_COLS.length, data.getPrimaryKey());
+					psUpdate.addBatch();
+					hasUpdate = true;
+					continue;
+				}
+				long nextVal = getDbEnum().getNextValue(conn, sequence);
+				if (isNull(Long.class, nextVal)) {
+					autoIncrements.add(data);
+					continue;
+				}
+				data.setFlowId(nextVal);
+				psDesc.setLong(DESC_COLS.length, nextVal);
+				object2Stmt(data, psDesc, DESC_COLS, descTypes, descGetters);
+				psDesc.addBatch();
+				psState.setLong(STATE_COLS.length, nextVal);
+				object2Stmt(data, psState, STATE_COLS, stateTypes, stateGetters);
+				psState.addBatch();
+				hasInsert = true;
+			}
+			if (hasInsert) {
+				// descriptors first, state rows reference them
+				psDesc.executeBatch();
+				psState.executeBatch();
+			}
+			if (hasUpdate) psUpdate.executeBatch();
+		} catch (Exception e) {
+			logger.error("Exception batch saving " + doKlass.getName() + " because " + e.getMessage());
+			throw new DataAccessException(e);
+		} finally {
+			ConnectionHelper.cleanupDBResources(null, psDesc, null);
+			ConnectionHelper.cleanupDBResources(null, psState, null);
+			ConnectionHelper.cleanupDBResources(null, psUpdate, conn);
+		}
+		for (SessionDataImpl data : autoIncrements) {
+			insert(data);
+		}
+	}
+	
+	/**
+	 * page of flows after given id
+	 */
+	@Override
+	public List<SessionDataImpl> findAfterId(long afterId, int limit) throws DataAccessException {
+		return search(new Query().and("flow_id", ">", afterId).orderBy("flow_id").setTop(limit).setFetchSize(limit));
 	}
 
 	/**
@@ -84,6 +306,13 @@ public class SessionDataManagerImpl extends AbstractDAO<SessionDataImpl> impleme
 		return q;
 	}
 
+	@Override
+	public Query queryAllIncompleteChildFlows() {
+		Query q = newQuery();
+		q.and("parent_id is not null").and("end_date is null");
+		return q;
+	}
+
 	@Override
 	public Query queryIncompleteSessionsLike(ISessionData me) {
 		Query query = newQuery();
@@ -123,7 +352,130 @@ public class SessionDataManagerImpl extends AbstractDAO<SessionDataImpl> impleme
 		if (targetKey != null) {
 			query.and("target", "=", targetKey);
 		}
-		return null;
+		return query;
+	}
+
+	@Override
+	public Query queryByKeys(Query query, Collection<String> keys) {
+		Query q = narrow(query);
+		q.and("flow_key", "IN", new ArrayList<String>(keys));
+		return q;
+	}
+
+	@Override
+	public Query queryRunByOthers(Query query, String runBy) {
+		Query q = narrow(query);
+		q.and("end_date is null").and("run_by is not null").and("run_by", "<>", runBy);
+		return q;
+	}
+
+	@Override
+	public List<FlowCount> bulkUpdateState(Query query, Collection<String> excludeKeys, String runBy, 
+			FlowState toState, FlowResult toResult, String status) throws DataAccessException 
+	{
+		Query q = narrow(query);
+		q.and("end_date is null").and("flow_state", "<>", toState.name())
+		 .and("(run_by is null or run_by = ?)", runBy);
+		// excluded keys are dropped as the candidates are read, rather than a not in list as long as the keys
+		final Set<String> excluded = new HashSet<String>(excludeKeys);
+		
+		// candidate ids by the (type, state, result) bucket they are in before the change
+		final String unknown = FlowResult.Unknown.name();
+		String rs = "coalesce(flow_result, '" + unknown + "')";
+		String idSql = "select flow_id, flow_type, flow_state, " + rs + ", flow_key from " + tableName + q.daoString();
+		final Map<String, FlowCount> buckets = new LinkedHashMap<String, FlowCount>();
+		final Map<String, List<Long>> bucketIds = new HashMap<String, List<Long>>();
+		
+		// the change itself, on state rows only
+		StringBuffer updateSql = new StringBuffer("update ").append(SessionDataImpl.STATE_TABLENAME)
+				.append(" set flow_state = ?, last_modified = ?");
+		List<Object> args = new ArrayList<Object>();
+		args.add(toState.name());
+		args.add(new Timestamp(System.currentTimeMillis()));
+		if (toResult != null) {
+			updateSql.append(", flow_result = ?");
+			args.add(toResult.name());
+		}
+		if (status != null) {
+			updateSql.append(", flow_status = ?");
+			args.add(status);
+		}
+		if (toState.isComplete()) {
+			updateSql.append(", end_date = ?, next_action = null");
+			args.add(new Timestamp(System.currentTimeMillis()));
+		}
+		// state rows are updated by id, the query may need the descriptor columns of the view
+		// and the view can not be the target of the update, a row only changes if it is still in the bucket it was read in,
+		// so the counters move by exactly the rows changed even if some flows transitioned in between
+		updateSql.append(" where end_date is null and flow_state = ? and ").append(rs)
+				.append(" = ? and (run_by is null or run_by = ?) and flow_id in (");
+		
+		try {
+			ConnectionHelper.executeQuery(dbEnum, idSql, q.getArgs().toArray(), new IResultSetHandler() {
+				
+				@Override
+				public void next(Connection conn, ResultSet rs) throws SQLException, DataAccessException {
+					if (excluded.contains(rs.getString(5))) {
+						return;
+					}
+					String bucket = rs.getString(2) + '|' + rs.getString(3) + '|' + rs.getString(4);
+					if (!buckets.containsKey(bucket)) {
+						buckets.put(bucket, new FlowCount(rs.getString(2), FlowState.valueOf(rs.getString(3)), 
+								FlowResult.valueOf(rs.getString(4)), 0));
+						bucketIds.put(bucket, new ArrayList<Long>());
+					}
+					bucketIds.get(bucket).add(rs.getLong(1));
+				}
+				
+				@Override
+				public void handleEmptyResult() throws DataAccessException {
+				}
+				
+				@Override
+				public void postProcess(Connection conn) throws SQLException, DataAccessException {
+				}
+			});
+			List<FlowCount> changed = new ArrayList<FlowCount>();
+			long total = 0;
+			for (Entry<String, FlowCount> entry : buckets.entrySet()) {
+				FlowCount bucket = entry.getValue();
+				List<Long> ids = bucketIds.get(entry.getKey());
+				int updated = 0;
+				for (int i = 0; i < ids.size(); i += IN_LIST_SIZE) {
+					List<Long> chunk = ids.subList(i, Math.min(i + IN_LIST_SIZE, ids.size()));
+					List<Object> chunkArgs = new ArrayList<Object>(args);
+					chunkArgs.add(bucket.getFlowState().name());
+					chunkArgs.add(bucket.getFlowResult().name());
+					chunkArgs.add(runBy);
+					chunkArgs.addAll(chunk);
+					updated += ConnectionHelper.executeUpdate(dbEnum, updateSql.toString() 
+							+ StringUtil.join(Collections.nCopies(chunk.size(), "?").toArray(), ",") + ")", chunkArgs.toArray());
+				}
+				if (updated > 0) {
+					changed.add(new FlowCount(bucket.getFlowType(), bucket.getFlowState(), bucket.getFlowResult(), updated));
+					total += updated;
+				}
+			}
+			if (total > 0) {
+				logger.info(String.format("bulk updated %s flows to %s", total, toState));
+			}
+			return changed;
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
+	
+	/**
+	 * copy of a query with its where clause in parentheses, so more conditions can be safely added
+	 * @param query
+	 * @return
+	 */
+	private Query narrow(Query query) {
+		Query q = newQuery();
+		if (query != null && query.subqueryDaoString().trim().length() > 0) {
+			q.and("(" + query.subqueryDaoString() + ")", query.getArgs());
+		}
+		return q;
 	}
 
 	@Override
@@ -1,14 +1,20 @@
 package org.lightj.session.dal.rdbms;
 
 import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.lightj.dal.AbstractDAO;
 import org.lightj.dal.BaseSequenceEnum;
+import org.lightj.dal.ConnectionHelper;
 import org.lightj.dal.DataAccessException;
 import org.lightj.dal.DataAccessRuntimeException;
 import org.lightj.dal.Query;
 import org.lightj.session.dal.ISessionMetaDataManager;
+import org.lightj.util.StringUtil;
 
 /**
  * {@link ISessionMetaDataManager} implementation
@@ -18,6 +24,9 @@ import org.lightj.session.dal.ISessionMetaDataManager;
 @SuppressWarnings("rawtypes")
 public class SessionMetaDataManagerImpl extends AbstractDAO<SessionMetaDataImpl> implements ISessionMetaDataManager<SessionMetaDataImpl, Query> {
 
+	/** max number of values in one IN list */
+	private static final int IN_LIST_SIZE = 500;
+
 	private static SessionMetaDataManagerImpl me = new SessionMetaDataManagerImpl();
 	
 	public static SessionMetaDataManagerImpl getInstance() {
@@ -58,6 +67,30 @@ public class SessionMetaDataManagerImpl extends AbstractDAO<SessionMetaDataImpl>
 		return smMetaDos;
 	}
 
+	@Override
+	public List<SessionMetaDataImpl> findByFlowIds(Collection<Long> sessionIds) throws DataAccessException {
+		List<SessionMetaDataImpl> smMetaDos = new ArrayList<SessionMetaDataImpl>();
+		List<Long> ids = new ArrayList<Long>(sessionIds);
+		for (int i = 0; i < ids.size(); i += IN_LIST_SIZE) {
+			List<Long> chunk = ids.subList(i, Math.min(i + IN_LIST_SIZE, ids.size()));
+			smMetaDos.addAll(search(new Query().and("flow_id", "IN", new ArrayList<Long>(chunk))));
+		}
+		return smMetaDos;
+	}
+
+	@Override
+	public void deleteByFlowIds(Collection<Long> sessionIds) throws DataAccessException {
+		List<Long> ids = new ArrayList<Long>(sessionIds);
+		try {
+			for (int i = 0; i < ids.size(); i += IN_LIST_SIZE) {
+				Object[] chunk = ids.subList(i, Math.min(i + IN_LIST_SIZE, ids.size())).toArray();
+				ConnectionHelper.executeUpdate(getDbEnum(), "DELETE FROM " + tableName + " WHERE flow_id IN (" 
+						+ StringUtil.join(Collections.nCopies(chunk.length, "?").toArray(), ",") + ")", chunk);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+	}
 
 	static final String[] UNX_COLS = {"flow_id", "NAME"};
 	@Override
@@ -0,0 +1,97 @@
+package org.lightj.session.dal.rdbms;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.lightj.dal.BaseDatabaseType;
+import org.lightj.dal.ConnectionHelper;
+import org.lightj.dal.DataAccessException;
+import org.lightj.dal.IDataAccess.IResultSetHandler;
+import org.lightj.session.dal.ISessionScheduleManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * schedule fire times backed by FLOW_SESSION_SCHEDULE table, 
+ * a fire is claimed with a conditional update so only one node wins it
+ * 
+ * @author binyu
+ *
+ */
+public class SessionScheduleManagerImpl implements ISessionScheduleManager {
+	
+	/** logger */
+	static Logger logger = LoggerFactory.getLogger(SessionScheduleManagerImpl.class);
+	
+	public static final String TABLENAME = "FLOW_SESSION_SCHEDULE";
+	
+	static final String selectSql = "select last_fire from " + TABLENAME + " where schedule_name = ?";
+	static final String updateSql = "update " + TABLENAME + " set flow_type = ?, last_fire = ? where schedule_name = ? and last_fire < ?";
+	static final String insertSql = "insert into " + TABLENAME + " (schedule_name, flow_type, last_fire) values (?,?,?)";
+
+	private static final SessionScheduleManagerImpl me = new SessionScheduleManagerImpl();
+
+	public static final SessionScheduleManagerImpl getInstance() {
+		return me;
+	}
+	
+	/** database */
+	private BaseDatabaseType dbEnum;
+	
+	private SessionScheduleManagerImpl() {}
+
+	@Override
+	public Date getLastFireTime(String scheduleName) throws DataAccessException {
+		final Date[] lastFire = new Date[1];
+		try {
+			ConnectionHelper.executeQuery(dbEnum, selectSql, new Object[] {scheduleName}, new IResultSetHandler() {
+				
+				@Override
+				public void next(Connection conn, ResultSet rs) throws SQLException, DataAccessException {
+					Timestamp ts = rs.getTimestamp(1);
+					lastFire[0] = ts != null ? new Date(ts.getTime()) : null;
+				}
+				
+				@Override
+				public void handleEmptyResult() throws DataAccessException {
+				}
+				
+				@Override
+				public void postProcess(Connection conn) throws SQLException, DataAccessException {
+				}
+			});
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+		return lastFire[0];
+	}
+
+	@Override
+	public boolean claimFire(String scheduleName, String flowType, Date fireTime) throws DataAccessException {
+		Timestamp ts = new Timestamp(fireTime.getTime());
+		try {
+			if (ConnectionHelper.executeUpdate(dbEnum, updateSql, new Object[] {flowType, ts, scheduleName, ts}) > 0) {
+				return true;
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(e);
+		}
+		try {
+			ConnectionHelper.executeUpdate(dbEnum, insertSql, new Object[] {scheduleName, flowType, ts});
+			return true;
+		} catch (SQLException e) {
+			// row exists with a later or same fire time, fired by someone else
+			logger.debug("schedule " + scheduleName + " already fired " + e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public void setDbEnum(BaseDatabaseType dbEnum) {
+		this.dbEnum = dbEnum;
+	}
+
+}
@@ -0,0 +1,436 @@
+package org.lightj.session.eventlistener;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.lightj.session.FlowEvent;
+import org.lightj.session.FlowSession;
+import org.lightj.session.IFlowEventListener;
+import org.lightj.session.step.IFlowStep;
+import org.lightj.session.step.StepLog;
+import org.lightj.session.step.StepLog.TaskLog;
+import org.lightj.session.step.StepTransition;
+import org.lightj.task.TaskResultEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * append completed flows to local columnar files for offline analysis, one row per step executed,
+ * read back with {@link ColumnarFlowReader} scanning only the columns needed.
+ *
+ * rows are buffered into chunks, each chunk stores column after column with its byte length
+ * so readers can skip columns, strings are dictionary encoded per chunk.
+ * a new file is started every rotation period.
+ * rows are handed to one background writer, so flows stopping on driver threads do no file I/O,
+ * {@link #close()} writes whatever is pending.
+ *
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class ColumnarFlowExporter implements IFlowEventListener {
+
+	static Logger logger = LoggerFactory.getLogger(ColumnarFlowExporter.class);
+
+	/** file header */
+	static final int MAGIC = 0x4c4a434f;
+	static final int VERSION = 1;
+	static final String SUFFIX = ".col";
+
+	/** column value types */
+	public static enum ColumnType {
+		STRING, LONG, INT
+	}
+
+	/** columns, in file order */
+	public static enum Column {
+		FLOW_TYPE(ColumnType.STRING),
+		FLOW_KEY(ColumnType.STRING),
+		FLOW_STATE(ColumnType.STRING),
+		FLOW_RESULT(ColumnType.STRING),
+		STEP_NAME(ColumnType.STRING),
+		STEP_START(ColumnType.LONG),
+		STEP_END(ColumnType.LONG),
+		STEP_ATTEMPT(ColumnType.INT),
+		TASK_COUNT(ColumnType.INT),
+		TASK_FAILURES(ColumnType.INT);
+
+		final ColumnType type;
+		Column(ColumnType type) {
+			this.type = type;
+		}
+		public ColumnType getType() {
+			return type;
+		}
+	}
+
+	/** default rows per chunk */
+	public static final int DEFAULT_CHUNK_ROWS = 4096;
+
+	/** where and how often to rotate */
+	private final File dir;
+	private final String prefix;
+	private final long rotateMillis;
+	private final int chunkRows;
+
+	/** does all the encoding and file I/O, rows and files are only touched from it */
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "flow-exporter");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/** current chunk, one array per column */
+	private final Object[] values;
+	private int rows = 0;
+
+	/** current file */
+	private long window = -1;
+	private DataOutputStream out;
+
+	/** reused to encode one column */
+	private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+	/**
+	 * constructor
+	 * @param dir			directory of the files
+	 * @param prefix		file name prefix
+	 * @param rotateMillis	a new file every period
+	 */
+	public ColumnarFlowExporter(File dir, String prefix, long rotateMillis) {
+		this(dir, prefix, rotateMillis, DEFAULT_CHUNK_ROWS);
+	}
+
+	/**
+	 * constructor
+	 * @param dir			directory of the files
+	 * @param prefix		file name prefix
+	 * @param rotateMillis	a new file every period
+	 * @param chunkRows		rows buffered before written as one chunk
+	 */
+	public ColumnarFlowExporter(File dir, String prefix, long rotateMillis, int chunkRows) {
+		this.dir = dir;
+		this.prefix = prefix;
+		this.rotateMillis = rotateMillis;
+		this.chunkRows = chunkRows;
+		Column[] columns = Column.values();
+		this.values = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			switch (columns[i].type) {
+			case STRING:
+				values[i] = new String[chunkRows];
+				break;
+			case LONG:
+				values[i] = new long[chunkRows];
+				break;
+			case INT:
+				values[i] = new int[chunkRows];
+				break;
+			}
+		}
+	}
+
+	public void handleError(Throwable t, FlowSession session) {
+		// noop
+	}
+
+	/**
+	 * export rows of the flow when it stops
+	 */
+	public void handleFlowEvent(FlowEvent event, FlowSession session, String msg) {
+		switch (event) {
+		case stop:
+			append(session);
+			break;
+		default:
+		}
+	}
+
+	public void handleStepEvent(FlowEvent event, FlowSession session, IFlowStep flowStep, StepTransition stepTransition) {
+		// noop
+	}
+
+	/**
+	 * queue one row per executed step of the flow to the writer
+	 * @param session
+	 */
+	public void append(FlowSession session) {
+		LinkedHashMap<String, StepLog> stepLogs = session.getExecutionLogs();
+		if (stepLogs != null) {
+			enqueue(session.getFlowType() != null ? session.getFlowType().value() : null, session.getKey(),
+					session.getState() != null ? session.getState().name() : null,
+					session.getResult() != null ? session.getResult().name() : null, stepLogs.values());
+		}
+	}
+
+	/**
+	 * queue rows of a flow to the writer, values are taken now
+	 * @param flowType
+	 * @param flowKey
+	 * @param flowState
+	 * @param flowResult
+	 * @param stepLogs
+	 */
+	void enqueue(final String flowType, final String flowKey, final String flowState, final String flowResult, 
+			Collection<StepLog> stepLogs) 
+	{
+		final List<StepLog> logs = new ArrayList<StepLog>(stepLogs);
+		try {
+			writer.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						append(flowType, flowKey, flowState, flowResult, logs);
+					} catch (IOException e) {
+						logger.error("Failed to export flow " + flowKey + " because " + e.getMessage());
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.warn("Flow " + flowKey + " not exported, exporter closed");
+		}
+	}
+
+	/**
+	 * add one row per step log of a flow
+	 * @param flowType
+	 * @param flowKey
+	 * @param flowState
+	 * @param flowResult
+	 * @param stepLogs
+	 * @throws IOException
+	 */
+	private void append(String flowType, String flowKey, String flowState, String flowResult, 
+			Collection<StepLog> stepLogs) throws IOException 
+	{
+		rotate(System.currentTimeMillis());
+		Map<String, Integer> attempts = new HashMap<String, Integer>();
+		for (StepLog stepLog : stepLogs) {
+			Integer attempt = attempts.get(stepLog.getStepName());
+			attempt = (attempt != null ? attempt + 1 : 1);
+			attempts.put(stepLog.getStepName(), attempt);
+			int failures = 0;
+			for (TaskLog taskLog : stepLog.getTasks().values()) {
+				if (taskLog.getResult() != null && !TaskResultEnum.Success.name().equals(taskLog.getResult())) {
+					failures++;
+				}
+			}
+			((String[]) values[Column.FLOW_TYPE.ordinal()])[rows] = flowType;
+			((String[]) values[Column.FLOW_KEY.ordinal()])[rows] = flowKey;
+			((String[]) values[Column.FLOW_STATE.ordinal()])[rows] = flowState;
+			((String[]) values[Column.FLOW_RESULT.ordinal()])[rows] = flowResult;
+			((String[]) values[Column.STEP_NAME.ordinal()])[rows] = stepLog.getStepName();
+			((long[]) values[Column.STEP_START.ordinal()])[rows] = stepLog.getStartTime() != null ? stepLog.getStartTime().getTime() : -1;
+			((long[]) values[Column.STEP_END.ordinal()])[rows] = stepLog.getEndTime() != null ? stepLog.getEndTime().getTime() : -1;
+			((int[]) values[Column.STEP_ATTEMPT.ordinal()])[rows] = attempt;
+			((int[]) values[Column.TASK_COUNT.ordinal()])[rows] = stepLog.getTasks().size();
+			((int[]) values[Column.TASK_FAILURES.ordinal()])[rows] = failures;
+			if (++rows >= chunkRows) {
+				writeChunk();
+			}
+		}
+	}
+
+	/**
+	 * write rows queued so far out, waits for the writer
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		runOnWriter(new Callable<Void>() {
+			
+			@Override
+			public Void call() throws IOException {
+				writeChunk();
+				if (out != null) {
+					out.flush();
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * write rows queued so far and close current file, rows of flows stopping after are dropped
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			runOnWriter(new Callable<Void>() {
+				
+				@Override
+				public Void call() throws IOException {
+					closeFile();
+					return null;
+				}
+			});
+		} finally {
+			writer.shutdown();
+		}
+	}
+	
+	/**
+	 * run work on the writer after what is queued, and wait for it
+	 * @param work
+	 * @throws IOException
+	 */
+	private void runOnWriter(Callable<Void> work) throws IOException {
+		try {
+			writer.submit(work).get();
+		} catch (RejectedExecutionException e) {
+			// closed already, nothing pending
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for flow exporter");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * write buffered rows and close current file
+	 * @throws IOException
+	 */
+	private void closeFile() throws IOException {
+		writeChunk();
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		window = -1;
+	}
+
+	/**
+	 * switch to the file of the current period if needed
+	 * @param now
+	 * @throws IOException
+	 */
+	private void rotate(long now) throws IOException {
+		long current = now - (now % rotateMillis);
+		if (current == window && out != null) {
+			return;
+		}
+		closeFile();
+		File file = new File(dir, prefix + '-' + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date(current)) + SUFFIX);
+		boolean isNew = !file.exists() || file.length() == 0;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		window = current;
+		if (isNew) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			Column[] columns = Column.values();
+			out.writeInt(columns.length);
+			for (Column column : columns) {
+				out.writeUTF(column.name());
+				out.writeByte(column.type.ordinal());
+			}
+		}
+	}
+
+	/**
+	 * write buffered rows as one chunk, row count followed by length prefixed columns
+	 * @throws IOException
+	 */
+	private void writeChunk() throws IOException {
+		if (rows == 0 || out == null) {
+			return;
+		}
+		out.writeInt(rows);
+		Column[] columns = Column.values();
+		for (int i = 0; i < columns.length; i++) {
+			buf.reset();
+			DataOutputStream col = new DataOutputStream(buf);
+			switch (columns[i].type) {
+			case STRING:
+				writeDictionary(col, (String[]) values[i], rows);
+				break;
+			case LONG:
+				long[] longs = (long[]) values[i];
+				for (int r = 0; r < rows; r++) {
+					col.writeLong(longs[r]);
+				}
+				break;
+			case INT:
+				int[] ints = (int[]) values[i];
+				for (int r = 0; r < rows; r++) {
+					col.writeInt(ints[r]);
+				}
+				break;
+			}
+			col.flush();
+			out.writeInt(buf.size());
+			buf.writeTo(out);
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].type == ColumnType.STRING) {
+				// drop references
+				String[] strs = (String[]) values[i];
+				for (int r = 0; r < rows; r++) {
+					strs[r] = null;
+				}
+			}
+		}
+		rows = 0;
+	}
+
+	/**
+	 * distinct values, then per row index into them, -1 for null
+	 * @param col
+	 * @param strs
+	 * @param rows
+	 * @throws IOException
+	 */
+	static void writeDictionary(DataOutputStream col, String[] strs, int rows) throws IOException {
+		Map<String, Integer> dict = new LinkedHashMap<String, Integer>();
+		for (int r = 0; r < rows; r++) {
+			if (strs[r] != null && !dict.containsKey(strs[r])) {
+				dict.put(strs[r], dict.size());
+			}
+		}
+		col.writeInt(dict.size());
+		for (Entry<String, Integer> entry : dict.entrySet()) {
+			byte[] bytes = entry.getKey().getBytes("UTF-8");
+			col.writeInt(bytes.length);
+			col.write(bytes);
+		}
+		for (int r = 0; r < rows; r++) {
+			col.writeInt(strs[r] != null ? dict.get(strs[r]) : -1);
+		}
+	}
+
+	/**
+	 * files written so far, in time order
+	 * @return
+	 */
+	public List<File> getFiles() {
+		return ColumnarFlowReader.listFiles(dir, prefix);
+	}
+
+}
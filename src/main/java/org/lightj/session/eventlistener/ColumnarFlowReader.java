@@ -0,0 +1,172 @@
+package org.lightj.session.eventlistener;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.lightj.session.eventlistener.ColumnarFlowExporter.Column;
+import org.lightj.session.eventlistener.ColumnarFlowExporter.ColumnType;
+
+/**
+ * scan files written by {@link ColumnarFlowExporter}, only the requested columns are decoded, others are skipped
+ *
+ * @author binyu
+ *
+ */
+public class ColumnarFlowReader {
+
+	/**
+	 * receives decoded chunks
+	 */
+	public interface ChunkHandler {
+
+		/**
+		 * one chunk of rows, values are String[], long[] or int[] by column type
+		 * @param rows
+		 * @param values
+		 */
+		public void handleChunk(int rows, Map<Column, Object> values);
+	}
+
+	/**
+	 * scan all files of the prefix in the directory
+	 * @param dir
+	 * @param prefix
+	 * @param columns
+	 * @param handler
+	 * @throws IOException
+	 */
+	public static void scan(File dir, String prefix, EnumSet<Column> columns, ChunkHandler handler) throws IOException {
+		for (File file : listFiles(dir, prefix)) {
+			scan(file, columns, handler);
+		}
+	}
+
+	/**
+	 * scan one file
+	 * @param file
+	 * @param columns
+	 * @param handler
+	 * @throws IOException
+	 */
+	public static void scan(File file, EnumSet<Column> columns, ChunkHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != ColumnarFlowExporter.MAGIC) {
+				throw new IOException("Not a flow column file " + file);
+			}
+			int version = in.readInt();
+			if (version != ColumnarFlowExporter.VERSION) {
+				throw new IOException("Unsupported flow column file version " + version);
+			}
+			// columns as written, unknown ones are skipped
+			int count = in.readInt();
+			Column[] fileColumns = new Column[count];
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				ColumnType type = ColumnType.values()[in.readByte()];
+				try {
+					fileColumns[i] = Column.valueOf(name);
+					if (fileColumns[i].getType() != type) {
+						fileColumns[i] = null;
+					}
+				} catch (IllegalArgumentException e) {
+					fileColumns[i] = null;
+				}
+			}
+
+			while (true) {
+				int rows;
+				try {
+					rows = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				Map<Column, Object> values = new EnumMap<Column, Object>(Column.class);
+				for (Column column : fileColumns) {
+					int length = in.readInt();
+					if (column == null || !columns.contains(column)) {
+						in.skipBytes(length);
+						continue;
+					}
+					values.put(column, readColumn(in, column.getType(), rows));
+				}
+				handler.handleChunk(rows, values);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * decode one column of a chunk
+	 * @param in
+	 * @param type
+	 * @param rows
+	 * @return
+	 * @throws IOException
+	 */
+	static Object readColumn(DataInputStream in, ColumnType type, int rows) throws IOException {
+		switch (type) {
+		case STRING:
+			String[] dict = new String[in.readInt()];
+			for (int i = 0; i < dict.length; i++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				dict[i] = new String(bytes, "UTF-8");
+			}
+			String[] strs = new String[rows];
+			for (int r = 0; r < rows; r++) {
+				int idx = in.readInt();
+				strs[r] = idx >= 0 ? dict[idx] : null;
+			}
+			return strs;
+		case LONG:
+			long[] longs = new long[rows];
+			for (int r = 0; r < rows; r++) {
+				longs[r] = in.readLong();
+			}
+			return longs;
+		case INT:
+			int[] ints = new int[rows];
+			for (int r = 0; r < rows; r++) {
+				ints[r] = in.readInt();
+			}
+			return ints;
+		}
+		throw new IOException("Unknown column type " + type);
+	}
+
+	/**
+	 * files of the prefix in the directory, in time order
+	 * @param dir
+	 * @param prefix
+	 * @return
+	 */
+	static List<File> listFiles(File dir, final String prefix) {
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.startsWith(prefix + '-') && name.endsWith(ColumnarFlowExporter.SUFFIX);
+			}
+		});
+		List<File> sorted = new ArrayList<File>();
+		if (files != null) {
+			// time stamp in name sorts lexically
+			Arrays.sort(files);
+			sorted.addAll(Arrays.asList(files));
+		}
+		return sorted;
+	}
+
+}
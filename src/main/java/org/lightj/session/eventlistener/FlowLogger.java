@@ -1,6 +1,16 @@
 package org.lightj.session.eventlistener;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.lightj.session.FlowEvent;
+import org.lightj.session.FlowInfo;
 import org.lightj.session.FlowSession;
 import org.lightj.session.FlowSessionFactory;
 import org.lightj.session.IFlowEventListener;
@@ -11,21 +21,123 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * log flow info to external log when flow complete 
- * 
+ * log flow info to external log when flow complete.
+ *
+ * flow stop only queues the flow info, a background writer encodes queued flows in batches into reused buffers,
+ * one json line each, writes each batch to the sink in one go, and deletes the batch of sessions if cleaning up.
+ * when the queue is full the record is dropped rather than blocking the flow, the session is still cleaned up in place
+ *
  * @author binyu
  *
  */
 @SuppressWarnings({"rawtypes"})
 public class FlowLogger implements IFlowEventListener {
-	
+
 	static Logger logger = LoggerFactory.getLogger(FlowLogger.class);
-	
-	private boolean cleanAfterComplete = false;
+
+	/** defaults */
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+	public static final int DEFAULT_BATCH_SIZE = 200;
+
+	/**
+	 * where encoded records go
+	 */
+	public interface Sink {
+
+		/**
+		 * write a batch of newline terminated json records
+		 * @param bytes
+		 * @param length
+		 * @throws IOException
+		 */
+		public void write(byte[] bytes, int length) throws IOException;
+
+		/**
+		 * release resources
+		 * @throws IOException
+		 */
+		public void close() throws IOException;
+	}
+
+	/**
+	 * default sink, one log line per record through the logger
+	 */
+	public static class LoggerSink implements Sink {
+		@Override
+		public void write(byte[] bytes, int length) throws IOException {
+			int start = 0;
+			for (int i = 0; i < length; i++) {
+				if (bytes[i] == '\n') {
+					logger.info(new String(bytes, start, i - start, "UTF-8"));
+					start = i + 1;
+				}
+			}
+		}
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+	/**
+	 * a stopped flow waiting to be logged
+	 */
+	static class Record {
+		final FlowInfo info;
+		final FlowSession session;
+		Record(FlowInfo info, FlowSession session) {
+			this.info = info;
+			this.session = session;
+		}
+	}
+
+	/**
+	 * byte buffer handing out its backing array instead of a copy
+	 */
+	static class Buffer extends ByteArrayOutputStream {
+		Buffer(int size) {
+			super(size);
+		}
+		byte[] bytes() {
+			return buf;
+		}
+	}
+
+	private final boolean cleanAfterComplete;
+	private final Sink sink;
+	private final int batchSize;
+	private final BlockingQueue<Record> queue;
+
+	/** stats */
+	private final AtomicLong logged = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong overflowed = new AtomicLong(0);
+
+	/** background writer */
+	private Thread writer;
+	private volatile boolean running = true;
+
+	/** reused buffers, only touched by the writer */
+	private final Buffer batchBuf = new Buffer(64 * 1024);
+	private final Buffer recordBuf = new Buffer(4 * 1024);
+
 	public FlowLogger(boolean cleanAfterComplete) {
+		this(cleanAfterComplete, new LoggerSink(), DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * constructor
+	 * @param cleanAfterComplete	delete flows once logged
+	 * @param sink					where records go
+	 * @param queueSize				max flows waiting to be logged
+	 * @param batchSize				max flows logged and deleted in one go
+	 */
+	public FlowLogger(boolean cleanAfterComplete, Sink sink, int queueSize, int batchSize) {
 		this.cleanAfterComplete = cleanAfterComplete;
+		this.sink = sink;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<Record>(queueSize);
 	}
-	
+
 	/**
 	 * error event
 	 * @param t
@@ -43,16 +155,16 @@ public class FlowLogger implements IFlowEventListener {
 	public void handleFlowEvent(FlowEvent event, FlowSession session, String msg) {
 		switch (event) {
 		case stop:
-			try {
-				logger.info(JsonUtil.encode(session.getFlowInfo()));
-			} catch (Exception e) {
-				logger.error(e.getMessage());
-			}
-			if (cleanAfterComplete) {
-				FlowSessionFactory.getInstance().deleteSession(session);
+			startWriter();
+			if (!queue.offer(new Record(session.getFlowInfo(), cleanAfterComplete ? session : null))) {
+				overflowed.incrementAndGet();
+				dropped.incrementAndGet();
+				if (cleanAfterComplete) {
+					FlowSessionFactory.getInstance().deleteSession(session);
+				}
 			}
 			break;
-			
+
 		}
 	}
 
@@ -62,7 +174,7 @@ public class FlowLogger implements IFlowEventListener {
 	 * persist session meta if property says so
 	 * persist user log if property says so, this default flow saver only persist step entry event
 	 * persist step log if property says so, this default flow saver only persist step exit event
-	 *  
+	 *
 	 * @param event
 	 * @param session
 	 * @param stepTransition
@@ -71,5 +183,117 @@ public class FlowLogger implements IFlowEventListener {
 	public void handleStepEvent(FlowEvent event, FlowSession session, IFlowStep flowStep, StepTransition stepTransition) {
 		// noop
 	}
-	
+
+	/**
+	 * log what is queued, stop the writer and close the sink
+	 * @param timeoutMs	max time to wait for queued flows to be logged
+	 * @throws InterruptedException
+	 */
+	public void shutdown(long timeoutMs) throws InterruptedException {
+		Thread w;
+		synchronized (this) {
+			running = false;
+			w = writer;
+		}
+		if (w != null) {
+			w.join(timeoutMs);
+		}
+		try {
+			sink.close();
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+
+	/** flows logged */
+	public long getLogged() {
+		return logged.get();
+	}
+
+	/** flows not logged, because the queue was full or they failed to encode or write */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/** flows turned away because the queue was full */
+	public long getOverflowed() {
+		return overflowed.get();
+	}
+
+	/** flows waiting to be logged */
+	public int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * start background writer on first use
+	 */
+	private synchronized void startWriter() {
+		if (writer != null || !running) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				List<Record> batch = new ArrayList<Record>(batchSize);
+				while (running || !queue.isEmpty()) {
+					try {
+						Record first = queue.poll(1, TimeUnit.SECONDS);
+						if (first == null) {
+							continue;
+						}
+						batch.add(first);
+						queue.drainTo(batch, batchSize - 1);
+						write(batch);
+					} catch (InterruptedException e) {
+						break;
+					} catch (Throwable t) {
+						logger.error(null, t);
+					} finally {
+						batch.clear();
+					}
+				}
+			}
+		}, "FlowLogger");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * encode, write and clean up a batch of flows
+	 * @param batch
+	 */
+	private void write(List<Record> batch) {
+		batchBuf.reset();
+		int encoded = 0;
+		List<FlowSession> sessions = new ArrayList<FlowSession>(batch.size());
+		for (Record record : batch) {
+			if (record.session != null) {
+				sessions.add(record.session);
+			}
+			recordBuf.reset();
+			try {
+				JsonUtil.encode(recordBuf, record.info);
+				recordBuf.write('\n');
+				recordBuf.writeTo(batchBuf);
+				encoded++;
+			} catch (IOException e) {
+				dropped.incrementAndGet();
+				logger.error(e.getMessage());
+			}
+		}
+		if (encoded > 0) {
+			try {
+				sink.write(batchBuf.bytes(), batchBuf.size());
+				logged.addAndGet(encoded);
+			} catch (IOException e) {
+				dropped.addAndGet(encoded);
+				logger.error(e.getMessage());
+			}
+		}
+		if (!sessions.isEmpty()) {
+			FlowSessionFactory.getInstance().deleteSessions(sessions);
+		}
+	}
+
 }
@@ -83,6 +83,8 @@ public class FlowSaver implements IFlowEventListener {
 			break;
 		case stepExit:
 			session.getSessionContext().setStepComplete(flowStep.getStepId());
+			// a step left early, by error or timeout, leaves no checkpoint behind
+			session.getSessionContext().clearTaskCheckpoint(flowStep.getStepName());
 			session.getSessionContext().prepareSave();
         	break;
         default:
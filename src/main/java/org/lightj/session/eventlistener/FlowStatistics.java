@@ -19,23 +19,23 @@ public class FlowStatistics {
 	
 	/** progress */
 	private volatile int percentComplete = 0;
-	/** step to progress map */
+	/** step to progress map, progress when step is done */
 	private Map<String, Integer> step2ProgressMap = new HashMap<String, Integer>();
+	/** step to progress when step starts */
+	private Map<String, Integer> step2StartMap = new HashMap<String, Integer>();
 	
 	/** constructor */
 	public FlowStatistics(List<StepPropTuple> stepProps, String currentStep) {
 		int total = 0;
 		for (StepPropTuple stepProp : stepProps) {
 			FlowStepProperties sp = stepProp.prop;
+			step2StartMap.put(stepProp.name, total);
 			total += (sp!=null ? Math.max(0, sp.stepWeight()) : 1);
 			step2ProgressMap.put(stepProp.name, total);
 		}
 		if (total == 0) total = 1; // prevent DIV0
-		for (Entry<String, Integer> entry : step2ProgressMap.entrySet()) {
-			int w = entry.getValue();
-			int p = Double.valueOf(Math.floor(((double)w/(double)total) * 100)).intValue();
-			entry.setValue(p);
-		}
+		toPercent(step2ProgressMap, total);
+		toPercent(step2StartMap, total);
 		if (!StringUtil.isNullOrEmpty(currentStep)) {
 			updatePercentComplete(currentStep);
 		}
@@ -46,6 +46,14 @@ public class FlowStatistics {
 			this.percentComplete = step2ProgressMap.get(step);
 		}
 	}
+	/** update progress from part of current step done, 0 to 1 */
+	public void updatePercentComplete(String step, double fraction) {
+		if (step2ProgressMap.containsKey(step)) {
+			int start = step2StartMap.get(step);
+			int end = step2ProgressMap.get(step);
+			this.percentComplete = start + (int) Math.floor((end - start) * Math.max(0, Math.min(1, fraction)));
+		}
+	}
 	/** update progress with absolute value */
 	public void setPercentComplete(int percentComplete) {
 		this.percentComplete = Math.max(0, Math.min(100, percentComplete));
@@ -54,5 +62,13 @@ public class FlowStatistics {
 	public int getPercentComplete() {
 		return percentComplete;
 	}
+	/** weights to percent of total */
+	private static void toPercent(Map<String, Integer> step2Weight, int total) {
+		for (Entry<String, Integer> entry : step2Weight.entrySet()) {
+			int w = entry.getValue();
+			int p = Double.valueOf(Math.floor(((double)w/(double)total) * 100)).intValue();
+			entry.setValue(p);
+		}
+	}
 
 }
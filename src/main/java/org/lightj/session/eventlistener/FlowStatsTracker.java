@@ -4,7 +4,9 @@ import org.lightj.session.FlowEvent;
 import org.lightj.session.FlowSession;
 import org.lightj.session.IFlowEventListener;
 import org.lightj.session.step.IFlowStep;
+import org.lightj.session.step.StepProgress;
 import org.lightj.session.step.StepTransition;
+import org.lightj.util.StringUtil;
 
 /**
  * track flow progress
@@ -26,6 +28,11 @@ public class FlowStatsTracker implements IFlowEventListener {
 			stat = new FlowStatistics(session.getOrderedStepProperties(), session.getCurrentAction());
 			session.getSessionContext().setPctComplete(0);
 			break;
+		case resume:
+			// recovered or resumed flow, keep progress so far
+			stat = new FlowStatistics(session.getOrderedStepProperties(), null);
+			stat.setPercentComplete(session.getSessionContext().getPctComplete());
+			break;
 		case stop:
 			session.getSessionContext().setPctComplete(100);
 			break;
@@ -35,10 +42,21 @@ public class FlowStatsTracker implements IFlowEventListener {
 
 	public void handleStepEvent(FlowEvent event, FlowSession session,
 			IFlowStep flowStep, StepTransition stepTransition) {
+		if (stat == null || flowStep == null) {
+			return;
+		}
 		if (event == FlowEvent.stepExit) {
 			stat.updatePercentComplete(flowStep.getStepName());
 			session.getSessionContext().setPctComplete(stat.getPercentComplete());
 		}
+		else if (event == FlowEvent.stepOngoing) {
+			// fold task progress of a long step in
+			StepProgress progress = session.getSessionContext().getStepProgress();
+			if (progress != null && StringUtil.equalIgnoreCase(progress.getStepName(), flowStep.getStepName())) {
+				stat.updatePercentComplete(flowStep.getStepName(), progress.getFraction());
+				session.getSessionContext().setPctComplete(stat.getPercentComplete());
+			}
+		}
 	}
 
 }
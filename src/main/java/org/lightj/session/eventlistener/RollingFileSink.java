@@ -0,0 +1,87 @@
+package org.lightj.session.eventlistener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * append flow log records to a file, rolled over to a time stamped file when it reaches max size
+ *
+ * @author binyu
+ *
+ */
+public class RollingFileSink implements FlowLogger.Sink {
+
+	/** where */
+	private final File dir;
+	private final String prefix;
+	private final long maxBytes;
+
+	/** current file */
+	private FileOutputStream out;
+	private long size;
+
+	/**
+	 * constructor
+	 * @param dir		directory of the files
+	 * @param prefix	current file is prefix.log, rolled files prefix-yyyyMMddHHmmssSSS.log
+	 * @param maxBytes	roll when current file would grow beyond
+	 */
+	public RollingFileSink(File dir, String prefix, long maxBytes) {
+		this.dir = dir;
+		this.prefix = prefix;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public synchronized void write(byte[] bytes, int length) throws IOException {
+		if (out == null) {
+			open();
+		}
+		if (size > 0 && size + length > maxBytes) {
+			roll();
+		}
+		out.write(bytes, 0, length);
+		out.flush();
+		size += length;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/** current file */
+	public File getFile() {
+		return new File(dir, prefix + ".log");
+	}
+
+	/**
+	 * open current file for append
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		File file = getFile();
+		out = new FileOutputStream(file, true);
+		size = file.length();
+	}
+
+	/**
+	 * move current file aside and start a new one
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		close();
+		File rolled = new File(dir, prefix + '-' + new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date()) + ".log");
+		if (!getFile().renameTo(rolled)) {
+			throw new IOException("Unable to roll " + getFile() + " to " + rolled);
+		}
+		open();
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.lightj.session.step;
+
+import java.util.TimerTask;
+
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * delay step execution, either blocking the driver thread, 
+ * or parking the flow and resuming the execution when the delay is over, 
+ * only interceptors inside an async delay see the outcome of the execution, put it outside a retry
+ * 
+ * @author binyu
+ *
+ */
+public class DelayInterceptor extends StepInterceptor {
+	
+	private final long delayMs;
+	private final boolean async;
+
+	/**
+	 * blocking delay
+	 * @param delayMs
+	 */
+	public DelayInterceptor(long delayMs) {
+		this(delayMs, false);
+	}
+
+	/**
+	 * constructor
+	 * @param delayMs
+	 * @param async		park the flow during the delay instead of blocking
+	 */
+	public DelayInterceptor(long delayMs, boolean async) {
+		this.delayMs = delayMs;
+		this.async = async;
+	}
+
+	@Override
+	public StepTransition aroundExecute(final StepInvocation invocation) throws FlowExecutionException {
+		if (!async) {
+			try {
+				Thread.sleep(delayMs);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			return invocation.proceed();
+		}
+		StepInvocation.TIMER.schedule(new TimerTask() {
+			
+			@Override
+			public void run() {
+				invocation.proceedAsync();
+			}
+			
+		}, delayMs);
+		return StepTransition.CALLBACK;
+	}
+
+}
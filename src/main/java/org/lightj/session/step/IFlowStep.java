@@ -13,6 +13,16 @@ import org.lightj.session.exception.FlowExecutionException;
 @SuppressWarnings("rawtypes")
 public interface IFlowStep {
 	
+	/**
+	 * a fresh copy of this step for one run, sharing configuration but no per run state, 
+	 * so a step template can be safely shared by concurrent sessions of a flow type.
+	 * executions, handlers and interceptors are copied with {@link StepExecution#newInstance()} 
+	 * and {@link StepInterceptor#newInstance()}, which are shallow clones, a subclass keeping 
+	 * per run state in its own fields must override newInstance to reset them in the copy
+	 * @return
+	 */
+	public IFlowStep newInstance();
+	
 	/**
 	 * execute a flow step
 	 * @throws FlowExecutionException
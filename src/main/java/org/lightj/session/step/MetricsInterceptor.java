@@ -0,0 +1,80 @@
+package org.lightj.session.step;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * count invocations, failures and time spent in each phase of the steps it is attached to, 
+ * shared by all runs of the steps
+ * 
+ * @author binyu
+ *
+ */
+public class MetricsInterceptor extends StepInterceptor {
+	
+	private final AtomicLong[] counts = newCounters();
+	private final AtomicLong[] failures = newCounters();
+	private final AtomicLong[] nanos = newCounters();
+
+	@Override
+	public StepTransition aroundExecute(StepInvocation invocation) throws FlowExecutionException {
+		return measure(invocation);
+	}
+
+	@Override
+	public StepTransition aroundResult(StepInvocation invocation) throws FlowExecutionException {
+		return measure(invocation);
+	}
+
+	@Override
+	public StepTransition aroundError(StepInvocation invocation) {
+		return measure(invocation);
+	}
+
+	/**
+	 * proceed and record
+	 * @param invocation
+	 * @return
+	 */
+	private StepTransition measure(StepInvocation invocation) {
+		int phase = invocation.getPhase().ordinal();
+		long start = System.nanoTime();
+		boolean ok = false;
+		try {
+			StepTransition transition = invocation.proceed();
+			ok = true;
+			return transition;
+		} finally {
+			counts[phase].incrementAndGet();
+			nanos[phase].addAndGet(System.nanoTime() - start);
+			if (!ok) {
+				failures[phase].incrementAndGet();
+			}
+		}
+	}
+	
+	/** invocations of a phase */
+	public long getCount(StepInvocation.Phase phase) {
+		return counts[phase.ordinal()].get();
+	}
+
+	/** invocations of a phase ended with exception */
+	public long getFailures(StepInvocation.Phase phase) {
+		return failures[phase.ordinal()].get();
+	}
+
+	/** total time spent in a phase, in ms */
+	public long getTotalMs(StepInvocation.Phase phase) {
+		return nanos[phase.ordinal()].get() / 1000000L;
+	}
+
+	private static AtomicLong[] newCounters() {
+		AtomicLong[] counters = new AtomicLong[StepInvocation.Phase.values().length];
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new AtomicLong(0);
+		}
+		return counters;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.lightj.session.step;
+
+import org.lightj.session.FlowDriver;
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * retry a step, by running to the step again, on execution or result matching some transitions or till it does,
+ * retries are counted per session by the flow driver as steps are rebuilt on every run
+ * 
+ * @author binyu
+ *
+ */
+public class RetryInterceptor extends StepInterceptor {
+	
+	/** name of the per session counter of retries, it outlives the per run copies of the step */
+	static final String RETRY_COUNTER = "retry";
+	
+	private final StepTransition[] transitions;
+	private final int maxRetry;
+	private final boolean retryOnMatch;
+
+	/**
+	 * constructor
+	 * @param maxRetry		0 means infinite
+	 * @param retryOnMatch	retry if matching one of the transitions, or till matching one of them
+	 * @param transitions
+	 */
+	public RetryInterceptor(int maxRetry, boolean retryOnMatch, StepTransition... transitions) {
+		this.maxRetry = maxRetry;
+		this.retryOnMatch = retryOnMatch;
+		this.transitions = transitions;
+	}
+
+	@Override
+	public StepTransition aroundExecute(StepInvocation invocation) throws FlowExecutionException {
+		return retry(invocation.getFlowStep(), invocation.proceed());
+	}
+
+	@Override
+	public StepTransition aroundResult(StepInvocation invocation) throws FlowExecutionException {
+		return retry(invocation.getFlowStep(), invocation.proceed());
+	}
+
+	/**
+	 * run to the step again if the transition calls for it
+	 * @param step
+	 * @param cur
+	 * @return
+	 */
+	private StepTransition retry(IFlowStep step, StepTransition cur) {
+		if (cur == null) {
+			return cur;
+		}
+		String stepName = step.getStepName();
+		FlowDriver driver = step.getFlowDriver();
+		if (maxRetry <= 0 || driver.getAndIncrementStepCounter(stepName, RETRY_COUNTER) < maxRetry) {
+			for (StepTransition transition : transitions) {
+				if (cur.compareTo(transition) == 0) {
+					return retryOnMatch ? StepTransition.runToStep(stepName) : cur;
+				}
+			}
+			if (!retryOnMatch) {
+				return StepTransition.runToStep(stepName);
+			}
+		}
+		else {
+			cur.setDetail("retry limit reached: " + driver.getStepCounter(stepName, RETRY_COUNTER));
+		}
+		return cur;
+	}
+
+	/**
+	 * retry for maxRetry times on matching one of the conditions
+	 * @param maxRetry 0 means infinite
+	 * @param conditions
+	 * @return
+	 */
+	public static RetryInterceptor retryIf(int maxRetry, StepTransition... conditions) {
+		return new RetryInterceptor(maxRetry, true, conditions);
+	}
+
+	/**
+	 * retry for maxRetry times till matching one of the conditions
+	 * @param maxRetry 0 means infinite
+	 * @param conditions
+	 * @return
+	 */
+	public static RetryInterceptor retryTill(int maxRetry, StepTransition... conditions) {
+		return new RetryInterceptor(maxRetry, false, conditions);
+	}
+
+}
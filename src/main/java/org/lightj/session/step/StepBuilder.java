@@ -122,6 +122,18 @@ public class StepBuilder {
 		return this;
 	}
 	
+	/**
+	 * add interceptors around the step phases, inside the ones already added
+	 * @param interceptors
+	 * @return
+	 */
+	public StepBuilder intercept(StepInterceptor...interceptors) {
+		for (StepInterceptor interceptor : interceptors) {
+			flowStep.addInterceptor(interceptor);
+		}
+		return this;
+	}
+	
 	/**
 	 * execute one or more tasks in actor
 	 * @param tasks
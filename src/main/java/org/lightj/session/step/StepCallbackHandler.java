@@ -1,15 +1,17 @@
 package org.lightj.session.step;
 
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 import org.lightj.session.FlowContext;
 import org.lightj.session.FlowEvent;
+import org.lightj.session.FlowModule;
 import org.lightj.session.FlowResult;
+import org.lightj.session.FlowSessionFactory;
 import org.lightj.session.exception.FlowExecutionException;
 import org.lightj.task.BatchTask;
 import org.lightj.task.ITaskEventHandler;
@@ -17,6 +19,7 @@ import org.lightj.task.ITaskListener;
 import org.lightj.task.Task;
 import org.lightj.task.TaskResult;
 import org.lightj.task.TaskResultEnum;
+import org.lightj.task.TaskResultSummary;
 import org.lightj.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,9 +37,16 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 	/** logger */
 	static Logger logger = LoggerFactory.getLogger(StepCallbackHandler.class.getName());
 
-	/** all results, task id to result map */
+	/** all results, task id to result map, kept only if retaining */
 	private ConcurrentMap<String, TaskResult> results = 
 			new ConcurrentHashMap<String, TaskResult>();
+	private boolean retainResults = true;
+	
+	/** running tally of results, decides the step outcome */
+	private TaskResultSummary summary = new TaskResultSummary();
+	
+	/** result of the batch as a whole, crashed or ended early, decides the step outcome if set */
+	private volatile TaskResult batchResult;
 	
 	/** map a result status to an edge in flow state machine (where flow goes next) */
 	private HashMap<TaskResultEnum, StepExecution> mapOnResults = 
@@ -49,6 +59,19 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 	/** additional handling logic */
 	private ITaskEventHandler<T> delegateHandler;
 	
+	/** task id to ordinal in the checkpoint, empty if checkpoint not enabled */
+	private ConcurrentMap<String, Integer> checkpointOrdinals = 
+			new ConcurrentHashMap<String, Integer>();
+	private String checkpointId;
+	private int checkpointSize;
+	private long checkpointIntervalMs;
+	private volatile long lastCheckpointMs;
+	
+	/** task progress of the step, persisted at most once per interval */
+	private StepProgress progress;
+	private long progressIntervalMs;
+	private volatile long lastProgressMs;
+	
 	/**
 	 * constructor with no default transition
 	 * @param transition
@@ -81,6 +104,22 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 		this.delegateHandler = delegateHandler;
 		return this;
 	}
+	
+	/**
+	 * keep every result for the delegate handler on completion, 
+	 * otherwise it gets an empty map and step outcome comes from the summary alone
+	 * @param retainResults
+	 * @return
+	 */
+	public StepCallbackHandler setRetainResults(boolean retainResults) {
+		this.retainResults = retainResults;
+		return this;
+	}
+
+	/** tally of results of current round of tasks */
+	public TaskResultSummary getSummary() {
+		return summary;
+	}
 
 	/**
 	 * result handle task completed event
@@ -93,9 +132,23 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 		
 		try {
 			// handle result
+			long now = System.currentTimeMillis();
+			boolean checkpointChanged = false;
 			if (task != null && result != null) {
-				results.put(task.getTaskId(), result);
+				if (task instanceof BatchTask) {
+					batchResult = result;
+				}
+				else {
+					summary.add(result);
+				}
+				if (retainResults) {
+					results.put(task.getTaskId(), result);
+				}
 				sessionContext.saveTaskResult(flowStep.getStepId(), task, result);
+				checkpointChanged = checkpoint(task, result);
+				if (!(task instanceof BatchTask) && progress != null) {
+					progress.record(result.getStatus() == TaskResultEnum.Success, now);
+				}
 			}
 			publishStepEvent(FlowEvent.stepOngoing, StepTransition.newLog(
 					String.format("%s: %s", result.getStatus(), result.getMsg()), 
@@ -103,6 +156,9 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 			if (delegateHandler != null) {
 				delegateHandler.executeOnResult(sessionContext, task, result);
 			}
+			if (resultRemaining > 0) {
+				saveIfDue(checkpointChanged, now);
+			}
 		} catch (Throwable t) {
 			this.flowStep.resume(t);
 		}
@@ -123,6 +179,85 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 
 	}
 
+	/**
+	 * track completion of tasks in a persisted checkpoint of the step, 
+	 * task is identified by its ordinal among all tasks of the step, 
+	 * the checkpoint is only good for the same list of tasks, see {@link Task#getCheckpointKey()}
+	 * @param tasks
+	 * @param intervalSec
+	 */
+	public void enableCheckpoint(List<? extends Task> tasks, int intervalSec) {
+		checkpointOrdinals.clear();
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < tasks.size(); i++) {
+			checkpointOrdinals.put(tasks.get(i).getTaskId(), i);
+			crc.update(StringUtil.getUtf8Bytes(tasks.get(i).getCheckpointKey() + '\n'));
+		}
+		checkpointId = Long.toHexString(crc.getValue());
+		checkpointSize = tasks.size();
+		checkpointIntervalMs = intervalSec * 1000L;
+		lastCheckpointMs = System.currentTimeMillis();
+	}
+	
+	/**
+	 * identity of the list of tasks checkpointed, null if checkpoint not enabled
+	 * @return
+	 */
+	public String getCheckpointId() {
+		return checkpointId;
+	}
+	
+	/**
+	 * pre-populate result of a task completed before recovery
+	 * @param result
+	 */
+	public void recoverResult(TaskResult result) {
+		summary.add(result);
+		if (retainResults) {
+			results.put(result.getTask().getTaskId(), result);
+		}
+		startProgress().recover(result.getStatus() == TaskResultEnum.Success);
+	}
+	
+	/**
+	 * record task result in checkpoint, it is cleared once the tasks complete, see {@link #executeOnCompleted(Task)}
+	 * @param task
+	 * @param result
+	 * @return whether checkpoint changed
+	 */
+	private boolean checkpoint(Task task, TaskResult result) {
+		Integer ordinal = checkpointOrdinals.get(task.getTaskId());
+		if (ordinal == null) {
+			return false;
+		}
+		sessionContext.updateTaskCheckpoint(flowStep.getStepName(), checkpointId, ordinal, checkpointSize, result.getStatus());
+		return true;
+	}
+	
+	/**
+	 * persist checkpoint and progress if either interval has passed, one save covers both
+	 * @param checkpointChanged
+	 * @param now
+	 */
+	private void saveIfDue(boolean checkpointChanged, long now) {
+		boolean checkpointDue = checkpointChanged && now - lastCheckpointMs >= checkpointIntervalMs;
+		boolean progressDue = progress != null && now - lastProgressMs >= progressIntervalMs;
+		if ((checkpointDue || progressDue) && sessionContext.getSessionId() > 0) {
+			lastCheckpointMs = now;
+			lastProgressMs = now;
+			sessionContext.prepareSave();
+			FlowSessionFactory.getInstance().saveMeta(sessionContext);
+		}
+	}
+	
+	/**
+	 * task progress of the step, null before any task is fired
+	 * @return
+	 */
+	public StepProgress getProgress() {
+		return progress;
+	}
+
 	/**
 	 * result handle task submitted event
 	 */
@@ -171,6 +306,8 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 	public synchronized StepTransition executeOnCompleted(Task task)
 			throws FlowExecutionException 
 	{
+		// tasks are done however they ended, checkpoint no longer needed
+		sessionContext.clearTaskCheckpoint(flowStep.getStepName());
 		TaskResultEnum status = null;
 		// run additional handling logic
 		if (delegateHandler != null) {
@@ -182,7 +319,7 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 			return StepTransition.CALLBACK;
 		}
 		else if (status == null) {
-			status = aggregateResults(results);
+			status = (batchResult != null) ? batchResult.getStatus() : summary.getWorstStatus();
 		}
 		return mapStatus2Transition(status);
 	}
@@ -205,22 +342,6 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 		}
 	}
 	
-	/**
-	 * aggregate and find the most severe result among all
-	 * @param results
-	 * @return
-	 */
-	public TaskResultEnum aggregateResults(Map<String, TaskResult> results) {
-		TaskResult curRst = null;
-		for (Entry<String, TaskResult> entry : results.entrySet()) {
-			TaskResult result = entry.getValue();
-			if ((curRst == null || result.isMoreSevere(curRst))) {
-				curRst = result;
-			}
-		}
-		return curRst.getStatus();
-	}
-	
 	/**
 	 * add default mapping if null
 	 * @param def
@@ -291,6 +412,41 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 	@Override
 	public void setExpectedResultCount(int numOfTasks) {
 		this.numOfTasks = numOfTasks;
+		startProgress().expect(numOfTasks);
+	}
+	
+	/**
+	 * progress of the step, started on first tasks expected or recovered, 
+	 * it carries over rounds of tasks of the step
+	 * @return
+	 */
+	private synchronized StepProgress startProgress() {
+		if (progress == null) {
+			long now = System.currentTimeMillis();
+			progress = new StepProgress(flowStep.getStepName(), now);
+			progressIntervalMs = FlowModule.getTaskProgressIntervalSec() * 1000L;
+			lastProgressMs = now;
+			sessionContext.setStepProgress(progress);
+		}
+		return progress;
+	}
+	
+	@Override
+	public StepCallbackHandler<T> newInstance() {
+		StepCallbackHandler<T> copy = (StepCallbackHandler<T>) super.newInstance();
+		copy.results = new ConcurrentHashMap<String, TaskResult>();
+		copy.summary = new TaskResultSummary();
+		copy.batchResult = null;
+		copy.mapOnResults = new HashMap<TaskResultEnum, StepExecution>(mapOnResults);
+		copy.numOfTasks = 0;
+		copy.numOfTaskResults = new AtomicInteger(0);
+		copy.checkpointOrdinals = new ConcurrentHashMap<String, Integer>();
+		copy.checkpointId = null;
+		copy.checkpointSize = 0;
+		copy.lastCheckpointMs = 0;
+		copy.progress = null;
+		copy.lastProgressMs = 0;
+		return copy;
 	}
 	
 	/**
@@ -298,6 +454,9 @@ public final class StepCallbackHandler<T extends FlowContext> extends StepExecut
 	 */
 	public synchronized void reset() {
 		results.clear();
+		summary.reset();
+		batchResult = null;
+		checkpointOrdinals.clear();
 		numOfTasks = 0;
 		numOfTaskResults.set(0);
 	}
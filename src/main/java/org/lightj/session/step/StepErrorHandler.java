@@ -69,6 +69,14 @@ public class StepErrorHandler<T extends FlowContext> extends StepExecution<T> {
 		this.errorClass2ResultMap.putAll(errorClass2ResultMap);
 	}
 
+	@Override
+	public StepErrorHandler<T> newInstance() {
+		StepErrorHandler<T> copy = (StepErrorHandler<T>) super.newInstance();
+		copy.t = null;
+		copy.errorClass2ResultMap = new LinkedHashMap<Class<? extends Throwable>, StepTransition>(errorClass2ResultMap);
+		return copy;
+	}
+
 	/**
 	 * override this method for custom logic
 	 * @param t
@@ -98,7 +106,9 @@ public class StepErrorHandler<T extends FlowContext> extends StepExecution<T> {
 				}
 			}
 
-			tran.log(th.getMessage(), StringUtil.getStackTrace(th, 2000));
+			// transitions are shared by all runs of the step, log on a copy
+			tran = new StepTransition(tran.getActionStatus(), tran.getNextStep(), tran.getResultStatus(), tran.getMsg())
+					.log(th.getMessage(), StringUtil.getStackTrace(th, 2000));
 
 		}
 		catch (Throwable t1) {
@@ -12,7 +12,7 @@ import org.lightj.session.exception.FlowExecutionException;
  * @author biyu
  *
  */
-public abstract class StepExecution<T extends FlowContext> {
+public abstract class StepExecution<T extends FlowContext> implements Cloneable {
 	
 	/**
 	 * default flow transition
@@ -92,6 +92,24 @@ public abstract class StepExecution<T extends FlowContext> {
 		}
 	}
 
+	/**
+	 * a copy of this execution for one run of its step, configuration is shared with 
+	 * the template, per run state (parent step, session context) is not, 
+	 * override to reset additional per run state of a subclass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public StepExecution<T> newInstance() {
+		try {
+			StepExecution<T> copy = (StepExecution<T>) super.clone();
+			copy.flowStep = null;
+			copy.sessionContext = null;
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * publish to drive a flow step event
 	 * @param event
@@ -1,7 +1,6 @@
 package org.lightj.session.step;
 
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lightj.session.FlowContext;
 import org.lightj.session.FlowDriver;
@@ -14,16 +13,19 @@ import org.slf4j.LoggerFactory;
 /**
  * a flow step, wraps all executions to do work, callback handling, and error handling
  * 
+ * a step built by user is a template and can be shared (e.g. a singleton bean), 
+ * {@link FlowDriver} runs a copy of it from {@link #newInstance()} on each entry to the step
+ * 
  * @author biyu
  *
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class StepImpl implements IFlowStep {
+public class StepImpl implements IFlowStep, Cloneable {
 	
 	static Logger logger = LoggerFactory.getLogger(StepImpl.class);
 	
 	/** part of a unique step id */
-	private final String uid = UUID.randomUUID().toString();
+	private String uid = UUID.randomUUID().toString();
 	
 	/**
 	 * step it represents in the flow, set by framework
@@ -55,9 +57,15 @@ public class StepImpl implements IFlowStep {
 	 */
 	protected FlowStepProperties flowStepProperties;
 	
+	/**
+	 * interceptors around step phases, first one is outermost
+	 */
+	protected StepInterceptor[] interceptors = NO_INTERCEPTORS;
+	
+	private static final StepInterceptor[] NO_INTERCEPTORS = new StepInterceptor[0];
 
-	/** how many times flow entered this step */
-	private AtomicInteger stepEntry = new AtomicInteger(0);
+	/** name of the per session counter of how many times flow entered this step */
+	private static final String ENTRY_COUNTER = "entry";
 	
 	/**
 	 * construct a flow step with a name and its associated session
@@ -71,23 +79,91 @@ public class StepImpl implements IFlowStep {
 	 * do the work
 	 */
 	public StepTransition execute() throws FlowExecutionException {
-		return execution.execute();
+		if (interceptors.length == 0) {
+			return doExecute();
+		}
+		return new StepInvocation(this, StepInvocation.Phase.EXECUTE, null, interceptors, 0).proceed();
 	}
 
 	/**
 	 * handling execution error
 	 */
 	public StepTransition onError(Throwable t) {
-		errorHandler.setError(t);
-		return errorHandler.execute();
+		if (interceptors.length == 0) {
+			return doError(t);
+		}
+		return new StepInvocation(this, StepInvocation.Phase.ERROR, t, interceptors, 0).proceed();
 	}
 
 	/**
 	 * result handling
 	 */
 	public StepTransition onResult() throws FlowExecutionException {
+		if (interceptors.length == 0) {
+			return doResult();
+		}
+		return new StepInvocation(this, StepInvocation.Phase.RESULT, null, interceptors, 0).proceed();
+	}
+	
+	/** execution itself, end of interceptor chain */
+	StepTransition doExecute() throws FlowExecutionException {
+		return execution.execute();
+	}
+	
+	/** error handling itself, end of interceptor chain */
+	StepTransition doError(Throwable t) {
+		errorHandler.setError(t);
+		return errorHandler.execute();
+	}
+	
+	/** result handling itself, end of interceptor chain */
+	StepTransition doResult() throws FlowExecutionException {
 		return resultHandler.execute();
 	}
+	
+	/**
+	 * add an interceptor inside the existing ones
+	 * @param interceptor
+	 */
+	public void addInterceptor(StepInterceptor interceptor) {
+		addInterceptor(interceptors.length, interceptor);
+	}
+	
+	/**
+	 * add an interceptor at a position of the chain, 0 being outermost
+	 * @param index
+	 * @param interceptor
+	 */
+	public void addInterceptor(int index, StepInterceptor interceptor) {
+		StepInterceptor[] chain = new StepInterceptor[interceptors.length + 1];
+		System.arraycopy(interceptors, 0, chain, 0, index);
+		chain[index] = interceptor;
+		System.arraycopy(interceptors, index, chain, index + 1, interceptors.length - index);
+		interceptors = chain;
+	}
+	
+	/**
+	 * interceptors of this step, first one is outermost
+	 * @return
+	 */
+	public StepInterceptor[] getInterceptors() {
+		return interceptors;
+	}
+	
+	/**
+	 * a copy of a step with an interceptor outside its existing ones, the step itself is left as is
+	 * @param step
+	 * @param interceptor
+	 * @return
+	 */
+	public static IFlowStep intercept(IFlowStep step, StepInterceptor interceptor) {
+		if (!(step instanceof StepImpl)) {
+			throw new IllegalArgumentException("Cannot intercept step of " + step.getClass().getName());
+		}
+		StepImpl copy = (StepImpl) step.newInstance();
+		copy.addInterceptor(0, interceptor);
+		return copy;
+	}
 
 	/**
 	 * register the flow driver to the step to be used in callback notification
@@ -124,7 +200,7 @@ public class StepImpl implements IFlowStep {
 		synchronized (driver) {
 			if (this.driver.getCurrentFlowStep() == this) {
 				final FlowDriver dvr = driver;
-				FlowModule.getExecutorService().submit(new Runnable() {
+				FlowModule.getDriverLanes().submit(dvr.getPriority(), new Runnable() {
 					
 					@Override
 					public void run() {
@@ -145,7 +221,7 @@ public class StepImpl implements IFlowStep {
 		synchronized (driver) {
 			if (this.driver.getCurrentFlowStep() == this) {
 				final FlowDriver dvr = driver;
-				FlowModule.getExecutorService().submit(new Runnable() {
+				FlowModule.getDriverLanes().submit(dvr.getPriority(), new Runnable() {
 					
 					@Override
 					public void run() {
@@ -157,6 +233,35 @@ public class StepImpl implements IFlowStep {
 		}
 	}
 
+	/**
+	 * resume a step parked by an interceptor, run the rest of its chain and drive the flow with the outcome
+	 * @param invocation
+	 */
+	void resume(final StepInvocation invocation) {
+		synchronized (driver) {
+			if (this.driver.isCurrentStep(this)) {
+				final FlowDriver dvr = driver;
+				FlowModule.getDriverLanes().submit(dvr.getPriority(), new Runnable() {
+					
+					@Override
+					public void run() {
+						StepTransition trans;
+						synchronized (dvr) {
+							try {
+								trans = invocation.proceed();
+							} catch (Throwable t) {
+								dvr.driveWithError(t);
+								return;
+							}
+							dvr.driveWithTransition(trans);
+						}
+					}
+					
+				});
+			}
+		}
+	}
+
 	/**
 	 * set error handler for error happend in execution phase
 	 * @param executionErrorHandler
@@ -240,9 +345,39 @@ public class StepImpl implements IFlowStep {
 		
 	}
 
+	/**
+	 * a clone of the template keeping its runtime type, executions, handlers and interceptors 
+	 * are copied, fields of a subclass are shallow copied, override to copy its own per run state
+	 */
+	@Override
+	public IFlowStep newInstance() {
+		StepImpl copy;
+		try {
+			copy = (StepImpl) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		copy.uid = UUID.randomUUID().toString();
+		copy.driver = null;
+		copy.execution = null;
+		copy.errorHandler = null;
+		copy.resultHandler = null;
+		if (execution != null) copy.setExecution(execution.newInstance());
+		if (errorHandler != null) copy.setErrorHandler(errorHandler.newInstance());
+		if (resultHandler != null) copy.setResultHandler(resultHandler.newInstance());
+		if (interceptors.length > 0) {
+			copy.interceptors = new StepInterceptor[interceptors.length];
+			for (int i = 0; i < interceptors.length; i++) {
+				copy.interceptors[i] = interceptors[i].newInstance();
+			}
+		}
+		return copy;
+	}
+
 	@Override
 	public String getStepId() {
-		return String.format("Step|%s|%s|%s", stepName, uid, stepEntry.get());
+		int entry = (driver != null) ? driver.getStepCounter(stepName, ENTRY_COUNTER) : 0;
+		return String.format("Step|%s|%s|%s", stepName, uid, entry);
 	}
 
 	@Override
@@ -262,7 +397,7 @@ public class StepImpl implements IFlowStep {
 
 	@Override
 	public int getAndIncrementStepEntry() {
-		return stepEntry.getAndIncrement();
+		return driver.getAndIncrementStepCounter(stepName, ENTRY_COUNTER);
 	}
 
 }
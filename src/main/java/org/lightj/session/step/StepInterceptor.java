@@ -0,0 +1,73 @@
+package org.lightj.session.step;
+
+import org.lightj.session.FlowState;
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * intercepts the phases of a {@link StepImpl}, execution, result handling and error handling, 
+ * interceptors of a step form an ordered chain, first one is outermost, each calls 
+ * {@link StepInvocation#proceed()} to run the rest of the chain and the step itself.
+ * 
+ * an interceptor can also park the flow by returning {@link StepTransition#CALLBACK} without proceeding,
+ * and continue later with {@link StepInvocation#proceedAsync()}, instead of blocking the driver thread.
+ * 
+ * interceptors are copied with their step on every run through {@link #newInstance()}, 
+ * stateless interceptors can be shared and return themselves
+ * 
+ * @author binyu
+ *
+ */
+public abstract class StepInterceptor {
+
+	/**
+	 * around step execution
+	 * @param invocation
+	 * @return
+	 * @throws FlowExecutionException
+	 */
+	public StepTransition aroundExecute(StepInvocation invocation) throws FlowExecutionException {
+		return invocation.proceed();
+	}
+
+	/**
+	 * around result handling
+	 * @param invocation
+	 * @return
+	 * @throws FlowExecutionException
+	 */
+	public StepTransition aroundResult(StepInvocation invocation) throws FlowExecutionException {
+		return invocation.proceed();
+	}
+
+	/**
+	 * around error handling, {@link StepInvocation#getError()} is the error being handled
+	 * @param invocation
+	 * @return
+	 */
+	public StepTransition aroundError(StepInvocation invocation) {
+		return invocation.proceed();
+	}
+
+	/**
+	 * interceptor for one run of the step, override if the interceptor keeps per run state
+	 * @return
+	 */
+	public StepInterceptor newInstance() {
+		return this;
+	}
+
+	/**
+	 * whether a transition leaves the flow waiting on the current step for a callback
+	 * @param transition
+	 * @return
+	 */
+	protected static boolean isParked(StepTransition transition) {
+		if (transition == null) {
+			return true;
+		}
+		return transition.getActionStatus() != null 
+				? transition.getActionStatus() == FlowState.Callback 
+				: transition.getNextStep() == null;
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.lightj.session.step;
+
+import java.util.Timer;
+
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * one pass of a step phase through the interceptor chain of the step
+ * 
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class StepInvocation {
+	
+	/** phases of a step */
+	public static enum Phase {
+		EXECUTE, RESULT, ERROR
+	}
+	
+	/** timer shared by interceptors deferring work, e.g. async delay and timeout */
+	static final Timer TIMER = new Timer("StepInterceptor", true);
+	
+	private final StepImpl step;
+	private final Phase phase;
+	private final Throwable error;
+	private final StepInterceptor[] chain;
+	private final int index;
+	
+	/** rest of the chain, created on first proceed */
+	private StepInvocation next;
+	
+	StepInvocation(StepImpl step, Phase phase, Throwable error, StepInterceptor[] chain, int index) {
+		this.step = step;
+		this.phase = phase;
+		this.error = error;
+		this.chain = chain;
+		this.index = index;
+	}
+
+	/**
+	 * run the rest of the chain, the step itself at the end of it
+	 * @return
+	 * @throws FlowExecutionException
+	 */
+	public StepTransition proceed() throws FlowExecutionException {
+		if (index >= chain.length) {
+			switch (phase) {
+			case EXECUTE:
+				return step.doExecute();
+			case RESULT:
+				return step.doResult();
+			default:
+				return step.doError(error);
+			}
+		}
+		if (next == null) {
+			next = new StepInvocation(step, phase, error, chain, index + 1);
+		}
+		StepInterceptor interceptor = chain[index];
+		switch (phase) {
+		case EXECUTE:
+			return interceptor.aroundExecute(next);
+		case RESULT:
+			return interceptor.aroundResult(next);
+		default:
+			return interceptor.aroundError(next);
+		}
+	}
+	
+	/**
+	 * run the rest of the chain on a driver thread and drive the flow with its outcome,
+	 * for an interceptor that parked the flow instead of proceeding
+	 */
+	public void proceedAsync() {
+		step.resume(this);
+	}
+	
+	/**
+	 * step being invoked
+	 * @return
+	 */
+	public IFlowStep getFlowStep() {
+		return step;
+	}
+
+	/**
+	 * phase being invoked
+	 * @return
+	 */
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * error being handled in error phase
+	 * @return
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.lightj.session.step;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * task level progress of a running step, completed and failed tasks out of total, 
+ * with an eta from a moving average of the completion rate
+ * 
+ * @author binyu
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class StepProgress implements Serializable {
+
+	private static final long serialVersionUID = 3581652037542218690L;
+	
+	/** min time between rate samples */
+	static final long SAMPLE_MS = 1000L;
+	/** weight of the latest sample in the moving rate */
+	static final double ALPHA = 0.3;
+
+	private String stepName;
+	private int total;
+	private int completed;
+	private int failed;
+	private long startTime;
+	
+	/** moving completion rate, tasks per sec */
+	private double ratePerSec;
+	private long sampleTime;
+	private int sampleDone;
+	
+	public StepProgress() {}
+	
+	public StepProgress(String stepName, long now) {
+		this.stepName = stepName;
+		this.startTime = now;
+		this.sampleTime = now;
+	}
+
+	/**
+	 * more tasks are expected on top of those done
+	 * @param pending
+	 */
+	public synchronized void expect(int pending) {
+		total = Math.max(total, getDone() + pending);
+	}
+	
+	/**
+	 * one task is done
+	 * @param success
+	 * @param now
+	 */
+	public synchronized void record(boolean success, long now) {
+		if (success) {
+			completed++;
+		} else {
+			failed++;
+		}
+		total = Math.max(total, getDone());
+		long elapsed = now - sampleTime;
+		if (elapsed >= SAMPLE_MS) {
+			double rate = (getDone() - sampleDone) * 1000d / elapsed;
+			ratePerSec = (ratePerSec == 0) ? rate : ALPHA * rate + (1 - ALPHA) * ratePerSec;
+			sampleTime = now;
+			sampleDone = getDone();
+		}
+	}
+	
+	/**
+	 * one task was done before the step was recovered, not counted in the rate
+	 * @param success
+	 */
+	public synchronized void recover(boolean success) {
+		if (success) {
+			completed++;
+		} else {
+			failed++;
+		}
+		total = Math.max(total, getDone());
+		sampleDone = getDone();
+	}
+	
+	/** fraction of tasks done, 0 to 1 */
+	public synchronized double getFraction() {
+		return total > 0 ? (double) getDone() / total : 0;
+	}
+
+	/** estimated seconds to finish, -1 if unknown */
+	public synchronized long getEtaSec() {
+		int remaining = total - getDone();
+		if (remaining <= 0) {
+			return 0;
+		}
+		return ratePerSec > 0 ? (long) Math.ceil(remaining / ratePerSec) : -1;
+	}
+
+	public String getStepName() {
+		return stepName;
+	}
+	public synchronized int getTotal() {
+		return total;
+	}
+	public synchronized int getCompleted() {
+		return completed;
+	}
+	public synchronized int getFailed() {
+		return failed;
+	}
+	public long getStartTime() {
+		return startTime;
+	}
+	public synchronized double getRatePerSec() {
+		return ratePerSec;
+	}
+	private int getDone() {
+		return completed + failed;
+	}
+
+	@Override
+	public synchronized int hashCode() {
+		return (stepName != null ? stepName.hashCode() : 0) * 31 + total * 17 + completed * 7 + failed;
+	}
+
+	@Override
+	public synchronized boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StepProgress)) {
+			return false;
+		}
+		StepProgress other = (StepProgress) obj;
+		return (stepName == null ? other.stepName == null : stepName.equals(other.stepName)) 
+				&& total == other.total && completed == other.completed && failed == other.failed
+				&& startTime == other.startTime;
+	}
+
+}
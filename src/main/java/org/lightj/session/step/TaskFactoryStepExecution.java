@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.lightj.session.FlowContext;
+import org.lightj.session.FlowModule;
 import org.lightj.session.exception.FlowExecutionException;
 import org.lightj.task.BatchOption;
 import org.lightj.task.BatchTask;
@@ -38,8 +39,8 @@ public class TaskFactoryStepExecution<T extends FlowContext> extends StepExecuti
 	/** user provide taskFactory */
 	private IFlowContextTaskFactory<T> taskFactory;
 	
-	/** sequence, for sequentially executing multiple task per step */
-	private int sequence = 0;
+	/** name of the per session counter of sequence, for sequentially executing multiple task per step */
+	private static final String SEQUENCE_COUNTER = "sequence";
 	
 	/** constructor */
 	public TaskFactoryStepExecution(IFlowContextTaskFactory<T> taskFactory) 
@@ -54,7 +55,8 @@ public class TaskFactoryStepExecution<T extends FlowContext> extends StepExecuti
 
 		TaskInFlow<T> taskInFlow = null; 
 		
-		taskInFlow = taskFactory.createTaskInFlow(sessionContext, sequence++);
+		int sequence = flowStep.getFlowDriver().getAndIncrementStepCounter(flowStep.getStepName(), SEQUENCE_COUNTER);
+		taskInFlow = taskFactory.createTaskInFlow(sessionContext, sequence);
 		
 		if (taskInFlow != null) {
 			
@@ -79,7 +81,7 @@ public class TaskFactoryStepExecution<T extends FlowContext> extends StepExecuti
 			chandler.setDelegateHandler(handler);
 
 			// reset callback listeners if not the first time this Step is run
-			if (sequence > 1) {
+			if (sequence > 0) {
 				this.flowStep.getResultHandler().reset();
 			}
 			
@@ -105,7 +107,11 @@ public class TaskFactoryStepExecution<T extends FlowContext> extends StepExecuti
 		final UntypedActorFactory actorFactory = batchTask.getTasks()[0].needPolling() 
 				? TaskModule.getAsyncPollWorkerFactory() : TaskModule.getAsyncWorkerFactory();
 		
-		ActorRef batchWorker = TaskModule.getActorSystem().actorOf(
+		// cap in flight tasks of the tenant
+		batchTask.setPermit(FlowModule.getTenantManager().getTaskPermit(flowStep.getFlowDriver().getTenantId()));
+		
+		// run on the dispatcher of the flow priority lane
+		ActorRef batchWorker = TaskModule.getActorSystem().actorOf(TaskModule.laneProps(
 				new Props(new UntypedActorFactory() {
 		
 			private static final long serialVersionUID = 1L;
@@ -114,7 +120,7 @@ public class TaskFactoryStepExecution<T extends FlowContext> extends StepExecuti
 			public Actor create() throws Exception {
 				return new BatchTaskWorker(batchTask, actorFactory, chandler);
 			}
-		}));
+		}), flowStep.getFlowDriver().getPriority().name()));
 		
 		batchWorker.tell(WorkerMessage.Type.PROCESS_REQUEST, null);
 	}
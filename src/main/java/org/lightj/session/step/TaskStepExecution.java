@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.lightj.session.FlowContext;
+import org.lightj.session.FlowModule;
 import org.lightj.session.exception.FlowExecutionException;
 import org.lightj.task.BatchOption;
 import org.lightj.task.BatchTask;
@@ -13,6 +14,7 @@ import org.lightj.task.ExecuteOption;
 import org.lightj.task.GroupTask;
 import org.lightj.task.NoopTask;
 import org.lightj.task.TaskModule;
+import org.lightj.task.TaskResultEnum;
 import org.lightj.task.WorkerMessage;
 
 import akka.actor.Actor;
@@ -83,14 +85,54 @@ public abstract class TaskStepExecution<T extends FlowContext> extends SimpleSte
 			task.setFlowContext(sessionContext);
 		}
 		
-		final BatchTask batchTask = new BatchTask(batchOption, realTasks.toArray(new ExecutableTask[0]));
-		fire(batchTask, chandler);
+		// skip tasks already completed before the flow was recovered
+		List<ExecutableTask> pendingTasks = realTasks;
+		int intervalSec = FlowModule.getTaskCheckpointIntervalSec();
+		if (intervalSec > 0) {
+			chandler.enableCheckpoint(realTasks, intervalSec);
+			pendingTasks = recoverFromCheckpoint(realTasks, chandler);
+		}
+		
+		StepTransition transition = null;
+		if (pendingTasks.isEmpty()) {
+			// everything done before recovery, complete the step right away
+			transition = chandler.executeOnCompleted(null);
+		}
+		else {
+			final BatchTask batchTask = new BatchTask(batchOption, pendingTasks.toArray(new ExecutableTask[0]));
+			fire(batchTask, chandler);
+		}
 		
 		if (extraExec != null) {
 			extraExec.postExecute(this.sessionContext);
 		}
 		
-		return super.execute();
+		return transition != null ? transition : super.execute();
+	}
+	
+	/**
+	 * pre-populate results of tasks completed according to step checkpoint
+	 * @param realTasks
+	 * @param chandler
+	 * @return tasks still need to run
+	 */
+	private List<ExecutableTask> recoverFromCheckpoint(List<ExecutableTask> realTasks, StepCallbackHandler chandler) {
+		String checkpoint = sessionContext.getTaskCheckpoint(flowStep.getStepName(), chandler.getCheckpointId(), realTasks.size());
+		if (checkpoint == null) {
+			return realTasks;
+		}
+		List<ExecutableTask> pendingTasks = new ArrayList<ExecutableTask>();
+		for (int i = 0; i < realTasks.size(); i++) {
+			ExecutableTask task = realTasks.get(i);
+			TaskResultEnum status = FlowContext.fromCheckpointMark(checkpoint.charAt(i));
+			if (status != null) {
+				chandler.recoverResult(task.hasResult(status, "recovered from checkpoint"));
+			}
+			else {
+				pendingTasks.add(task);
+			}
+		}
+		return pendingTasks;
 	}
 	
 	/**
@@ -103,7 +145,11 @@ public abstract class TaskStepExecution<T extends FlowContext> extends SimpleSte
 		final UntypedActorFactory actorFactory = batchTask.getTasks()[0].needPolling() 
 				? TaskModule.getAsyncPollWorkerFactory() : TaskModule.getAsyncWorkerFactory();
 		
-		ActorRef batchWorker = TaskModule.getActorSystem().actorOf(
+		// cap in flight tasks of the tenant
+		batchTask.setPermit(FlowModule.getTenantManager().getTaskPermit(flowStep.getFlowDriver().getTenantId()));
+		
+		// run on the dispatcher of the flow priority lane
+		ActorRef batchWorker = TaskModule.getActorSystem().actorOf(TaskModule.laneProps(
 				new Props(new UntypedActorFactory() {
 		
 			private static final long serialVersionUID = 1L;
@@ -112,7 +158,7 @@ public abstract class TaskStepExecution<T extends FlowContext> extends SimpleSte
 			public Actor create() throws Exception {
 				return new BatchTaskWorker(batchTask, actorFactory, chandler);
 			}
-		}));
+		}), flowStep.getFlowDriver().getPriority().name()));
 		
 		batchWorker.tell(WorkerMessage.Type.PROCESS_REQUEST, null);
 	}
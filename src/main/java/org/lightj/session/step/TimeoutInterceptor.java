@@ -0,0 +1,91 @@
+package org.lightj.session.step;
+
+import java.util.TimerTask;
+
+import org.lightj.session.exception.FlowExecutionException;
+
+/**
+ * fail a step parked for callback if it does not move on in time, 
+ * the error goes through the error handling of the step
+ * 
+ * @author binyu
+ *
+ */
+public class TimeoutInterceptor extends StepInterceptor {
+
+	private final long timeoutMs;
+	
+	/** per run timer */
+	private TimerTask timer;
+
+	/**
+	 * constructor
+	 * @param timeoutMs
+	 */
+	public TimeoutInterceptor(long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+	}
+
+	@Override
+	public StepTransition aroundExecute(StepInvocation invocation) throws FlowExecutionException {
+		StepTransition transition = invocation.proceed();
+		if (isParked(transition)) {
+			schedule(invocation.getFlowStep());
+		} else {
+			cancel();
+		}
+		return transition;
+	}
+
+	@Override
+	public StepTransition aroundResult(StepInvocation invocation) throws FlowExecutionException {
+		StepTransition transition = invocation.proceed();
+		if (!isParked(transition)) {
+			cancel();
+		}
+		return transition;
+	}
+
+	@Override
+	public StepTransition aroundError(StepInvocation invocation) {
+		cancel();
+		return invocation.proceed();
+	}
+
+	@Override
+	public StepInterceptor newInstance() {
+		return new TimeoutInterceptor(timeoutMs);
+	}
+
+	/**
+	 * start the timer once per run
+	 * @param step
+	 */
+	private synchronized void schedule(final IFlowStep step) {
+		if (timer != null) {
+			return;
+		}
+		timer = new TimerTask() {
+			
+			@Override
+			public void run() {
+				if (step.getFlowDriver().isCurrentStep(step)) {
+					step.resume(new FlowExecutionException(
+							String.format("Step %s timed out after %sms", step.getStepName(), timeoutMs)));
+				}
+			}
+			
+		};
+		StepInvocation.TIMER.schedule(timer, timeoutMs);
+	}
+
+	/**
+	 * stop the timer
+	 */
+	private synchronized void cancel() {
+		if (timer != null) {
+			timer.cancel();
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.lightj.session.step;
+
+import org.lightj.session.exception.FlowExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * log entry and exit of each step phase, with its outcome and time taken, at debug level
+ * 
+ * @author binyu
+ *
+ */
+public class TracingInterceptor extends StepInterceptor {
+	
+	static Logger logger = LoggerFactory.getLogger(TracingInterceptor.class);
+
+	@Override
+	public StepTransition aroundExecute(StepInvocation invocation) throws FlowExecutionException {
+		return trace(invocation);
+	}
+
+	@Override
+	public StepTransition aroundResult(StepInvocation invocation) throws FlowExecutionException {
+		return trace(invocation);
+	}
+
+	@Override
+	public StepTransition aroundError(StepInvocation invocation) {
+		return trace(invocation);
+	}
+
+	/**
+	 * proceed and log
+	 * @param invocation
+	 * @return
+	 */
+	private StepTransition trace(StepInvocation invocation) {
+		if (!logger.isDebugEnabled()) {
+			return invocation.proceed();
+		}
+		String stepId = invocation.getFlowStep().getStepId();
+		logger.debug("{} {} entered", stepId, invocation.getPhase());
+		long start = System.currentTimeMillis();
+		try {
+			StepTransition transition = invocation.proceed();
+			logger.debug("{} {} exited in {}ms with {}", new Object[] {stepId, invocation.getPhase(), 
+					System.currentTimeMillis() - start, describe(transition)});
+			return transition;
+		} catch (RuntimeException e) {
+			logger.debug("{} {} failed in {}ms with {}", new Object[] {stepId, invocation.getPhase(), 
+					System.currentTimeMillis() - start, e.toString()});
+			throw e;
+		}
+	}
+	
+	private static String describe(StepTransition transition) {
+		return transition != null ? transition.getActionStatus() + " " + transition.getNextStep() : "callback";
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.lightj.task;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.lightj.task.BatchOption.PolicySettingMessage;
+import org.lightj.task.BatchOption.RateSettingMessage;
+
+import akka.actor.UntypedActor;
+
+/**
+ * batch strategy adjusting max tasks in flight to how tasks fare, additive increase multiplicative decrease.
+ * 
+ * the limit grows by one per limit worth of completions while tasks are kept busy and their latency 
+ * stays close to the lowest seen, it is cut when latency inflates, harder when tasks fail or time out,
+ * at most once per round of tasks in flight, always within min and max limit.
+ * every change of the limit is reported to the batch worker, see {@link BatchTask#getLiveLimit()}
+ * 
+ * @author binyu
+ *
+ */
+public class AdaptiveStrategy extends UntypedActor {
+	
+	/** defaults */
+	static final int DEFAULT_MIN_LIMIT = 1;
+	static final int DEFAULT_MAX_LIMIT = 200;
+	
+	/** latency over lowest seen times this is inflated */
+	static final double LATENCY_TOLERANCE = 2.0;
+	/** cut on inflated latency */
+	static final double LATENCY_BACKOFF = 0.9;
+	/** cut on failure or timeout */
+	static final double ERROR_BACKOFF = 0.5;
+	/** lowest latency forgotten after this many samples, so it follows the targets */
+	static final int MIN_LATENCY_WINDOW = 500;
+	
+	/** limit changed */
+	public static class LimitChanged {
+		private final int limit;
+		public LimitChanged(int limit) {
+			this.limit = limit;
+		}
+		public int getLimit() {
+			return limit;
+		}
+	}
+	
+	/** bounds and current limit */
+	private int minLimit = DEFAULT_MIN_LIMIT;
+	private int maxLimit = DEFAULT_MAX_LIMIT;
+	private double limit = DEFAULT_MIN_LIMIT;
+	private int reported;
+	
+	/** latency */
+	private long minLatency = Long.MAX_VALUE;
+	private long windowMinLatency = Long.MAX_VALUE;
+	private int samples;
+	
+	/** tasks released before this are of the round already cut */
+	private long lastCutNs;
+	
+	/** in flight with release time, and pending */
+	private final Map<Task, Long> inFlight = new IdentityHashMap<Task, Long>();
+	private final ArrayDeque<Task> pending = new ArrayDeque<Task>();
+
+	@Override
+	public void preStart() {
+		report();
+	}
+
+	@Override
+	public void onReceive(Object message) throws Exception {
+		try {
+			// queue a task
+			if (message instanceof Task) {
+				pending.offer((Task) message);
+				drain();
+			}
+			
+			// initialize the strategy
+			else if (message instanceof RateSettingMessage) {
+				configure((RateSettingMessage) message);
+				drain();
+			}
+			
+			// one task complete, adjust and launch more
+			else if (message instanceof WorkerMessage) {
+				WorkerMessage msg = (WorkerMessage) message;
+				complete(msg.getTask(), msg.getResult());
+				drain();
+			}
+			
+			// invalid msg
+			else {
+				unhandled(message);
+			}
+		}
+		catch (Throwable e) {
+			// should have never happened
+		}
+	}
+	
+	/**
+	 * take bounds, start from concurrent rate if set
+	 * @param setting
+	 */
+	private void configure(RateSettingMessage setting) {
+		if (setting instanceof PolicySettingMessage) {
+			PolicySettingMessage policy = (PolicySettingMessage) setting;
+			if (policy.getMinLimit() > 0) {
+				minLimit = policy.getMinLimit();
+			}
+			if (policy.getMaxLimit() > 0) {
+				maxLimit = policy.getMaxLimit();
+			}
+		}
+		maxLimit = Math.max(minLimit, maxLimit);
+		limit = setting.getMaxRate() > 0 ? setting.getMaxRate() : minLimit;
+		clamp();
+		report();
+	}
+	
+	/**
+	 * release tasks up to the limit
+	 */
+	private void drain() {
+		long now = System.nanoTime();
+		while (!pending.isEmpty() && inFlight.size() < (int) limit) {
+			Task task = pending.poll();
+			inFlight.put(task, now);
+			getSender().tell(task, getSelf());
+		}
+	}
+	
+	/**
+	 * one task done, adjust limit by its latency and result
+	 * @param task
+	 * @param result
+	 */
+	private void complete(Task task, TaskResult result) {
+		Long start = (task != null) ? inFlight.get(task) : null;
+		if (start == null) {
+			return;
+		}
+		boolean saturated = inFlight.size() >= (int) limit;
+		inFlight.remove(task);
+		long now = System.nanoTime();
+		long latency = now - start;
+		
+		if (result != null && result.getStatus() != null && result.getStatus().isAnyError()) {
+			cut(start, now, ERROR_BACKOFF);
+		}
+		else {
+			sample(latency);
+			if (latency > minLatency * LATENCY_TOLERANCE) {
+				cut(start, now, LATENCY_BACKOFF);
+			}
+			else if (saturated) {
+				// about one more per round
+				limit += 1d / limit;
+			}
+		}
+		clamp();
+		report();
+	}
+
+	/**
+	 * multiplicative decrease, once per round
+	 * @param start		release time of the task
+	 * @param now
+	 * @param factor
+	 */
+	private void cut(long start, long now, double factor) {
+		if (start >= lastCutNs) {
+			limit = limit * factor;
+			lastCutNs = now;
+		}
+	}
+	
+	/**
+	 * track lowest latency over a sliding window
+	 * @param latency
+	 */
+	private void sample(long latency) {
+		windowMinLatency = Math.min(windowMinLatency, latency);
+		minLatency = Math.min(minLatency, latency);
+		if (++samples >= MIN_LATENCY_WINDOW) {
+			minLatency = windowMinLatency;
+			windowMinLatency = Long.MAX_VALUE;
+			samples = 0;
+		}
+	}
+	
+	private void clamp() {
+		limit = Math.max(minLimit, Math.min(maxLimit, limit));
+	}
+	
+	/**
+	 * tell batch worker when the whole limit changes
+	 */
+	private void report() {
+		int current = (int) limit;
+		if (current != reported) {
+			reported = current;
+			getContext().parent().tell(new LimitChanged(current), getSelf());
+		}
+	}
+
+}
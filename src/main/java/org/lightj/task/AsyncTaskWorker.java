@@ -52,6 +52,22 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 		PROCESS_REQUEST, PROCESS_ON_TIMEOUT, RETRY_REQUEST
 	}
 	
+	/** 
+	 * scheduled internal message, tagged with the task run it was scheduled for, 
+	 * so a pooled worker can tell stale ones from a previous task
+	 */
+	private static final class Tick {
+		final InternalMessageType type;
+		final int run;
+		Tick(InternalMessageType type, int run) {
+			this.type = type;
+			this.run = run;
+		}
+	}
+	
+	/** task runs so far, a worker is reused for tasks one after another in pooled dispatch */
+	private int run = 0;
+	
 	/** constructor */
 	public AsyncTaskWorker() {
 		super();
@@ -59,7 +75,9 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 		// Other initialization
 		this.supervisorStrategy = new OneForOneStrategy(0, Duration.Inf(), new Function<Throwable, Directive>() {
 			public Directive apply(Throwable arg0) {
-				getSelf().tell(task.failed(TaskResultEnum.Failed, "AsyncWorker creashed", arg0), getSelf());
+				if (task != null) {
+					getSelf().tell(task.failed(TaskResultEnum.Failed, "AsyncWorker creashed", arg0), getSelf());
+				}
 				return SupervisorStrategy.stop();
 			}
 		});
@@ -73,16 +91,15 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 			if (message instanceof Task) {
 				task = (T) message;
 				sender = getSender();
-				if (tryCount == 0) {
-					replyTask(CallbackType.created, task);
-				}
+				tryCount = 0;
+				replyTask(CallbackType.created, task);
 				// task have initial delay, schedule it
 				if (task.getExecOptions().getInitDelaySec() > 0) {
 					retryMessageCancellable = getContext()
 							.system()
 							.scheduler()
 							.scheduleOnce(Duration.create(task.getExecOptions().getInitDelaySec(), TimeUnit.SECONDS), getSelf(),
-									InternalMessageType.PROCESS_REQUEST, getContext().system().dispatcher());
+									new Tick(InternalMessageType.PROCESS_REQUEST, run), getContext().system().dispatcher());
 				} 
 				// run right away
 				else {
@@ -94,12 +111,20 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 			// task result
 			else if (message instanceof TaskResult) {
 				final TaskResult r = (TaskResult) message;
-				processRequestResult(r);
+				// ignore late result of a task already replied
+				if (task != null && r.getTask() == task) {
+					processRequestResult(r);
+				}
 			} 
 
 			// internal message for timeout
-			else if (message instanceof InternalMessageType) {
-				switch ((InternalMessageType) message) {
+			else if (message instanceof Tick) {
+				Tick tick = (Tick) message;
+				// ignore late tick of a task already replied
+				if (task == null || tick.run != run) {
+					return;
+				}
+				switch (tick.type) {
 
 				case PROCESS_REQUEST:
 					processRequest();
@@ -121,7 +146,9 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 			}
 		} 
 		catch (Throwable e) {
-			retry(task.failed(TaskResultEnum.Failed, e.toString(), e));
+			if (task != null) {
+				retry(task.failed(TaskResultEnum.Failed, e.toString(), e));
+			}
 		}
 	}
 	
@@ -130,7 +157,7 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 	 */
 	private final void processRequest() {
 
-		if (asyncWorker == null) {
+		if (asyncWorker == null || asyncWorker.isTerminated()) {
 			asyncWorker = getContext().actorOf(new Props(TaskModule.getExecutableTaskWorkerFactory()));
 		}
 		
@@ -143,7 +170,7 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 					.system()
 					.scheduler()
 					.scheduleOnce(timeoutDuration, getSelf(),
-							InternalMessageType.PROCESS_ON_TIMEOUT,
+							new Tick(InternalMessageType.PROCESS_ON_TIMEOUT, run),
 							getContext().system().dispatcher());
 		}
 
@@ -186,7 +213,7 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 					.system()
 					.scheduler()
 					.scheduleOnce(Duration.create(task.getExecOptions().getRetryDelaySec(), TimeUnit.SECONDS), getSelf(),
-							InternalMessageType.RETRY_REQUEST, getContext().system().dispatcher());
+							new Tick(InternalMessageType.RETRY_REQUEST, run), getContext().system().dispatcher());
 		} 
 		else {
 			// We have exceeded all retries, reply back to sender
@@ -195,14 +222,35 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 		}
 	}
 
-	@Override
-	public void postStop() {
+	/**
+	 * cancel what is scheduled for the task
+	 */
+	private final void cancelSchedules() {
 		if (retryMessageCancellable != null && !retryMessageCancellable.isCancelled()) {
 			retryMessageCancellable.cancel();
 		}
 		if (timeoutMessageCancellable != null && !timeoutMessageCancellable.isCancelled()) {
 			timeoutMessageCancellable.cancel();
 		}
+		retryMessageCancellable = null;
+		timeoutMessageCancellable = null;
+	}
+	
+	/**
+	 * task is replied, ready for the next one
+	 */
+	private final void reset() {
+		cancelSchedules();
+		task = null;
+		curResult = null;
+		timeoutDuration = null;
+		tryCount = 0;
+		run++;
+	}
+
+	@Override
+	public void postStop() {
+		cancelSchedules();
 		if (asyncWorker != null && !asyncWorker.isTerminated()) {
 			asyncWorker.tell(PoisonPill.getInstance(), null);
 		}
@@ -227,6 +275,7 @@ public class AsyncTaskWorker<T extends ExecutableTask> extends UntypedActor {
 		if (!getContext().system().deadLetters().equals(sender)) {
 			sender.tell(new WorkerMessage(CallbackType.taskresult, task, taskResult), getSelf());
 		}
+		reset();
 	}
 
 	@Override
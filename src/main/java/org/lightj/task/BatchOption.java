@@ -14,6 +14,15 @@ public class BatchOption {
 		public int getMaxRate();
 	}
 	
+	/** all limits of a batch, max rate being the max in flight */
+	public interface PolicySettingMessage extends RateSettingMessage {
+		public double getRatePerSec();
+		public int getBurst();
+		public int getMaxPerHost();
+		public int getMinLimit();
+		public int getMaxLimit();
+	}
+	
 	/** batch strategy */
 	public static enum Strategy {
 		UNLIMITED(new UntypedActorFactory() {
@@ -33,6 +42,36 @@ public class BatchOption {
 				return new MaxConcurrentStrategy();
 			}
 
+		}),
+		/** tasks started per second, with burst */
+		TOKEN_BUCKET(new UntypedActorFactory() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Actor create() throws Exception {
+				return new PolicyStrategy();
+			}
+
+		}),
+		/** max in flight adjusted to task latency and failures, between min and max limit, starting at concurrent rate */
+		ADAPTIVE(new UntypedActorFactory() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Actor create() throws Exception {
+				return new AdaptiveStrategy();
+			}
+
+		}),
+		/** all limits set together, concurrent rate, rate per second with burst, and per host cap */
+		COMPOSITE(new UntypedActorFactory() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Actor create() throws Exception {
+				return new PolicyStrategy();
+			}
+
 		});
 		private final UntypedActorFactory strategyActorFactory;
 		Strategy(UntypedActorFactory strategyActorFactory) {
@@ -44,8 +83,26 @@ public class BatchOption {
 		
 	};
 	
+	/** how tasks of a batch are dispatched */
+	public static enum DispatchMode {
+		/** a new worker actor per task */
+		ACTOR_PER_TASK,
+		/** a fixed pool of reusable worker actors */
+		POOLED,
+		/** no worker actor, tasks run on the direct executor of {@link TaskModule} with a callback */
+		DIRECT
+	}
+	
 	private int concurrentRate;
 	private Strategy strategy;
+	private DispatchMode dispatchMode = DispatchMode.ACTOR_PER_TASK;
+	private int poolSize;
+	private double ratePerSec;
+	private int burst;
+	private int maxPerHost;
+	private int minLimit;
+	private int maxLimit;
+	private CompletionPolicy completionPolicy;
 	
 	public BatchOption() {}
 	
@@ -69,4 +126,69 @@ public class BatchOption {
 		return strategy;
 	}
 
+	public double getRatePerSec() {
+		return ratePerSec;
+	}
+	/** max tasks started per second, token bucket and composite strategies */
+	public void setRatePerSec(double ratePerSec) {
+		this.ratePerSec = ratePerSec;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+	/** tasks allowed to start at once, defaults to one second worth of rate */
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+	/** max tasks in flight per target host, composite strategy */
+	public void setMaxPerHost(int maxPerHost) {
+		this.maxPerHost = maxPerHost;
+	}
+	
+	public int getMinLimit() {
+		return minLimit;
+	}
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+	/** bounds of max in flight, adaptive strategy */
+	public void setLimits(int minLimit, int maxLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+	
+	public CompletionPolicy getCompletionPolicy() {
+		return completionPolicy;
+	}
+	/** end the batch early, outstanding tasks are canceled */
+	public void setCompletionPolicy(CompletionPolicy completionPolicy) {
+		this.completionPolicy = completionPolicy;
+	}
+	
+	/** any limit set */
+	public boolean hasLimits() {
+		return concurrentRate > 0 || ratePerSec > 0 || maxPerHost > 0 || minLimit > 0 || maxLimit > 0;
+	}
+
+	public DispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+	/** polling tasks always get a worker actor per task */
+	public void setDispatchMode(DispatchMode dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/** size of worker pool in pooled mode, defaults to the concurrent rate */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
 }
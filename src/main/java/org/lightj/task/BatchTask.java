@@ -14,6 +14,10 @@ public class BatchTask extends Task {
 	private final Task[] tasks;
 	/** batch option, strategy */
 	private final BatchOption batchOption;
+	/** in flight task permit, optional */
+	private ITaskPermit permit;
+	/** max tasks in flight as of now, adaptive strategy only */
+	private volatile int liveLimit;
 	
 	public Task[] getTasks() {
 		return tasks;
@@ -37,6 +41,22 @@ public class BatchTask extends Task {
 		return batchOption;
 	}
 
+	public ITaskPermit getPermit() {
+		return permit;
+	}
+
+	public void setPermit(ITaskPermit permit) {
+		this.permit = permit;
+	}
+
+	public int getLiveLimit() {
+		return liveLimit;
+	}
+
+	public void setLiveLimit(int liveLimit) {
+		this.liveLimit = liveLimit;
+	}
+
 	/**
 	 * set all sub tasks with flow context
 	 */
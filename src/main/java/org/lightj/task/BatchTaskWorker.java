@@ -1,6 +1,15 @@
 package org.lightj.task;
 
-import org.lightj.task.BatchOption.RateSettingMessage;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.lightj.task.BatchOption.DispatchMode;
+import org.lightj.task.BatchOption.PolicySettingMessage;
 
 import scala.concurrent.duration.Duration;
 import akka.actor.Actor;
@@ -31,6 +40,34 @@ public class BatchTaskWorker extends UntypedActor {
 	
 	/** batch strategy, concurrent rate etc. */
 	private ActorRef batchingStrategy;
+	
+	/** tasks holding an in flight permit of the tenant */
+	private final Set<Task> permitted = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+	
+	/** host bulkhead permits held and waited for, by task */
+	private final Map<Task, String> hostPermits = new IdentityHashMap<Task, String>();
+	private final Map<Task, HostWaiter> hostWaiters = new IdentityHashMap<Task, HostWaiter>();
+	
+	/** early completion, on the tally kept by the listener, and tasks dispatched not yet done, only with a completion policy */
+	private final CompletionPolicy completionPolicy;
+	private final int numOfTasks;
+	private final Map<Task, DirectTaskRunner> outstanding = new IdentityHashMap<Task, DirectTaskRunner>();
+	private boolean ended;
+	
+	/** delay before asking for a permit again */
+	private static final long PERMIT_RETRY_MS = 200;
+	
+	/** how tasks are dispatched */
+	private final DispatchMode dispatchMode;
+	
+	/** pooled dispatch, reusable workers and tasks waiting for one */
+	private final int poolSize;
+	private int poolCreated;
+	private final Deque<ActorRef> idleWorkers = new ArrayDeque<ActorRef>();
+	private final Deque<Task> waitingTasks = new ArrayDeque<Task>();
+	
+	/** worker pool size when neither pool size nor concurrent rate is set */
+	static final int DEFAULT_POOL_SIZE = 16;
 
 	/** constructor */
 	public BatchTaskWorker(final BatchTask task, final UntypedActorFactory workerFactory, final ITaskListener listener) {
@@ -39,6 +76,26 @@ public class BatchTaskWorker extends UntypedActor {
 		this.workerFactory = workerFactory;
 		this.listener = listener;
 		listener.setExpectedResultCount(task.getTasks().length);
+		// results the listener counted in before this batch, e.g. recovered from checkpoint, count towards the policy
+		this.numOfTasks = listener.getSummary().getTotal() + task.getTasks().length;
+		
+		// polling tasks need their own poll worker actor, direct dispatch only runs executable tasks
+		BatchOption option = task.getBatchOption();
+		Task first = task.getTasks().length > 0 ? task.getTasks()[0] : null;
+		DispatchMode mode = (option != null && option.getDispatchMode() != null) ? option.getDispatchMode() : DispatchMode.ACTOR_PER_TASK;
+		if (first == null || first.needPolling() || (mode == DispatchMode.DIRECT && !(first instanceof ExecutableTask))) {
+			mode = DispatchMode.ACTOR_PER_TASK;
+		}
+		this.dispatchMode = mode;
+		int size = DEFAULT_POOL_SIZE;
+		if (option != null && option.getPoolSize() > 0) {
+			size = option.getPoolSize();
+		}
+		else if (option != null && option.getConcurrentRate() > 0) {
+			size = option.getConcurrentRate();
+		}
+		this.poolSize = Math.max(1, Math.min(size, task.getTasks().length));
+		this.completionPolicy = (option != null) ? option.getCompletionPolicy() : null;
 		
 		// Other initialization
 		this.supervisorStrategy = new OneForOneStrategy(0, Duration.Inf(), new Function<Throwable, Directive>() {
@@ -53,6 +110,11 @@ public class BatchTaskWorker extends UntypedActor {
 	public void onReceive(Object message) throws Exception 
 	{
 		try {
+			// batch ended early, what is left is cleaned up on stop
+			if (ended && (message instanceof Task || message instanceof WorkerMessage || message instanceof HostWaiter)) {
+				return;
+			}
+			
 			// signal to start processing original task from sender
 			if (message instanceof WorkerMessage.Type) {
 				
@@ -80,6 +142,19 @@ public class BatchTaskWorker extends UntypedActor {
 			
 			} 
 			
+			// host permit granted after waiting
+			else if (message instanceof HostWaiter) {
+				HostWaiter waiter = (HostWaiter) message;
+				hostWaiters.remove(waiter.task);
+				hostPermits.put(waiter.task, waiter.host);
+				processTask(waiter.task);
+			}
+			
+			// live limit of adaptive strategy
+			else if (message instanceof AdaptiveStrategy.LimitChanged) {
+				task.setLiveLimit(((AdaptiveStrategy.LimitChanged) message).getLimit());
+			}
+			
 			// invalid msg
 			else {
 				unhandled(message);
@@ -112,14 +187,40 @@ public class BatchTaskWorker extends UntypedActor {
 			};
 			
 		}
-		batchingStrategy = getContext().actorOf(new Props(strategyFactory));
+		batchingStrategy = getContext().actorOf(new Props(strategyFactory).withDispatcher(getContext().props().dispatcher()));
 		if (task.getBatchOption() != null && 
-				task.getBatchOption().getConcurrentRate() > 0) {
-			batchingStrategy.tell(new RateSettingMessage() {
+				task.getBatchOption().hasLimits()) {
+			final BatchOption option = task.getBatchOption();
+			batchingStrategy.tell(new PolicySettingMessage() {
 
 				@Override
 				public int getMaxRate() {
-					return task.getBatchOption().getConcurrentRate();
+					return option.getConcurrentRate();
+				}
+
+				@Override
+				public double getRatePerSec() {
+					return option.getRatePerSec();
+				}
+
+				@Override
+				public int getBurst() {
+					return option.getBurst();
+				}
+
+				@Override
+				public int getMaxPerHost() {
+					return option.getMaxPerHost();
+				}
+
+				@Override
+				public int getMinLimit() {
+					return option.getMinLimit();
+				}
+
+				@Override
+				public int getMaxLimit() {
+					return option.getMaxLimit();
 				}
 				
 			}, getSelf());
@@ -134,8 +235,80 @@ public class BatchTaskWorker extends UntypedActor {
 	 * @param atask
 	 */
 	private final void processTask(Task atask) {
-		ActorRef worker = getContext().actorOf(new Props(workerFactory));
-		worker.tell(atask, getSelf());
+		// tenant cap before host bulkhead, a tenant over its cap holds no host permit other tenants wait on
+		ITaskPermit permit = task.getPermit();
+		if (permit != null && !permitted.contains(atask)) {
+			if (!permit.tryAcquire()) {
+				// over the in flight cap, try again later
+				getContext().system().scheduler().scheduleOnce(Duration.create(PERMIT_RETRY_MS, TimeUnit.MILLISECONDS), 
+						getSelf(), atask, getContext().system().dispatcher());
+				return;
+			}
+			permitted.add(atask);
+		}
+		if (!hostPermits.containsKey(atask)) {
+			String host = atask.getTargetHost();
+			HostBulkheads bulkheads = TaskModule.getHostBulkheads();
+			if (bulkheads.isLimited(host)) {
+				HostWaiter waiter = new HostWaiter(atask, host, getSelf());
+				if (!bulkheads.acquire(host, waiter)) {
+					// host at its cap, wait in its queue
+					hostWaiters.put(atask, waiter);
+					return;
+				}
+				hostPermits.put(atask, host);
+			}
+		}
+		switch (dispatchMode) {
+		case DIRECT:
+			DirectTaskRunner runner = new DirectTaskRunner((ExecutableTask) atask, getSelf(), getContext().system(), TaskModule.getDirectExecutor());
+			if (completionPolicy != null) {
+				outstanding.put(atask, runner);
+			}
+			runner.start();
+			break;
+		case POOLED:
+			ActorRef worker = idleWorkers.poll();
+			if (worker == null && poolCreated < poolSize) {
+				worker = newWorker();
+				poolCreated++;
+			}
+			if (worker == null) {
+				// all workers busy, next free one takes it
+				waitingTasks.offer(atask);
+			}
+			else {
+				worker.tell(atask, getSelf());
+			}
+			break;
+		default:
+			newWorker().tell(atask, getSelf());
+		}
+		if (completionPolicy != null && dispatchMode != DispatchMode.DIRECT) {
+			outstanding.put(atask, null);
+		}
+	}
+	
+	/**
+	 * new worker, workers run on the same dispatcher as the batch
+	 * @return
+	 */
+	private final ActorRef newWorker() {
+		return getContext().actorOf(new Props(workerFactory).withDispatcher(getContext().props().dispatcher()));
+	}
+	
+	/**
+	 * pooled worker done with its task, give it the next waiting one or put it back to the pool
+	 * @param worker
+	 */
+	private final void workerDone(ActorRef worker) {
+		Task next = waitingTasks.poll();
+		if (next != null) {
+			worker.tell(next, getSelf());
+		}
+		else {
+			idleWorkers.push(worker);
+		}
 	}
 
 	/**
@@ -152,21 +325,97 @@ public class BatchTaskWorker extends UntypedActor {
 			listener.taskSubmitted(workerMsg.getTask());
 			break;
 		case taskresult:
-			batchingStrategy.tell(WorkerMessage.Type.COMPLETE_TASK, getSelf());
+			releasePermit(workerMsg.getTask());
+			String host = hostPermits.remove(workerMsg.getTask());
+			if (host != null) {
+				TaskModule.getHostBulkheads().release(host);
+			}
+			if (dispatchMode == DispatchMode.POOLED) {
+				workerDone(getSender());
+			}
+			batchingStrategy.tell(workerMsg, getSelf());
 			int remaining = listener.handleTaskResult(workerMsg.getTask(), workerMsg.getResult());
 			// if listener confirm there's no more result, terminate actor chain 
 			if (remaining == 0) {
-				getSender().tell(WorkerMessage.Type.COMPLETE_REQUEST, getSelf());
+				if (!getContext().system().deadLetters().equals(getSender())) {
+					getSender().tell(WorkerMessage.Type.COMPLETE_REQUEST, getSelf());
+				}
 
 				// Self-terminate
 				getSelf().tell(PoisonPill.getInstance(), null);
 			}
+			else if (completionPolicy != null) {
+				outstanding.remove(workerMsg.getTask());
+				TaskResultEnum status = completionPolicy.evaluate(listener.getSummary(), numOfTasks);
+				if (status != null) {
+					endEarly(status, remaining);
+				}
+			}
 			break;
 		default:
 			break;
 		}
 	}
 	
+	/**
+	 * completion policy met, drop queued tasks, abort tasks in flight 
+	 * and complete the batch with one result for the batch instead of one per task left
+	 * @param status
+	 * @param remaining
+	 */
+	private final void endEarly(TaskResultEnum status, int remaining) {
+		ended = true;
+		getContext().stop(batchingStrategy);
+		waitingTasks.clear();
+		for (Map.Entry<Task, DirectTaskRunner> entry : outstanding.entrySet()) {
+			if (entry.getValue() != null) {
+				entry.getValue().cancel();
+			}
+			else if (entry.getKey() instanceof ExecutableTask) {
+				((ExecutableTask) entry.getKey()).cancel();
+			}
+		}
+		TaskResultSummary summary = listener.getSummary();
+		String msg = String.format("%s after %s succeeded, %s failed, %s of %s tasks canceled", 
+				status, summary.getCount(TaskResultEnum.Success), summary.getFailures(), remaining, numOfTasks);
+		outstanding.clear();
+		listener.handleTaskResult(task, task.hasResult(status, msg));
+
+		// Self-terminate, stops workers in flight
+		getSelf().tell(PoisonPill.getInstance(), null);
+	}
+	
+	/**
+	 * return the in flight permit of a task
+	 * @param atask
+	 */
+	private final void releasePermit(Task atask) {
+		if (permitted.remove(atask)) {
+			task.getPermit().release();
+		}
+	}
+	
+	@Override
+	public void postStop() {
+		// return permits of tasks still in flight
+		for (int i = permitted.size(); i > 0; i--) {
+			task.getPermit().release();
+		}
+		permitted.clear();
+		HostBulkheads bulkheads = TaskModule.getHostBulkheads();
+		for (String host : hostPermits.values()) {
+			bulkheads.release(host);
+		}
+		for (HostWaiter waiter : hostWaiters.values()) {
+			if (!bulkheads.cancel(waiter.host, waiter)) {
+				// granted but never got here
+				bulkheads.release(waiter.host);
+			}
+		}
+		hostPermits.clear();
+		hostWaiters.clear();
+	}
+	
 	/**
 	 * reply with error result, batch failed
 	 * @param state
@@ -182,6 +431,24 @@ public class BatchTaskWorker extends UntypedActor {
 		getSelf().tell(PoisonPill.getInstance(), null);
 	}
 	
+	/**
+	 * task waiting for a host permit, sent back to the batch when granted
+	 */
+	private static class HostWaiter extends HostBulkheads.Waiter {
+		final Task task;
+		final String host;
+		final ActorRef batch;
+		HostWaiter(Task task, String host, ActorRef batch) {
+			this.task = task;
+			this.host = host;
+			this.batch = batch;
+		}
+		@Override
+		protected void granted() {
+			batch.tell(this, null);
+		}
+	}
+	
 	@Override
 	public SupervisorStrategy supervisorStrategy() {
 		return supervisorStrategy;
@@ -0,0 +1,87 @@
+package org.lightj.task;
+
+/**
+ * when a batch may end before all its tasks call back, fail after max failures or max failure percent of all tasks, 
+ * succeed once a quorum of tasks succeeded, whichever comes first, a condition not set is not checked.
+ * a quorum no longer reachable fails the batch
+ * 
+ * @author binyu
+ *
+ */
+public class CompletionPolicy {
+	
+	/** failed, timed out or canceled tasks to fail the batch, 0 - not set */
+	private int maxFailures;
+	
+	/** percent of all tasks failed to fail the batch, 0 - not set */
+	private double maxFailurePercent;
+	
+	/** succeeded tasks to succeed the batch, 0 - not set */
+	private int quorum;
+	
+	/** default constructor */
+	public CompletionPolicy() {
+	}
+	
+	/** fail fast, on first failure */
+	public static CompletionPolicy failFast() {
+		return new CompletionPolicy().setMaxFailures(1);
+	}
+	
+	/** succeed once quorum of tasks succeeded */
+	public static CompletionPolicy quorum(int quorum) {
+		return new CompletionPolicy().setQuorum(quorum);
+	}
+
+	public int getMaxFailures() {
+		return maxFailures;
+	}
+	public double getMaxFailurePercent() {
+		return maxFailurePercent;
+	}
+	public int getQuorum() {
+		return quorum;
+	}
+	public CompletionPolicy setMaxFailures(int maxFailures) {
+		this.maxFailures = maxFailures;
+		return this;
+	}
+	public CompletionPolicy setMaxFailurePercent(double maxFailurePercent) {
+		this.maxFailurePercent = maxFailurePercent;
+		return this;
+	}
+	public CompletionPolicy setQuorum(int quorum) {
+		this.quorum = quorum;
+		return this;
+	}
+	
+	/**
+	 * outcome of the batch so far
+	 * @param summary	results so far
+	 * @param numOfTasks	all tasks of the batch
+	 * @return	status to end the batch with, null to carry on
+	 */
+	public TaskResultEnum evaluate(TaskResultSummary summary, int numOfTasks) {
+		int failures = summary.getFailures();
+		if (maxFailures > 0 && failures >= maxFailures) {
+			return TaskResultEnum.Failed;
+		}
+		if (maxFailurePercent > 0 && numOfTasks > 0 && failures * 100d / numOfTasks >= maxFailurePercent) {
+			return TaskResultEnum.Failed;
+		}
+		if (quorum > 0) {
+			if (summary.getCount(TaskResultEnum.Success) >= quorum) {
+				return TaskResultEnum.Success;
+			}
+			if (numOfTasks - failures < quorum) {
+				return TaskResultEnum.Failed;
+			}
+		}
+		return null;
+	}
+	
+	public String toString() {
+		return String.format("maxFailures %s, maxFailurePercent %s, quorum %s", maxFailures, maxFailurePercent, quorum);
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.lightj.task;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.lightj.task.WorkerMessage.CallbackType;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+
+/**
+ * run one executable task on a plain executor with a callback instead of through worker actors,
+ * with the same init delay, retry and timeout behavior as {@link AsyncTaskWorker}, 
+ * task events are sent to the batch worker as the worker actors do
+ * 
+ * @author binyu
+ *
+ */
+class DirectTaskRunner implements Runnable, ExecutableTask.ResultCallback {
+	
+	private final ExecutableTask task;
+	private final ActorRef batchWorker;
+	private final ActorSystem system;
+	private final Executor executor;
+	
+	/** runtime */
+	private int tryCount = 0;
+	private boolean replied = false;
+	private Cancellable timeout;
+
+	/**
+	 * constructor
+	 * @param task
+	 * @param batchWorker
+	 * @param system
+	 * @param executor
+	 */
+	DirectTaskRunner(ExecutableTask task, ActorRef batchWorker, ActorSystem system, Executor executor) {
+		this.task = task;
+		this.batchWorker = batchWorker;
+		this.system = system;
+		this.executor = executor;
+	}
+	
+	/**
+	 * start the task
+	 */
+	void start() {
+		tell(CallbackType.created, null);
+		ExecuteOption option = task.getExecOptions();
+		if (option.getTimeOutSec() > 0) {
+			timeout = system.scheduler().scheduleOnce(Duration.create(option.getTimeOutSec(), TimeUnit.SECONDS), new Runnable() {
+				@Override
+				public void run() {
+					finish(task.failed(TaskResultEnum.Timeout, "RequestTimeOut", null));
+				}
+			}, system.dispatcher());
+		}
+		if (option.getInitDelaySec() > 0) {
+			schedule(option.getInitDelaySec());
+		}
+		else {
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * one try of the task
+	 */
+	@Override
+	public void run() {
+		synchronized (this) {
+			if (replied) {
+				return;
+			}
+		}
+		try {
+			TaskResult result = task.execute(this);
+			// synchronous execution with result
+			if (result != null && result.getStatus().isComplete()) {
+				onResult(result);
+			}
+		} catch (Throwable t) {
+			onResult(task.failed(TaskResultEnum.Failed, t.toString(), t));
+		}
+	}
+
+	/**
+	 * result of a try, retry on error if allowed
+	 */
+	@Override
+	public void onResult(TaskResult result) {
+		if (result == null || !result.getStatus().isComplete()) {
+			return;
+		}
+		synchronized (this) {
+			if (replied) {
+				return;
+			}
+			tell(CallbackType.submitted, null);
+			if (!result.getStatus().isAnyError() || tryCount++ >= task.getExecOptions().getMaxRetry()) {
+				finish(result);
+				return;
+			}
+		}
+		schedule(task.getExecOptions().getRetryDelaySec());
+	}
+	
+	/**
+	 * reply the final result once
+	 * @param result
+	 */
+	private void finish(TaskResult result) {
+		synchronized (this) {
+			if (replied) {
+				return;
+			}
+			replied = true;
+		}
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		tell(CallbackType.taskresult, result);
+	}
+	
+	/**
+	 * batch ended early, drop what comes next and abort the task
+	 */
+	void cancel() {
+		synchronized (this) {
+			if (replied) {
+				return;
+			}
+			replied = true;
+		}
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		task.cancel();
+	}
+	
+	/**
+	 * run a try after delay
+	 * @param delaySec
+	 */
+	private void schedule(long delaySec) {
+		system.scheduler().scheduleOnce(Duration.create(delaySec, TimeUnit.SECONDS), new Runnable() {
+			@Override
+			public void run() {
+				executor.execute(DirectTaskRunner.this);
+			}
+		}, system.dispatcher());
+	}
+
+	/**
+	 * send task event to batch worker
+	 * @param type
+	 * @param result
+	 */
+	private void tell(CallbackType type, TaskResult result) {
+		batchWorker.tell(new WorkerMessage(type, task, result), null);
+	}
+
+}
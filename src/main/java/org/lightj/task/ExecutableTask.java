@@ -10,9 +10,19 @@ import akka.actor.ActorRef;
  */
 public abstract class ExecutableTask extends Task {
 
+	/**
+	 * receives result of a task executed directly, without actors
+	 */
+	public interface ResultCallback {
+		public void onResult(TaskResult result);
+	}
+	
 	/** actor ref executing the task */
 	private ActorRef executingActor;
 	
+	/** callback of a task executed directly, instead of executing actor */
+	private ResultCallback callback;
+	
 	/** constructor */
 	public ExecutableTask() {
 		super();
@@ -31,12 +41,29 @@ public abstract class ExecutableTask extends Task {
 	/** execute with call back actor ref */
 	public TaskResult execute(ActorRef executingActor) throws TaskExecutionException {
 		this.executingActor = executingActor;
+		this.callback = null;
+		return execute();
+	}
+	
+	/** execute with a plain call back */
+	public TaskResult execute(ResultCallback callback) throws TaskExecutionException {
+		this.callback = callback;
+		this.executingActor = null;
 		return execute();
 	}
 	
-	/** reply to triggering actor */
+	/** reply to triggering actor or callback */
 	public void reply(TaskResult res) {
-		executingActor.tell(res, null);
+		if (callback != null) {
+			callback.onResult(res);
+		}
+		else {
+			executingActor.tell(res, null);
+		}
+	}
+	
+	/** abort the task in flight if it can, batch ended early, noop by default */
+	public void cancel() {
 	}
 	
 	/** get executing actor ref */
@@ -0,0 +1,188 @@
+package org.lightj.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * process wide cap on tasks in flight per target host, shared by all batches and flows,
+ * a task over the cap waits in the host's queue and is granted the permit of the next task done, first come first served.
+ * hosts without a cap are not limited
+ * 
+ * @author binyu
+ *
+ */
+public class HostBulkheads {
+	
+	/** cap of hosts not set individually, 0 for none */
+	private volatile int defaultMaxInflight;
+	
+	/** caps by host */
+	private final ConcurrentMap<String, Integer> maxInflights = new ConcurrentHashMap<String, Integer>();
+	
+	/** bulkheads by host */
+	private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+	
+	/**
+	 * waiting for a permit, granted or cancelled exactly once
+	 */
+	public static abstract class Waiter {
+		private static final int WAITING = 0, GRANTED = 1, CANCELLED = 2;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private long queuedNanos;
+		
+		/** permit granted, now held by the waiter */
+		protected abstract void granted();
+	}
+	
+	/**
+	 * cap of all hosts not set individually
+	 * @param max	0 for no cap
+	 */
+	public void setDefaultMaxInflight(int max) {
+		this.defaultMaxInflight = max;
+	}
+	
+	/**
+	 * cap of one host
+	 * @param host
+	 * @param max	0 for no cap
+	 */
+	public void setMaxInflight(String host, int max) {
+		maxInflights.put(host, max);
+	}
+	
+	/**
+	 * cap of a host
+	 * @param host
+	 * @return	0 if none
+	 */
+	public int getMaxInflight(String host) {
+		Integer max = maxInflights.get(host);
+		return max != null ? max : defaultMaxInflight;
+	}
+	
+	/**
+	 * whether a host has a cap
+	 * @param host
+	 * @return
+	 */
+	public boolean isLimited(String host) {
+		return host != null && getMaxInflight(host) > 0;
+	}
+	
+	/**
+	 * take a permit of a host, or queue for it
+	 * @param host
+	 * @param waiter	granted later if no permit now
+	 * @return	true if permit taken now
+	 */
+	public boolean acquire(String host, Waiter waiter) {
+		Bulkhead bulkhead = getBulkhead(host);
+		int max = getMaxInflight(host);
+		synchronized (bulkhead) {
+			if (max <= 0 || bulkhead.inflight < max) {
+				bulkhead.inflight++;
+				bulkhead.acquired++;
+				return true;
+			}
+			waiter.queuedNanos = System.nanoTime();
+			bulkhead.queue.offer(waiter);
+			return false;
+		}
+	}
+	
+	/**
+	 * return a permit of a host, handed to the longest waiting if any
+	 * @param host
+	 */
+	public void release(String host) {
+		Bulkhead bulkhead = getBulkhead(host);
+		Waiter next = null;
+		synchronized (bulkhead) {
+			while ((next = bulkhead.queue.poll()) != null) {
+				if (next.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+					long waited = System.nanoTime() - next.queuedNanos;
+					bulkhead.acquired++;
+					bulkhead.waits++;
+					bulkhead.waitNanos += waited;
+					bulkhead.maxWaitNanos = Math.max(bulkhead.maxWaitNanos, waited);
+					break;
+				}
+			}
+			if (next == null && bulkhead.inflight > 0) {
+				bulkhead.inflight--;
+			}
+		}
+		if (next != null) {
+			next.granted();
+		}
+	}
+	
+	/**
+	 * stop waiting
+	 * @param host
+	 * @param waiter
+	 * @return	false if permit already granted, the waiter must release it
+	 */
+	public boolean cancel(String host, Waiter waiter) {
+		if (!waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+			return waiter.state.get() == Waiter.CANCELLED;
+		}
+		Bulkhead bulkhead = getBulkhead(host);
+		synchronized (bulkhead) {
+			bulkhead.queue.remove(waiter);
+		}
+		return true;
+	}
+	
+	/**
+	 * usage of all hosts seen
+	 * @return
+	 */
+	public List<HostUsage> getUsage() {
+		List<HostUsage> usages = new ArrayList<HostUsage>();
+		for (Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+			Bulkhead b = entry.getValue();
+			synchronized (b) {
+				usages.add(new HostUsage(entry.getKey(), getMaxInflight(entry.getKey()), b.inflight, b.queue.size(), 
+						b.acquired, b.waits, TimeUnit.NANOSECONDS.toMillis(b.waitNanos), TimeUnit.NANOSECONDS.toMillis(b.maxWaitNanos)));
+			}
+		}
+		return usages;
+	}
+	
+	/**
+	 * bulkhead by host, created on first use
+	 * @param host
+	 * @return
+	 */
+	private Bulkhead getBulkhead(String host) {
+		Bulkhead bulkhead = bulkheads.get(host);
+		if (bulkhead == null) {
+			Bulkhead existing = bulkheads.putIfAbsent(host, bulkhead = new Bulkhead());
+			if (existing != null) {
+				bulkhead = existing;
+			}
+		}
+		return bulkhead;
+	}
+	
+	/**
+	 * in flight and waiting tasks of one host, guarded by itself
+	 */
+	private static class Bulkhead {
+		int inflight;
+		final ArrayDeque<Waiter> queue = new ArrayDeque<Waiter>();
+		long acquired;
+		long waits;
+		long waitNanos;
+		long maxWaitNanos;
+	}
+
+}
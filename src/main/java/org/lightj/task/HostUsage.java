@@ -0,0 +1,77 @@
+package org.lightj.task;
+
+/**
+ * snapshot of the bulkhead of one host
+ * 
+ * @author binyu
+ *
+ */
+public class HostUsage {
+	
+	private final String host;
+	private final int maxInflight;
+	private final int inflightTasks;
+	private final int queuedTasks;
+	private final long acquired;
+	private final long waits;
+	private final long totalWaitMs;
+	private final long maxWaitMs;
+	
+	HostUsage(String host, int maxInflight, int inflightTasks, int queuedTasks, 
+			long acquired, long waits, long totalWaitMs, long maxWaitMs) {
+		this.host = host;
+		this.maxInflight = maxInflight;
+		this.inflightTasks = inflightTasks;
+		this.queuedTasks = queuedTasks;
+		this.acquired = acquired;
+		this.waits = waits;
+		this.totalWaitMs = totalWaitMs;
+		this.maxWaitMs = maxWaitMs;
+	}
+
+	/** host */
+	public String getHost() {
+		return host;
+	}
+
+	/** cap, 0 if none */
+	public int getMaxInflight() {
+		return maxInflight;
+	}
+
+	/** tasks in flight right now */
+	public int getInflightTasks() {
+		return inflightTasks;
+	}
+
+	/** tasks waiting for a permit right now */
+	public int getQueuedTasks() {
+		return queuedTasks;
+	}
+
+	/** permits taken so far */
+	public long getAcquired() {
+		return acquired;
+	}
+
+	/** permits taken after waiting */
+	public long getWaits() {
+		return waits;
+	}
+
+	/** time spent waiting by all tasks */
+	public long getTotalWaitMs() {
+		return totalWaitMs;
+	}
+
+	/** longest wait */
+	public long getMaxWaitMs() {
+		return maxWaitMs;
+	}
+	
+	/** average wait of tasks that waited */
+	public long getAvgWaitMs() {
+		return waits > 0 ? totalWaitMs / waits : 0;
+	}
+
+}
@@ -38,4 +38,10 @@ public interface ITaskListener {
 	 */
 	public int handleTaskResult(Task task, TaskResult result);
 	
+	/**
+	 * tally of results handled so far, along with results counted in before the tasks ran, e.g. recovered from checkpoint
+	 * @return
+	 */
+	public TaskResultSummary getSummary();
+	
 }
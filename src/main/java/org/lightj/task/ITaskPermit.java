@@ -0,0 +1,22 @@
+package org.lightj.task;
+
+/**
+ * permit to have one more task in flight, used to cap tasks across batches, e.g. per tenant
+ * 
+ * @author binyu
+ *
+ */
+public interface ITaskPermit {
+	
+	/**
+	 * take a permit if available, never block
+	 * @return
+	 */
+	public boolean tryAcquire();
+	
+	/**
+	 * return a permit
+	 */
+	public void release();
+
+}
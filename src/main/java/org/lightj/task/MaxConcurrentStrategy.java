@@ -1,7 +1,6 @@
 package org.lightj.task;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayDeque;
 
 import org.lightj.task.BatchOption.RateSettingMessage;
 
@@ -15,12 +14,12 @@ import akka.actor.UntypedActor;
 
 public class MaxConcurrentStrategy extends UntypedActor {
 
-	/** concurrent rate */
-	private final AtomicInteger concurrentRate = new AtomicInteger(0);
+	/** concurrent rate, only touched by the actor */
+	private int concurrentRate = 0;
 	/** max rate */
 	private int maxConcurrentRate;
 	/** pending tasks */
-	private final LinkedBlockingQueue<Task> taskQ = new LinkedBlockingQueue<Task>();
+	private final ArrayDeque<Task> taskQ = new ArrayDeque<Task>();
 	
 	/** constructor */
 	public MaxConcurrentStrategy() {
@@ -33,7 +32,7 @@ public class MaxConcurrentStrategy extends UntypedActor {
 			
 			// throttle a task
 			if (message instanceof Task) {
-				if (concurrentRate.incrementAndGet() <= maxConcurrentRate) {
+				if (++concurrentRate <= maxConcurrentRate) {
 					getSender().tell(message, getSelf());
 				}
 				else {
@@ -48,13 +47,13 @@ public class MaxConcurrentStrategy extends UntypedActor {
 			}
 			
 			// one task complete, launch more 
-			else if (message == WorkerMessage.Type.COMPLETE_TASK) {
+			else if (message instanceof WorkerMessage || message == WorkerMessage.Type.COMPLETE_TASK) {
 
 				if (!taskQ.isEmpty()) {
-					getSender().tell(taskQ.take(), getSelf());
+					getSender().tell(taskQ.poll(), getSelf());
 				}
 				else {
-					concurrentRate.decrementAndGet();
+					concurrentRate--;
 				}
 				// do nothing when queue is empty
 			}
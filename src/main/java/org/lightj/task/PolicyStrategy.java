@@ -0,0 +1,244 @@
+package org.lightj.task;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.lightj.task.BatchOption.PolicySettingMessage;
+import org.lightj.task.BatchOption.RateSettingMessage;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.UntypedActor;
+
+/**
+ * batch strategy enforcing all limits set in one go, max tasks in flight, 
+ * max tasks started per second with a token bucket of burst capacity, and max tasks in flight per host, 
+ * a limit not set is not enforced.
+ * 
+ * tasks are queued per host, hosts with tasks to run take turns, 
+ * a host at its cap sits out until one of its tasks completes
+ * 
+ * @author binyu
+ *
+ */
+public class PolicyStrategy extends UntypedActor {
+	
+	/** queue of tasks without a host */
+	static final String NO_HOST = "";
+
+	/** internal message to retry after tokens refilled */
+	private static enum InternalMessageType {
+		REFILL
+	}
+	
+	/** limits */
+	private int maxConcurrent;
+	private double ratePerSec;
+	private int burst;
+	private int maxPerHost;
+	
+	/** token bucket */
+	private double tokens;
+	private long lastRefillMs;
+	private Cancellable refill;
+	
+	/** in flight */
+	private int inFlight;
+	private final Map<String, Integer> hostInFlight = new HashMap<String, Integer>();
+	
+	/** pending tasks per host, and hosts with pending tasks not at their cap in turn */
+	private final Map<String, ArrayDeque<Task>> pending = new HashMap<String, ArrayDeque<Task>>();
+	private final ArrayDeque<String> ready = new ArrayDeque<String>();
+	
+	/** where released tasks go */
+	private ActorRef requester;
+
+	@Override
+	public void onReceive(Object message) throws Exception {
+		try {
+			// queue a task
+			if (message instanceof Task) {
+				requester = getSender();
+				enqueue((Task) message);
+				drain();
+			}
+			
+			// initialize the strategy
+			else if (message instanceof RateSettingMessage) {
+				configure((RateSettingMessage) message);
+			}
+			
+			// one task complete, launch more
+			else if (message instanceof WorkerMessage) {
+				complete(((WorkerMessage) message).getTask());
+				drain();
+			}
+			else if (message == WorkerMessage.Type.COMPLETE_TASK) {
+				complete(null);
+				drain();
+			}
+			
+			// tokens refilled
+			else if (message == InternalMessageType.REFILL) {
+				refill = null;
+				drain();
+			}
+			
+			// invalid msg
+			else {
+				unhandled(message);
+			}
+		}
+		catch (Throwable e) {
+			// should have never happened
+		}
+	}
+	
+	/**
+	 * take limits
+	 * @param setting
+	 */
+	private void configure(RateSettingMessage setting) {
+		maxConcurrent = setting.getMaxRate();
+		if (setting instanceof PolicySettingMessage) {
+			PolicySettingMessage policy = (PolicySettingMessage) setting;
+			ratePerSec = policy.getRatePerSec();
+			burst = policy.getBurst() > 0 ? policy.getBurst() : (int) Math.max(1, Math.ceil(ratePerSec));
+			maxPerHost = policy.getMaxPerHost();
+		}
+		tokens = burst;
+		lastRefillMs = System.currentTimeMillis();
+	}
+
+	/**
+	 * queue a task under its host
+	 * @param task
+	 */
+	private void enqueue(Task task) {
+		String host = hostOf(task);
+		ArrayDeque<Task> queue = pending.get(host);
+		if (queue == null) {
+			queue = new ArrayDeque<Task>();
+			pending.put(host, queue);
+			if (!isCapped(host)) {
+				ready.offer(host);
+			}
+		}
+		queue.offer(task);
+	}
+	
+	/**
+	 * release as many tasks as the limits allow
+	 */
+	private void drain() {
+		while (!ready.isEmpty()) {
+			if (maxConcurrent > 0 && inFlight >= maxConcurrent) {
+				return;
+			}
+			if (ratePerSec > 0) {
+				refillTokens();
+				if (tokens < 1) {
+					scheduleRefill();
+					return;
+				}
+				tokens--;
+			}
+			String host = ready.poll();
+			ArrayDeque<Task> queue = pending.get(host);
+			Task task = queue.poll();
+			inFlight++;
+			if (!NO_HOST.equals(host)) {
+				Integer count = hostInFlight.get(host);
+				hostInFlight.put(host, count != null ? count + 1 : 1);
+			}
+			if (queue.isEmpty()) {
+				pending.remove(host);
+			}
+			else if (!isCapped(host)) {
+				// next host's turn
+				ready.offer(host);
+			}
+			requester.tell(task, getSelf());
+		}
+	}
+	
+	/**
+	 * one task done
+	 * @param task
+	 */
+	private void complete(Task task) {
+		if (inFlight > 0) {
+			inFlight--;
+		}
+		String host = (task != null) ? hostOf(task) : NO_HOST;
+		Integer count = hostInFlight.get(host);
+		if (count == null) {
+			return;
+		}
+		boolean wasCapped = isCapped(host);
+		if (count <= 1) {
+			hostInFlight.remove(host);
+		}
+		else {
+			hostInFlight.put(host, count - 1);
+		}
+		if (wasCapped && pending.containsKey(host)) {
+			ready.offer(host);
+		}
+	}
+	
+	/**
+	 * whether host is at its cap
+	 * @param host
+	 * @return
+	 */
+	private boolean isCapped(String host) {
+		if (maxPerHost <= 0 || NO_HOST.equals(host)) {
+			return false;
+		}
+		Integer count = hostInFlight.get(host);
+		return count != null && count >= maxPerHost;
+	}
+	
+	/**
+	 * add tokens accrued since last refill, up to burst
+	 */
+	private void refillTokens() {
+		long now = System.currentTimeMillis();
+		tokens = Math.min(burst, tokens + (now - lastRefillMs) * ratePerSec / 1000d);
+		lastRefillMs = now;
+	}
+	
+	/**
+	 * wake up when next token is due
+	 */
+	private void scheduleRefill() {
+		if (refill != null) {
+			return;
+		}
+		long delayMs = Math.max(1, (long) Math.ceil((1 - tokens) * 1000d / ratePerSec));
+		refill = getContext().system().scheduler().scheduleOnce(Duration.create(delayMs, TimeUnit.MILLISECONDS), 
+				getSelf(), InternalMessageType.REFILL, getContext().system().dispatcher());
+	}
+	
+	/**
+	 * host of a task
+	 * @param task
+	 * @return
+	 */
+	private static String hostOf(Task task) {
+		String host = task.getTargetHost();
+		return host != null ? host : NO_HOST;
+	}
+
+	@Override
+	public void postStop() {
+		if (refill != null && !refill.isCancelled()) {
+			refill.cancel();
+		}
+	}
+
+}
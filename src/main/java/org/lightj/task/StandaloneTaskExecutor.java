@@ -41,8 +41,9 @@ public class StandaloneTaskExecutor {
 
 	/**
 	 * execute tasks
+	 * @return the batch fired, for its live limit
 	 */
-	public void execute() {
+	public BatchTask execute() {
 		
 		List<ExecutableTask> realTasks = getRealTasks();
 		
@@ -52,6 +53,7 @@ public class StandaloneTaskExecutor {
 		
 		final BatchTask batchTask = new BatchTask(batchOption, realTasks.toArray(new ExecutableTask[0]));
 		fire(batchTask, taskListener);
+		return batchTask;
 		
 	}
 	
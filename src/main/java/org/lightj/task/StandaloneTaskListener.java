@@ -14,9 +14,16 @@ public class StandaloneTaskListener implements ITaskListener {
 	/** logger */
 	static Logger logger = LoggerFactory.getLogger(StandaloneTaskListener.class.getName());
 
-	/** all results */
+	/** all results, kept only if retaining */
 	protected ConcurrentMap<String, TaskResult> results = 
 			new ConcurrentHashMap<String, TaskResult>();
+	protected volatile boolean retainResults = true;
+	
+	/** running tally of results */
+	protected final TaskResultSummary summary = new TaskResultSummary();
+	
+	/** result of the batch as a whole, crashed or ended early */
+	protected volatile TaskResult batchResult;
 	
 	/** number of tasks for tracking */
 	protected AtomicInteger numOfTasks = new AtomicInteger(0);
@@ -39,6 +46,21 @@ public class StandaloneTaskListener implements ITaskListener {
 	public void setDelegateHandler(ITaskEventHandler delegateHandler) {
 		this.delegateHandler = delegateHandler;
 	}
+	
+	/** keep every result for the completion handler, otherwise only the summary is kept */
+	public void setRetainResults(boolean retainResults) {
+		this.retainResults = retainResults;
+	}
+
+	/** tally of results so far */
+	public TaskResultSummary getSummary() {
+		return summary;
+	}
+	
+	/** result of the batch as a whole if it crashed or ended early, null otherwise */
+	public TaskResult getBatchResult() {
+		return batchResult;
+	}
 
 	/**
 	 * result handle task completed event
@@ -51,7 +73,15 @@ public class StandaloneTaskListener implements ITaskListener {
 		try {
 			// handle result
 			if (task != null && result != null) {
-				results.put(task.getTaskId(), result);
+				if (task instanceof BatchTask) {
+					batchResult = result;
+				}
+				else {
+					summary.add(result);
+				}
+				if (retainResults) {
+					results.put(task.getTaskId(), result);
+				}
 			}
 			executeOnResult(task, result);
 		} catch (Throwable t) {
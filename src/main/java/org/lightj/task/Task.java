@@ -87,6 +87,19 @@ public abstract class Task {
 	public boolean needPolling() {
 		return monitorOption != null;
 	}
+	/** host the task talks to, null if none, used by per host limits */
+	public String getTargetHost() {
+		return getContextValue("host");
+	}
+	
+	/**
+	 * identity of the task stable across flow recovery, unlike task id, matches the task to its step checkpoint,
+	 * override if tasks of a step can not be told apart by type and host
+	 * @return
+	 */
+	public String getCheckpointKey() {
+		return String.format("%s|%s", this.getClass().getName(), getTargetHost());
+	}
 	
 	public Map<String, Object> getContext() {
 		return context;
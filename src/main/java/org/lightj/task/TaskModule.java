@@ -1,11 +1,20 @@
 package org.lightj.task;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.lightj.initialization.BaseInitializable;
 import org.lightj.initialization.BaseModule;
 import org.lightj.initialization.InitializationException;
 
 import akka.actor.Actor;
 import akka.actor.ActorSystem;
+import akka.actor.Props;
 import akka.actor.UntypedActorFactory;
 
 import com.typesafe.config.Config;
@@ -49,6 +58,76 @@ public class TaskModule {
 		return this;
 	}
 
+	/**
+	 * run batch and task workers of a lane on a dispatcher defined in actor system config,
+	 * lanes without a dispatcher run on the default one
+	 * @param lane
+	 * @param dispatcherId
+	 * @return
+	 */
+	public TaskModule setLaneDispatcher(String lane, String dispatcherId) {
+		s_Module.validateForChange();
+		s_Module.laneDispatchers.put(lane, dispatcherId);
+		return this;
+	}
+	
+	/**
+	 * props running on dispatcher of a lane
+	 * @param props
+	 * @param lane
+	 * @return
+	 */
+	public static Props laneProps(Props props, String lane) {
+		validateInit();
+		String dispatcherId = (lane != null) ? s_Module.laneDispatchers.get(lane) : null;
+		return dispatcherId != null ? props.withDispatcher(dispatcherId) : props;
+	}
+
+	/**
+	 * executor running tasks of batches in direct dispatch mode,
+	 * defaults to a bounded pool owned and shut down by the module
+	 * @param directExecutor
+	 * @return
+	 */
+	public TaskModule setDirectExecutor(Executor directExecutor) {
+		s_Module.validateForChange();
+		s_Module.directExecutor = directExecutor;
+		return this;
+	}
+	
+	/** executor of direct dispatch mode */
+	public static Executor getDirectExecutor() {
+		validateInit();
+		return s_Module.directExecutor != null ? s_Module.directExecutor : s_Module.ownedDirectExecutor;
+	}
+
+	/**
+	 * cap tasks in flight of every host across all batches
+	 * @param max	0 for no cap
+	 * @return
+	 */
+	public TaskModule setDefaultHostMaxInflight(int max) {
+		s_Module.hostBulkheads.setDefaultMaxInflight(max);
+		return this;
+	}
+	
+	/**
+	 * cap tasks in flight of a host across all batches
+	 * @param host
+	 * @param max	0 for no cap
+	 * @return
+	 */
+	public TaskModule setHostMaxInflight(String host, int max) {
+		s_Module.hostBulkheads.setMaxInflight(host, max);
+		return this;
+	}
+	
+	/** per host bulkheads, caps can be changed and usage read at any time */
+	public static HostBulkheads getHostBulkheads() {
+		validateInit();
+		return s_Module.hostBulkheads;
+	}
+
 	/** get actor system */
 	public static ActorSystem getActorSystem() {
 		validateInit();
@@ -75,11 +154,23 @@ public class TaskModule {
 		private String actorSystemName;
 		private Config actorSystemConfig;
 		
+		/** lane to dispatcher id */
+		private Map<String, String> laneDispatchers = new HashMap<String, String>();
+		
 		/** create actor system */
 		private ActorSystem system;
 		private UntypedActorFactory asyncActorFactory;
 		private UntypedActorFactory asyncPollActorFctory;
 		private UntypedActorFactory executableTaskActorFactory;
+		
+		/** executor of direct dispatch mode */
+		private Executor directExecutor;
+		
+		/** default executor of direct dispatch mode, blocking tasks must not starve the actor dispatcher */
+		private ExecutorService ownedDirectExecutor;
+		
+		/** per host caps shared by all batches */
+		private HostBulkheads hostBulkheads = new HostBulkheads();
 
 		private TaskModuleInner() {
 			
@@ -98,6 +189,24 @@ public class TaskModule {
 					else  {
 						system = ActorSystem.create(actorSystemName);
 					}
+					if (directExecutor == null) {
+						ownedDirectExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, new ThreadFactory() {
+							
+							private final AtomicInteger count = new AtomicInteger();
+							
+							@Override
+							public Thread newThread(Runnable r) {
+								Thread t = new Thread(r, "direct-task-" + count.incrementAndGet());
+								t.setDaemon(true);
+								return t;
+							}
+						});
+					}
+					for (String dispatcherId : laneDispatchers.values()) {
+						if (!system.settings().config().hasPath(dispatcherId)) {
+							throw new InitializationException("dispatcher " + dispatcherId + " not configured");
+						}
+					}
 					
 					asyncActorFactory = new UntypedActorFactory() {
 						private static final long serialVersionUID = 1L;
@@ -132,6 +241,13 @@ public class TaskModule {
 				@Override
 				protected void shutdown() {
 					system.shutdown();
+					laneDispatchers.clear();
+					directExecutor = null;
+					if (ownedDirectExecutor != null) {
+						ownedDirectExecutor.shutdownNow();
+						ownedDirectExecutor = null;
+					}
+					hostBulkheads = new HostBulkheads();
 				}
 				
 			});
@@ -0,0 +1,94 @@
+package org.lightj.task;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * running tally of task results as they arrive, count per status, the most severe result and the first failure,
+ * so outcome of a set of tasks is known without going over, or keeping, all results
+ * 
+ * @author binyu
+ *
+ */
+public class TaskResultSummary {
+	
+	/** count by status ordinal */
+	private final AtomicIntegerArray counts = new AtomicIntegerArray(TaskResultEnum.values().length);
+	
+	/** first result of the highest severity seen */
+	private final AtomicReference<TaskResult> worst = new AtomicReference<TaskResult>();
+	
+	/** first failed, timed out or canceled result */
+	private final AtomicReference<TaskResult> firstFailure = new AtomicReference<TaskResult>();
+	
+	/**
+	 * count one result in
+	 * @param result
+	 */
+	public void add(TaskResult result) {
+		if (result == null || result.getStatus() == null) {
+			return;
+		}
+		counts.incrementAndGet(result.getStatus().ordinal());
+		while (true) {
+			TaskResult cur = worst.get();
+			if ((cur != null && !result.isMoreSevere(cur)) || worst.compareAndSet(cur, result)) {
+				break;
+			}
+		}
+		if (result.getStatus().isAnyError()) {
+			firstFailure.compareAndSet(null, result);
+		}
+	}
+	
+	/**
+	 * results of a status
+	 * @param status
+	 * @return
+	 */
+	public int getCount(TaskResultEnum status) {
+		return counts.get(status.ordinal());
+	}
+	
+	/** all results counted */
+	public int getTotal() {
+		int total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+	
+	/** failed, timed out and canceled results */
+	public int getFailures() {
+		return getCount(TaskResultEnum.Failed) + getCount(TaskResultEnum.Timeout) + getCount(TaskResultEnum.Canceled);
+	}
+	
+	/** most severe result, null if none */
+	public TaskResult getWorst() {
+		return worst.get();
+	}
+	
+	/** status of the most severe result, null if none */
+	public TaskResultEnum getWorstStatus() {
+		TaskResult result = worst.get();
+		return result != null ? result.getStatus() : null;
+	}
+	
+	/** first failed, timed out or canceled result, null if none */
+	public TaskResult getFirstFailure() {
+		return firstFailure.get();
+	}
+	
+	/**
+	 * start over
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		worst.set(null);
+		firstFailure.set(null);
+	}
+
+}
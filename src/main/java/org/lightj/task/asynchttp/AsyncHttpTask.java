@@ -11,6 +11,7 @@ import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
 import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ListenableFuture;
 import com.ning.http.client.Response;
 
 /**
@@ -33,6 +34,8 @@ public abstract class AsyncHttpTask extends ExecutableTask {
 	protected AsyncHttpClient client;
 	/** target url */
 	private String targetUrl;
+	/** request in flight */
+	private volatile ListenableFuture<TaskResult> responseFuture;
 
 	public AsyncHttpTask(AsyncHttpClient client, ExecuteOption execOptions) 
 	{
@@ -70,13 +73,21 @@ public abstract class AsyncHttpTask extends ExecutableTask {
 		targetUrl = client.getConfig().isUseRawUrl() ? 
 				request.build().getRawUrl() : request.build().getUrl();
 		try {
-			request.execute(new HttpAsyncHandler(this));
+			responseFuture = request.execute(new HttpAsyncHandler(this));
 		} catch (IOException e) {
 			throw new TaskExecutionException(e);
 		}
 		return null;
 	}
 	
+	@Override
+	public void cancel() {
+		ListenableFuture<TaskResult> future = responseFuture;
+		if (future != null && !future.isDone()) {
+			future.cancel(true);
+		}
+	}
+	
 	/**
 	 * create request
 	 * @return
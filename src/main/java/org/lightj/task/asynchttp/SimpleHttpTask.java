@@ -43,6 +43,11 @@ public class SimpleHttpTask extends AsyncHttpTask {
 		this.req = req;
 	}
 	
+	@Override
+	public String getTargetHost() {
+		return req != null ? req.getHost() : super.getTargetHost();
+	}
+	
 	public IHttpProcessor getResProcessor() {
 		return resProcessor;
 	}
@@ -1,9 +1,12 @@
 package org.lightj.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -30,6 +33,15 @@ public class JsonUtil {
 		return mapper.writeValueAsString(value);
  	}
 	
+	/**
+	 * stream utf-8 json of the value to the output, without building an intermediate string
+	 */
+	public static final void encode(OutputStream os, Object value) throws JsonGenerationException, JsonMappingException, IOException {
+		JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(os, JsonEncoding.UTF8);
+		mapper.writeValue(gen, value);
+		gen.flush();
+	}
+	
 	public static final String encodePretty(Object value) throws JsonGenerationException, JsonMappingException, IOException {
 		return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(value);
  	}
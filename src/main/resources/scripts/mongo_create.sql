@@ -1,2 +1,3 @@
 db.Counter.insert({ "name" : "FLOW_ID_SEQ", sequence : 1})
 db.Counter.insert({ "name" : "FLOW_META_ID_SEQ", sequence : 1})
+db.FlowSessionCounter.ensureIndex({ "flowType" : 1 })
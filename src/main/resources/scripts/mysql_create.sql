@@ -1,31 +1,46 @@
 -- flow session tables
 
+-- immutable flow descriptor, written once on creation
+-- to upgrade a flow_session table from before the split into descriptor and state, run mysql_migrate_state.sql instead
 create table if not exists flow_session (
 	flow_id		bigint auto_increment primary key, 
 	flow_key	varchar(512),
 	creation_date	timestamp,
-	end_date	timestamp, 
-	flow_status	varchar(512),
 	target		varchar(512),
 	flow_type	varchar(256), 
 	parent_id	bigint references flow_session(flow_id),
+	requester	varchar(512),
+	tenant_id	varchar(255)
+);
+
+-- flow state, rewritten on every transition
+create table if not exists flow_session_state (
+	flow_id		bigint primary key references flow_session(flow_id),
+	end_date	timestamp null, 
+	flow_status	varchar(512),
 	current_action	varchar(128), 
 	next_action	varchar(128), 
 	flow_state	varchar(64), 
 	flow_result	varchar(64), 
-	last_modified	timestamp, 
-	run_by		varchar(256),
-	requester	varchar(512)
+	last_modified	timestamp null, 
+	run_by		varchar(256)
 );
 
+create or replace view flow_session_v as select 
+	s.flow_id, s.flow_key, s.creation_date, s.target, s.flow_type, s.parent_id, s.requester, s.tenant_id,
+	st.end_date, st.flow_status, st.current_action, st.next_action, st.flow_state, st.flow_result,
+	st.last_modified, st.run_by
+	from flow_session s join flow_session_state st on s.flow_id = st.flow_id;
+
 create index SESCOP_PRNT_IDX on FLOW_SESSION (PARENT_ID);
-create index FS_ACTIONSTATUS on FLOW_SESSION (FLOW_STATE);
+create index FS_ACTIONSTATUS on FLOW_SESSION_STATE (FLOW_STATE);
 create index FS_CD_IDX on FLOW_SESSION (CREATION_DATE);
-create index FS_EI on FLOW_SESSION (END_DATE, FLOW_ID);
-create index FS_ENDDATE on FLOW_SESSION (END_DATE);
+create index FS_EI on FLOW_SESSION_STATE (END_DATE, FLOW_ID);
+create index FS_ENDDATE on FLOW_SESSION_STATE (END_DATE);
 create index FS_KEY on FLOW_SESSION (TARGET);
 create index FS_TYPE_IDX on FLOW_SESSION (FLOW_TYPE);
 create index FS_FKEY_IDX on FLOW_SESSION (FLOW_KEY);
+create index FS_TENANT_IDX on FLOW_SESSION (TENANT_ID);
 
 
 create table if not exists flow_session_meta (
@@ -40,3 +55,18 @@ CREATE INDEX FSM_SSNID_IDX ON FLOW_SESSION_META (FLOW_ID);
 
 
 
+
+create table if not exists flow_session_counter (
+	flow_type	varchar(256),
+	flow_state	varchar(64),
+	flow_result	varchar(64),
+	flow_count	bigint,
+	primary key (flow_type, flow_state, flow_result)
+);
+
+create table if not exists flow_session_schedule (
+	schedule_name	varchar(255),
+	flow_type	varchar(256),
+	last_fire	datetime,
+	primary key (schedule_name)
+);
@@ -0,0 +1,54 @@
+-- upgrade a flow_session table from before the split into descriptor and state,
+-- run once with no flow running, mysql_create.sql leaves an existing flow_session table as it is.
+-- the script stops at the first error, the old state columns are dropped last, once the state is copied
+-- and the view is in place, so a failure before that leaves them untouched.
+-- it is not re-runnable once the state columns are gone from flow_session
+
+-- flow state, rewritten on every transition
+create table if not exists flow_session_state (
+	flow_id		bigint primary key references flow_session(flow_id),
+	end_date	timestamp null,
+	flow_status	varchar(512),
+	current_action	varchar(128),
+	next_action	varchar(128),
+	flow_state	varchar(64),
+	flow_result	varchar(64),
+	last_modified	timestamp null,
+	run_by		varchar(256)
+);
+
+-- copy the state of every flow, skipping those already copied if the script is run again
+insert into flow_session_state (flow_id, end_date, flow_status, current_action, next_action, flow_state, flow_result, last_modified, run_by)
+	select s.flow_id, s.end_date, s.flow_status, s.current_action, s.next_action, s.flow_state, s.flow_result, s.last_modified, s.run_by
+	from flow_session s
+	where not exists (select 1 from flow_session_state st where st.flow_id = s.flow_id);
+
+-- tenant of a flow, added along with the split
+alter table flow_session add column tenant_id varchar(255);
+create index FS_TENANT_IDX on FLOW_SESSION (TENANT_ID);
+
+create or replace view flow_session_v as select
+	s.flow_id, s.flow_key, s.creation_date, s.target, s.flow_type, s.parent_id, s.requester, s.tenant_id,
+	st.end_date, st.flow_status, st.current_action, st.next_action, st.flow_state, st.flow_result,
+	st.last_modified, st.run_by
+	from flow_session s join flow_session_state st on s.flow_id = st.flow_id;
+
+-- state indexes move to the state table
+create index FS_ACTIONSTATUS on FLOW_SESSION_STATE (FLOW_STATE);
+create index FS_EI on FLOW_SESSION_STATE (END_DATE, FLOW_ID);
+create index FS_ENDDATE on FLOW_SESSION_STATE (END_DATE);
+
+-- state copied and view in place, drop the old state columns, no way back from here
+drop index FS_ACTIONSTATUS on flow_session;
+drop index FS_EI on flow_session;
+drop index FS_ENDDATE on flow_session;
+
+alter table flow_session
+	drop column end_date,
+	drop column flow_status,
+	drop column current_action,
+	drop column next_action,
+	drop column flow_state,
+	drop column flow_result,
+	drop column last_modified,
+	drop column run_by;
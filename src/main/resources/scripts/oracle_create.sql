@@ -3,33 +3,48 @@
 drop sequence FLOW_ID_SEQ;
 create sequence FLOW_ID_SEQ start with 10000 increment by 1;
 
+-- immutable flow descriptor, written once on creation
 drop table flow_session;
 create table flow_session (
 	flow_id		number primary key, 
 	flow_key	varchar2(512),
 	creation_date	timestamp,
-	end_date	timestamp, 
-	flow_status	varchar2(512),
 	target		varchar2(512),
 	flow_type	varchar2(256), 
 	parent_id	number references flow_session(flow_id),
+	requester	varchar2(512),
+	tenant_id	varchar2(255)
+);
+
+-- flow state, rewritten on every transition
+drop table flow_session_state;
+create table flow_session_state (
+	flow_id		number primary key references flow_session(flow_id),
+	end_date	timestamp, 
+	flow_status	varchar2(512),
 	current_action	varchar2(128), 
 	next_action	varchar2(128), 
 	flow_state	varchar2(64), 
 	flow_result	varchar2(64), 
 	last_modified	timestamp, 
-	run_by		varchar2(256),
-	requester	varchar2(512)
+	run_by		varchar2(256)
 );
 
+create or replace view flow_session_v as select 
+	s.flow_id, s.flow_key, s.creation_date, s.target, s.flow_type, s.parent_id, s.requester, s.tenant_id,
+	st.end_date, st.flow_status, st.current_action, st.next_action, st.flow_state, st.flow_result,
+	st.last_modified, st.run_by
+	from flow_session s join flow_session_state st on s.flow_id = st.flow_id;
+
 create index SESCOP_PRNT_IDX on FLOW_SESSION (PARENT_ID);
-create index FS_ACTIONSTATUS on FLOW_SESSION (FLOW_STATE);
+create index FS_ACTIONSTATUS on FLOW_SESSION_STATE (FLOW_STATE);
 create index FS_CD_IDX on FLOW_SESSION (CREATION_DATE);
-create index FS_EI on FLOW_SESSION (END_DATE, FLOW_ID);
-create index FS_ENDDATE on FLOW_SESSION (END_DATE);
+create index FS_EI on FLOW_SESSION_STATE (END_DATE, FLOW_ID);
+create index FS_ENDDATE on FLOW_SESSION_STATE (END_DATE);
 create index FS_KEY on FLOW_SESSION (TARGET);
 create index FS_TYPE_IDX on FLOW_SESSION (FLOW_TYPE);
 create index FS_FKEY_IDX on FLOW_SESSION (FLOW_KEY);
+create index FS_TENANT_IDX on FLOW_SESSION (TENANT_ID);
 
 
 drop sequence FLOW_META_ID_SEQ;
@@ -46,3 +61,20 @@ create table flow_session_meta (
 
 CREATE INDEX FSM_SSNID_IDX ON FLOW_SESSION_META (FLOW_ID);
 
+
+drop table flow_session_counter;
+create table flow_session_counter (
+	flow_type	varchar2(256),
+	flow_state	varchar2(64),
+	flow_result	varchar2(64),
+	flow_count	number,
+	primary key (flow_type, flow_state, flow_result)
+);
+
+drop table flow_session_schedule;
+create table flow_session_schedule (
+	schedule_name	varchar2(255),
+	flow_type	varchar2(256),
+	last_fire	timestamp,
+	primary key (schedule_name)
+);
@@ -92,6 +92,15 @@ public class TestDbQuery extends BaseTestCase {
 		Assert.assertEquals(query.getArgs().size(), 4);
 	}
 
+	@Test
+	public void testLimitInDatabase() {
+		String sql = "SELECT * FROM t WHERE id > ? ORDER BY id";
+		Assert.assertEquals(sql + " LIMIT 10", new MySQLDatabaseType("m", "url", "un", "pwd").limit(sql, 10));
+		// rownum taken after the ordering
+		Assert.assertEquals("SELECT * FROM (" + sql + ") WHERE ROWNUM <= 10", 
+				new OracleDatabaseType("o", "url", "un", "pwd").limit(sql, 10));
+	}
+
 	@Test
 	public void testOrInWithoutValues() {
 		Query query = new Query();
@@ -0,0 +1,93 @@
+package org.lightj.session;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestFlowDriverExecutor {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	@Test
+	public void testLittlesLaw() throws Exception {
+		FlowDriverExecutor executor = new FlowDriverExecutor(1, 64);
+		try {
+			// 100 drives/sec of 10ms cpu each keep one thread busy
+			executor.fold(100, 10, 10 * 10 * MS, 10 * 10 * MS);
+			Assert.assertEquals(1, executor.getTargetSize());
+		} finally {
+			executor.shutdownNow();
+		}
+		executor = new FlowDriverExecutor(1, 64);
+		try {
+			// 1000 drives/sec of 10ms, mostly waiting, want 10 threads
+			executor.fold(1000, 10, 10 * 10 * MS, 10 * MS);
+			Assert.assertEquals(Math.min(10, CORES * 10), executor.getTargetSize());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCpuBoundCap() throws Exception {
+		FlowDriverExecutor executor = new FlowDriverExecutor(1, 64);
+		try {
+			// same demand all on cpu, more threads than cores only compete
+			executor.fold(1000, 10, 10 * 10 * MS, 10 * 10 * MS);
+			Assert.assertEquals(Math.min(10, CORES), executor.getTargetSize());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBounds() throws Exception {
+		FlowDriverExecutor executor = new FlowDriverExecutor(2, 4);
+		try {
+			executor.fold(0, 1, 10 * MS, MS);
+			Assert.assertEquals(2, executor.getTargetSize());
+			// ewma moves toward the new rate, still way over the max
+			executor.fold(100000, 1, 10 * MS, MS);
+			Assert.assertEquals(4, executor.getTargetSize());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDrainQueue() throws Exception {
+		FlowDriverExecutor executor = new FlowDriverExecutor(1, 64);
+		final CountDownLatch gate = new CountDownLatch(1);
+		try {
+			// hold the only thread so work queues up
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+			for (int i = 0; i < 5; i++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+					}
+				});
+			}
+			// nothing arriving, 5 queued drives of 1 sec mostly waiting drain in a sec with 5 threads
+			executor.fold(0, 1, 1000 * MS, 100 * MS);
+			Assert.assertEquals(5, executor.getQueue().size());
+			Assert.assertEquals(Math.min(5, CORES * 10), executor.getTargetSize());
+		} finally {
+			gate.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+}
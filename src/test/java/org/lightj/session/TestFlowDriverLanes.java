@@ -0,0 +1,59 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestFlowDriverLanes {
+	
+	@Test
+	public void testWeightedLanes() throws Exception {
+		ExecutorService es = Executors.newSingleThreadExecutor();
+		FlowDriverLanes lanes = new FlowDriverLanes(es, new int[] {3, 2, 1});
+		
+		// block the only thread so everything queues up
+		final CountDownLatch gate = new CountDownLatch(1);
+		es.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		final List<FlowPriority> order = Collections.synchronizedList(new ArrayList<FlowPriority>());
+		for (final FlowPriority p : new FlowPriority[] {FlowPriority.Low, FlowPriority.Normal, FlowPriority.High}) {
+			for (int i = 0; i < 6; i++) {
+				lanes.submit(p, new Runnable() {
+					@Override
+					public void run() {
+						order.add(p);
+					}
+				});
+			}
+		}
+		Assert.assertEquals(6, lanes.getQueued(FlowPriority.High));
+		gate.countDown();
+		es.shutdown();
+		es.awaitTermination(5, TimeUnit.SECONDS);
+		
+		Assert.assertEquals(18, order.size());
+		Assert.assertEquals(0, lanes.getQueued(FlowPriority.Low));
+		// first round of 6 is served 3:2:1, low is not starved
+		List<FlowPriority> firstRound = order.subList(0, 6);
+		Assert.assertEquals(3, Collections.frequency(firstRound, FlowPriority.High));
+		Assert.assertEquals(2, Collections.frequency(firstRound, FlowPriority.Normal));
+		Assert.assertEquals(1, Collections.frequency(firstRound, FlowPriority.Low));
+		Assert.assertEquals(FlowPriority.High, order.get(0));
+	}
+
+}
@@ -0,0 +1,844 @@
+package org.lightj.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.lightj.BaseTestCase;
+import org.lightj.example.dal.LocalDatabaseEnum;
+import org.lightj.example.session.SkeletonFlowContext;
+import org.lightj.initialization.BaseModule;
+import org.lightj.session.dal.ISessionData;
+import org.lightj.session.dal.ISessionDataManager;
+import org.lightj.session.dal.ISessionScheduleManager;
+import org.lightj.session.dal.SessionDataFactory;
+import org.lightj.session.exception.FlowExecutionException;
+import org.lightj.session.exception.FlowSaveException;
+import org.lightj.session.exception.StateChangeException;
+import org.lightj.session.step.DelayInterceptor;
+import org.lightj.session.step.IFlowStep;
+import org.lightj.session.step.RetryInterceptor;
+import org.lightj.session.step.SimpleStepExecution;
+import org.lightj.session.step.StepCallbackHandler;
+import org.lightj.session.step.StepBuilder;
+import org.lightj.session.step.StepErrorHandler;
+import org.lightj.session.step.StepImpl;
+import org.lightj.session.step.StepTransition;
+import org.lightj.session.step.TimeoutInterceptor;
+import org.lightj.task.BatchOption;
+import org.lightj.task.CompletionPolicy;
+import org.lightj.task.ExecutableTask;
+import org.lightj.task.TaskExecutionException;
+import org.lightj.task.TaskModule;
+import org.lightj.task.TaskResult;
+import org.lightj.task.TaskResultEnum;
+import org.lightj.util.NetUtil;
+import org.lightj.util.StringUtil;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * flow life cycle in the factory, with flows whose steps are built in place, 
+ * so the flow context needs no annotation config
+ * 
+ * @author binyu
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class TestFlowLifecycle extends BaseTestCase {
+	
+	@Test
+	public void testBulkTransition() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		String target = StringUtil.genUuid();
+		// one flow in this VM, one only in the store
+		LifecycleFlow local = factory.createSession(LifecycleFlow.class);
+		local.setTarget(target);
+		local.save();
+		LifecycleFlow stored = factory.createSession(LifecycleFlow.class);
+		stored.setTarget(target);
+		stored.save();
+		factory.removeSessionFromCache(stored.getKey());
+		// a flow driven by another node, only that node can change it
+		ISessionData remote = sdm.newInstance();
+		remote.setCreationDate(new Date());
+		remote.setFlowKey(StringUtil.genUuid());
+		remote.setTargetKey(target);
+		remote.setType(LifecycleFlow.TYPE);
+		remote.setFlowState(FlowState.Running);
+		remote.setRunBy("otherhost");
+		sdm.save(remote);
+		
+		BulkTransitionResult result = factory.bulkTransition(
+				sdm.queryFlows(null, null, null, target), BulkAction.stop, "bulk stop");
+		Assert.assertEquals(1, result.getSignaled());
+		Assert.assertEquals(1, result.getUpdated());
+		Assert.assertEquals(1, result.getRejected());
+		Assert.assertEquals(FlowState.Canceled, local.getState());
+		Assert.assertEquals(FlowState.Canceled, sdm.findByKey(stored.getKey()).getFlowState());
+		Assert.assertEquals(0, result.getRouted());
+		Assert.assertEquals(FlowState.Running, sdm.findByKey(remote.getFlowKey()).getFlowState());
+		
+		// nothing left to change, counters moved by the rows actually changed
+		result = factory.bulkTransition(sdm.queryFlows(null, null, null, target), BulkAction.stop, "bulk stop");
+		Assert.assertEquals(0, result.getTotal());
+		long canceled = 0;
+		for (FlowCount count : factory.getFlowCounts(factory.fromFlowClass(LifecycleFlow.class))) {
+			if (count.getFlowState() == FlowState.Canceled) {
+				canceled += count.getCount();
+			}
+			else {
+				Assert.assertFalse(count.getFlowState() == FlowState.Pending && count.getCount() > 0);
+			}
+		}
+		Assert.assertEquals(2, canceled);
+	}
+
+	@Test
+	public void testPageAfterId() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		ISessionData first = newFlowData(LifecycleFlow.TYPE, 0, FlowState.Completed, null);
+		ISessionData second = newFlowData(LifecycleFlow.TYPE, 0, FlowState.Completed, null);
+		newFlowData(LifecycleFlow.TYPE, 0, FlowState.Completed, null);
+		// one page, limited in the store
+		List<ISessionData> page = sdm.findAfterId(first.getFlowId(), 1);
+		Assert.assertEquals(1, page.size());
+		Assert.assertEquals(second.getFlowKey(), page.get(0).getFlowKey());
+	}
+	
+	@Test
+	public void testParentStopKillsChildren() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		LifecycleFlow parent = factory.createSession(LifecycleFlow.class);
+		parent.save();
+		// a child created by another node, known here from its cluster message
+		ISessionData child = newFlowData(LifecycleFlow.TYPE, parent.getId(), FlowState.Running, null);
+		factory.addChildFlow((parent.getId() + "|" + child.getFlowKey()).getBytes("UTF-8"));
+		
+		parent.stopFlow(FlowState.Canceled, FlowResult.Canceled, "stop parent");
+		ISessionData stopped = sdm.findByKey(child.getFlowKey());
+		Assert.assertEquals(FlowState.Canceled, stopped.getFlowState());
+		Assert.assertNotNull(stopped.getEndDate());
+	}
+	
+	@Test
+	public void testRecoverParentWithChildren() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		// a parent and its child left running by the last shutdown of this node
+		ISessionData parent = newFlowData(LifecycleFlow.TYPE, 0, FlowState.Running, NetUtil.getMyHostName());
+		ISessionData child = newFlowData(LifecycleFlow.TYPE, parent.getFlowId(), FlowState.Running, NetUtil.getMyHostName());
+		
+		FlowCompletion completion = factory.awaitCompletion(parent.getFlowKey());
+		factory.recoverMySession();
+		Assert.assertEquals(FlowResult.Success, completion.get(5, TimeUnit.SECONDS));
+		ISessionData canceled = sdm.findByKey(child.getFlowKey());
+		Assert.assertEquals(FlowState.Canceled, canceled.getFlowState());
+		Assert.assertNotNull(canceled.getEndDate());
+	}
+	
+	@Test
+	public void testRecoveryPriority() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		List<String> urgentKeys = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			newFlowData(LifecycleFlow.TYPE, 0, FlowState.Running, NetUtil.getMyHostName());
+		}
+		for (int i = 0; i < 3; i++) {
+			urgentKeys.add(newFlowData(UrgentFlow.TYPE, 0, FlowState.Running, NetUtil.getMyHostName()).getFlowKey());
+		}
+		
+		// a flow loaded twice, recovery goes with the one cached first
+		ISessionData sessionDo = sdm.findByKey(urgentKeys.get(0));
+		FlowSession first = factory.createSession(sessionDo);
+		Assert.assertSame(first, factory.addToCache(first));
+		Assert.assertSame(first, factory.addToCache(factory.createSession(sessionDo)));
+		factory.removeSessionFromCache(first.getKey());
+		
+		// urgent flows go first even though they are newer, also for the first worker started
+		loaded.clear();
+		FlowRecoveryManager recoveryManager = new FlowRecoveryManager(1, 0, new String[] {UrgentFlow.TYPE});
+		try {
+			recoveryManager.recover(sdm.queryActiveFlows(NetUtil.getMyHostName()));
+			waitForRecovery(recoveryManager, 6);
+		} finally {
+			recoveryManager.shutdown();
+		}
+		Assert.assertEquals(6, loaded.size());
+		Assert.assertEquals(new HashSet<String>(urgentKeys), new HashSet<String>(loaded.subList(0, 3)));
+	}
+	
+	@Test
+	public void testRecoveryRateLimit() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		for (int i = 0; i < 3; i++) {
+			newFlowData(LifecycleFlow.TYPE, 0, FlowState.Running, NetUtil.getMyHostName());
+		}
+		FlowRecoveryManager recoveryManager = new FlowRecoveryManager(3, 1, null);
+		try {
+			recoveryManager.recover(sdm.queryActiveFlows(NetUtil.getMyHostName()));
+			Thread.sleep(300);
+			// workers waiting for a slot are still queued, not in progress
+			FlowRecoveryStats stats = recoveryManager.getStats();
+			Assert.assertEquals(2, stats.getQueued());
+			Assert.assertTrue(stats.getInProgress() <= 1);
+			waitForRecovery(recoveryManager, 3);
+		} finally {
+			recoveryManager.shutdown();
+		}
+	}
+	
+	@Test
+	public void testCheckpointClearedOnEarlyEnd() throws Exception {
+		TaskFlow flow = FlowSessionFactory.getInstance().createSession(TaskFlow.class);
+		flow.save();
+		// batch ends after the first failures, before most tasks report back
+		Assert.assertEquals(FlowResult.Failed, flow.runFlowAsync().get(10, TimeUnit.SECONDS));
+		Assert.assertTrue(flow.getSessionContext().getTaskCheckpoints().isEmpty());
+	}
+	
+	@Test
+	public void testCheckpointOfOtherTasks() throws Exception {
+		SkeletonFlowContext ctx = new SkeletonFlowContext();
+		ctx.updateTaskCheckpoint("step", "tasks1", 1, 3, TaskResultEnum.Success);
+		Assert.assertEquals(".S.", ctx.getTaskCheckpoint("step", "tasks1", 3));
+		// same number of tasks, but not the same tasks
+		Assert.assertNull(ctx.getTaskCheckpoint("step", "tasks2", 3));
+		Assert.assertNull(ctx.getTaskCheckpoint("step", "tasks1", 4));
+		
+		// tasks told apart by host
+		StepCallbackHandler handler = new StepCallbackHandler();
+		handler.enableCheckpoint(Arrays.asList(new HostTask("h1"), new HostTask("h2")), 10);
+		String id = handler.getCheckpointId();
+		handler.enableCheckpoint(Arrays.asList(new HostTask("h1"), new HostTask("h2")), 10);
+		Assert.assertEquals(id, handler.getCheckpointId());
+		handler.enableCheckpoint(Arrays.asList(new HostTask("h2"), new HostTask("h1")), 10);
+		Assert.assertFalse(id.equals(handler.getCheckpointId()));
+	}
+	
+	@Test
+	public void testTenantQuota() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		TaskFlow flow = FlowSessionFactory.getInstance().createSession(TaskFlow.class);
+		flow.setTenantId(LIMITED_TENANT);
+		flow.save();
+		// saves over the write rate are put off instead of waited for, the flow still gets through
+		Assert.assertEquals(FlowResult.Failed, flow.runFlowAsync().get(10, TimeUnit.SECONDS));
+		// the stop is never put off, it is in the store by the time the flow completes
+		Assert.assertEquals(FlowState.Completed, sdm.findByKey(flow.getKey()).getFlowState());
+		for (TenantUsage usage : FlowModule.getTenantManager().getUsage()) {
+			if (LIMITED_TENANT.equals(usage.getTenantId())) {
+				// permits of tasks cut short by the early end are released too
+				Assert.assertEquals(0, usage.getInflightTasks());
+				Assert.assertEquals(0, usage.getRunningFlows());
+				Assert.assertTrue(usage.getThrottledWrites() > 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testStopNotPutOff() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		LifecycleFlow flow = FlowSessionFactory.getInstance().createSession(LifecycleFlow.class);
+		flow.setTenantId(LIMITED_TENANT);
+		flow.save();
+		// tenant out of write slots for a while
+		for (int i = 0; i < 40; i++) {
+			FlowModule.getTenantManager().acquireWrite(LIMITED_TENANT, true);
+		}
+		flow.stopFlow(FlowState.Canceled, FlowResult.Canceled, "stop");
+		ISessionData stopped = sdm.findByKey(flow.getKey());
+		Assert.assertEquals(FlowState.Canceled, stopped.getFlowState());
+		Assert.assertNotNull(stopped.getEndDate());
+	}
+	
+	@Test
+	public void testFailedRunDropsCompletion() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		LifecycleFlow flow = factory.createSession(LifecycleFlow.class);
+		flow.save();
+		flow.stopFlow(FlowState.Canceled, FlowResult.Canceled, "stop");
+		FlowCompletion completion = factory.newCompletion(flow.getKey());
+		try {
+			flow.runFlowAsync();
+			Assert.fail("stopped flow must not run");
+		} catch (StateChangeException e) {
+		}
+		// the handle of the failed run is gone, not left to expire
+		FlowCompletion next = factory.newCompletion(flow.getKey());
+		Assert.assertNotSame(completion, next);
+		factory.removeCompletion(next);
+	}
+	
+	@Test
+	public void testSharedStepTemplate() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		SharedTemplateFlow flow1 = factory.createSession(SharedTemplateFlow.class);
+		flow1.save();
+		SharedTemplateFlow flow2 = factory.createSession(SharedTemplateFlow.class);
+		flow2.save();
+		// both runs are in the step at the same time, each with its own copy of the template
+		FlowCompletion completion1 = flow1.runFlowAsync();
+		FlowCompletion completion2 = flow2.runFlowAsync();
+		Assert.assertEquals(FlowResult.Success, completion1.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(FlowResult.Success, completion2.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, RunStateExecution.runs.get());
+		Assert.assertTrue(RunStateExecution.crossed.isEmpty());
+		Assert.assertNull(SharedTemplateFlow.TEMPLATE.getFlowDriver());
+	}
+	
+	@Test
+	public void testStepSubclassCopied() throws Exception {
+		// the copy run by the driver keeps the overrides of a step subclass
+		CountingStep step = new CountingStep();
+		step.setExecution(new AttemptExecution());
+		InterceptedFlow.start = step;
+		CountingStep.executed.set(0);
+		InterceptedFlow flow = FlowSessionFactory.getInstance().createSession(InterceptedFlow.class);
+		flow.save();
+		Assert.assertEquals(FlowResult.Success, flow.runFlowAsync().get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, CountingStep.executed.get());
+	}
+	
+	@Test
+	public void testAttachWithoutCreationLock() throws Exception {
+		final FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		final String target = StringUtil.genUuid();
+		LockedFlow first = factory.createSession(LockedFlow.class);
+		first.setTarget(target);
+		Assert.assertSame(first, factory.createOrAttach(first));
+		
+		// attach while another creation holds the creation lock
+		final List<FlowSession> attached = Collections.synchronizedList(new ArrayList<FlowSession>());
+		LockedFlow other = factory.createSession(LockedFlow.class);
+		other.setTarget(StringUtil.genUuid());
+		LockedFlow.beforeCreate = new Runnable() {
+			
+			@Override
+			public void run() {
+				LockedFlow.beforeCreate = null;
+				Thread t = new Thread() {
+					@Override
+					public void run() {
+						LockedFlow second = factory.createSession(LockedFlow.class);
+						second.setTarget(target);
+						try {
+							attached.add(factory.createOrAttach(second));
+						} catch (FlowSaveException e) {
+						}
+					}
+				};
+				t.start();
+				try {
+					t.join(2000);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		try {
+			Assert.assertSame(other, factory.createOrAttach(other));
+		} finally {
+			LockedFlow.beforeCreate = null;
+		}
+		Assert.assertEquals(1, attached.size());
+		Assert.assertSame(first, attached.get(0));
+	}
+	
+	@Test
+	public void testCreateOrAttachLostRace() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		final ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		final String target = StringUtil.genUuid();
+		final String[] winner = new String[1];
+		// another VM saves a flow on the same target after the lookup, before this save is checked
+		LockedFlow.beforeCreate = new Runnable() {
+			
+			@Override
+			public void run() {
+				LockedFlow.beforeCreate = null;
+				try {
+					ISessionData sessionDo = sdm.newInstance();
+					sessionDo.setCreationDate(new Date());
+					sessionDo.setFlowKey(StringUtil.genUuid());
+					sessionDo.setTargetKey(target);
+					sessionDo.setType(LockedFlow.TYPE);
+					sessionDo.setCurrentAction("start");
+					sessionDo.setFlowState(FlowState.Running);
+					sessionDo.setRunBy("otherhost");
+					sdm.save(sessionDo);
+					winner[0] = sessionDo.getFlowKey();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		LockedFlow session = factory.createSession(LockedFlow.class);
+		session.setTarget(target);
+		FlowSession attached;
+		try {
+			attached = factory.createOrAttach(session);
+		} finally {
+			LockedFlow.beforeCreate = null;
+		}
+		Assert.assertNotNull(winner[0]);
+		Assert.assertEquals(winner[0], attached.getKey());
+		Assert.assertNotSame(session, attached);
+		// the loser is deleted from the store
+		Assert.assertNull(sdm.findByKey(session.getKey()).getFlowKey());
+	}
+	
+	@Test
+	public void testCompletionFromStore() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		// a flow run by another node, which stops it without a word to this VM
+		ISessionData sessionDo = newFlowData(LifecycleFlow.TYPE, 0, FlowState.Running, "otherhost");
+		FlowCompletion completion = factory.awaitCompletion(sessionDo.getFlowKey());
+		factory.removeSessionFromCache(sessionDo.getFlowKey());
+		sessionDo.setFlowState(FlowState.Canceled);
+		sessionDo.setFlowResult(FlowResult.Canceled);
+		sessionDo.setEndDate(new Date());
+		sdm.save(sessionDo);
+		Assert.assertEquals(FlowResult.Canceled, completion.get(300, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(completion.isDone());
+	}
+	
+	@Test
+	public void testCompletionMessage() throws Exception {
+		FlowSessionFactory factory = FlowSessionFactory.getInstance();
+		FlowCompletion completion = factory.newCompletion("flow1");
+		factory.completeFlow("flow1|Success".getBytes("UTF-8"));
+		Assert.assertEquals(FlowResult.Success, completion.get(1, TimeUnit.SECONDS));
+		// a flow stopped without a result
+		completion = factory.newCompletion("flow2");
+		factory.completeFlow("flow2|".getBytes("UTF-8"));
+		Assert.assertTrue(completion.isDone());
+		Assert.assertNull(completion.get(1, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testMissedFireCaughtUp() throws Exception {
+		ISessionScheduleManager ssm = SessionDataFactory.getInstance().getScheduleManager();
+		long lastFire = System.currentTimeMillis() - 150000;
+		ssm.claimFire("lifecycleMissed", LifecycleFlow.TYPE, new Date(lastFire));
+		ssm.claimFire("lifecycleSkipped", LifecycleFlow.TYPE, new Date(lastFire));
+		FlowScheduler scheduler = new FlowScheduler(Arrays.asList(
+				FlowSchedule.fixedRate("lifecycleMissed", LifecycleFlow.TYPE, 60000),
+				FlowSchedule.fixedRate("lifecycleSkipped", LifecycleFlow.TYPE, 60000).setFireMissed(false)));
+		try {
+			scheduler.start();
+			for (int i = 0; i < 50 && ssm.getLastFireTime("lifecycleMissed").getTime() == lastFire; i++) {
+				Thread.sleep(100);
+			}
+			// only the latest of the two misses fires
+			Assert.assertEquals(lastFire + 120000, ssm.getLastFireTime("lifecycleMissed").getTime());
+			Assert.assertEquals(lastFire, ssm.getLastFireTime("lifecycleSkipped").getTime());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testRetryAroundDelay() throws Exception {
+		// retry outside delay, as retryIf(delay(step)) of the old enclosures, every attempt is delayed
+		InterceptedFlow.start = new StepBuilder().execute(new AttemptExecution())
+				.intercept(RetryInterceptor.retryIf(2, StepTransition.runToStep("stop")), new DelayInterceptor(100)).getFlowStep();
+		assertAttempts(3, 100);
+	}
+
+	@Test
+	public void testAsyncDelayResumes() throws Exception {
+		// the async delay parks the flow, the retry inside it sees the outcome of every attempt
+		InterceptedFlow.start = new StepBuilder().execute(new AttemptExecution())
+				.intercept(new DelayInterceptor(100, true), RetryInterceptor.retryIf(2, StepTransition.runToStep("stop"))).getFlowStep();
+		assertAttempts(3, 100);
+		// a retry outside the async delay only sees the flow parked, the step runs once
+		InterceptedFlow.start = new StepBuilder().execute(new AttemptExecution())
+				.intercept(RetryInterceptor.retryIf(2, StepTransition.runToStep("stop")), new DelayInterceptor(100, true)).getFlowStep();
+		assertAttempts(1, 100);
+	}
+
+	@Test
+	public void testTimeoutToErrorHandler() throws Exception {
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		InterceptedFlow.start = new StepBuilder().execute(new SimpleStepExecution<SkeletonFlowContext>(StepTransition.CALLBACK))
+				.onException(new StepErrorHandler<SkeletonFlowContext>("handleError") {
+					@Override
+					public StepTransition execute() throws FlowExecutionException {
+						errors.add(t);
+						return super.execute();
+					}
+				})
+				.intercept(new TimeoutInterceptor(200)).getFlowStep();
+		InterceptedFlow flow = FlowSessionFactory.getInstance().createSession(InterceptedFlow.class);
+		flow.save();
+		long start = System.nanoTime();
+		// nothing calls the parked step back, the timeout fails it through its error handler
+		Assert.assertEquals(FlowResult.Failed, flow.runFlowAsync().get(5, TimeUnit.SECONDS));
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+		Assert.assertEquals(1, errors.size());
+		Assert.assertTrue(errors.get(0) instanceof FlowExecutionException);
+		Assert.assertTrue(errors.get(0).getMessage().contains("timed out"));
+	}
+
+	/**
+	 * run an intercepted flow to success, the step having run a number of times, each at least a delay after the last
+	 * @param attempts
+	 * @param delayMs
+	 * @throws Exception
+	 */
+	private void assertAttempts(int attempts, long delayMs) throws Exception {
+		AttemptExecution.attempts.clear();
+		InterceptedFlow flow = FlowSessionFactory.getInstance().createSession(InterceptedFlow.class);
+		flow.save();
+		long last = System.nanoTime();
+		Assert.assertEquals(FlowResult.Success, flow.runFlowAsync().get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(attempts, AttemptExecution.attempts.size());
+		for (long attempt : AttemptExecution.attempts) {
+			Assert.assertTrue(attempt - last >= TimeUnit.MILLISECONDS.toNanos(delayMs));
+			last = attempt;
+		}
+	}
+
+	/**
+	 * wait for a number of flows recovered
+	 * @param recoveryManager
+	 * @param cnt
+	 * @throws InterruptedException
+	 */
+	private void waitForRecovery(FlowRecoveryManager recoveryManager, int cnt) throws InterruptedException {
+		for (int i = 0; i < 100 && recoveryManager.getStats().getRecovered() < cnt; i++) {
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(cnt, recoveryManager.getStats().getRecovered());
+	}
+	
+	/**
+	 * a flow written straight to the store
+	 * @param type
+	 * @param parentId
+	 * @param state
+	 * @param runBy
+	 * @return
+	 * @throws Exception
+	 */
+	private ISessionData newFlowData(String type, long parentId, FlowState state, String runBy) throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		ISessionData sessionDo = sdm.newInstance();
+		sessionDo.setCreationDate(new Date());
+		sessionDo.setFlowKey(StringUtil.genUuid());
+		sessionDo.setTargetKey(StringUtil.genUuid());
+		sessionDo.setRequesterKey(StringUtil.genUuid());
+		sessionDo.setType(type);
+		sessionDo.setCurrentAction("start");
+		sessionDo.setFlowState(state);
+		sessionDo.setParentId(parentId);
+		sessionDo.setRunBy(runBy);
+		sdm.save(sessionDo);
+		return sessionDo;
+	}
+
+	@Override
+	protected BaseModule[] getDependentModules() {
+		GenericApplicationContext flowCtx = new GenericApplicationContext();
+		RootBeanDefinition flowDef = new RootBeanDefinition(LifecycleFlow.class);
+		flowDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("lifecycleFlow", flowDef);
+		RootBeanDefinition urgentDef = new RootBeanDefinition(UrgentFlow.class);
+		urgentDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("urgentFlow", urgentDef);
+		RootBeanDefinition taskDef = new RootBeanDefinition(TaskFlow.class);
+		taskDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("taskFlow", taskDef);
+		RootBeanDefinition sharedDef = new RootBeanDefinition(SharedTemplateFlow.class);
+		sharedDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("sharedTemplateFlow", sharedDef);
+		RootBeanDefinition lockedDef = new RootBeanDefinition(LockedFlow.class);
+		lockedDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("lockedFlow", lockedDef);
+		RootBeanDefinition interceptedDef = new RootBeanDefinition(InterceptedFlow.class);
+		interceptedDef.setScope("prototype");
+		flowCtx.registerBeanDefinition("interceptedFlow", interceptedDef);
+		flowCtx.refresh();
+		return new BaseModule[] {
+				new TaskModule().getModule(),
+				new FlowModule().setDb(LocalDatabaseEnum.TESTMEMDB)
+								.setSpringContext(flowCtx)
+								.setExectuorService(Executors.newFixedThreadPool(5))
+								.setTenantQuota(LIMITED_TENANT, new TenantQuota(0, 3, 20))
+								.getModule()
+		};
+	}
+
+	/** tenant with limited in flight tasks and write rate */
+	static final String LIMITED_TENANT = "limited";
+	
+	/** keys of flows loaded from the store, in order */
+	static final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+	
+	/**
+	 * start, then stop successfully
+	 */
+	@FlowProperties(typeId=LifecycleFlow.TYPE, desc="flow life cycle", clustered=true, interruptible=false, timeoutInSec=0)
+	public static class LifecycleFlow extends FlowSession<SkeletonFlowContext> {
+		
+		static final String TYPE = "Lifecycle";
+		
+		@Override
+		public void loadExtra() {
+			loaded.add(getKey());
+		}
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1, onSuccess="stop", onElse="handleError")
+		public IFlowStep start() {
+			return new StepBuilder().getFlowStep();
+		}
+		@FlowStepProperties(stepWeight=1, stepIdx=2)
+		public IFlowStep stop() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+	
+	/**
+	 * same steps, a different type
+	 */
+	@FlowProperties(typeId=UrgentFlow.TYPE, desc="urgent flow life cycle", clustered=true, interruptible=false, timeoutInSec=0)
+	public static class UrgentFlow extends FlowSession<SkeletonFlowContext> {
+		
+		static final String TYPE = "UrgentLifecycle";
+		
+		@Override
+		public void loadExtra() {
+			loaded.add(getKey());
+		}
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1, onSuccess="stop", onElse="handleError")
+		public IFlowStep start() {
+			return new StepBuilder().getFlowStep();
+		}
+		@FlowStepProperties(stepWeight=1, stepIdx=2)
+		public IFlowStep stop() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+	
+	/**
+	 * a task step ending early on failures
+	 */
+	@FlowProperties(typeId=TaskFlow.TYPE, desc="task flow life cycle", clustered=true, interruptible=false, timeoutInSec=0)
+	public static class TaskFlow extends FlowSession<SkeletonFlowContext> {
+		
+		static final String TYPE = "TaskLifecycle";
+		
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1, onSuccess="stop", onElse="handleError")
+		public IFlowStep start() {
+			ExecutableTask[] tasks = new ExecutableTask[20];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = new HostTask("host" + i) {
+					@Override
+					public TaskResult execute() throws TaskExecutionException {
+						return hasResult(TaskResultEnum.Failed, "down");
+					}
+				};
+			}
+			BatchOption option = new BatchOption(2, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING);
+			option.setCompletionPolicy(new CompletionPolicy().setMaxFailures(2));
+			return new StepBuilder().executeTasks(option, tasks).onResult("stop", "handleError").getFlowStep();
+		}
+		@FlowStepProperties(stepWeight=1, stepIdx=2)
+		public IFlowStep stop() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+	
+	/**
+	 * one active flow per target
+	 */
+	@FlowProperties(typeId=LockedFlow.TYPE, desc="flow locking its target", clustered=true, interruptible=false, timeoutInSec=0, lockTarget=true)
+	public static class LockedFlow extends FlowSession<SkeletonFlowContext> {
+		
+		static final String TYPE = "LockedLifecycle";
+		
+		/** run once when a new flow is about to be saved, with the creation lock held */
+		static volatile Runnable beforeCreate;
+		
+		@Override
+		protected void beforeSave(boolean isUpdate) throws FlowSaveException {
+			Runnable hook = beforeCreate;
+			if (!isUpdate && hook != null) {
+				hook.run();
+			}
+		}
+		
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1)
+		public IFlowStep start() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+	
+	/**
+	 * a flow whose step is one template shared by all its sessions
+	 */
+	@FlowProperties(typeId=SharedTemplateFlow.TYPE, desc="flow sharing a step template", clustered=true, interruptible=false, timeoutInSec=0)
+	public static class SharedTemplateFlow extends FlowSession<SkeletonFlowContext> {
+		
+		static final String TYPE = "SharedTemplate";
+		
+		static final IFlowStep TEMPLATE = new StepBuilder().execute(new RunStateExecution()).getFlowStep();
+		
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1)
+		public IFlowStep start() {
+			return TEMPLATE;
+		}
+		@FlowStepProperties(stepWeight=1, stepIdx=2)
+		public IFlowStep stop() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+	
+	/**
+	 * a flow whose first step is set by the test
+	 */
+	@FlowProperties(typeId=InterceptedFlow.TYPE, desc="flow with an intercepted step", clustered=true, interruptible=false, timeoutInSec=0)
+	public static class InterceptedFlow extends FlowSession<SkeletonFlowContext> {
+
+		static final String TYPE = "Intercepted";
+
+		/** template of the first step */
+		static volatile IFlowStep start;
+
+		@FlowStepProperties(stepWeight=1, isFirstStep=true, stepIdx=1)
+		public IFlowStep start() {
+			return start;
+		}
+		@FlowStepProperties(stepWeight=1, stepIdx=2)
+		public IFlowStep stop() {
+			return stopStep();
+		}
+		@FlowStepProperties(stepWeight=0, isErrorStep=true, stepIdx=100)
+		public IFlowStep handleError() {
+			return errorStep();
+		}
+	}
+
+	/**
+	 * execution noting the time of every attempt
+	 */
+	static class AttemptExecution extends SimpleStepExecution<SkeletonFlowContext> {
+
+		static final List<Long> attempts = Collections.synchronizedList(new ArrayList<Long>());
+
+		AttemptExecution() {
+			super("stop");
+		}
+
+		@Override
+		public StepTransition execute() throws FlowExecutionException {
+			attempts.add(System.nanoTime());
+			return super.execute();
+		}
+	}
+
+	/**
+	 * execution with per run state, reset by its copy for each run
+	 */
+	static class RunStateExecution extends SimpleStepExecution<SkeletonFlowContext> {
+		
+		static final AtomicInteger runs = new AtomicInteger();
+		static final List<String> crossed = Collections.synchronizedList(new ArrayList<String>());
+		
+		/** per run */
+		private List<FlowContext> seen = new ArrayList<FlowContext>();
+		
+		RunStateExecution() {
+			super("stop");
+		}
+		
+		@Override
+		public StepTransition execute() throws FlowExecutionException {
+			runs.incrementAndGet();
+			seen.add(sessionContext);
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+			}
+			if (seen.size() != 1 || seen.get(0) != sessionContext) {
+				crossed.add(flowStep.getStepId());
+			}
+			return super.execute();
+		}
+		
+		@Override
+		public RunStateExecution newInstance() {
+			RunStateExecution copy = (RunStateExecution) super.newInstance();
+			copy.seen = new ArrayList<FlowContext>();
+			return copy;
+		}
+	}
+	
+	/**
+	 * step subclass counting its executions
+	 */
+	static class CountingStep extends StepImpl {
+		
+		static final AtomicInteger executed = new AtomicInteger();
+		
+		@Override
+		public StepTransition execute() throws FlowExecutionException {
+			executed.incrementAndGet();
+			return super.execute();
+		}
+	}
+	
+	/**
+	 * a task talking to a host
+	 */
+	static class HostTask extends ExecutableTask {
+		HostTask(String host) {
+			addContext("host", host);
+		}
+		@Override
+		public TaskResult execute() throws TaskExecutionException {
+			return hasResult(TaskResultEnum.Success, null);
+		}
+	}
+	
+	static IFlowStep stopStep() {
+		return new StepBuilder().parkInState(StepTransition.parkInState(FlowState.Completed, FlowResult.Success, null)).getFlowStep();
+	}
+	
+	static IFlowStep errorStep() {
+		return new StepBuilder().parkInState(StepTransition.parkInState(FlowState.Completed, FlowResult.Failed, null)).getFlowStep();
+	}
+
+}
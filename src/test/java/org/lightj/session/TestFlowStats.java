@@ -13,6 +13,7 @@ import org.lightj.session.eventlistener.FlowStatistics;
 import org.lightj.session.eventlistener.FlowStatsTracker;
 import org.lightj.session.step.IFlowStep;
 import org.lightj.session.step.StepImpl;
+import org.lightj.session.step.StepProgress;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 public class TestFlowStats extends BaseTestCase {
@@ -52,6 +53,31 @@ public class TestFlowStats extends BaseTestCase {
 		
 	}
 
+	@Test
+	public void testStepProgress() throws Exception {
+		HelloWorldFlow session = FlowSessionFactory.getInstance().createSession(HelloWorldFlow.class);
+		FlowStatistics stats = new FlowStatistics(session.getOrderedStepProperties(), null);
+		stats.updatePercentComplete("start");
+		int start = stats.getPercentComplete();
+		stats.updatePercentComplete("asyncTaskStep");
+		int end = stats.getPercentComplete();
+		
+		StepProgress progress = new StepProgress("asyncTaskStep", 0);
+		progress.expect(4);
+		progress.record(true, 1000);
+		progress.record(false, 2000);
+		assertEquals(4, progress.getTotal());
+		assertEquals(1, progress.getCompleted());
+		assertEquals(1, progress.getFailed());
+		assertEquals(0.5, progress.getFraction());
+		assertTrue(progress.getEtaSec() > 0);
+		
+		stats.updatePercentComplete("asyncTaskStep", progress.getFraction());
+		assertTrue(stats.getPercentComplete() >= start && stats.getPercentComplete() <= end);
+		stats.updatePercentComplete("asyncTaskStep", 1);
+		assertEquals(end, stats.getPercentComplete());
+	}
+
 	@Override
 	protected void afterInitialize(String home) throws InitializationException {
 	}
@@ -0,0 +1,71 @@
+package org.lightj.session;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.lightj.task.ITaskPermit;
+
+public class TestFlowTenantManager {
+
+	@Test
+	public void testRunningFlowQuota() throws Exception {
+		FlowTenantManager manager = new FlowTenantManager(Collections.singletonMap("t1", new TenantQuota(2, 0, 0)));
+		Assert.assertTrue(manager.startFlow("t1", "f1"));
+		Assert.assertTrue(manager.startFlow("t1", "f2"));
+		Assert.assertFalse(manager.startFlow("t1", "f3"));
+		// a flow already counted runs again
+		Assert.assertTrue(manager.startFlow("t1", "f1"));
+		manager.stopFlow("t1", "f1");
+		Assert.assertTrue(manager.startFlow("t1", "f3"));
+		// no tenant, no limit
+		Assert.assertTrue(manager.startFlow(null, "f4"));
+
+		TenantUsage usage = manager.getUsage().get(0);
+		Assert.assertEquals(2, usage.getRunningFlows());
+		Assert.assertEquals(1, usage.getRejectedFlows());
+	}
+
+	@Test
+	public void testTaskPermitRelease() throws Exception {
+		FlowTenantManager manager = new FlowTenantManager(Collections.singletonMap("t1", new TenantQuota(0, 2, 0)));
+		Assert.assertNull(manager.getTaskPermit(null));
+		ITaskPermit permit = manager.getTaskPermit("t1");
+		Assert.assertTrue(permit.tryAcquire());
+		// permits are per tenant, not per permit object
+		Assert.assertTrue(manager.getTaskPermit("t1").tryAcquire());
+		Assert.assertFalse(permit.tryAcquire());
+		permit.release();
+		Assert.assertTrue(permit.tryAcquire());
+		permit.release();
+		permit.release();
+
+		TenantUsage usage = manager.getUsage().get(0);
+		Assert.assertEquals(0, usage.getInflightTasks());
+		Assert.assertEquals(1, usage.getThrottledTasks());
+	}
+
+	@Test
+	public void testWriteRateNeverWaits() throws Exception {
+		FlowTenantManager manager = new FlowTenantManager(Collections.singletonMap("t1", new TenantQuota(0, 0, 10)));
+		Assert.assertEquals(0, manager.acquireWrite(null, false));
+		Assert.assertEquals(0, manager.acquireWrite("t1", false));
+		long start = System.nanoTime();
+		long waitNanos = manager.acquireWrite("t1", false);
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50);
+		Assert.assertTrue(waitNanos > 0 && waitNanos <= TimeUnit.MILLISECONDS.toNanos(100));
+		// a write that cannot be put off goes now, and pushes the next slot out
+		Assert.assertEquals(0, manager.acquireWrite("t1", true));
+		Assert.assertTrue(manager.acquireWrite("t1", false) > waitNanos);
+
+		TenantUsage usage = manager.getUsage().get(0);
+		Assert.assertEquals(2, usage.getWrites());
+		Assert.assertEquals(2, usage.getThrottledWrites());
+		// slot comes back after the interval
+		Thread.sleep(250);
+		Assert.assertEquals(0, manager.acquireWrite("t1", false));
+	}
+
+}
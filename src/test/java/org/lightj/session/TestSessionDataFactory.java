@@ -1,5 +1,9 @@
 package org.lightj.session;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -12,11 +16,14 @@ import org.lightj.example.dal.LocalDatabaseEnum;
 import org.lightj.initialization.BaseModule;
 import org.lightj.initialization.InitializationException;
 import org.lightj.initialization.ShutdownException;
+import org.lightj.session.dal.ISessionCounterManager;
+import org.lightj.session.dal.ISessionScheduleManager;
 import org.lightj.session.dal.ISessionData;
 import org.lightj.session.dal.ISessionDataManager;
 import org.lightj.session.dal.ISessionMetaData;
 import org.lightj.session.dal.ISessionMetaDataManager;
 import org.lightj.session.dal.SessionDataFactory;
+import org.lightj.session.dal.SessionSnapshot;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 
@@ -109,6 +116,9 @@ public class TestSessionDataFactory extends BaseTestCase {
 				Assert.assertEquals(smd2.getBlobValue(), smd.getBlobValue());
 			}
 		}
+		// batch search
+		searches = smdm.findByFlowIds(Arrays.asList(sessId, sessId + 1000));
+		Assert.assertEquals(2, searches.size());
 		// delete
 		smdm.delete(smd1);
 		smdm.delete(smd2);
@@ -148,6 +158,135 @@ public class TestSessionDataFactory extends BaseTestCase {
 		Assert.assertTrue(sd.getPrimaryKey()<=0);
 	}
 
+	@Test
+	public void testBulkUpdateState() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		List<ISessionData> sds = new ArrayList<ISessionData>();
+		for (int i = 0; i < 4; i++) {
+			ISessionData sd = sdm.newInstance();
+			sd.setCreationDate(new Date());
+			sd.setTargetKey("bulk");
+			sd.setFlowKey(UUID.randomUUID().toString());
+			sd.setType("1");
+			sd.setFlowState(FlowState.Running);
+			// last one is driven by another node
+			sd.setRunBy(i < 3 ? "me" : "other");
+			sdm.save(sd);
+			sds.add(sd);
+		}
+		Object q = sdm.queryFlows(null, null, null, "bulk");
+		Assert.assertEquals(1, sdm.search(sdm.queryRunByOthers(q, "me")).size());
+		List<FlowCount> buckets = sdm.bulkUpdateState(q, Arrays.asList(sds.get(0).getFlowKey()), "me", 
+				FlowState.Canceled, FlowResult.Canceled, "bulk stop");
+		Assert.assertEquals(1, buckets.size());
+		Assert.assertEquals(2, buckets.get(0).getCount());
+		Assert.assertEquals(FlowState.Running, sdm.findByKey(sds.get(0).getFlowKey()).getFlowState());
+		Assert.assertEquals(FlowState.Running, sdm.findByKey(sds.get(3).getFlowKey()).getFlowState());
+		ISessionData stopped = sdm.findByKey(sds.get(1).getFlowKey());
+		Assert.assertEquals(FlowState.Canceled, stopped.getFlowState());
+		Assert.assertEquals(FlowResult.Canceled, stopped.getFlowResult());
+		Assert.assertNotNull(stopped.getEndDate());
+		
+		// cleanup
+		for (ISessionData sd : sds) {
+			sdm.delete(sd);
+		}
+	}
+
+	@Test
+	public void testSessionSnapshot() throws Exception {
+		ISessionDataManager sdm = SessionDataFactory.getInstance().getDataManager();
+		ISessionMetaDataManager smdm = SessionDataFactory.getInstance().getMetaDataManager();
+		ISessionData parent = sdm.newInstance();
+		parent.setCreationDate(new Date());
+		parent.setFlowKey(UUID.randomUUID().toString());
+		parent.setTargetKey("snapshot");
+		parent.setType("1");
+		parent.setFlowState(FlowState.Running);
+		sdm.save(parent);
+		ISessionData child = sdm.newInstance();
+		child.setCreationDate(new Date());
+		child.setFlowKey(UUID.randomUUID().toString());
+		child.setParentId(parent.getFlowId());
+		child.setType("1");
+		child.setFlowState(FlowState.Completed);
+		child.setFlowResult(FlowResult.Success);
+		child.setEndDate(new Date());
+		sdm.save(child);
+		ISessionMetaData smd = smdm.newInstance();
+		smd.setName("metadata1");
+		smd.setStrValue("value1");
+		smd.setBlobValue(new Integer(1));
+		smd.setFlowId(child.getFlowId());
+		smdm.save(smd);
+		
+		// export, with pages smaller than the number of flows
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		long exported = new SessionSnapshot().setBatchSize(1).exportTo(bos);
+		Assert.assertTrue(exported >= 2);
+		
+		// import into the emptied store, ids are remapped
+		smdm.delete(smd);
+		sdm.delete(child);
+		sdm.delete(parent);
+		long imported = new SessionSnapshot().setBatchSize(2).importFrom(new ByteArrayInputStream(bos.toByteArray()));
+		Assert.assertEquals(exported, imported);
+		ISessionData newParent = sdm.findByKey(parent.getFlowKey());
+		ISessionData newChild = sdm.findByKey(child.getFlowKey());
+		Assert.assertTrue(newParent.getFlowId() > 0);
+		Assert.assertEquals(newParent.getFlowId(), newChild.getParentId());
+		Assert.assertEquals(FlowState.Completed, newChild.getFlowState());
+		Assert.assertEquals(FlowResult.Success, newChild.getFlowResult());
+		Assert.assertEquals("snapshot", newParent.getTargetKey());
+		List<ISessionMetaData> metas = smdm.findByFlowId(newChild.getFlowId());
+		Assert.assertEquals(1, metas.size());
+		Assert.assertEquals("value1", metas.get(0).getStrValue());
+		Assert.assertEquals(1, metas.get(0).getBlobValue());
+		
+		// cleanup
+		smdm.delete(metas.get(0));
+		sdm.delete(newChild);
+		sdm.delete(newParent);
+	}
+
+	@Test
+	public void testSessionCounterManager() throws Exception {
+		ISessionCounterManager scm = SessionDataFactory.getInstance().getCounterManager();
+		scm.transition("counter", null, null, FlowState.Pending, null);
+		scm.transition("counter", null, null, FlowState.Pending, null);
+		scm.transition("counter", FlowState.Pending, null, FlowState.Running, FlowResult.InProgress);
+		List<FlowCount> counts = scm.getCounts("counter");
+		Assert.assertEquals(2, counts.size());
+		for (FlowCount count : counts) {
+			Assert.assertEquals(1, count.getCount());
+		}
+		scm.transition("counter", FlowState.Running, FlowResult.InProgress, FlowState.Completed, FlowResult.Success);
+		scm.transition("counter", FlowState.Pending, null, null, null);
+		counts = scm.getCounts("counter");
+		Assert.assertEquals(1, counts.size());
+		Assert.assertEquals(FlowState.Completed, counts.get(0).getFlowState());
+		Assert.assertEquals(FlowResult.Success, counts.get(0).getFlowResult());
+		Assert.assertEquals(1, counts.get(0).getCount());
+		
+		// rebuild from flow session table
+		scm.rebuild();
+		Assert.assertEquals(0, scm.getCounts("counter").size());
+	}
+	
+	@Test
+	public void testSessionScheduleManager() throws Exception {
+		ISessionScheduleManager ssm = SessionDataFactory.getInstance().getScheduleManager();
+		Assert.assertNull(ssm.getLastFireTime("schedule"));
+		Date fire1 = new Date(System.currentTimeMillis() - 60000);
+		Date fire2 = new Date(System.currentTimeMillis());
+		Assert.assertTrue(ssm.claimFire("schedule", "counter", fire1));
+		// same fire can only be claimed once
+		Assert.assertFalse(ssm.claimFire("schedule", "counter", fire1));
+		Assert.assertTrue(ssm.claimFire("schedule", "counter", fire2));
+		Assert.assertFalse(ssm.claimFire("schedule", "counter", fire1));
+		Assert.assertEquals(fire2.getTime(), ssm.getLastFireTime("schedule").getTime());
+	}
+
 	@Override
 	protected void afterInitialize(String home) throws InitializationException {
 	}
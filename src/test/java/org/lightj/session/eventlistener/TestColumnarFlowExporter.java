@@ -0,0 +1,90 @@
+package org.lightj.session.eventlistener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.lightj.session.eventlistener.ColumnarFlowExporter.Column;
+import org.lightj.session.eventlistener.ColumnarFlowReader.ChunkHandler;
+import org.lightj.session.step.StepLog;
+import org.lightj.session.step.StepLog.TaskLog;
+
+public class TestColumnarFlowExporter {
+
+	@Test
+	public void testRoundTripAcrossRotation() throws Exception {
+		File dir = File.createTempFile("flows", "");
+		dir.delete();
+		dir.mkdir();
+		try {
+			ColumnarFlowExporter exporter = new ColumnarFlowExporter(dir, "flows", 1000, 2);
+			exporter.enqueue("deploy", "flow1", "Completed", "Success",
+					Arrays.asList(stepLog("start", null), stepLog("run", "Failed"), stepLog("run", "Success")));
+			exporter.flush();
+			// the next flow lands in the file of the next period
+			Thread.sleep(1100);
+			exporter.enqueue("deploy", "flow2", "Canceled", null, Arrays.asList(stepLog("start", null)));
+			exporter.close();
+			Assert.assertEquals(2, exporter.getFiles().size());
+
+			final EnumSet<Column> selected = EnumSet.of(Column.FLOW_KEY, Column.FLOW_RESULT, Column.STEP_NAME,
+					Column.STEP_ATTEMPT, Column.TASK_FAILURES);
+			final List<String> rows = new ArrayList<String>();
+			ColumnarFlowReader.scan(dir, "flows", selected, new ChunkHandler() {
+
+				@Override
+				public void handleChunk(int count, Map<Column, Object> values) {
+					// only the columns asked for are decoded
+					Assert.assertEquals(selected, EnumSet.copyOf(values.keySet()));
+					for (int r = 0; r < count; r++) {
+						rows.add(((String[]) values.get(Column.FLOW_KEY))[r] + ','
+								+ ((String[]) values.get(Column.FLOW_RESULT))[r] + ','
+								+ ((String[]) values.get(Column.STEP_NAME))[r] + ','
+								+ ((int[]) values.get(Column.STEP_ATTEMPT))[r] + ','
+								+ ((int[]) values.get(Column.TASK_FAILURES))[r]);
+					}
+				}
+			});
+			Assert.assertEquals(Arrays.asList(
+					"flow1,Success,start,1,0",
+					"flow1,Success,run,1,1",
+					"flow1,Success,run,2,0",
+					"flow2,null,start,1,0"), rows);
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	/**
+	 * log of a step, with one task of a result if any
+	 * @param stepName
+	 * @param taskResult
+	 * @return
+	 */
+	private static StepLog stepLog(String stepName, String taskResult) {
+		StepLog stepLog = new StepLog();
+		stepLog.setStepName(stepName);
+		stepLog.setStartTime(new Date());
+		stepLog.setEndTime(new Date());
+		LinkedHashMap<String, TaskLog> tasks = new LinkedHashMap<String, TaskLog>();
+		if (taskResult != null) {
+			TaskLog taskLog = new TaskLog("task", "uuid");
+			taskLog.setResult(taskResult);
+			tasks.put("task", taskLog);
+		}
+		stepLog.setTasks(tasks);
+		return stepLog;
+	}
+
+}
@@ -0,0 +1,454 @@
+package org.lightj.task;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lightj.BaseTestCase;
+import org.lightj.initialization.BaseModule;
+import org.lightj.session.FlowContext;
+import org.lightj.task.BatchOption.DispatchMode;
+
+import akka.actor.Actor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.UntypedActorFactory;
+
+/**
+ * dispatch modes of a batch, actor per task vs pooled workers vs direct executor, 
+ * with synchronous and asynchronous tasks, prints time taken by each
+ * 
+ * @author binyu
+ *
+ */
+public class TestTaskDispatch extends BaseTestCase {
+	
+	static final int NUM_OF_TASKS = 5000;
+	
+	/** completes async tasks off the executing thread */
+	private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+	
+	/** batch last executed and its listener */
+	private BatchTask lastBatch;
+	private StandaloneTaskListener lastListener;
+	
+	public void testSyncTasks() throws Exception {
+		for (DispatchMode mode : DispatchMode.values()) {
+			run(mode, false); // warm up
+			long elapsed = run(mode, false);
+			System.out.println(String.format("%s sync tasks with %s: %sms", NUM_OF_TASKS, mode, elapsed));
+		}
+	}
+
+	public void testAsyncTasks() throws Exception {
+		for (DispatchMode mode : DispatchMode.values()) {
+			run(mode, true); // warm up
+			long elapsed = run(mode, true);
+			System.out.println(String.format("%s async tasks with %s: %sms", NUM_OF_TASKS, mode, elapsed));
+		}
+	}
+	
+	public void testRetryAndConcurrentRate() throws Exception {
+		for (DispatchMode mode : DispatchMode.values()) {
+			final int[] tries = new int[1];
+			ExecutableTask flaky = new ExecutableTask(new ExecuteOption(0, 0, 2, 0)) {
+				@Override
+				public TaskResult execute() throws TaskExecutionException {
+					synchronized (tries) {
+						if (tries[0]++ < 2) {
+							throw new TaskExecutionException("flaky");
+						}
+					}
+					return hasResult(TaskResultEnum.Success, null);
+				}
+			};
+			BatchOption option = new BatchOption(2, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING);
+			option.setDispatchMode(mode);
+			ExecutableTask[] tasks = new ExecutableTask[] {flaky, new NoopTask(), new NoopTask(), new NoopTask()};
+			Map<String, TaskResult> results = execute(option, tasks);
+			assertEquals(tasks.length, results.size());
+			for (TaskResult result : results.values()) {
+				assertEquals(TaskResultEnum.Success, result.getStatus());
+			}
+			assertEquals(3, tries[0]);
+		}
+	}
+	
+	public void testTokenBucket() throws Exception {
+		BatchOption option = new BatchOption(0, BatchOption.Strategy.TOKEN_BUCKET);
+		option.setRatePerSec(20);
+		option.setBurst(5);
+		ExecutableTask[] tasks = new ExecutableTask[25];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new NoopTask();
+		}
+		long start = System.currentTimeMillis();
+		assertEquals(tasks.length, execute(option, tasks).size());
+		long elapsed = System.currentTimeMillis() - start;
+		// 5 at once, 20 more at 20 per sec
+		assertTrue("took " + elapsed, elapsed >= 900);
+	}
+	
+	public void testPerHostCap() throws Exception {
+		Map<String, Integer> inFlight = new HashMap<String, Integer>();
+		int[] max = new int[1];
+		ExecutableTask[] tasks = new ExecutableTask[30];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new HostTask("host" + (i % 3), inFlight, max);
+		}
+		BatchOption option = new BatchOption(5, BatchOption.Strategy.COMPOSITE);
+		option.setMaxPerHost(2);
+		assertEquals(tasks.length, execute(option, tasks).size());
+		assertTrue("max per host " + max[0], max[0] <= 2);
+	}
+	
+	public void testHostBulkhead() throws Exception {
+		TaskModule.getHostBulkheads().setMaxInflight("shared", 2);
+		try {
+			Map<String, Integer> inFlight = new HashMap<String, Integer>();
+			int[] max = new int[1];
+			// batches running side by side against the same host
+			final CountDownLatch done = new CountDownLatch(3);
+			for (int b = 0; b < 3; b++) {
+				ExecutableTask[] tasks = new ExecutableTask[10];
+				for (int i = 0; i < tasks.length; i++) {
+					tasks[i] = new HostTask("shared", inFlight, max);
+				}
+				StandaloneTaskListener listener = new StandaloneTaskListener();
+				listener.setDelegateHandler(new SimpleTaskEventHandler<FlowContext>() {
+					@Override
+					public TaskResultEnum executeOnCompleted(FlowContext ctx, Map<String, TaskResult> results) {
+						done.countDown();
+						return super.executeOnCompleted(ctx, results);
+					}
+				});
+				new StandaloneTaskExecutor(new BatchOption(), listener, tasks).execute();
+			}
+			assertTrue(done.await(60, TimeUnit.SECONDS));
+			assertTrue("max per host " + max[0], max[0] <= 2);
+			
+			HostUsage usage = TaskModule.getHostBulkheads().getUsage().get(0);
+			assertEquals("shared", usage.getHost());
+			assertEquals(30, usage.getAcquired());
+			assertEquals(0, usage.getQueuedTasks());
+			assertTrue(usage.getWaits() > 0);
+		}
+		finally {
+			TaskModule.getHostBulkheads().setMaxInflight("shared", 0);
+		}
+	}
+	
+	public void testTenantCapHoldsNoHostPermit() throws Exception {
+		TaskModule.getHostBulkheads().setMaxInflight("shared", 1);
+		ActorRef capped = null;
+		try {
+			Map<String, Integer> inFlight = new HashMap<String, Integer>();
+			int[] max = new int[1];
+			// a batch of a tenant at its in flight cap, never gets a permit
+			final BatchTask cappedBatch = new BatchTask(new BatchOption(), new HostTask("shared", inFlight, max));
+			cappedBatch.setPermit(new ITaskPermit() {
+				@Override
+				public boolean tryAcquire() {
+					return false;
+				}
+				@Override
+				public void release() {
+				}
+			});
+			capped = TaskModule.getActorSystem().actorOf(new Props(new UntypedActorFactory() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public Actor create() throws Exception {
+					return new BatchTaskWorker(cappedBatch, TaskModule.getAsyncWorkerFactory(), new StandaloneTaskListener());
+				}
+			}));
+			capped.tell(WorkerMessage.Type.PROCESS_REQUEST, null);
+			Thread.sleep(100);
+
+			// another batch against the same host is not held up by it
+			ExecutableTask[] tasks = new ExecutableTask[5];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = new HostTask("shared", inFlight, max);
+			}
+			assertEquals(tasks.length, execute(new BatchOption(), tasks).size());
+		}
+		finally {
+			if (capped != null) {
+				TaskModule.getActorSystem().stop(capped);
+			}
+			TaskModule.getHostBulkheads().setMaxInflight("shared", 0);
+		}
+	}
+
+	public void testResultSummary() throws Exception {
+		ExecutableTask[] tasks = new ExecutableTask[10];
+		for (int i = 0; i < tasks.length; i++) {
+			final TaskResultEnum status = (i == 3) ? TaskResultEnum.Timeout : (i % 4 == 1 ? TaskResultEnum.Failed : TaskResultEnum.Success);
+			tasks[i] = new ExecutableTask() {
+				@Override
+				public TaskResult execute() throws TaskExecutionException {
+					return hasResult(status, null);
+				}
+			};
+		}
+		final CountDownLatch done = new CountDownLatch(1);
+		StandaloneTaskListener listener = new StandaloneTaskListener();
+		listener.setRetainResults(false);
+		listener.setDelegateHandler(new SimpleTaskEventHandler<FlowContext>() {
+			@Override
+			public TaskResultEnum executeOnCompleted(FlowContext ctx, Map<String, TaskResult> results) {
+				done.countDown();
+				return super.executeOnCompleted(ctx, results);
+			}
+		});
+		new StandaloneTaskExecutor(new BatchOption(1, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING), listener, tasks).execute();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		
+		TaskResultSummary summary = listener.getSummary();
+		assertTrue(listener.results.isEmpty());
+		assertEquals(10, summary.getTotal());
+		assertEquals(6, summary.getCount(TaskResultEnum.Success));
+		assertEquals(3, summary.getCount(TaskResultEnum.Failed));
+		assertEquals(1, summary.getCount(TaskResultEnum.Timeout));
+		assertEquals(4, summary.getFailures());
+		// one at a time, first failure is the second task
+		assertSame(tasks[1], summary.getFirstFailure().getTask());
+		assertSame(summary.getFirstFailure(), summary.getWorst());
+	}
+	
+	public void testFailFast() throws Exception {
+		for (DispatchMode mode : DispatchMode.values()) {
+			ExecutableTask[] tasks = new ExecutableTask[1000];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = new ExecutableTask() {
+					@Override
+					public TaskResult execute() throws TaskExecutionException {
+						return hasResult(TaskResultEnum.Failed, "down");
+					}
+				};
+			}
+			BatchOption option = new BatchOption(5, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING);
+			option.setDispatchMode(mode);
+			option.setCompletionPolicy(new CompletionPolicy().setMaxFailures(10));
+			execute(option, tasks);
+			assertEquals(TaskResultEnum.Failed, lastListener.getBatchResult().getStatus());
+			int failures = lastListener.getSummary().getFailures();
+			assertTrue(mode + " failures " + failures, failures >= 10 && failures < tasks.length);
+		}
+	}
+	
+	public void testPolicyOnListenerTally() throws Exception {
+		ExecutableTask[] tasks = new ExecutableTask[10];
+		for (int i = 0; i < tasks.length; i++) {
+			final TaskResultEnum status = (i == 0) ? TaskResultEnum.Failed : TaskResultEnum.Success;
+			tasks[i] = new ExecutableTask() {
+				@Override
+				public TaskResult execute() throws TaskExecutionException {
+					return hasResult(status, null);
+				}
+			};
+		}
+		final CountDownLatch done = new CountDownLatch(1);
+		StandaloneTaskListener listener = new StandaloneTaskListener();
+		listener.setDelegateHandler(new SimpleTaskEventHandler<FlowContext>() {
+			@Override
+			public TaskResultEnum executeOnCompleted(FlowContext ctx, Map<String, TaskResult> results) {
+				done.countDown();
+				return super.executeOnCompleted(ctx, results);
+			}
+		});
+		// a failure counted in before the batch, as a step recovered from checkpoint does
+		listener.getSummary().add(new ExecutableTask() {
+			@Override
+			public TaskResult execute() throws TaskExecutionException {
+				return null;
+			}
+		}.hasResult(TaskResultEnum.Failed, "recovered"));
+		BatchOption option = new BatchOption(1, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING);
+		option.setCompletionPolicy(new CompletionPolicy().setMaxFailures(2));
+		new StandaloneTaskExecutor(option, listener, tasks).execute();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		// the first failure of the batch is the second one counted
+		assertEquals(TaskResultEnum.Failed, listener.getBatchResult().getStatus());
+		assertEquals(2, listener.getSummary().getFailures());
+		assertTrue(listener.getSummary().getTotal() < tasks.length);
+	}
+
+	public void testQuorum() throws Exception {
+		for (DispatchMode mode : DispatchMode.values()) {
+			final AtomicInteger canceled = new AtomicInteger();
+			ExecutableTask[] tasks = new ExecutableTask[100];
+			for (int i = 0; i < tasks.length; i++) {
+				final boolean replies = i < 3;
+				tasks[i] = new ExecutableTask() {
+					@Override
+					public TaskResult execute() throws TaskExecutionException {
+						if (replies) {
+							responder.schedule(new Runnable() {
+								@Override
+								public void run() {
+									reply(hasResult(TaskResultEnum.Success, null));
+								}
+							}, 20, TimeUnit.MILLISECONDS);
+						}
+						// others hang till canceled
+						return null;
+					}
+					@Override
+					public void cancel() {
+						canceled.incrementAndGet();
+					}
+				};
+			}
+			BatchOption option = new BatchOption(5, BatchOption.Strategy.MAX_CONCURRENT_RATE_SLIDING);
+			option.setDispatchMode(mode);
+			option.setCompletionPolicy(CompletionPolicy.quorum(3));
+			execute(option, tasks);
+			assertEquals(TaskResultEnum.Success, lastListener.getBatchResult().getStatus());
+			assertEquals(3, lastListener.getSummary().getCount(TaskResultEnum.Success));
+			// hanging tasks in flight aborted, queued ones never started
+			assertTrue(mode + " canceled " + canceled.get(), canceled.get() >= 2 && canceled.get() <= 5);
+		}
+	}
+	
+	public void testAdaptiveLimit() throws Exception {
+		// healthy tasks, limit grows
+		ExecutableTask[] tasks = new ExecutableTask[300];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new AsyncNoopTask();
+		}
+		BatchOption option = new BatchOption(2, BatchOption.Strategy.ADAPTIVE);
+		option.setLimits(2, 20);
+		assertEquals(tasks.length, execute(option, tasks).size());
+		int grown = lastBatch.getLiveLimit();
+		assertTrue("limit " + grown, grown > 2 && grown <= 20);
+		
+		// failing tasks, limit cut
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new ExecutableTask() {
+				@Override
+				public TaskResult execute() throws TaskExecutionException {
+					return hasResult(TaskResultEnum.Failed, "down");
+				}
+			};
+		}
+		option = new BatchOption(20, BatchOption.Strategy.ADAPTIVE);
+		option.setLimits(2, 20);
+		assertEquals(tasks.length, execute(option, tasks).size());
+		assertEquals(2, lastBatch.getLiveLimit());
+	}
+	
+	/**
+	 * run a batch of tasks
+	 * @param mode
+	 * @param async
+	 * @return elapsed ms
+	 * @throws Exception
+	 */
+	private long run(DispatchMode mode, boolean async) throws Exception {
+		ExecutableTask[] tasks = new ExecutableTask[NUM_OF_TASKS];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = async ? new AsyncNoopTask() : new NoopTask();
+		}
+		BatchOption option = new BatchOption();
+		option.setDispatchMode(mode);
+		long start = System.currentTimeMillis();
+		Map<String, TaskResult> results = execute(option, tasks);
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(NUM_OF_TASKS, results.size());
+		return elapsed;
+	}
+	
+	/**
+	 * execute and wait for all results
+	 * @param option
+	 * @param tasks
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, TaskResult> execute(BatchOption option, ExecutableTask... tasks) throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		StandaloneTaskListener listener = new StandaloneTaskListener();
+		listener.setDelegateHandler(new SimpleTaskEventHandler<FlowContext>() {
+			@Override
+			public TaskResultEnum executeOnCompleted(FlowContext ctx, Map<String, TaskResult> results) {
+				done.countDown();
+				return super.executeOnCompleted(ctx, results);
+			}
+		});
+		lastListener = listener;
+		lastBatch = new StandaloneTaskExecutor(option, listener, tasks).execute();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		return listener.results;
+	}
+	
+	/**
+	 * noop task replying from another thread
+	 */
+	class AsyncNoopTask extends ExecutableTask {
+		@Override
+		public TaskResult execute() throws TaskExecutionException {
+			responder.execute(new Runnable() {
+				@Override
+				public void run() {
+					reply(hasResult(TaskResultEnum.Success, null));
+				}
+			});
+			return null;
+		}
+	}
+
+	/**
+	 * task against a host replying a bit later, tracks max in flight per host
+	 */
+	class HostTask extends ExecutableTask {
+		final String host;
+		final Map<String, Integer> inFlight;
+		final int[] max;
+		HostTask(String host, Map<String, Integer> inFlight, int[] max) {
+			this.host = host;
+			this.inFlight = inFlight;
+			this.max = max;
+		}
+		@Override
+		public TaskResult execute() throws TaskExecutionException {
+			synchronized (inFlight) {
+				Integer count = inFlight.get(host);
+				count = (count != null ? count + 1 : 1);
+				inFlight.put(host, count);
+				max[0] = Math.max(max[0], count);
+			}
+			responder.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (inFlight) {
+						inFlight.put(host, inFlight.get(host) - 1);
+					}
+					reply(hasResult(TaskResultEnum.Success, null));
+				}
+			}, 5, TimeUnit.MILLISECONDS);
+			return null;
+		}
+		@Override
+		public String getTargetHost() {
+			return host;
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		responder.shutdown();
+		super.tearDown();
+	}
+
+	@Override
+	protected BaseModule[] getDependentModules() {
+		return new BaseModule[] {new TaskModule().getModule()};
+	}
+
+}